@@ -0,0 +1,150 @@
+package ika.app;
+
+import ika.geo.GeoGrid;
+import ika.geoimport.BinaryGridReader;
+import ika.geoimport.ESRIASCIIGridReader;
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * Times a task that is run repeatedly and keeps the shortest time, which is
+ * least affected by garbage collection and other processes. Also contains
+ * helpers shared by the benchmarks.
+ *
+ * The benchmarks are in the bench source folder and are not included in
+ * ScreePainter.jar. They are compiled with "ant compile-bench" and run with
+ * java -cp "build/classes:build/bench/classes:lib/*" ika.app.[Benchmark] [arguments]
+ *
+ * @author Bernhard Jenny, School of Mathematical and Geospatial Sciences, RMIT
+ * University, Melbourne
+ * @param <T> the type of the result of the timed task
+ */
+final class Benchmark<T> {
+
+    /**
+     * A task to time.
+     *
+     * @param <T> the type of the result
+     */
+    interface Task<T> {
+
+        T run() throws Exception;
+    }
+
+    private final T result;
+    private final long bestTime;
+
+    private Benchmark(T result, long bestTime) {
+        this.result = result;
+        this.bestTime = bestTime;
+    }
+
+    /**
+     * Runs a task repeatedly and measures the shortest time. The garbage
+     * collector is run before each repetition.
+     *
+     * @param repetitions the number of timed runs
+     * @param warmUp if true, the task is run once before the timed runs to
+     * warm up the JIT compiler.
+     * @param task the task to time
+     * @return the result of the last run and the shortest time
+     * @throws Exception an exception thrown by the task
+     */
+    static <T> Benchmark<T> run(int repetitions, boolean warmUp, Task<T> task)
+            throws Exception {
+        if (repetitions < 1) {
+            throw new IllegalArgumentException("no repetitions");
+        }
+        T result = warmUp ? task.run() : null;
+        long bestTime = Long.MAX_VALUE;
+        for (int i = 0; i < repetitions; i++) {
+            // release the previous result before collecting garbage
+            result = null;
+            System.gc();
+            final long start = System.nanoTime();
+            result = task.run();
+            bestTime = Math.min(bestTime, System.nanoTime() - start);
+        }
+        return new Benchmark<>(result, bestTime);
+    }
+
+    /**
+     * Returns the result of the last run.
+     *
+     * @return the result
+     */
+    T getResult() {
+        return result;
+    }
+
+    /**
+     * Returns the shortest time.
+     *
+     * @return the time in nanoseconds
+     */
+    long getBestTime() {
+        return bestTime;
+    }
+
+    /**
+     * Returns the shortest time in milliseconds.
+     *
+     * @return the time in milliseconds
+     */
+    double getBestMillis() {
+        return bestTime / 1e6;
+    }
+
+    /**
+     * Returns a command line argument as an integer.
+     *
+     * @param args the command line arguments
+     * @param index the index of the argument
+     * @param defaultValue the value if there are not enough arguments
+     * @return the value of the argument
+     */
+    static int intArg(String[] args, int index, int defaultValue) {
+        return args.length > index ? Integer.parseInt(args[index]) : defaultValue;
+    }
+
+    /**
+     * Reads an elevation model from an Esri ASCII grid or a binary grid.
+     *
+     * @param filePath the path of the file
+     * @return the elevation model
+     * @throws IOException if the file cannot be read
+     */
+    static GeoGrid readGrid(String filePath) throws IOException {
+        if (BinaryGridReader.isBinaryGrid(filePath)) {
+            return BinaryGridReader.read(filePath);
+        }
+        return ESRIASCIIGridReader.readParallel(filePath, null);
+    }
+
+    /**
+     * Creates synthetic stones with random positions and between 5 and 8
+     * corners. The mean diameter of the stones is 2.
+     *
+     * @param stonesCount the number of stones
+     * @param size the width and height of the square area covered by stones
+     * @return the stones
+     */
+    static StoneStore stones(int stonesCount, double size) {
+        Random random = new Random(0);
+        StoneStore stones = new StoneStore();
+        double[] xy = new double[16];
+        for (int i = 0; i < stonesCount; i++) {
+            final double r = 0.5 + random.nextDouble();
+            final int stone = stones.add(random.nextDouble() * size,
+                    random.nextDouble() * size, r);
+            final int cornersCount = 5 + random.nextInt(4);
+            for (int j = 0; j < cornersCount; j++) {
+                final double a = 2 * Math.PI * j / cornersCount;
+                xy[j * 2] = Math.cos(a) * r;
+                xy[j * 2 + 1] = Math.sin(a) * r;
+            }
+            stones.setShape(stone, r, xy, cornersCount);
+        }
+        return stones;
+    }
+}
@@ -0,0 +1,229 @@
+package ika.app;
+
+import ika.geo.GeoGrid;
+import ika.geo.GeoObject;
+import ika.geo.GeoPath;
+import ika.geo.grid.GridDerivatives;
+import ika.geo.grid.GridFalllineOperator;
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.Random;
+
+/**
+ * Compares the speed of tracing fall lines with a copy of the original tracer
+ * that calls GeoGrid.getAspect and GeoGrid.getSlope for every step, with
+ * GridFalllineOperator interpolating the DEM, and with GridFalllineOperator
+ * using precomputed GridDerivatives. Fall lines are traced downwards from a
+ * regular lattice of seed points. The benchmark reports the number of steps
+ * per second, how many fall lines are identical to the lines of the original
+ * tracer, and the largest aspect difference between GeoGrid and
+ * GridDerivatives at random points.
+ *
+ * Usage: java -cp "build/classes:build/bench/classes:lib/*"
+ * ika.app.FallLineBenchmark [DEM file]
+ *
+ * The DEM file is an Esri ASCII grid or a binary grid. A synthetic elevation
+ * model is used if no file is passed.
+ *
+ * @author Bernhard Jenny, School of Mathematical and Geospatial Sciences, RMIT
+ * University, Melbourne
+ */
+public class FallLineBenchmark {
+
+    private static final int REPETITIONS = 3;
+    private static final int SEEDS_PER_ROW = 200;
+    private static final float MIN_SLOPE_DEGREE = 10;
+
+    private static GeoGrid syntheticDEM() {
+        final int cols = 2000;
+        final int rows = 2000;
+        GeoGrid dem = new GeoGrid(cols, rows, 5);
+        dem.setWest(2600000);
+        dem.setNorth(1200000);
+        for (int row = 0; row < rows; row++) {
+            for (int col = 0; col < cols; col++) {
+                double z = 3000 - row * 0.9
+                        + 150 * Math.sin(col / 90.) * Math.cos(row / 130.)
+                        + 25 * Math.sin(col / 17. + row / 41.);
+                dem.setValue((float) z, col, row);
+            }
+        }
+        return dem;
+    }
+
+    private interface Tracer {
+
+        GeoPath trace(double x, double y);
+    }
+
+    /**
+     * The original downward fall line tracer of GridFalllineOperator, without
+     * clip polygon and reference grids.
+     */
+    private static GeoPath referenceTrace(GeoGrid dem, double x, double y) {
+        final float minSlopeRadian = (float) Math.toRadians(MIN_SLOPE_DEGREE);
+        final double cellSize = dem.getCellSize();
+        final double west = dem.getWest();
+        final double north = dem.getNorth();
+        GeoPath polyLine = new GeoPath();
+        Rectangle2D gridBounds = dem.getBounds2D(GeoObject.UNDEFINED_SCALE);
+        while (gridBounds.contains(x, y)) {
+            polyLine.moveOrLineTo((float) x, (float) y);
+            if (Math.abs(dem.getSlope(x, y)) < minSlopeRadian) {
+                break;
+            }
+            float z1 = dem.getBilinearInterpol(x, y);
+
+            double dir = dem.getAspect(x, y) + Math.PI;
+            if (dir > Math.PI) {
+                dir -= 2. * Math.PI;
+            }
+            if (Double.isNaN(dir)) {
+                break;
+            }
+            final double tanDir = Math.tan(dir);
+            final int lowerIntersection = dir < 0. ? 1 : 0;
+            double y1 = north - cellSize * (Math.floor((north - y) / cellSize) + lowerIntersection);
+            if (y1 == y) {
+                y1 += cellSize;
+            }
+            final double dy1 = y1 - y;
+            final double dx1 = dy1 / tanDir;
+            final int rightIntersection = (dir > -Math.PI / 2 && dir < Math.PI / 2) ? 1 : 0;
+            double x2 = west + cellSize * (Math.floor((x - west) / cellSize) + rightIntersection);
+            if (x2 == x) {
+                x2 -= cellSize;
+            }
+            final double dx2 = x2 - x;
+            final double dy2 = tanDir * dx2;
+            if (dx1 * dx1 + dy1 * dy1 < dx2 * dx2 + dy2 * dy2) {
+                x += dx1;
+                y = y1;
+            } else {
+                x = x2;
+                y += dy2;
+            }
+
+            float z2 = dem.getBilinearInterpol(x, y);
+            if (z1 <= z2) {
+                break;
+            }
+        }
+        return polyLine.getPointsCount() < 2 ? null : polyLine;
+    }
+
+    private static Tracer operatorTracer(final GeoGrid dem, GridDerivatives derivatives) {
+        final GridFalllineOperator op = new GridFalllineOperator();
+        op.setMinSlopeDegree(MIN_SLOPE_DEGREE);
+        op.setSearchMethod(GridFalllineOperator.SearchMethod.DOWN);
+        op.setDerivatives(derivatives);
+        return new Tracer() {
+            @Override
+            public GeoPath trace(double x, double y) {
+                op.setStart(x, y);
+                return op.operate(dem, null, null, null, 0, null);
+            }
+        };
+    }
+
+    private static ArrayList<GeoPath> trace(GeoGrid dem, Tracer tracer) {
+        final double dx = (dem.getEast() - dem.getWest()) / SEEDS_PER_ROW;
+        final double dy = (dem.getNorth() - dem.getSouth()) / SEEDS_PER_ROW;
+        ArrayList<GeoPath> lines = new ArrayList<>();
+        for (int i = 0; i < SEEDS_PER_ROW; i++) {
+            for (int j = 0; j < SEEDS_PER_ROW; j++) {
+                lines.add(tracer.trace(dem.getWest() + (j + 0.5) * dx,
+                        dem.getNorth() - (i + 0.5) * dy));
+            }
+        }
+        return lines;
+    }
+
+    private static long countSteps(ArrayList<GeoPath> lines) {
+        long steps = 0;
+        for (GeoPath line : lines) {
+            if (line != null) {
+                steps += line.getPointsCount();
+            }
+        }
+        return steps;
+    }
+
+    private static ArrayList<GeoPath> time(String name, final GeoGrid dem,
+            final Tracer tracer) throws Exception {
+        Benchmark<ArrayList<GeoPath>> b = Benchmark.run(REPETITIONS, false,
+                new Benchmark.Task<ArrayList<GeoPath>>() {
+            @Override
+            public ArrayList<GeoPath> run() {
+                return trace(dem, tracer);
+            }
+        });
+        final long steps = countSteps(b.getResult());
+        System.out.format("%-28s %10.1f ms %,14.0f steps per second%n",
+                name, b.getBestMillis(), steps / (b.getBestTime() / 1e9));
+        return b.getResult();
+    }
+
+    private static boolean equal(GeoPath line1, GeoPath line2) {
+        if (line1 == null || line2 == null) {
+            return line1 == line2;
+        }
+        if (line1.getPointsCount() != line2.getPointsCount()) {
+            return false;
+        }
+        return line1.getEndPoint().equals(line2.getEndPoint());
+    }
+
+    private static void compare(ArrayList<GeoPath> reference, ArrayList<GeoPath> lines) {
+        int identical = 0;
+        for (int i = 0; i < reference.size(); i++) {
+            if (equal(reference.get(i), lines.get(i))) {
+                ++identical;
+            }
+        }
+        System.out.format("    identical fall lines: %d of %d%n", identical, reference.size());
+    }
+
+    public static void main(String[] args) throws Exception {
+        final GeoGrid dem;
+        if (args.length > 0) {
+            dem = Benchmark.readGrid(args[0]);
+        } else {
+            dem = syntheticDEM();
+        }
+        System.out.format("Grid: %d x %d, seed points: %d%n",
+                dem.getCols(), dem.getRows(), SEEDS_PER_ROW * SEEDS_PER_ROW);
+
+        long start = System.nanoTime();
+        GridDerivatives derivatives = new GridDerivatives(dem);
+        System.out.format("%-28s %10.1f ms%n", "Computing derivatives",
+                (System.nanoTime() - start) / 1e6);
+
+        ArrayList<GeoPath> reference = time("Original tracer", dem, new Tracer() {
+            @Override
+            public GeoPath trace(double x, double y) {
+                return referenceTrace(dem, x, y);
+            }
+        });
+        ArrayList<GeoPath> lines = time("Interpolating the DEM", dem, operatorTracer(dem, null));
+        compare(reference, lines);
+        lines = time("GridDerivatives", dem, operatorTracer(dem, derivatives));
+        compare(reference, lines);
+
+        double maxAspectDiff = 0;
+        Random random = new Random(0);
+        for (int i = 0; i < 100000; i++) {
+            double x = dem.getWest() + random.nextDouble() * (dem.getEast() - dem.getWest());
+            double y = dem.getSouth() + random.nextDouble() * (dem.getNorth() - dem.getSouth());
+            double d = Math.abs(dem.getAspect(x, y) - derivatives.getAspect(x, y));
+            if (d > Math.PI) {
+                d = 2 * Math.PI - d;
+            }
+            if (!Double.isNaN(d)) {
+                maxAspectDiff = Math.max(maxAspectDiff, d);
+            }
+        }
+        System.out.format("    largest aspect difference: %.3g degrees%n",
+                Math.toDegrees(maxAspectDiff));
+    }
+}
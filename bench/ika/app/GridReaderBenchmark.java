@@ -0,0 +1,125 @@
+package ika.app;
+
+import ika.geo.GeoGrid;
+import ika.geoexport.BinaryGridWriter;
+import ika.geoexport.ESRIASCIIGridWriter;
+import ika.geoimport.BinaryGridReader;
+import ika.geoimport.ESRIASCIIGridReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+
+/**
+ * Compares the speed of reading an elevation model with the sequential and the
+ * parallel Esri ASCII grid readers and the binary grid reader. A synthetic
+ * elevation model with elevations rounded to centimeters and some void values
+ * is written to temporary files. The benchmark also verifies that all readers
+ * return identical values.
+ *
+ * Usage: java -cp "build/classes:build/bench/classes:lib/*"
+ * ika.app.GridReaderBenchmark [cols] [rows]
+ *
+ * @author Bernhard Jenny, School of Mathematical and Geospatial Sciences, RMIT
+ * University, Melbourne
+ */
+public class GridReaderBenchmark {
+
+    private static final int REPETITIONS = 3;
+    private static final float NO_DATA = -9999;
+
+    private static float elevation(int col, int row) {
+        if ((col * 31 + row * 17) % 997 == 0) {
+            return Float.NaN;
+        }
+        double z = 1500 + 800 * Math.sin(col / 700.) * Math.cos(row / 900.)
+                + 20 * Math.sin(col / 13.) + 7 * Math.cos(row / 5.);
+        return (float) (Math.round(z * 100) / 100.);
+    }
+
+    private static void writeASCIIGrid(File file, int cols, int rows) throws IOException {
+        try (PrintWriter writer = new PrintWriter(new BufferedWriter(new FileWriter(file), 1 << 20))) {
+            ESRIASCIIGridWriter gridWriter = new ESRIASCIIGridWriter(writer,
+                    cols, rows, 2600000, 1200000, 2, NO_DATA);
+            for (int row = 0; row < rows; row++) {
+                for (int col = 0; col < cols; col++) {
+                    gridWriter.write(elevation(col, row));
+                }
+                gridWriter.newLine();
+            }
+        }
+    }
+
+    private static boolean equal(GeoGrid grid1, GeoGrid grid2) {
+        if (grid1.getCols() != grid2.getCols() || grid1.getRows() != grid2.getRows()
+                || grid1.getWest() != grid2.getWest() || grid1.getNorth() != grid2.getNorth()
+                || grid1.getCellSize() != grid2.getCellSize()) {
+            return false;
+        }
+        for (int row = 0; row < grid1.getRows(); row++) {
+            for (int col = 0; col < grid1.getCols(); col++) {
+                if (Float.floatToRawIntBits(grid1.getValue(col, row))
+                        != Float.floatToRawIntBits(grid2.getValue(col, row))) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private static GeoGrid time(String name, Benchmark.Task<GeoGrid> reader)
+            throws Exception {
+        Benchmark<GeoGrid> b = Benchmark.run(REPETITIONS, false, reader);
+        System.out.format("%-28s %10.1f ms%n", name, b.getBestMillis());
+        return b.getResult();
+    }
+
+    public static void main(String[] args) throws Exception {
+        final int cols = Benchmark.intArg(args, 0, 8000);
+        final int rows = Benchmark.intArg(args, 1, 8000);
+        final File asciiFile = File.createTempFile("dem", ".asc");
+        final File binaryFile = File.createTempFile("dem", ".grd");
+        asciiFile.deleteOnExit();
+        binaryFile.deleteOnExit();
+        try {
+            writeASCIIGrid(asciiFile, cols, rows);
+            System.out.format("Grid: %d x %d, ASCII file: %,d bytes, processors: %d%n",
+                    cols, rows, asciiFile.length(),
+                    Runtime.getRuntime().availableProcessors());
+
+            GeoGrid reference = time("ASCII sequential", new Benchmark.Task<GeoGrid>() {
+                @Override
+                public GeoGrid run() throws IOException {
+                    return ESRIASCIIGridReader.read(asciiFile.getPath());
+                }
+            });
+            GeoGrid grid = time("ASCII parallel, 1 thread", new Benchmark.Task<GeoGrid>() {
+                @Override
+                public GeoGrid run() throws IOException {
+                    return ESRIASCIIGridReader.readParallel(asciiFile.getPath(), 1, null);
+                }
+            });
+            System.out.println("    identical values: " + equal(reference, grid));
+            grid = time("ASCII parallel", new Benchmark.Task<GeoGrid>() {
+                @Override
+                public GeoGrid run() throws IOException {
+                    return ESRIASCIIGridReader.readParallel(asciiFile.getPath(), null);
+                }
+            });
+            System.out.println("    identical values: " + equal(reference, grid));
+
+            BinaryGridWriter.write(reference, binaryFile.getPath());
+            grid = time("Binary", new Benchmark.Task<GeoGrid>() {
+                @Override
+                public GeoGrid run() throws IOException {
+                    return BinaryGridReader.read(binaryFile.getPath());
+                }
+            });
+            System.out.println("    identical values: " + equal(reference, grid));
+        } finally {
+            asciiFile.delete();
+            binaryFile.delete();
+        }
+    }
+}
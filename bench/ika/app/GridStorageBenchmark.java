@@ -0,0 +1,188 @@
+package ika.app;
+
+import ika.geo.GeoGrid;
+import ika.geo.grid.GridGaussLowPassOperator;
+import ika.geo.grid.GridPlanCurvatureOperator;
+import ika.geo.grid.GridSlopeOperator;
+import java.util.Arrays;
+
+/**
+ * Compares grid operators on the flat storage of GeoGrid with equivalent
+ * implementations accessing an array of rows, which was the storage of GeoGrid
+ * before. A synthetic elevation model is used. The benchmark also verifies
+ * that both implementations compute identical values.
+ *
+ * Usage: java -cp "build/classes:build/bench/classes:lib/*"
+ * ika.app.GridStorageBenchmark [size]
+ *
+ * @author Bernhard Jenny, School of Mathematical and Geospatial Sciences, RMIT
+ * University, Melbourne
+ */
+public class GridStorageBenchmark {
+
+    private static final int REPETITIONS = 5;
+
+    /**
+     * Times an operation and returns its result as a single array.
+     */
+    private static float[] time(String name, Benchmark.Task<Object> operation)
+            throws Exception {
+        Benchmark<Object> b = Benchmark.run(REPETITIONS, true, operation);
+        System.out.format("%-32s %10.1f ms%n", name, b.getBestMillis());
+        final Object result = b.getResult();
+        return result instanceof float[][] ? flatten((float[][]) result) : (float[]) result;
+    }
+
+    private static float[] flatten(float[][] rows) {
+        final int cols = rows[0].length;
+        float[] values = new float[rows.length * cols];
+        for (int r = 0; r < rows.length; r++) {
+            System.arraycopy(rows[r], 0, values, r * cols, cols);
+        }
+        return values;
+    }
+
+    private static float[][] slopeRows(float[][] src, double meshSize) {
+        final int rows = src.length;
+        final int cols = src[0].length;
+        float[][] dst = new float[rows - 2][cols - 2];
+        final double inverseDoubleMeshSize = 1. / (2. * meshSize);
+        for (int row = 1; row < rows - 1; row++) {
+            for (int col = 1; col < cols - 1; col++) {
+                final double dH = src[row][col + 1] - src[row][col - 1];
+                final double dV = src[row - 1][col] - src[row + 1][col];
+                dst[row - 1][col - 1] = (float) (Math.atan(
+                        Math.sqrt(dH * dH + dV * dV) * inverseDoubleMeshSize));
+            }
+        }
+        return dst;
+    }
+
+    private static float[][] planCurvatureRows(float[][] src, double cellSize) {
+        final int rows = src.length;
+        final int cols = src[0].length;
+        float[][] dst = new float[rows][cols];
+        final float inverseDoubleMeshSize = (float) (1 / (2 * cellSize));
+        final float inverseSquareMeshSize = (float) (1 / (cellSize * cellSize));
+        for (int row = 0; row < rows; row++) {
+            final int rm = Math.max(0, row - 1);
+            final int rp = Math.min(rows - 1, row + 1);
+            for (int col = 0; col < cols; col++) {
+                final int cm = Math.max(0, col - 1);
+                final int cp = Math.min(cols - 1, col + 1);
+                final float e0 = src[row][col];
+                final float e1 = src[rm][cm];
+                final float e2 = src[rm][col];
+                final float e3 = src[rm][cp];
+                final float e4 = src[row][cm];
+                final float e5 = src[row][cp];
+                final float e6 = src[rp][cm];
+                final float e7 = src[rp][col];
+                final float e8 = src[rp][cp];
+                final float D = ((e4 + e5) / 2 - e0) * inverseSquareMeshSize;
+                final float E = ((e2 + e7) / 2 - e0) * inverseSquareMeshSize;
+                final float F = (-e1 + e3 + e6 - e8) / 4 * inverseSquareMeshSize;
+                final float G = (-e4 + e5) * inverseDoubleMeshSize;
+                final float H = (e2 - e7) * inverseDoubleMeshSize;
+                final float divider = G * G + H * H;
+                if (divider != 0) {
+                    dst[row][col] = 2 * ((D * H * H + E * G * G - F * G * H) / divider);
+                }
+            }
+        }
+        return dst;
+    }
+
+    private static float[][] gaussRows(float[][] src, int filterSize) {
+        final int half = filterSize / 2;
+        final int rows = src.length;
+        final int cols = src[0].length;
+        float[][] tmp = new float[rows][cols];
+        float[][] dst = new float[rows - filterSize + 1][cols - filterSize + 1];
+        float[] coef = new float[filterSize];
+        for (int i = 0; i <= half; i++) {
+            coef[i] = coef[filterSize - i - 1]
+                    = ika.utils.MathUtils.binomialCoeff(filterSize - 1, i);
+        }
+        final float gaussSum = (filterSize - 1) * (filterSize - 1);
+        for (int row = half; row < rows - half; row++) {
+            float[] srcRow = src[row - half];
+            for (int col = half; col < cols - half; col++) {
+                float gauss = 0;
+                for (int c = col - half, f = 0; c <= col + half; c++, f++) {
+                    gauss += srcRow[c] * coef[f];
+                }
+                tmp[row][col] = gauss / gaussSum;
+            }
+        }
+        for (int row = half; row < rows - half; row++) {
+            for (int col = half; col < cols - half; col++) {
+                float gauss = 0;
+                for (int r = row - half, f = 0; r <= row + half; r++, f++) {
+                    gauss += tmp[r][col] * coef[f];
+                }
+                dst[row - half][col - half] = gauss / gaussSum;
+            }
+        }
+        return dst;
+    }
+
+    public static void main(String[] args) throws Exception {
+        final int size = Benchmark.intArg(args, 0, 4000);
+        final double cellSize = 2;
+        final GeoGrid dem = new GeoGrid(size, size, cellSize);
+        for (int row = 0; row < size; row++) {
+            for (int col = 0; col < size; col++) {
+                dem.setValue((float) (1500 + 800 * Math.sin(col / 700.) * Math.cos(row / 900.)
+                        + 20 * Math.sin(col / 13.) + 7 * Math.cos(row / 5.)), col, row);
+            }
+        }
+        final float[][] rows = new float[size][];
+        for (int row = 0; row < size; row++) {
+            rows[row] = Arrays.copyOfRange(dem.getData(), row * size, (row + 1) * size);
+        }
+        System.out.format("Grid: %d x %d%n", size, size);
+
+        float[] a = time("Slope, rows", new Benchmark.Task<Object>() {
+            @Override
+            public Object run() {
+                return slopeRows(rows, cellSize);
+            }
+        });
+        float[] b = time("Slope, flat", new Benchmark.Task<Object>() {
+            @Override
+            public Object run() {
+                return new GridSlopeOperator().operate(dem).getData();
+            }
+        });
+        System.out.println("    identical values: " + Arrays.equals(a, b));
+
+        a = time("Plan curvature, rows", new Benchmark.Task<Object>() {
+            @Override
+            public Object run() {
+                return planCurvatureRows(rows, cellSize);
+            }
+        });
+        b = time("Plan curvature, flat", new Benchmark.Task<Object>() {
+            @Override
+            public Object run() {
+                return new GridPlanCurvatureOperator().operate(dem).getData();
+            }
+        });
+        System.out.println("    identical values: " + Arrays.equals(a, b));
+
+        a = time("Gaussian low pass, rows", new Benchmark.Task<Object>() {
+            @Override
+            public Object run() {
+                return gaussRows(rows, 5);
+            }
+        });
+        b = time("Gaussian low pass, flat", new Benchmark.Task<Object>() {
+            @Override
+            public Object run() {
+                return new GridGaussLowPassOperator().operate(dem).getData();
+            }
+        });
+        System.out.println("    identical values: " + Arrays.equals(a, b));
+    }
+}
@@ -0,0 +1,96 @@
+package ika.app;
+
+import ika.geo.GeoGrid;
+import ika.geo.grid.GridLowerQuartileOperator;
+import ika.geo.grid.GridMedianOperator;
+import ika.geo.grid.GridPercentileFilterOperator;
+import ika.geo.grid.GridUpperQuartileOperator;
+
+/**
+ * Compares the two algorithms of GridPercentileFilterOperator for median,
+ * lower and upper quartile filters of increasing size. The benchmark reports
+ * the time of both algorithms, the number of cells with different values, and
+ * the largest difference.
+ *
+ * Usage: java -cp "build/classes:build/bench/classes:lib/*"
+ * ika.app.PercentileFilterBenchmark [DEM file]
+ *
+ * The DEM file is an Esri ASCII grid or a binary grid. A synthetic elevation
+ * model is used if no file is passed.
+ *
+ * @author Bernhard Jenny, School of Mathematical and Geospatial Sciences, RMIT
+ * University, Melbourne
+ */
+public class PercentileFilterBenchmark {
+
+    private static final int REPETITIONS = 3;
+    private static final int[] FILTER_SIZES = {3, 5, 9, 15, 31};
+
+    private static GeoGrid syntheticDEM() {
+        final int cols = 1500;
+        final int rows = 1500;
+        GeoGrid dem = new GeoGrid(cols, rows, 5);
+        for (int row = 0; row < rows; row++) {
+            for (int col = 0; col < cols; col++) {
+                double z = 3000 - row * 0.9
+                        + 150 * Math.sin(col / 90.) * Math.cos(row / 130.)
+                        + 25 * Math.sin(col / 17. + row / 41.)
+                        + 3 * Math.sin(col * 7.1 + row * 3.3);
+                dem.setValue((float) z, col, row);
+            }
+        }
+        return dem;
+    }
+
+    private static Benchmark<GeoGrid> time(final GridPercentileFilterOperator op,
+            final GeoGrid dem) throws Exception {
+        return Benchmark.run(REPETITIONS, false, new Benchmark.Task<GeoGrid>() {
+            @Override
+            public GeoGrid run() {
+                return op.operate(dem);
+            }
+        });
+    }
+
+    private static void compare(GridPercentileFilterOperator op, GeoGrid dem)
+            throws Exception {
+        op.setAlgorithm(GridPercentileFilterOperator.Algorithm.SELECTION);
+        Benchmark<GeoGrid> selectionRun = time(op, dem);
+        op.setAlgorithm(GridPercentileFilterOperator.Algorithm.SLIDING_HISTOGRAM);
+        Benchmark<GeoGrid> histogramRun = time(op, dem);
+        final float[] selection = selectionRun.getResult().getData();
+        final float[] histogram = histogramRun.getResult().getData();
+
+        int differentCells = 0;
+        double maxDiff = 0;
+        for (int i = 0; i < selection.length; i++) {
+            if (Float.compare(selection[i], histogram[i]) != 0) {
+                ++differentCells;
+                maxDiff = Math.max(maxDiff, Math.abs(selection[i] - histogram[i]));
+            }
+        }
+        System.out.format("%-15s %3d x %-3d %10.1f ms %10.1f ms %10d %10.3g%n",
+                op.getName(), op.getFilterSize(), op.getFilterSize(),
+                selectionRun.getBestMillis(), histogramRun.getBestMillis(),
+                differentCells, maxDiff);
+    }
+
+    public static void main(String[] args) throws Exception {
+        final GeoGrid dem;
+        if (args.length > 0) {
+            GeoGrid grid = Benchmark.readGrid(args[0]);
+            // the filters read the values from an array
+            dem = grid.hasData() ? grid : grid.clone();
+        } else {
+            dem = syntheticDEM();
+        }
+        System.out.format("Grid: %d x %d%n", dem.getCols(), dem.getRows());
+        System.out.format("%-15s %-9s %13s %13s %10s %10s%n", "Filter", "Size",
+                "Selection", "Histogram", "Different", "Max diff");
+        for (int filterSize : FILTER_SIZES) {
+            compare(new GridMedianOperator(filterSize), dem);
+            compare(new GridLowerQuartileOperator(filterSize), dem);
+            compare(new GridUpperQuartileOperator(filterSize), dem);
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package ika.app;
+
+import java.awt.geom.Rectangle2D;
+import java.util.Random;
+
+/**
+ * Compares the speed of the PointRaster implementations. Stones are placed on
+ * a jittered regular grid with the default scree parameters, similar to the
+ * dithering in ScreeGenerator. The density of stones is varied by the fraction
+ * of grid cells that receive a stone.
+ *
+ * Usage: java -cp "build/classes:build/bench/classes:lib/*"
+ * ika.app.PointRasterBenchmark [size]
+ *
+ * @author Bernhard Jenny, School of Mathematical and Geospatial Sciences, RMIT
+ * University, Melbourne
+ */
+public class PointRasterBenchmark {
+
+    private static final int MAX_DITHER_TRIES = 20;
+    private static final int REPETITIONS = 5;
+
+    /**
+     * Places stones with a PointRaster.
+     *
+     * @param type the type of PointRaster
+     * @param bb the area to fill with stones
+     * @param p scree parameters
+     * @param density fraction of grid cells with a stone between 0 and 1
+     * @return the number of placed stones and the number of overlay tests
+     */
+    private static long[] placeStones(PointRaster.Type type, Rectangle2D bb,
+            ScreeParameters p, double density) {
+
+        Random random = new Random(0);
+        PointRaster pointRaster = ScreeGenerator.createPointRaster(type, bb,
+                p.stoneMaxDiameter);
+        final double maxStoneRadius = p.stoneMaxDiameter / 2;
+        final double minStoneDist = p.stoneMinDistanceFraction * p.stoneMaxDiameter;
+        final double jitterDist = p.stoneMaxDiameter * p.stoneMaxPosJitterFraction;
+        final int nRows = (int) (bb.getHeight() / p.stoneMaxDiameter);
+        final int nCols = (int) (bb.getWidth() / p.stoneMaxDiameter);
+        long stonesCount = 0;
+        long testsCount = 0;
+        for (int row = 0; row < nRows; row++) {
+            final double y = bb.getMaxY() - row * p.stoneMaxDiameter;
+            for (int col = 0; col < nCols; col++) {
+                final double x = bb.getMinX() + col * p.stoneMaxDiameter;
+                if (random.nextDouble() >= density) {
+                    continue;
+                }
+                for (int i = 0; i < MAX_DITHER_TRIES; i++) {
+                    final double stoneX = x + random.nextGaussian() * jitterDist;
+                    final double stoneY = y + random.nextGaussian() * jitterDist;
+                    final double scale = p.stoneMinDiameterScale
+                            + random.nextDouble() * (1 - p.stoneMinDiameterScale);
+                    final double r = maxStoneRadius * scale;
+                    ++testsCount;
+                    if (!pointRaster.isCircleOverlaying(stoneX, stoneY, r + minStoneDist)) {
+                        pointRaster.addCircle(stoneX, stoneY, r);
+                        ++stonesCount;
+                        break;
+                    }
+                }
+            }
+        }
+        return new long[]{stonesCount, testsCount};
+    }
+
+    public static void main(String[] args) throws Exception {
+        final double size = Benchmark.intArg(args, 0, 2000);
+        final Rectangle2D bb = new Rectangle2D.Double(0, 0, size, size);
+        final ScreeParameters p = new ScreeParameters();
+        final double[] densities = {0.25, 0.5, 1};
+
+        System.out.format("Area: %.0f x %.0f, maximum stone diameter: %.1f%n",
+                size, size, p.stoneMaxDiameter);
+        for (final double density : densities) {
+            for (final PointRaster.Type type : PointRaster.Type.values()) {
+                Benchmark<long[]> b = Benchmark.run(REPETITIONS, true,
+                        new Benchmark.Task<long[]>() {
+                    @Override
+                    public long[] run() {
+                        return placeStones(type, bb, p, density);
+                    }
+                });
+                final long[] result = b.getResult();
+                System.out.format("density %.2f %-12s %,10d stones %,10d tests %8.1f ms %8.1f ns/test%n",
+                        density, type, result[0], result[1], b.getBestMillis(),
+                        (double) b.getBestTime() / result[1]);
+            }
+        }
+    }
+}
@@ -0,0 +1,185 @@
+package ika.app;
+
+import ika.geo.GeoSet;
+import ika.geoexport.SVGExporter;
+import ika.gui.PageFormat;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.transform.OutputKeys;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+/**
+ * Compares the streaming SVGExporter with the DOM based export that
+ * SVGExporter used before. The DOM export builds an element for each stone
+ * and serializes the document with a Transformer. The benchmark reports time,
+ * peak heap and file size for synthetic stone sets of increasing size. The
+ * peak heap is the peak of all heap memory pools minus the heap used by the
+ * stones before the export, and is approximate.
+ *
+ * Usage: java -Xmx4g -cp "build/classes:build/bench/classes:lib/*"
+ * ika.app.SVGExportBenchmark [max stones]
+ *
+ * @author Bernhard Jenny, School of Mathematical and Geospatial Sciences, RMIT
+ * University, Melbourne
+ */
+public class SVGExportBenchmark {
+
+    private static final double SIZE = 10000;
+
+    private interface Export {
+
+        void run(GeoSet geoSet, File file) throws Exception;
+    }
+
+    private static GeoSet stones(int stonesCount) {
+        GeoSet geoSet = new GeoSet();
+        geoSet.add(Benchmark.stones(stonesCount, SIZE));
+        return geoSet;
+    }
+
+    private static SVGExporter exporter() {
+        PageFormat pageFormat = new PageFormat();
+        pageFormat.setPageScale(25000);
+        pageFormat.setPageLeft(0);
+        pageFormat.setPageBottom(0);
+        pageFormat.setPageWidthWorldCoordinates(SIZE);
+        pageFormat.setPageHeightWorldCoordinates(SIZE);
+        SVGExporter exporter = new SVGExporter();
+        exporter.setPageFormat(pageFormat);
+        return exporter;
+    }
+
+    /**
+     * Exports stones with the streaming SVGExporter.
+     */
+    private static final Export STREAM = new Export() {
+
+        @Override
+        public void run(GeoSet geoSet, File file) throws Exception {
+            exporter().export(geoSet, file.getPath());
+        }
+    };
+
+    /**
+     * Exports stones by building a DOM, as SVGExporter did before.
+     */
+    private static final Export DOM = new Export() {
+
+        @Override
+        public void run(GeoSet geoSet, File file) throws Exception {
+            final SVGExporter exporter = exporter();
+            final PageFormat pageFormat = exporter.getPageFormat();
+            final double scale = 1000. / pageFormat.getPageScale() * PageFormat.MM2PX;
+            Document document = DocumentBuilderFactory.newInstance()
+                    .newDocumentBuilder().newDocument();
+            Element svg = document.createElement("svg");
+            svg.setAttribute("xmlns", "http://www.w3.org/2000/svg");
+            document.appendChild(svg);
+            Element g = document.createElement("g");
+            svg.appendChild(g);
+            StoneStore stones = (StoneStore) geoSet.getGeoObject(0);
+            StringBuffer str = new StringBuffer();
+            for (int i = 0; i < stones.getStonesCount(); i++) {
+                str.setLength(0);
+                for (int j = 0; j < stones.getCornersCount(i); j++) {
+                    str.append(j == 0 ? " M" : " L");
+                    str.append(Math.round(stones.getCornerX(i, j) * scale * 100) / 100.);
+                    str.append(" ");
+                    str.append(Math.round((SIZE - stones.getCornerY(i, j)) * scale * 100) / 100.);
+                }
+                str.append(" z");
+                Element path = document.createElement("path");
+                path.setAttribute("stroke", "none");
+                path.setAttribute("fill", "rgb(0,0,0)");
+                path.setAttribute("stroke-width", "1.0");
+                path.setAttribute("d", str.toString());
+                g.appendChild(path);
+            }
+            TransformerFactory tf = TransformerFactory.newInstance();
+            tf.setAttribute("indent-number", Integer.valueOf(2));
+            Transformer transformer = tf.newTransformer();
+            transformer.setOutputProperty(OutputKeys.INDENT, "yes");
+            OutputStream out = new BufferedOutputStream(new FileOutputStream(file));
+            try {
+                OutputStreamWriter writer = new OutputStreamWriter(out, "utf-8");
+                transformer.transform(new DOMSource(document), new StreamResult(writer));
+                writer.flush();
+            } finally {
+                out.close();
+            }
+        }
+    };
+
+    private static long usedHeap() {
+        long used = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                used += pool.getUsage().getUsed();
+            }
+        }
+        return used;
+    }
+
+    private static long peakHeap() {
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                peak += pool.getPeakUsage().getUsed();
+            }
+        }
+        return peak;
+    }
+
+    private static void time(String name, Export export, GeoSet geoSet)
+            throws Exception {
+        File file = File.createTempFile("stones", ".svg");
+        try {
+            System.gc();
+            final long baseline = usedHeap();
+            for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+                pool.resetPeakUsage();
+            }
+            final long start = System.nanoTime();
+            export.run(geoSet, file);
+            final long time = System.nanoTime() - start;
+            final long peak = Math.max(0, peakHeap() - baseline);
+            System.out.format("%-8s %10.1f ms %10.1f MB %10.1f MB%n", name,
+                    time / 1e6, peak / 1e6, file.length() / 1e6);
+        } catch (OutOfMemoryError e) {
+            System.out.format("%-8s out of memory%n", name);
+        } finally {
+            file.delete();
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        final int maxStones = Benchmark.intArg(args, 0, 1000000);
+        System.out.format("Maximum heap: %.0f MB%n", Runtime.getRuntime().maxMemory() / 1e6);
+        for (int stonesCount = 10000; stonesCount <= maxStones; stonesCount *= 10) {
+            GeoSet geoSet = stones(stonesCount);
+            System.out.format("%n%,d stones%n", stonesCount);
+            System.out.format("%-8s %13s %13s %13s%n", "Export", "Time", "Peak heap", "File");
+            // warm up the JIT compiler with the smallest stone set
+            if (stonesCount == 10000) {
+                File file = File.createTempFile("stones", ".svg");
+                STREAM.run(geoSet, file);
+                DOM.run(geoSet, file);
+                file.delete();
+            }
+            time("DOM", DOM, geoSet);
+            time("Stream", STREAM, geoSet);
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package ika.app;
+
+import ika.geo.RenderParams;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+
+/**
+ * Compares drawing individual stones with drawing the coverage rasters of a
+ * StoneStore at overview scales. A synthetic sheet of stones with a mean
+ * diameter of 2 units is drawn into an image at decreasing scales. The
+ * benchmark reports the time for drawing the stones, the time for drawing the
+ * coverage rasters, the time for computing the rasters, and the fraction of
+ * the image covered by stones in both images.
+ *
+ * Usage: java -Xmx2g -cp "build/classes:build/bench/classes:lib/*"
+ * ika.app.StoneRenderingBenchmark [stones]
+ *
+ * @author Bernhard Jenny, School of Mathematical and Geospatial Sciences, RMIT
+ * University, Melbourne
+ */
+public class StoneRenderingBenchmark {
+
+    /**
+     * Stones are drawn at decreasing scales until the image would be smaller
+     * than this size in pixels.
+     */
+    private static final int MIN_IMAGE_SIZE = 500;
+
+    private static final int RUNS = 5;
+
+    private static BufferedImage draw(StoneStore stones, double size,
+            double scale, long[] time) {
+        final int px = (int) Math.ceil(size * scale);
+        BufferedImage image = new BufferedImage(px, px, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g2d = image.createGraphics();
+        g2d.setBackground(Color.WHITE);
+        g2d.clearRect(0, 0, px, px);
+        g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
+                RenderingHints.VALUE_ANTIALIAS_ON);
+        g2d.scale(scale, -scale);
+        g2d.translate(0, -size);
+        RenderParams rp = new RenderParams(g2d, scale, 0, 0, size, size, true, null);
+        final long start = System.nanoTime();
+        stones.drawNormalState(rp);
+        time[0] += System.nanoTime() - start;
+        g2d.dispose();
+        return image;
+    }
+
+    /**
+     * Returns the mean darkness of an image between 0 (white) and 1 (black).
+     */
+    private static double tone(BufferedImage image) {
+        double sum = 0;
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < image.getWidth(); x++) {
+                sum += 255 - (image.getRGB(x, y) & 0xff);
+            }
+        }
+        return sum / 255 / (image.getWidth() * image.getHeight());
+    }
+
+    public static void main(String[] args) {
+        final int stonesCount = Benchmark.intArg(args, 0, 1000000);
+        final double size = Math.sqrt(stonesCount) * 3;
+        StoneStore stones = Benchmark.stones(stonesCount, size);
+        System.out.format("%,d stones%n", stonesCount);
+        System.out.format("%10s %10s %13s %13s %13s %12s %12s%n", "Scale",
+                "Diameter", "Stones", "Raster", "Pyramid", "Tone stones",
+                "Tone raster");
+        for (double scale = 1; scale * size >= MIN_IMAGE_SIZE; scale /= 2) {
+            long[] stonesTime = new long[1];
+            long[] rasterTime = new long[1];
+            long[] pyramidTime = new long[1];
+            BufferedImage stonesImage = null, rasterImage = null;
+            for (int run = 0; run < RUNS; run++) {
+                stones.setLODPixelSize(0);
+                stonesImage = draw(stones, size, scale, stonesTime);
+                stones.setLODPixelSize(StoneStore.DEFAULT_LOD_PIXEL_SIZE);
+                // the first drawing computes the pyramid
+                draw(stones, size, scale, pyramidTime);
+                rasterImage = draw(stones, size, scale, rasterTime);
+            }
+            System.out.format("%10.4f %10.2f %10.1f ms %10.1f ms %10.1f ms %12.3f %12.3f%n",
+                    scale, 2 * scale, stonesTime[0] / 1e6 / RUNS,
+                    rasterTime[0] / 1e6 / RUNS,
+                    (pyramidTime[0] - rasterTime[0]) / 1e6 / RUNS,
+                    tone(stonesImage), tone(rasterImage));
+        }
+    }
+}
@@ -0,0 +1,210 @@
+package ika.app;
+
+import ika.geo.GeoGrid;
+import ika.geo.GeoImage;
+import ika.geo.GeoObject;
+import ika.geo.GeoPath;
+import ika.geo.GeoSet;
+import ika.geo.grid.GridPlanCurvatureOperator;
+import java.awt.geom.PathIterator;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Random;
+
+/**
+ * Compares the speed of generating scree for the entire shaded relief and tile
+ * by tile, and checks that the stones and gully lines generated in tiles are
+ * identical to the scree generated without tiles. The synthetic polygons form
+ * a lattice of neighboring quadrilaterals with shared vertices, which are
+ * filled in random order, such that polygons in different tiles share cells of
+ * the dither grids. The process exits with status 1 if the tiled scree
+ * differs.
+ *
+ * Usage: java -cp "build/classes:build/bench/classes:lib/*"
+ * ika.app.TiledScreeBenchmark [threads] [tile size]...
+ *
+ * By default, polygons are filled with all available processors, and tiles
+ * of 100, 250 and 400 are compared. The synthetic shaded relief is 1200 by
+ * 1200.
+ *
+ * @author Bernhard Jenny, School of Mathematical and Geospatial Sciences, RMIT
+ * University, Melbourne
+ */
+public class TiledScreeBenchmark {
+
+    private static final int REPETITIONS = 3;
+    private static final int SIZE = 1200;
+    private static final int POLYGONS_PER_ROW = 6;
+
+    private static ScreeData syntheticData() {
+        ScreeData screeData = new ScreeData();
+        final int demCols = SIZE / 2;
+        GeoGrid dem = new GeoGrid(demCols, demCols, 2);
+        dem.setWest(0);
+        dem.setNorth(SIZE);
+        for (int row = 0; row < demCols; row++) {
+            for (int col = 0; col < demCols; col++) {
+                double z = 2000 - row * 1.5 + 30 * Math.sin(col / 15.)
+                        + 10 * Math.cos(row / 23. + col / 40.);
+                dem.setValue((float) z, col, row);
+            }
+        }
+        screeData.dem = dem;
+        screeData.curvatureGrid = new GridPlanCurvatureOperator().operate(dem);
+
+        BufferedImage shading = new BufferedImage(SIZE, SIZE, BufferedImage.TYPE_BYTE_GRAY);
+        BufferedImage mask = new BufferedImage(SIZE, SIZE, BufferedImage.TYPE_BYTE_GRAY);
+        BufferedImage obstacles = new BufferedImage(SIZE, SIZE, BufferedImage.TYPE_BYTE_GRAY);
+        for (int row = 0; row < SIZE; row++) {
+            for (int col = 0; col < SIZE; col++) {
+                int v = (int) (128 + 100 * Math.sin(col / 50.) * Math.cos(row / 70.));
+                shading.getRaster().setSample(col, row, 0, v);
+                mask.getRaster().setSample(col, row, 0, col * 255 / SIZE);
+                final boolean road = Math.abs(row - col * 2 / 3 - 100) < 3;
+                obstacles.getRaster().setSample(col, row, 0, road ? 0 : 255);
+            }
+        }
+        screeData.shadingImage = new GeoImage(shading, 0, SIZE, 1);
+        screeData.shadingGradationMaskImage = new GeoImage(mask, 0, SIZE, 1);
+        screeData.obstaclesMaskImage = new GeoImage(obstacles, 0, SIZE, 1);
+
+        // lattice of jittered vertices shared by neighboring polygons
+        Random random = new Random(0);
+        final int n = POLYGONS_PER_ROW;
+        final double d = (SIZE - 40.) / n;
+        double[][] x = new double[n + 1][n + 1];
+        double[][] y = new double[n + 1][n + 1];
+        for (int i = 0; i <= n; i++) {
+            for (int j = 0; j <= n; j++) {
+                final boolean border = i == 0 || j == 0 || i == n || j == n;
+                final double jitter = border ? 0 : d / 3;
+                x[i][j] = 20 + j * d + jitter * (random.nextDouble() - 0.5);
+                y[i][j] = 20 + i * d + jitter * (random.nextDouble() - 0.5);
+            }
+        }
+        ArrayList<GeoPath> polygons = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < n; j++) {
+                GeoPath polygon = new GeoPath();
+                polygon.moveTo((float) x[i][j], (float) y[i][j]);
+                polygon.lineTo((float) x[i][j + 1], (float) y[i][j + 1]);
+                polygon.lineTo((float) x[i + 1][j + 1], (float) y[i + 1][j + 1]);
+                polygon.lineTo((float) x[i + 1][j], (float) y[i + 1][j]);
+                polygon.closePath();
+                polygons.add(polygon);
+            }
+        }
+        Collections.shuffle(polygons, random);
+        for (GeoPath polygon : polygons) {
+            screeData.screePolygons.add(polygon);
+        }
+        return screeData;
+    }
+
+    private static ScreeGenerator time(String name, final ScreeData screeData,
+            final int threads, final double tileSize) throws Exception {
+        Benchmark<ScreeGenerator> b = Benchmark.run(REPETITIONS, false,
+                new Benchmark.Task<ScreeGenerator>() {
+            @Override
+            public ScreeGenerator run() {
+                ScreeGenerator screeGenerator = new ScreeGenerator();
+                screeGenerator.screeData = screeData;
+                ScreeGeneratorManager manager = new ScreeGeneratorManager();
+                manager.setThreadCount(threads);
+                manager.setTileSize(tileSize);
+                manager.generateScree(screeGenerator, null, null, true);
+                return screeGenerator;
+            }
+        });
+        System.out.format("%-28s %10.1f ms%n", name, b.getBestMillis());
+        return b.getResult();
+    }
+
+    /**
+     * Copies the stones and the gully lines, because the ScreeData model is
+     * reused by the next generation.
+     */
+    private static ArrayList<double[]> scree(ScreeData screeData) {
+        ArrayList<double[]> scree = new ArrayList<>();
+        addScree(screeData.screeStones, scree);
+        addScree(screeData.gullyLines, scree);
+        return scree;
+    }
+
+    private static void addScree(GeoObject geoObject, ArrayList<double[]> scree) {
+        if (geoObject instanceof GeoSet) {
+            GeoSet geoSet = (GeoSet) geoObject;
+            for (int i = 0; i < geoSet.getNumberOfChildren(); i++) {
+                addScree(geoSet.getGeoObject(i), scree);
+            }
+        } else if (geoObject instanceof StoneStore) {
+            StoneStore stones = (StoneStore) geoObject;
+            for (int i = 0; i < stones.getStonesCount(); i++) {
+                double[] stone = new double[3 + stones.getCornersCount(i) * 2];
+                stone[0] = stones.getX(i);
+                stone[1] = stones.getY(i);
+                stone[2] = stones.getR(i);
+                for (int j = 0; j < stones.getCornersCount(i); j++) {
+                    stone[3 + j * 2] = stones.getCornerX(i, j);
+                    stone[4 + j * 2] = stones.getCornerY(i, j);
+                }
+                scree.add(stone);
+            }
+        } else if (geoObject instanceof GeoPath) {
+            PathIterator iterator = ((GeoPath) geoObject).toPath().getPathIterator(null);
+            double[] coords = new double[6];
+            while (!iterator.isDone()) {
+                final int type = iterator.currentSegment(coords);
+                scree.add(new double[]{type, coords[0], coords[1]});
+                iterator.next();
+            }
+        }
+    }
+
+    /**
+     * Returns the number of leading stones and gully line vertices that are
+     * identical.
+     */
+    private static int countIdentical(ArrayList<double[]> reference,
+            ArrayList<double[]> scree) {
+        final int n = Math.min(reference.size(), scree.size());
+        for (int i = 0; i < n; i++) {
+            if (!Arrays.equals(reference.get(i), scree.get(i))) {
+                return i;
+            }
+        }
+        return n;
+    }
+
+    public static void main(String[] args) throws Exception {
+        final int threads = Benchmark.intArg(args, 0,
+                Runtime.getRuntime().availableProcessors());
+        double[] tileSizes = {100, 250, 400};
+        if (args.length > 1) {
+            tileSizes = new double[args.length - 1];
+            for (int i = 1; i < args.length; i++) {
+                tileSizes[i - 1] = Double.parseDouble(args[i]);
+            }
+        }
+        ScreeData screeData = syntheticData();
+        System.out.format("Shaded relief: %d x %d, polygons: %d, threads: %d%n",
+                SIZE, SIZE, screeData.screePolygons.getNumberOfChildren(), threads);
+
+        ArrayList<double[]> reference = scree(time("Untiled", screeData, threads, 0).screeData);
+        System.out.format("    stones and gully line vertices: %d%n", reference.size());
+        boolean identical = true;
+        for (double tileSize : tileSizes) {
+            ArrayList<double[]> scree = scree(time("Tile size " + tileSize,
+                    screeData, threads, tileSize).screeData);
+            final int n = countIdentical(reference, scree);
+            identical &= n == reference.size() && n == scree.size();
+            System.out.format("    identical to untiled: %d of %d%n", n, scree.size());
+        }
+        if (!identical) {
+            System.out.println("Tiled scree differs from untiled scree.");
+            System.exit(1);
+        }
+    }
+}
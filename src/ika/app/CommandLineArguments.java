@@ -16,4 +16,7 @@ public class CommandLineArguments {
     public Double width;
     public Double height;
     public Double scale;
+    public Integer threads;
+    public Double tileSize;
+    public PointRaster.Type pointRasterType;
 }
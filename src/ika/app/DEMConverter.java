@@ -0,0 +1,35 @@
+package ika.app;
+
+import ika.geo.GeoGrid;
+import ika.geoexport.BinaryGridWriter;
+import ika.geoimport.ESRIASCIIGridReader;
+import java.io.IOException;
+
+/**
+ * Converts an elevation model from Esri ASCII grid format to the binary grid
+ * format, which loads considerably faster. The conversion only needs to be
+ * done once per elevation model.
+ *
+ * Usage: java -cp ScreePainter.jar ika.app.DEMConverter input.asc output.grd
+ *
+ * @author Bernhard Jenny, School of Mathematical and Geospatial Sciences, RMIT
+ * University, Melbourne
+ */
+public class DEMConverter {
+
+    public static void main(String[] args) {
+        if (args.length != 2) {
+            System.err.println("Usage: DEMConverter input.asc output.grd");
+            System.exit(1);
+        }
+        try {
+            GeoGrid grid = ESRIASCIIGridReader.readParallel(args[0], null);
+            BinaryGridWriter.write(grid, args[1]);
+            System.out.format("Converted %d x %d grid to %s%n",
+                    grid.getCols(), grid.getRows(), args[1]);
+        } catch (IOException | RuntimeException exc) {
+            System.err.println("Could not convert " + args[0] + ": " + exc);
+            System.exit(1);
+        }
+    }
+}
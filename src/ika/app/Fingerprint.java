@@ -0,0 +1,61 @@
+package ika.app;
+
+/**
+ * Accumulates a 64-bit hash value of a sequence of numbers. Used to detect
+ * whether the input data for generating scree has changed.
+ *
+ * @author Bernhard Jenny
+ */
+final class Fingerprint {
+
+    private static final long MULTIPLIER = 0x9E3779B97F4A7C15L;
+    private long hash = 0x5BD1E9955BD1E995L;
+
+    Fingerprint() {
+    }
+
+    /**
+     * Mixes the bits of a value, following the finalizer of MurmurHash3.
+     */
+    private static long mix(long v) {
+        v ^= v >>> 33;
+        v *= 0xFF51AFD7ED558CCDL;
+        v ^= v >>> 33;
+        v *= 0xC4CEB9FE1A85EC53L;
+        v ^= v >>> 33;
+        return v;
+    }
+
+    Fingerprint add(long v) {
+        hash = Long.rotateLeft(hash ^ mix(v), 31) * MULTIPLIER;
+        return this;
+    }
+
+    Fingerprint add(double v) {
+        return add(Double.doubleToLongBits(v));
+    }
+
+    Fingerprint add(boolean v) {
+        return add(v ? 1L : 0L);
+    }
+
+    Fingerprint add(String str) {
+        if (str == null) {
+            return add(-1L);
+        }
+        add(str.length());
+        for (int i = 0; i < str.length(); i++) {
+            add(str.charAt(i));
+        }
+        return this;
+    }
+
+    /**
+     * Returns the hash value of all values added so far.
+     *
+     * @return the hash value.
+     */
+    long value() {
+        return mix(hash);
+    }
+}
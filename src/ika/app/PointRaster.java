@@ -7,6 +7,25 @@ package ika.app;
  */
 public interface PointRaster {
 
+    /**
+     * The available PointRaster implementations.
+     */
+    public enum Type {
+
+        /**
+         * Rasterized circles stored in one BitSet per row.
+         */
+        BIT_SET,
+        /**
+         * Rasterized circles stored in a binary image.
+         */
+        IMAGE,
+        /**
+         * Exact circle-circle tests with a uniform grid of buckets.
+         */
+        SPATIAL_HASH
+    }
+
     void addCircle(double x, double y, double rad);
 
     boolean isCircleOverlaying(double x, double y, double rad);
@@ -4,6 +4,8 @@ import ika.geo.GeoGrid;
 import ika.geo.GeoGridShort;
 import ika.geo.GeoImage;
 import ika.geo.GeoSet;
+import ika.geo.grid.GridDerivatives;
+import ika.geo.grid.ImageDistanceTiles;
 
 public class ScreeData {
 
@@ -37,6 +39,11 @@ public class ScreeData {
      * An image containing obstacles (non-white area is an obstacle).
      */
     public GeoImage obstaclesMaskImage;
+    /**
+     * Distance to the closest obstacle in obstaclesMaskImage for each pixel.
+     * Created when first needed, see getObstaclesDistance().
+     */
+    private ImageDistanceTiles obstaclesDistance;
     /**
      * mask image with areas where larger stones are placed. stones are enlarged
      * on non-white areas
@@ -55,6 +62,10 @@ public class ScreeData {
      * curvature derived from the DEM
      */
     public GeoGrid curvatureGrid;
+    /**
+     * derivatives of the DEM, used to trace fall lines
+     */
+    public GridDerivatives demDerivatives;
     /**
      * generated scree dots
      */
@@ -73,6 +84,8 @@ public class ScreeData {
         screePolygons = new GeoSet();
         screePolygons.setVisible(false);
         screeStones = new GeoSet();
+        // stones are only added and removed, so a spatial index can be used
+        screeStones.setSpatialIndexEnabled(true);
         gullyLines = new GeoSet();
         gullyLines.setVisible(false);
     }
@@ -93,6 +106,32 @@ public class ScreeData {
         return obstaclesMaskImage != null;
     }
 
+    /**
+     * Returns the distance to the closest obstacle for each pixel of the
+     * obstacles mask image. The distances are computed in tiles when first
+     * queried, and are recomputed when obstaclesMaskImage is replaced.
+     *
+     * @return the distance tiles, or null if there is no obstacles mask.
+     */
+    public synchronized ImageDistanceTiles getObstaclesDistance() {
+        if (obstaclesMaskImage == null) {
+            return null;
+        }
+        if (obstaclesDistance == null
+                || obstaclesDistance.getImage() != obstaclesMaskImage) {
+            obstaclesDistance = new ImageDistanceTiles(obstaclesMaskImage);
+        }
+        return obstaclesDistance;
+    }
+
+    /**
+     * Releases the cached obstacles distances. Must be called when the pixels
+     * of the obstacles mask image change.
+     */
+    public synchronized void invalidateObstaclesDistance() {
+        obstaclesDistance = null;
+    }
+
     public boolean hasLargeStoneMask() {
         return largeStoneMaskImage != null;
     }
@@ -3,7 +3,9 @@ package ika.app;
 import ika.geo.GeoImage;
 import ika.geo.GeoObject;
 import ika.geo.GeoSet;
+import ika.geo.grid.GridDerivatives;
 import ika.geo.grid.GridPlanCurvatureOperator;
+import ika.geoimport.BinaryGridReader;
 import ika.geoimport.ESRIASCIIGridReader;
 import ika.geoimport.GeoImporter;
 import ika.geoimport.ImageImporter;
@@ -45,8 +47,14 @@ public class ScreeDataLoader {
     public void loadDEM(ProgressIndicator prog) throws IOException {
         prog.setMessage("Loading elevation model...");
         prog.enableCancel();
-        screeData.dem = ESRIASCIIGridReader.read(screeDataFilePaths.demFilePath());
+        String filePath = screeDataFilePaths.demFilePath();
+        if (BinaryGridReader.isBinaryGrid(filePath)) {
+            screeData.dem = BinaryGridReader.read(filePath);
+        } else {
+            screeData.dem = ESRIASCIIGridReader.readParallel(filePath, null);
+        }
         screeData.curvatureGrid = new GridPlanCurvatureOperator().operate(screeData.dem);
+        screeData.demDerivatives = new GridDerivatives(screeData.dem);
     }
 
     public void loadShading(ProgressIndicator prog) throws IOException {
@@ -82,6 +90,7 @@ public class ScreeDataLoader {
     public void loadObstaclesMask(ProgressIndicator prog) throws IOException {
         prog.setMessage("Loading obstacles mask image...");
         prog.enableCancel();
+        screeData.invalidateObstaclesDistance();
         screeData.obstaclesMaskImage = loadImage(screeDataFilePaths.obstaclesFilePath(),
                 ScreeData.OBSTACLES_IMAGE_NAME, prog);
         if (screeData.obstaclesMaskImage != null) {
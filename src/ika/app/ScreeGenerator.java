@@ -2,6 +2,7 @@ package ika.app;
 
 import ika.geo.*;
 import ika.geo.grid.GridFalllineOperator;
+import ika.geo.grid.ImageDistanceTiles;
 import java.awt.Color;
 import java.awt.Graphics2D;
 import java.awt.geom.AffineTransform;
@@ -9,7 +10,10 @@ import java.awt.geom.Path2D;
 import java.awt.geom.Point2D;
 import java.awt.geom.Rectangle2D;
 import java.awt.image.Raster;
+import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
 
 /**
  * ScreeGenerator fills polygons with scree stones and computes gully lines.
@@ -28,130 +32,6 @@ public class ScreeGenerator {
      */
     private final static double POINT_IN_POLOGYON_TOLERANCE = 10d;
 
-    /**
-     * A stone with a position, radius and the corners.
-     */
-    public final class Stone extends GeoObject {
-
-        /**
-         * horizontal center
-         */
-        public double x;
-        /**
-         * vertical center
-         */
-        public double y;
-        /**
-         * mean radius of stone (actual size can be larger)
-         */
-        public double r;
-        /**
-         * geometry of stone
-         */
-        public Path2D.Double path;
-        /**
-         * cached bounding box for accelerating drawing
-         */
-        private Rectangle2D bounds;
-
-        public Stone(double x, double y, double r) {
-            this.x = x;
-            this.y = y;
-            setR(r);
-            setSelectable(false);
-        }
-
-        /**
-         * Converts this stone to a GeoPath object
-         *
-         * @return
-         */
-        public GeoPath toGeoPath() {
-            if (path == null) {
-                return null;
-            }
-            GeoPath geoPath = new GeoPath();
-            geoPath.append(path, false);
-            geoPath.setVectorSymbol(STONE_SYMBOL);
-            return geoPath;
-        }
-
-        /**
-         * Set the geometry of the stone
-         *
-         * @param corners x1, y1, x2, y2, etc.
-         */
-        public void setCorners(double[] corners) {
-            // update path for drawing
-            path = new Path2D.Double();
-            path.moveTo(corners[0], corners[1]);
-            final int cornerscount = corners.length / 2;
-            for (int i = 1; i < cornerscount; i++) {
-                path.lineTo(corners[i * 2], corners[i * 2 + 1]);
-            }
-            path.closePath();
-        }
-
-        /**
-         * set mean radius of stone
-         *
-         * @param r
-         */
-        public void setR(double r) {
-            this.r = r;
-            final double d = 2 * r;
-            this.bounds = new Rectangle2D.Double(x - r, y - r, d, d);
-        }
-
-        /**
-         * returns a bounding box
-         *
-         * @param scale
-         * @return
-         */
-        @Override
-        public Rectangle2D getBounds2D(double scale) {
-            return bounds;
-        }
-
-        /**
-         * draw this object in a map
-         *
-         * @param rp
-         */
-        @Override
-        public void drawNormalState(RenderParams rp) {
-            final Graphics2D g2d = rp.g2d;
-            final double scale = rp.scale;
-            g2d.setColor(Color.BLACK);
-
-            // if the stone is smaller than 1 pixel, a rectangle is drawn to
-            // accelerate drawing. Otherwise the path geometry is drawn.
-            if (scale * r > 0.5) {
-                g2d.fill(path);
-            } else {
-                g2d.fill(bounds);
-            }
-        }
-
-        @Override
-        public void drawSelectedState(RenderParams rp) {
-        }
-
-        @Override
-        public boolean isPointOnSymbol(Point2D point, double tolDist, double scale) {
-            return false;
-        }
-
-        @Override
-        public boolean isIntersectedByRectangle(Rectangle2D rect, double scale) {
-            return rect.intersects(bounds);
-        }
-
-        @Override
-        public void transform(AffineTransform affineTransform) {
-        }
-    }
     public static final VectorSymbol GULLIES_VECTOR_SYMBOL;
 
     static {
@@ -173,6 +53,21 @@ public class ScreeGenerator {
      * REL_POINT_RASTER_RESOLUTION;
      */
     private static final int REL_POINT_RASTER_RESOLUTION = 20;
+    /**
+     * The type of PointRaster used to find stones that are too close to each
+     * other.
+     */
+    private PointRaster.Type pointRasterType = PointRaster.Type.BIT_SET;
+    /**
+     * The bank of stone outline templates used when p.stoneTemplates is true.
+     * Recomputed when the parameters of the bank change.
+     */
+    private StoneTemplates stoneTemplates;
+    /**
+     * No more stones are placed in a polygon when it contains this number of
+     * stones.
+     */
+    private int maxStonesPerPolygon = Integer.MAX_VALUE;
     /**
      * Search resolution is d = screeGenerator.p.lineMinDistance /
      * REL_GULLIES_SEARCH_RESOLUTION. The shading is resampled to cell size d
@@ -181,6 +76,11 @@ public class ScreeGenerator {
      * are getting too close to each other.
      */
     protected static double REL_GULLIES_SEARCH_RESOLUTION = 3;
+    /**
+     * Fall lines are traced concurrently for groups of seed points. Groups
+     * with more seed points than this are split.
+     */
+    private static final int MIN_SEEDS_PER_FALL_LINE_SEARCH = 32;
 
     // Floyd Steinberg dithering constants
     private static final float A = 7f / 16f;
@@ -191,6 +91,127 @@ public class ScreeGenerator {
     public ScreeGenerator() {
     }
 
+    /**
+     * Returns the maximum number of stones placed in a polygon.
+     *
+     * @return the maximum number of stones
+     */
+    public int getMaxStonesPerPolygon() {
+        return maxStonesPerPolygon;
+    }
+
+    /**
+     * Sets the maximum number of stones placed in a polygon. Stones are placed
+     * along gully lines first, and then row by row from the top of the
+     * polygon, so a polygon with more stones is only partially filled. This
+     * limits the time needed for previews.
+     *
+     * @param maxStonesPerPolygon the maximum number of stones, or
+     * Integer.MAX_VALUE to fill polygons completely.
+     */
+    public void setMaxStonesPerPolygon(int maxStonesPerPolygon) {
+        if (maxStonesPerPolygon < 0) {
+            throw new IllegalArgumentException("Invalid number of stones: " + maxStonesPerPolygon);
+        }
+        this.maxStonesPerPolygon = maxStonesPerPolygon;
+    }
+
+    /**
+     * Returns the type of PointRaster used to find stones that are too close
+     * to each other.
+     *
+     * @return the type of PointRaster
+     */
+    public PointRaster.Type getPointRasterType() {
+        return pointRasterType;
+    }
+
+    /**
+     * Sets the type of PointRaster used to find stones that are too close to
+     * each other. BIT_SET and IMAGE test rasterized circles, SPATIAL_HASH tests
+     * exact distances between circles.
+     *
+     * @param pointRasterType the type of PointRaster
+     */
+    public void setPointRasterType(PointRaster.Type pointRasterType) {
+        if (pointRasterType == null) {
+            throw new IllegalArgumentException("point raster type is null");
+        }
+        this.pointRasterType = pointRasterType;
+    }
+
+    /**
+     * Creates a PointRaster for finding stones that are too close to each
+     * other.
+     *
+     * @param type the type of PointRaster
+     * @param bb the extent of the stones
+     * @param stoneMaxDiameter the maximum diameter of stones
+     * @return a new PointRaster
+     */
+    static PointRaster createPointRaster(PointRaster.Type type,
+            Rectangle2D bb, double stoneMaxDiameter) {
+        switch (type) {
+            case IMAGE:
+                return new ImagePointRaster(bb,
+                        stoneMaxDiameter / REL_POINT_RASTER_RESOLUTION);
+            case SPATIAL_HASH:
+                return new SpatialHashPointRaster(bb, stoneMaxDiameter);
+            default:
+                return new BitSetPointRaster(bb,
+                        stoneMaxDiameter / REL_POINT_RASTER_RESOLUTION);
+        }
+    }
+
+    /**
+     * Scree stones and gully lines generated for a single polygon. A
+     * PolygonScree is not yet part of the ScreeData model, which allows for
+     * generating polygons concurrently and adding the results in a
+     * deterministic order.
+     */
+    protected static final class PolygonScree {
+
+        /**
+         * newly extracted gully lines, or null if the gully lines are not
+         * extracted from the DEM.
+         */
+        private final ArrayList<GeoPath> newGullyLines;
+        /**
+         * generated stones, or null if no stones are generated.
+         */
+        private final StoneStore stones;
+        /**
+         * the number of generated stones or lines.
+         */
+        private final int itemsCount;
+
+        private PolygonScree(ArrayList<GeoPath> newGullyLines, StoneStore stones,
+                int itemsCount) {
+            this.newGullyLines = newGullyLines;
+            this.stones = stones;
+            this.itemsCount = itemsCount;
+        }
+
+        /**
+         * Returns the generated stones.
+         *
+         * @return the stones, or null if no stones were generated.
+         */
+        public StoneStore getStones() {
+            return stones;
+        }
+
+        /**
+         * Returns the number of generated stones, or the number of gully lines
+         * if no stones were generated.
+         *
+         * @return the number of generated stones or lines.
+         */
+        public int getItemsCount() {
+            return itemsCount;
+        }
+    }
+
     /**
      * Fills a single polygon with scree.
      *
@@ -217,9 +238,50 @@ public class ScreeGenerator {
             GeoGridShort tempLinesDensityGridToDither2,
             boolean generateScreeStones) {
 
+        PolygonScree polygonScree = computeScreeForPolygon(screeBB,
+                screePolygon, shadingGrid, minShading, maxShading,
+                tempShadingGridToDither,
+                tempLinesDensityGridToDither1, tempLinesDensityGridToDither2,
+                generateScreeStones);
+        addToScreeData(polygonScree);
+        return polygonScree.getItemsCount();
+    }
+
+    /**
+     * Fills a single polygon with scree without adding the generated stones
+     * and gully lines to screeData. This method only reads from screeData and
+     * shadingGrid, and writes to the cells of the three temporary dither grids
+     * that are covered by the bounding box of the polygon (plus a margin of
+     * three cells). It can therefore be called concurrently for polygons with
+     * bounding boxes that do not overlap. Use addToScreeData to add the result
+     * to the ScreeData model.
+     *
+     * @param screeBB a clipping rectangle: only generate stones inside this
+     * rectangle. Can be null.
+     * @param screePolygon the polygon to fill with scree stones
+     * @param shadingGrid grid to control the radius of scree dots.
+     * @param minShading the smallest value in shadingGrid
+     * @param maxShading the largest value in shadingGrid
+     * @param tempShadingGridToDither apply Floyd-Steinberg dithering to this
+     * grid. This grid will be changed by this method
+     * @param tempLinesDensityGridToDither1
+     * @param tempLinesDensityGridToDither2
+     * @param generateScreeStones if true polygons are filled with scree stones,
+     * otherwise only gully lines are created.
+     * @return The generated stones and gully lines.
+     */
+    protected PolygonScree computeScreeForPolygon(Rectangle2D screeBB,
+            GeoPath screePolygon,
+            GeoGridShort shadingGrid,
+            float minShading, float maxShading,
+            GeoGridShort tempShadingGridToDither,
+            GeoGridShort tempLinesDensityGridToDither1,
+            GeoGridShort tempLinesDensityGridToDither2,
+            boolean generateScreeStones) {
+
         // make sure the bounding box intersects with the polygon to fill
         if (screeBB != null && !screeBB.intersects(screePolygon.getBounds2D(GeoObject.UNDEFINED_SCALE))) {
-            return 0;
+            return new PolygonScree(null, null, 0);
         }
 
         // convert the polygon to fill to a FastContainsGeoPath
@@ -228,6 +290,7 @@ public class ScreeGenerator {
 
         // extract gully lines for the polygon
         ArrayList<GeoPath> screeLines = new ArrayList<>();
+        ArrayList<GeoPath> newGullyLines = null;
         if (screeData.fixedScreeLines) {
             screeLines = getScreeLinesForPolygon(screeData.gullyLines, fastContainsGeoPath);
         } else if (p.extractGullyLines) {
@@ -235,32 +298,73 @@ public class ScreeGenerator {
                     tempLinesDensityGridToDither1,
                     tempLinesDensityGridToDither2);
             
-            // add the new gully lines to the GeoSet for display on the map
+            // symbolize the new gully lines for display on the map
             for (GeoPath line : screeLines) {
                 line.setVectorSymbol(GULLIES_VECTOR_SYMBOL);
                 line.setSelectable(false);
-                screeData.gullyLines.add(line);
             }
+            newGullyLines = screeLines;
         }
 
         // fill the polygon with stones
         if (generateScreeStones) {
-            GeoSet stones = fillScreePolygonWithStonesAndLines(
+            StoneStore stones = fillScreePolygonWithStonesAndLines(
                     fastContainsGeoPath, screeLines, shadingGrid,
                     minShading, maxShading,
                     tempShadingGridToDither, screeBB);
-            screeData.screeStones.add(stones);
-            return stones.getNumberOfChildren();
+            return new PolygonScree(newGullyLines, stones, stones.getStonesCount());
         }
 
-        return screeLines.size();
+        return new PolygonScree(newGullyLines, null, screeLines.size());
     }
 
     /**
-     * Finds gully lines inside a polygon.
+     * Adds stones and gully lines generated by computeScreeForPolygon to
+     * screeData. This is not thread-safe.
+     *
+     * @param polygonScree stones and gully lines for a polygon.
+     */
+    protected void addToScreeData(PolygonScree polygonScree) {
+        // add the new gully lines to the GeoSet for display on the map
+        if (polygonScree.newGullyLines != null) {
+            for (GeoPath line : polygonScree.newGullyLines) {
+                screeData.gullyLines.add(line);
+            }
+        }
+        if (polygonScree.stones != null) {
+            screeData.screeStones.add(polygonScree.stones);
+        }
+    }
+
+    /**
+     * Adds gully lines generated by computeScreeForPolygon to screeData, and
+     * passes the stones to a StoneSink instead of adding them to screeData.
+     * This is not thread-safe.
+     *
+     * @param polygonScree stones and gully lines for a polygon.
+     * @param stoneSink receives the stones. If null, the stones are added to
+     * screeData.
+     * @throws IOException if the StoneSink cannot write the stones
+     */
+    protected void addToScreeData(PolygonScree polygonScree,
+            StoneSink stoneSink) throws IOException {
+        if (stoneSink == null || polygonScree.stones == null) {
+            addToScreeData(polygonScree);
+            return;
+        }
+        stoneSink.addStones(polygonScree.stones);
+        addToScreeData(new PolygonScree(polygonScree.newGullyLines, null,
+                polygonScree.itemsCount));
+    }
+
+    /**
+     * Finds gully lines inside a polygon. Fall lines are traced concurrently
+     * for groups of seed points. The found lines are returned in the order of
+     * the seed points, independent of the number of threads.
      *
      * @param polygon The polygon to fill with gully lines
      * @param binGrid A grid image containing other rasterized gully lines.
+     * binGrid is not changed while tracing the fall lines.
      * @return An array with the found gully lines.
      */
     private ArrayList<GridFalllineOperator.WeightedGeoPath> findGullyLines(
@@ -268,41 +372,91 @@ public class ScreeGenerator {
             GeoBinaryGrid binGrid,
             GeoGridShort linesDensityToDither) {
 
-        // fall lines are stored in this array
-        ArrayList<GridFalllineOperator.WeightedGeoPath> lines;
-        lines = new ArrayList<>();
-
-        // initialize search operator to find fall lines
-        GridFalllineOperator fallLineOp = new GridFalllineOperator();
-        fallLineOp.setMinSlopeDegree(p.lineMinSlopeDegree);
-        fallLineOp.setSearchMethod(GridFalllineOperator.SearchMethod.UP_THEN_DOWN);
-
         // generate seed points, i.e. points where we start searching for fall lines
         ArrayList<Point2D> seedPoints;
         seedPoints = ScreeGenerator.diffuseDithering(polygon, linesDensityToDither);
 
-        // search a fall line for each seed point
-        for (Point2D seedPt : seedPoints) {
-            final double x = seedPt.getX();
-            final double y = seedPt.getY();
+        // search a fall line for each seed point. If this is called by a task
+        // of a ForkJoinPool, the search is split into tasks on the same pool,
+        // otherwise fall lines are traced sequentially on the calling thread.
+        FallLineSearch search = new FallLineSearch(seedPoints, 0,
+                seedPoints.size(), polygon, binGrid);
+        return ForkJoinTask.inForkJoinPool() ? search.invoke() : search.compute();
+    }
 
-            fallLineOp.setStart(x, y);
-            GridFalllineOperator.WeightedGeoPath line;
-            line = fallLineOp.operate(screeData.dem, binGrid, polygon,
-                    screeData.curvatureGrid, p.lineMinCurvature, null);
+    /**
+     * Traces fall lines for a range of seed points. When run by a ForkJoinPool,
+     * ranges with more than MIN_SEEDS_PER_FALL_LINE_SEARCH seed points are
+     * split in two halves that are traced concurrently on the pool. Each task
+     * uses its own GridFalllineOperator,
+     * and only reads the DEM, the curvature grid, the polygon and the binary
+     * grid.
+     */
+    private final class FallLineSearch
+            extends RecursiveTask<ArrayList<GridFalllineOperator.WeightedGeoPath>> {
+
+        private static final long serialVersionUID = 1L;
+        private final ArrayList<Point2D> seedPoints;
+        private final int firstSeed;
+        private final int endSeed;
+        private final GeoPath polygon;
+        private final GeoBinaryGrid binGrid;
+
+        private FallLineSearch(ArrayList<Point2D> seedPoints, int firstSeed,
+                int endSeed, GeoPath polygon, GeoBinaryGrid binGrid) {
+            this.seedPoints = seedPoints;
+            this.firstSeed = firstSeed;
+            this.endSeed = endSeed;
+            this.polygon = polygon;
+            this.binGrid = binGrid;
+        }
 
-            // compute the mean curvature along the line by dividing the total
-            // curvature by the length of the line.
-            if (line != null) {
-                //line.w /= line.getPointsCount();
+        @Override
+        protected ArrayList<GridFalllineOperator.WeightedGeoPath> compute() {
+            if (endSeed - firstSeed > MIN_SEEDS_PER_FALL_LINE_SEARCH
+                    && ForkJoinTask.inForkJoinPool()) {
+                final int middleSeed = (firstSeed + endSeed) >>> 1;
+                FallLineSearch second = new FallLineSearch(seedPoints,
+                        middleSeed, endSeed, polygon, binGrid);
+                second.fork();
+                ArrayList<GridFalllineOperator.WeightedGeoPath> lines;
+                lines = new FallLineSearch(seedPoints, firstSeed, middleSeed,
+                        polygon, binGrid).compute();
+                lines.addAll(second.join());
+                return lines;
             }
-            if (isFallLineLongEnough(line)) {
-                lines.add(line);
+
+            // fall lines are stored in this array
+            ArrayList<GridFalllineOperator.WeightedGeoPath> lines;
+            lines = new ArrayList<>();
+
+            // initialize search operator to find fall lines
+            GridFalllineOperator fallLineOp = new GridFalllineOperator();
+            fallLineOp.setMinSlopeDegree(p.lineMinSlopeDegree);
+            fallLineOp.setSearchMethod(GridFalllineOperator.SearchMethod.UP_THEN_DOWN);
+            fallLineOp.setDerivatives(screeData.demDerivatives);
+
+            for (int i = firstSeed; i < endSeed; i++) {
+                Point2D seedPt = seedPoints.get(i);
+                final double x = seedPt.getX();
+                final double y = seedPt.getY();
+
+                fallLineOp.setStart(x, y);
+                GridFalllineOperator.WeightedGeoPath line;
+                line = fallLineOp.operate(screeData.dem, binGrid, polygon,
+                        screeData.curvatureGrid, p.lineMinCurvature, null);
+
+                // compute the mean curvature along the line by dividing the total
+                // curvature by the length of the line.
+                if (line != null) {
+                    //line.w /= line.getPointsCount();
+                }
+                if (isFallLineLongEnough(line)) {
+                    lines.add(line);
+                }
             }
+            return lines;
         }
-
-        return lines;
-
     }
 
     /**
@@ -531,7 +685,7 @@ public class ScreeGenerator {
      * @param screeBB
      * @return A set of stones for the passed polygonToFill
      */
-    private GeoSet fillScreePolygonWithStonesAndLines(
+    private StoneStore fillScreePolygonWithStonesAndLines(
             GeoPath polygonToFill,
             ArrayList<GeoPath> screeLines,
             GeoGridShort shadingGrid,
@@ -544,12 +698,12 @@ public class ScreeGenerator {
         final double minObstacleDist = p.stoneMinObstacleDistanceFraction * p.stoneMaxDiameter;
         final double stoneMaxR = p.stoneMaxDiameter / 2;
 
-        double pointRasterCellSize = p.stoneMaxDiameter / REL_POINT_RASTER_RESOLUTION;
         Rectangle2D bb = polygonToFill.getBounds2D(GeoObject.UNDEFINED_SCALE);
-        PointRaster pointRaster = new BitSetPointRaster(bb, pointRasterCellSize);
+        PointRaster pointRaster = createPointRaster(pointRasterType, bb, p.stoneMaxDiameter);
+        ImageDistanceTiles obstaclesDistance = screeData.getObstaclesDistance();
 
-        // array to store all generated stones
-        ArrayList<Stone> stones = new ArrayList<>();
+        // store for all generated stones
+        StoneStore stones = new StoneStore(getStoneTemplates());
 
         // place stones along the gully lines        
         final double minStoneDistOnLine = p.lineStoneDistFraction * p.stoneMaxDiameter;
@@ -576,9 +730,9 @@ public class ScreeGenerator {
             ArrayList<Point2D> pts = toBeads(line, d, jitterDist, jitterDist);
 
             // store each point on the gully line
-            ArrayList<Stone> lineStones = new ArrayList<>();
+            final int firstLineStone = stones.getStonesCount();
             int pointsCount = pts.size();
-            for (int i = 0; i < pointsCount; i++) {
+            for (int i = 0; i < pointsCount && stones.getStonesCount() < maxStonesPerPolygon; i++) {
                 Point2D pt = pts.get(i);
 
                 final double x = pt.getX();
@@ -592,7 +746,7 @@ public class ScreeGenerator {
                         shadingGrid, minShading, maxShading) * rScale;
 
                 // make sure the new stone is not too close to other map elements
-                if (isStoneOnObstacle(x, y, r + minObstacleDist)) {
+                if (isStoneOnObstacle(obstaclesDistance, x, y, r + minObstacleDist)) {
                     continue;
                 }
 
@@ -602,31 +756,32 @@ public class ScreeGenerator {
                 }
 
                 // create and store stone
-                Stone stone = new Stone(x, y, r);
-                stones.add(stone);
-                lineStones.add(stone);
+                stones.add(x, y, r);
                 pointRaster.addCircle(x, y, r);
             }
 
             final double linePointDist = p.lineToPointDistFraction * p.stoneMaxDiameter;
-            for (Stone st : lineStones) {
-                pointRaster.addCircle(st.x, st.y, st.r + linePointDist);
+            for (int i = firstLineStone; i < stones.getStonesCount(); i++) {
+                pointRaster.addCircle(stones.getX(i), stones.getY(i),
+                        stones.getR(i) + linePointDist);
             }
         }
 
         // fill the polygon with randomly placed stones using Floyd-Steinberg
         // error diffusion dithering.
         ditherFillPolygon(polygonToFill, stones, tempShadingGridToDither,
-                screeBB, pointRaster, shadingGrid, minShading, maxShading);
-
-        // generate stones
-        GeoSet stonesGeoSet = new GeoSet();
-        for (Stone stone : stones) {
-            generateStone(stone, random);
-            stonesGeoSet.add(stone);
+                screeBB, pointRaster, obstaclesDistance,
+                shadingGrid, minShading, maxShading);
+
+        // generate stone outlines
+        double[] corners = new double[Math.max(p.stoneMaxCornerCount, 0) * 2];
+        final int stonesCount = stones.getStonesCount();
+        for (int i = 0; i < stonesCount; i++) {
+            generateStone(stones, i, random, corners);
         }
+        stones.trimToSize();
 
-        return stonesGeoSet;
+        return stones;
     }
 
     /**
@@ -634,13 +789,23 @@ public class ScreeGenerator {
      * i.e. the stone touches a cell that is not white in the
      * obstaclesMaskImage. The stone is treated as a regular circle.
      *
+     * The distance to the closest obstacle is looked up in the obstacles
+     * distance tiles at the pixel closest to the stone center. The pixels
+     * around the stone are only scanned when this distance does not allow for
+     * a decision, that is, when the stone touches an obstacle by less than
+     * the distance between the stone center and the pixel, or when the
+     * distance exceeds the maximum distance of the tiles.
+     *
+     * @param obstaclesDistance the distance to the closest obstacle for each
+     * pixel of obstaclesMaskImage.
      * @param x Center of the stone.
      * @param y Center of the stone.
      * @param radius Radius of the stone in world coordinates [m].
      * @return True if the stone touches a cell in obstaclesMaskImage that is
      * not white.
      */
-    private boolean isStoneOnObstacle(double x, double y, double radius) {
+    private boolean isStoneOnObstacle(ImageDistanceTiles obstaclesDistance,
+            double x, double y, double radius) {
 
         // This uses normalized dem coordinates that are relative to the
         // top-left corner: y is downwards, one cell has a length of 1.
@@ -655,9 +820,6 @@ public class ScreeGenerator {
         // compute the radius in normalized dem coordinates
         final double radius_ = radius * inverseCellSize_;
 
-        // compute the square of the radius in normalized dem coordinates
-        final double radiusSqr_ = radius_ * radius_;
-
         // compute the stone position in columns and rows
         final int col = (int) x_;
         final int row = (int) y_;
@@ -672,7 +834,46 @@ public class ScreeGenerator {
             return false;
         }
 
-        Raster obstaclesRaster = screeData.obstaclesMaskImage.getBufferedImage().getRaster();
+        // distance to the closest obstacle from the closest pixel
+        final int nearestCol = Math.min((int) Math.floor(x_ + 0.5), w - 1);
+        final int nearestRow = Math.min((int) Math.floor(y_ + 0.5), h - 1);
+        final float d = obstaclesDistance.getDistance(nearestCol, nearestRow);
+        final double d_ = d * inverseCellSize_;
+
+        // distance between the stone center and the closest pixel
+        final double dx_ = nearestCol - x_;
+        final double dy_ = nearestRow - y_;
+        final double pixelDist_ = Math.sqrt(dx_ * dx_ + dy_ * dy_);
+
+        // by the triangle inequality, the closest obstacle to the stone center
+        // is between d_ - pixelDist_ and d_ + pixelDist_ away. The tolerance
+        // accounts for the float precision of the distances. The maximum
+        // distance is only a lower bound for the exact distance.
+        final double TOL = 1e-4;
+        if (d_ - pixelDist_ > radius_ + TOL) {
+            return false;
+        }
+        if (d < obstaclesDistance.getMaxDistance() && d_ + pixelDist_ < radius_ - TOL) {
+            return true;
+        }
+        return isStoneOnObstacleScan(x_, y_, radius_, col, row, cells);
+    }
+
+    /**
+     * Tests whether a stone touches a cell that is not white in the
+     * obstaclesMaskImage by scanning all cells covered by the stone. All
+     * values are in normalized dem coordinates, see isStoneOnObstacle.
+     */
+    private boolean isStoneOnObstacleScan(double x_, double y_, double radius_,
+            int col, int row, int cells) {
+
+        // compute the square of the radius in normalized dem coordinates
+        final double radiusSqr_ = radius_ * radius_;
+
+        // read the pixels of a memory-mapped mask from the mapped file
+        final MappedGrayImage mappedImage = screeData.obstaclesMaskImage.getMappedImage();
+        final Raster obstaclesRaster = mappedImage == null
+                ? screeData.obstaclesMaskImage.getBufferedImage().getRaster() : null;
 
         // loop over the scan area
         for (int r = row - cells; r <= row + cells; r++) {
@@ -686,7 +887,8 @@ public class ScreeGenerator {
                     continue;
                 }
 
-                final int gray = obstaclesRaster.getSample(c, r, 0);
+                final int gray = mappedImage != null ? mappedImage.getGray(c, r)
+                        : obstaclesRaster.getSample(c, r, 0);
                 if (gray < 255) {
                     return true;
                 }
@@ -720,14 +922,17 @@ public class ScreeGenerator {
      * diffusion dithering.
      *
      * @param screePolygon The polygon to fill with stones.
-     * @param stones Store new stones in this array.
+     * @param stones Store new stones in this store.
+     * @param obstaclesDistance the distance to the closest obstacle for each
+     * pixel of the obstacles mask.
      * @param shadingGrid grid to control the radius of scree dots.
      */
     private void ditherFillPolygon(GeoPath screePolygon,
-            ArrayList<Stone> stones,
+            StoneStore stones,
             GeoGridShort ditherGrid,
             Rectangle2D screeBB,
             PointRaster pointRaster,
+            ImageDistanceTiles obstaclesDistance,
             GeoGridShort shadingGrid,
             float minShading,
             float maxShading) {
@@ -755,6 +960,9 @@ public class ScreeGenerator {
             int col = row % 2 == 0 ? 0 : nCols - 1;
             final int inc = row % 2 == 0 ? 1 : -1;
             for (; row % 2 == 0 ? col < nCols : col >= 0; col += inc) {
+                if (stones.getStonesCount() >= maxStonesPerPolygon) {
+                    return;
+                }
                 final double x = bounds.getMinX() + col * p.stoneMaxDiameter;
                 // make sure the stone is inside the polygon
                 if (!screePolygon.contains(x, y)) {
@@ -775,7 +983,7 @@ public class ScreeGenerator {
 
                     // test whether the new stone would overlay any obstacle
                     // this test is not taking the variation of the stone radius into acount
-                    if (isStoneOnObstacle(stoneX, stoneY, maxStoneRadius + minObstacleDist)) {
+                    if (isStoneOnObstacle(obstaclesDistance, stoneX, stoneY, maxStoneRadius + minObstacleDist)) {
                         continue;
                     }
 
@@ -821,11 +1029,11 @@ public class ScreeGenerator {
                         double r = maxStoneRadius * rScale;
                         // adjust the radius of the stone to the brightness of the shading
                         r = this.modulatedStoneRadius(stoneX, stoneY, r, shadingGrid, minShading, maxShading);
-                        if (isStoneOnObstacle(stoneX, stoneY, r + minObstacleDist)
+                        if (isStoneOnObstacle(obstaclesDistance, stoneX, stoneY, r + minObstacleDist)
                                 || pointRaster.isCircleOverlaying(stoneX, stoneY, r + minStoneDist)) {
                             continue;
                         }
-                        stones.add(new Stone(stoneX, stoneY, r));
+                        stones.add(stoneX, stoneY, r);
                         pointRaster.addCircle(stoneX, stoneY, r);
                         dif = largeStone ? (float) (shade * rScale * rScale) : shade;
 
@@ -970,23 +1178,67 @@ public class ScreeGenerator {
 
     }
 
-    private GeoObject generateStone(Stone stone, Random random) {
-
-        if (Double.isNaN(stone.x) || Double.isNaN(stone.y) || Double.isNaN(stone.r)) {
+    /**
+     * Returns the bank of stone outline templates for the current parameters.
+     *
+     * @return the templates, or null if outlines are computed for each stone
+     */
+    private synchronized StoneTemplates getStoneTemplates() {
+        if (!p.stoneTemplates) {
             return null;
         }
+        final int minCorners = Math.max(0, Math.min(p.stoneMinCornerCount, p.stoneMaxCornerCount));
+        final int maxCorners = Math.max(0, Math.max(p.stoneMinCornerCount, p.stoneMaxCornerCount));
+        if (stoneTemplates == null || !stoneTemplates.hasParameters(
+                minCorners, maxCorners, p.stoneAngleVariabilityPerc)) {
+            stoneTemplates = new StoneTemplates(minCorners, maxCorners,
+                    p.stoneAngleVariabilityPerc);
+        }
+        return stoneTemplates;
+    }
+
+    /**
+     * Varies the radius of a stone and computes the corners of its outline.
+     * If the store uses templates, a random template with a random rotation
+     * is used instead of computing the corners.
+     *
+     * @param stones the store containing the stone
+     * @param stone index of the stone
+     * @param random random number generator
+     * @param corners buffer for the corners, large enough for
+     * p.stoneMaxCornerCount corners
+     */
+    private void generateStone(StoneStore stones, int stone, Random random,
+            double[] corners) {
+
+        final double x = stones.getX(stone);
+        final double y = stones.getY(stone);
+        double r = stones.getR(stone);
+        if (Double.isNaN(x) || Double.isNaN(y) || Double.isNaN(r)) {
+            stones.setShape(stone, r, null, 0);
+            return;
+        }
 
-        double r = stone.r;
         double radiusVariance = p.stoneRadiusVariabilityPerc / 100. * random.nextDouble();
         // map to -maxRadiusVariancePercentage .. +maxRadiusVariancePercentage
         radiusVariance = -p.stoneRadiusVariabilityPerc / 100 + 2. * radiusVariance;
         r *= 1 + radiusVariance;
-        stone.setR(r);
 
         // the number of corners of the stone
         int nbrCorners = (int) Math.round(p.stoneMinCornerCount 
                 + (p.stoneMaxCornerCount - p.stoneMinCornerCount) * random.nextDouble());
-        double corners[] = new double[nbrCorners * 2];
+
+        StoneTemplates templates = stones.getTemplates();
+        if (templates != null) {
+            final int variant = random.nextInt(StoneTemplates.VARIANTS_COUNT);
+            final int template = templates.getTemplate(Math.max(0, nbrCorners), variant);
+            stones.setTemplate(stone, r, template, Math.PI * 2 * random.nextDouble());
+            return;
+        }
+
+        if (corners.length < nbrCorners * 2) {
+            corners = new double[nbrCorners * 2];
+        }
 
         // the angle increment between two neighboring corners measured from the center
         // negative sign for clockwise direction
@@ -997,13 +1249,10 @@ public class ScreeGenerator {
             double angleVariance = p.stoneAngleVariabilityPerc / 100. * random.nextDouble();
             double angle = currAngle + angleIncrement * angleVariance;
             currAngle += angleIncrement;
-            double cornerX = r * Math.cos(angle);
-            double cornerY = r * Math.sin(angle);
-            corners[i * 2] = cornerX + stone.x;
-            corners[i * 2 + 1] = cornerY + stone.y;
+            corners[i * 2] = r * Math.cos(angle);
+            corners[i * 2 + 1] = r * Math.sin(angle);
         }
-        stone.setCorners(corners); // this will update the path for drawing
-        return stone;
+        stones.setShape(stone, r, corners, nbrCorners);
     }
 
     private boolean isFallLineLongEnough(GeoPath line) {
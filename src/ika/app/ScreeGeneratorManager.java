@@ -1,16 +1,33 @@
 package ika.app;
 
+import ika.geo.GeoGrid;
 import ika.geo.GeoGridShort;
 import ika.geo.GeoImage;
 import ika.geo.GeoObject;
 import ika.geo.GeoPath;
-import ika.geo.grid.ImageToGridOperator;
+import ika.geo.GeoSet;
+import ika.geo.MappedGrayImage;
+import ika.geo.grid.ImageResamplingOperator;
 import ika.gui.ProgressIndicator;
 import ika.utils.GeometryUtils;
-import java.awt.RenderingHints;
+import java.awt.geom.PathIterator;
 import java.awt.geom.Rectangle2D;
-import java.awt.image.BufferedImage;
+import java.awt.image.Raster;
+import java.io.IOException;
 import java.text.DecimalFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 /**
  * Coordinates the generation of scree. First initializes grid and image data
@@ -18,6 +35,23 @@ import java.text.DecimalFormat;
  * ScreeGenerator to fill each polygon with scree. Also updates the progress
  * indicator.
  *
+ * Polygons can be filled concurrently on a fork-join pool, which also traces
+ * the gully lines of the polygons. Neighboring polygons share the cells of the
+ * temporary dither grids along their borders, so polygons with overlapping
+ * bounding boxes are filled in the order of the sequential run, which results
+ * in scree identical to the sequential run.
+ *
+ * In incremental mode, the scree of each polygon is cached with a fingerprint
+ * of the polygon geometry, the input data around the polygon, the parameters,
+ * and the fingerprints of earlier polygons sharing cells of the dither grids.
+ * The next generation only fills polygons with a changed fingerprint and
+ * reuses the cached scree for all other polygons. The cells of the dither grids
+ * after filling a polygon are cached as well, such that the filled polygons
+ * find the same dither grids as in a complete generation.
+ *
+ * Previews are quickly generated at reduced fidelity for a small area, see
+ * generatePreview.
+ *
  * @author Bernhard Jenny
  */
 public class ScreeGeneratorManager {
@@ -31,9 +65,195 @@ public class ScreeGeneratorManager {
     // if true, stones are created. Oherwise gully lines are created.
     private boolean generateScreeStones;
 
+    // number of polygons filled so far and total number of polygons to fill
+    private int polygonsCounter;
+    private int polygonsTotal;
+
+    // size of tiles in world coordinates. 0 if the entire shading is processed
+    // at once.
+    private double tileSize = 0;
+
+    // number of cells of the resampled shading and the gully seeds grid in the
+    // margin around tiles.
+    private static final int HALO_CELLS = 4;
+
+    // number of threads filling polygons concurrently. 1 for sequential mode.
+    private int threadCount = Runtime.getRuntime().availableProcessors();
+
+    // throughput statistics for each thread, keyed by thread name.
+    private final Map<String, ThreadStatistics> threadStatistics
+            = new ConcurrentHashMap<>();
+
+    // if true, the scree of each polygon is cached and reused by the next
+    // generation if the polygon and the data around it did not change.
+    private boolean incremental = false;
+
+    // scree cached by the last generation, keyed by polygon fingerprints.
+    private Map<Long, CachedPolygonScree> polygonCache = new HashMap<>();
+
+    // number of polygons reused from the cache by the last generation.
+    private int reusedPolygonsCounter;
+
+    // filled polygons waiting to be added to the ScreeData model in the order
+    // of the polygons. Null if filled polygons are directly added.
+    private Map<GeoPath, ScreeGenerator.PolygonScree> pendingResults;
+
+    // cells of the dither grids after filling each polygon. Null if not
+    // caching polygons.
+    private Map<GeoPath, short[][]> pendingDitherWindows;
+
+    // receives generated stones instead of the ScreeData model. Can be null.
+    private StoneSink stoneSink;
+
+    // maximum number of stones placed in a polygon for previews.
+    private static final int PREVIEW_MAX_STONES_PER_POLYGON = 20000;
+
+    // for previews, the shaded relief is decimated to about this number of
+    // pixels per stone diameter before it is resampled.
+    private static final double PREVIEW_SHADING_PIXELS_PER_STONE = 2;
+
+    // minimum and maximum of the decimated and resampled shaded relief for
+    // previews, and the shaded relief and the cell size they were computed
+    // for. Null if not computed yet.
+    private short[] previewMinMax;
+    private GeoImage previewMinMaxShading;
+    private double previewMinMaxCellSize;
+
+    /**
+     * The scree of a polygon and the cells of the dither grids after filling
+     * the polygon.
+     */
+    private static final class CachedPolygonScree {
+
+        private final ScreeGenerator.PolygonScree polygonScree;
+        private final short[][] ditherWindows;
+
+        private CachedPolygonScree(ScreeGenerator.PolygonScree polygonScree,
+                short[][] ditherWindows) {
+            this.polygonScree = polygonScree;
+            this.ditherWindows = ditherWindows;
+        }
+    }
+
+    /**
+     * Number of polygons filled, number of items generated and time spent by
+     * a single thread.
+     */
+    private static final class ThreadStatistics {
+
+        private int polygons;
+        private int items;
+        private long milliSeconds;
+
+        private synchronized void add(int items, long milliSeconds) {
+            this.polygons++;
+            this.items += items;
+            this.milliSeconds += milliSeconds;
+        }
+    }
+
     public ScreeGeneratorManager() {
     }
 
+    /**
+     * Returns the number of threads used to fill polygons concurrently.
+     *
+     * @return the number of threads.
+     */
+    public int getThreadCount() {
+        return threadCount;
+    }
+
+    /**
+     * Sets the number of threads used to fill polygons and trace gully lines
+     * concurrently. With a single thread, polygons are filled and gully lines
+     * are traced sequentially on the calling thread. Otherwise, both run on a
+     * fork-join pool with this number of threads.
+     *
+     * @param threadCount the number of threads, must be 1 or larger.
+     */
+    public void setThreadCount(int threadCount) {
+        if (threadCount < 1) {
+            throw new IllegalArgumentException("Invalid number of threads: " + threadCount);
+        }
+        this.threadCount = threadCount;
+    }
+
+    /**
+     * Returns the size of tiles for generating scree with bounded memory.
+     *
+     * @return the size of tiles in world coordinates, or 0 if the shading is
+     * not split into tiles.
+     */
+    public double getTileSize() {
+        return tileSize;
+    }
+
+    /**
+     * Sets the size of tiles for generating scree with bounded memory. With
+     * tiles, the grids derived from the shaded relief are only allocated for
+     * one tile at a time. The cells of the dither grids changed by polygons
+     * are carried to the tiles of neighboring polygons, so the generated scree
+     * is identical to the untiled generation.
+     *
+     * @param tileSize the size of tiles in world coordinates, or 0 to process
+     * the entire shaded relief at once.
+     */
+    public void setTileSize(double tileSize) {
+        if (tileSize < 0 || Double.isNaN(tileSize)) {
+            throw new IllegalArgumentException("Invalid tile size: " + tileSize);
+        }
+        this.tileSize = tileSize;
+    }
+
+    /**
+     * Returns whether the scree of polygons is cached and reused.
+     *
+     * @return true if polygons are only filled when they have changed.
+     */
+    public boolean isIncremental() {
+        return incremental;
+    }
+
+    /**
+     * Sets whether the scree of polygons is cached and reused by the next
+     * generation. In incremental mode, a polygon is only filled again if its
+     * geometry, the input data around it, or the parameters have changed, or
+     * if an earlier neighboring polygon was filled again. The result is
+     * identical to a complete generation. Polygons are not cached when
+     * generating scree in tiles.
+     *
+     * @param incremental if true, only changed polygons are filled.
+     */
+    public void setIncremental(boolean incremental) {
+        this.incremental = incremental;
+        if (!incremental) {
+            polygonCache.clear();
+        }
+    }
+
+    /**
+     * Returns the sink receiving generated stones.
+     *
+     * @return the sink, or null if stones are added to the ScreeData model.
+     */
+    public StoneSink getStoneSink() {
+        return stoneSink;
+    }
+
+    /**
+     * Sets a sink that receives the stones of each polygon as soon as the
+     * polygon is filled. The stones are not added to the ScreeData model, so
+     * the memory required does not grow with the number of generated stones.
+     * The sink is not closed by generateScree. Polygons are not cached when
+     * a sink is used.
+     *
+     * @param stoneSink the sink, or null to add stones to the ScreeData model.
+     */
+    public void setStoneSink(StoneSink stoneSink) {
+        this.stoneSink = stoneSink;
+    }
+
     /**
      * Generate scree and gully lines for all polygons inside a bounding box.
      *
@@ -50,7 +270,9 @@ public class ScreeGeneratorManager {
             boolean generateScreeStones) {
 
         this.stonesCounter = 0;
+        this.reusedPolygonsCounter = 0;
         this.generateScreeStones = generateScreeStones;
+        this.threadStatistics.clear();
 
         try {
             long startTime = System.currentTimeMillis();
@@ -68,84 +290,1236 @@ public class ScreeGeneratorManager {
             // remove existing scree dots
             screeGenerator.screeData.screeStones.removeAllGeoObjects();
 
-            // Resample shading to resolution of scree stones, used for placing
-            // stones with a Floyd-Steinberg diffuse dithering algorithm.
-            // The values in tempResampledShadingGrid will be changed when dithering.
-            if (progress != null) {
-                progress.setMessage("Resampling shaded relief for scree generation...");
-            }
-            double cellSize = screeGenerator.p.stoneMaxDiameter;
-            GeoImage resampledShading = screeGenerator.screeData.shadingImage.getResampledCopy(
-                    cellSize,
-                    RenderingHints.VALUE_INTERPOLATION_BICUBIC,
-                    BufferedImage.TYPE_BYTE_GRAY);
-            // convert from image to grid
-            GeoGridShort tempResampledShadingGrid = new ImageToGridOperator().operateToShort(resampledShading);
-            short[] minMax = tempResampledShadingGrid.getMinMax();
-
-            // apply gradation curve
-            if (screeGenerator.screeData.shadingGradationMaskImage != null) {
-                applyGradationCurves(screeGenerator.p,
-                        screeGenerator.screeData.shadingGradationMaskImage,
-                        tempResampledShadingGrid);
+            // find all polygons that intersect with screeBB
+            ArrayList<GeoPath> polygons = new ArrayList<>();
+            int nPolygons = screeGenerator.screeData.screePolygons.getNumberOfChildren();
+            for (int i = 0; i < nPolygons; i++) {
+                GeoObject polygon = screeGenerator.screeData.screePolygons.getGeoObject(i);
+                final Rectangle2D bounds = polygon.getBounds2D(GeoObject.UNDEFINED_SCALE);
+                if (screeBB != null && !GeometryUtils.rectanglesIntersect(screeBB, bounds)) {
+                    continue;
+                }
+                polygons.add((GeoPath) polygon);
+            }
+            this.polygonsCounter = 0;
+            this.polygonsTotal = polygons.size();
+
+            if (tileSize > 0) {
+                polygonCache.clear();
+                generateScreeInTiles(screeGenerator, screeBB, polygons, progress);
             } else {
-                screeGenerator.p.shadingGradationCurve1.applyToGrid(tempResampledShadingGrid.getGrid());
+                PolygonFiller filler = createPolygonFiller(screeGenerator,
+                        screeBB, screeGenerator.screeData.shadingImage, null,
+                        null, progress);
+                startFillingPolygons(progress);
+                if (incremental && stoneSink == null) {
+                    fillPolygonsIncrementally(screeGenerator, screeBB,
+                            polygons, filler, progress);
+                } else {
+                    fillPolygons(screeGenerator, polygons, filler, progress);
+                }
             }
 
-            GeoGridShort tempShadingGridToDither = tempResampledShadingGrid.clone();
+            long endTime = System.currentTimeMillis();
+            milliSecondsToGenerateStones = endTime - startTime;
+        } finally {
+            if (progress != null) {
+                progress.complete();
+            }
+        }
+    }
 
-            GeoGridShort tempLinesDensityGridToDither1 = null;
-            GeoGridShort tempLinesDensityGridToDither2 = null;
+    /**
+     * Generates a quick preview of the scree inside a rectangle. The preview
+     * differs from generateScree in these ways: only polygons intersecting the
+     * rectangle are filled, and only inside the rectangle; the shaded relief
+     * is decimated before it is resampled to the dither grid; gully lines are
+     * not extracted from the terrain model (gully lines loaded from a file are
+     * used); polygons are filled sequentially; and no more than
+     * PREVIEW_MAX_STONES_PER_POLYGON stones are placed in a polygon. The
+     * ScreeData model is only read and not changed.
+     *
+     * @param screeData the input data
+     * @param p the scree generation settings, which are not changed.
+     * @param previewBB the area of the preview
+     * @param progress the preview is aborted when this indicator is aborted.
+     * Other methods of the indicator are not called. Can be null.
+     * @return a GeoSet with a StoneStore for each polygon, or null if the
+     * preview was aborted.
+     */
+    public GeoSet generatePreview(ScreeData screeData, ScreeParameters p,
+            Rectangle2D previewBB, ProgressIndicator progress) {
 
-            if (screeGenerator.p.extractGullyLines) {
-                if (progress != null) {
-                    progress.setMessage("Resampling shaded relief for gully lines generation...");
-                }
-                resampledShading = screeGenerator.screeData.shadingImage.getResampledCopy(
-                        screeGenerator.getGullyGridCellsize(),
-                        RenderingHints.VALUE_INTERPOLATION_BICUBIC,
-                        BufferedImage.TYPE_BYTE_GRAY);
-                screeGenerator.screeData.lineDensityGrid = new ImageToGridOperator().operateToShort(resampledShading);
-                screeGenerator.p.lineGradationCurve.applyToGrid(screeGenerator.screeData.lineDensityGrid.getGrid());
-                tempLinesDensityGridToDither1 = screeGenerator.screeData.lineDensityGrid.clone();
-                tempLinesDensityGridToDither2 = screeGenerator.screeData.lineDensityGrid.clone();
+        this.stonesCounter = 0;
+        this.reusedPolygonsCounter = 0;
+        this.generateScreeStones = true;
+        this.threadStatistics.clear();
+        long startTime = System.currentTimeMillis();
+
+        ScreeGenerator screeGenerator = new ScreeGenerator();
+        screeGenerator.screeData = screeData;
+        screeGenerator.p = new ScreeParameters(p);
+        screeGenerator.p.extractGullyLines = false;
+        screeGenerator.setMaxStonesPerPolygon(PREVIEW_MAX_STONES_PER_POLYGON);
+
+        GeoSet stones = new GeoSet();
+        GeoImage shading = screeData.shadingImage;
+        if (shading == null) {
+            return stones;
+        }
+
+        // decimate the shading around the preview area
+        final double cellSize = screeGenerator.p.stoneMaxDiameter;
+        final int step = Math.max(1, (int) (cellSize
+                / PREVIEW_SHADING_PIXELS_PER_STONE / shading.getCellSize()));
+        Rectangle2D extent = new Rectangle2D.Double();
+        extent.setRect(previewBB);
+        GeometryUtils.enlargeRectangle(extent, tileHalo(screeGenerator.p,
+                screeGenerator.getGullyGridCellsize()));
+        GeoImage subImage = shading.getSubImage(extent);
+        if (!isLargerThanCell(subImage, cellSize)) {
+            return stones;
+        }
+        subImage = subImage.getDecimatedGrayCopy(step);
+
+        PolygonFiller filler = createPolygonFiller(screeGenerator, previewBB,
+                subImage, null, previewMinMax(shading, cellSize, step), null);
+        int nPolygons = screeData.screePolygons.getNumberOfChildren();
+        this.polygonsCounter = 0;
+        this.polygonsTotal = nPolygons;
+        for (int i = 0; i < nPolygons; i++) {
+            if (progress != null && progress.isAborted()) {
+                return null;
             }
+            GeoPath polygon = (GeoPath) screeData.screePolygons.getGeoObject(i);
+            Rectangle2D bounds = polygon.getBounds2D(GeoObject.UNDEFINED_SCALE);
+            if (!GeometryUtils.rectanglesIntersect(previewBB, bounds)) {
+                continue;
+            }
+            StoneStore polygonStones = filler.fill(polygon).getStones();
+            polygonsCounter++;
+            if (polygonStones != null && polygonStones.getStonesCount() > 0) {
+                stones.add(polygonStones);
+                stonesCounter += polygonStones.getStonesCount();
+            }
+        }
+        milliSecondsToGenerateStones = System.currentTimeMillis() - startTime;
+        return stones;
+    }
+
+    /**
+     * Returns the minimum and maximum values of the decimated shaded relief
+     * resampled to the size of stones. The values are cached for the next
+     * preview.
+     *
+     * @param shading the shaded relief
+     * @param cellSize the cell size of the resampled shading
+     * @param step the decimation step
+     * @return minimum and maximum values
+     */
+    private synchronized short[] previewMinMax(GeoImage shading,
+            double cellSize, int step) {
+        if (previewMinMax == null || previewMinMaxShading != shading
+                || previewMinMaxCellSize != cellSize) {
+            GeoImage decimated = shading.getDecimatedGrayCopy(step);
+            previewMinMax = new ImageResamplingOperator().operateToShort(
+                    decimated, cellSize).getMinMax();
+            previewMinMaxShading = shading;
+            previewMinMaxCellSize = cellSize;
+        }
+        return previewMinMax;
+    }
+
+    /**
+     * Resamples the shaded relief and prepares the grids for dithering stones
+     * and seed points of gully lines.
+     *
+     * @param screeGenerator used to create scree and gully lines
+     * @param screeBB create scree and gully lines inside this optional bounding
+     * box. Can be null.
+     * @param shading the shaded relief or a section of the shaded relief.
+     * @param extent only resample the shading inside this rectangle. Can be
+     * null.
+     * @param minMax minimum and maximum of the resampled shaded relief. If
+     * null, the minimum and maximum are computed from the resampled shading.
+     * @param progress a progress indicator for messages. Can be null.
+     * @return a PolygonFiller with the prepared grids.
+     */
+    private PolygonFiller createPolygonFiller(ScreeGenerator screeGenerator,
+            Rectangle2D screeBB,
+            GeoImage shading,
+            Rectangle2D extent,
+            short[] minMax,
+            ProgressIndicator progress) {
 
-            // prepare progress indicator for scree generation
+        // Resample shading to resolution of scree stones, used for placing
+        // stones with a Floyd-Steinberg diffuse dithering algorithm.
+        // The values in tempResampledShadingGrid will be changed when dithering.
+        if (progress != null) {
+            progress.setMessage("Resampling shaded relief for scree generation...");
+        }
+        double cellSize = screeGenerator.p.stoneMaxDiameter;
+        GeoGridShort tempResampledShadingGrid
+                = resample(shading, cellSize, extent);
+        if (minMax == null) {
+            minMax = tempResampledShadingGrid.getMinMax();
+        }
+
+        // apply gradation curve
+        if (screeGenerator.screeData.shadingGradationMaskImage != null) {
+            applyGradationCurves(screeGenerator.p,
+                    screeGenerator.screeData.shadingGradationMaskImage,
+                    tempResampledShadingGrid);
+        } else {
+            screeGenerator.p.shadingGradationCurve1.applyToGrid(tempResampledShadingGrid.getData());
+        }
+
+        GeoGridShort tempShadingGridToDither = tempResampledShadingGrid.clone();
+
+        GeoGridShort tempLinesDensityGridToDither1 = null;
+        GeoGridShort tempLinesDensityGridToDither2 = null;
+
+        if (screeGenerator.p.extractGullyLines) {
             if (progress != null) {
-                progress.enableCancel();
+                progress.setMessage("Resampling shaded relief for gully lines generation...");
             }
-            if (progress instanceof CmdLineProgress) {
-                progress.setMessage("Generating scree");
+            GeoGridShort lineDensityGrid = resample(shading,
+                    screeGenerator.getGullyGridCellsize(), extent);
+            screeGenerator.p.lineGradationCurve.applyToGrid(lineDensityGrid.getData());
+            tempLinesDensityGridToDither1 = lineDensityGrid.clone();
+            tempLinesDensityGridToDither2 = lineDensityGrid.clone();
+            // only retain the line density grid if it covers the entire shading
+            screeGenerator.screeData.lineDensityGrid = extent == null
+                    && shading == screeGenerator.screeData.shadingImage
+                    ? lineDensityGrid : null;
+        }
+
+        return new PolygonFiller(screeGenerator, screeBB,
+                tempResampledShadingGrid, minMax[0], minMax[1],
+                tempShadingGridToDither,
+                tempLinesDensityGridToDither1,
+                tempLinesDensityGridToDither2);
+    }
+
+    /**
+     * Resamples the shaded relief or a section of it.
+     *
+     * @param shading the shaded relief
+     * @param cellSize the cell size of the resampled shading
+     * @param extent only resample the shading inside this rectangle. Can be
+     * null.
+     * @return the resampled shading
+     */
+    private static GeoGridShort resample(GeoImage shading, double cellSize,
+            Rectangle2D extent) {
+        ImageResamplingOperator op = new ImageResamplingOperator();
+        return extent == null ? op.operateToShort(shading, cellSize)
+                : op.operateToShort(shading, cellSize, extent);
+    }
+
+    /**
+     * Prepares the progress indicator for filling polygons.
+     *
+     * @param progress progress indicator, can be null
+     */
+    private static void startFillingPolygons(ProgressIndicator progress) {
+        if (progress != null) {
+            progress.enableCancel();
+        }
+        if (progress instanceof CmdLineProgress) {
+            progress.setMessage("Generating scree");
+        }
+    }
+
+    /**
+     * Fills polygons sequentially on the calling thread if there is a single
+     * thread, otherwise concurrently on a fork-join pool. Polygons are also
+     * filled on the pool if there is only one polygon, so that its gully
+     * lines are traced concurrently on the pool.
+     *
+     * @param screeGenerator the ScreeGenerator receiving the generated scree
+     * @param polygons the polygons to fill
+     * @param filler fills a single polygon
+     * @param progress progress indicator, can be null
+     */
+    private void fillPolygons(ScreeGenerator screeGenerator,
+            List<GeoPath> polygons,
+            PolygonFiller filler,
+            ProgressIndicator progress) {
+        if (threadCount > 1) {
+            fillPolygonsConcurrently(screeGenerator, polygons, filler, progress);
+        } else {
+            for (GeoPath polygon : polygons) {
+                ScreeGenerator.PolygonScree polygonScree = filler.fill(polygon);
+                addPolygonScree(screeGenerator, polygon, polygonScree);
+                stonesCounter += polygonScree.getItemsCount();
+                updateProgressIndicator(progress, polygonsCounter++, polygonsTotal);
             }
+        }
+    }
 
-            // find all polygons that intersect with screeBB
-            int nPolygons = screeGenerator.screeData.screePolygons.getNumberOfChildren();
-            for (int i = 0; i < nPolygons; i++) {
-                GeoObject polygon = screeGenerator.screeData.screePolygons.getGeoObject(i);
-                final Rectangle2D bounds = polygon.getBounds2D(GeoObject.UNDEFINED_SCALE);
-                if (screeBB != null && !GeometryUtils.rectanglesIntersect(screeBB, bounds)) {
+    /**
+     * Returns the width of the margin around a tile. Inside this margin, the
+     * shaded relief is resampled and dithered, and stones and gully lines are
+     * searched.
+     *
+     * @param p scree generation settings
+     * @param gullyGridCellSize cell size of the grid for gully line seeds
+     * @return width of the margin in world coordinates
+     */
+    private static double tileHalo(ScreeParameters p, double gullyGridCellSize) {
+        // largest possible stone radius including jitter
+        double stoneSearchRadius = p.stoneMaxDiameter / 2 * p.stoneLargeMaxScale
+                * (1 + p.stoneRadiusVariabilityPerc / 100)
+                + p.stoneMaxDiameter * p.stoneMaxPosJitterFraction;
+        double halo = HALO_CELLS * p.stoneMaxDiameter + stoneSearchRadius;
+        if (p.extractGullyLines) {
+            double gullyHalo = HALO_CELLS * gullyGridCellSize + p.lineMinDistance;
+            halo = Math.max(halo, gullyHalo);
+        }
+        return halo;
+    }
+
+    /**
+     * Computes the minimum and maximum values of the shaded relief resampled
+     * to the size of stones. Tiles of the shaded relief are resampled one
+     * after the other, such that only a single tile is kept in memory.
+     *
+     * @param shading the shaded relief
+     * @param cellSize the cell size of the resampled shading
+     * @return minimum and maximum values
+     */
+    private short[] tiledResampledMinMax(GeoImage shading, double cellSize) {
+        short min = Short.MAX_VALUE;
+        short max = Short.MIN_VALUE;
+        Rectangle2D shadingBounds = shading.getBounds2D(GeoObject.UNDEFINED_SCALE);
+        final int tileCols = (int) Math.ceil(shadingBounds.getWidth() / tileSize);
+        final int tileRows = (int) Math.ceil(shadingBounds.getHeight() / tileSize);
+        for (int tileRow = 0; tileRow < tileRows; tileRow++) {
+            for (int tileCol = 0; tileCol < tileCols; tileCol++) {
+                Rectangle2D tile = new Rectangle2D.Double(
+                        shadingBounds.getMinX() + tileCol * tileSize,
+                        shadingBounds.getMaxY() - (tileRow + 1) * tileSize,
+                        tileSize, tileSize);
+                // the cells of neighboring tiles overlap along the tile
+                // borders, which does not change the minimum and maximum
+                GeoGridShort grid = resample(shading, cellSize, tile);
+                for (short v : grid.getData()) {
+                    if (v < min) {
+                        min = v;
+                    }
+                    if (v > max) {
+                        max = v;
+                    }
+                }
+            }
+        }
+        return new short[]{min, max};
+    }
+
+    /**
+     * Tests whether an image can be resampled to a cell size.
+     *
+     * @param image the image to test, can be null
+     * @param cellSize the cell size of the resampled image
+     * @return true if the resampled image has at least one column and one row
+     */
+    private static boolean isLargerThanCell(GeoImage image, double cellSize) {
+        return image != null
+                && image.getCols() * image.getCellSize() >= cellSize
+                && image.getRows() * image.getCellSize() >= cellSize;
+    }
+
+    /**
+     * Fills polygons tile by tile. Each polygon is assigned to the tile
+     * containing the center of its bounding box, such that polygons are never
+     * split at tile borders. For each tile, the shaded relief is resampled and
+     * dithered for the extent of its polygons plus a margin. The memory
+     * required is therefore proportional to the size of tiles (or the size of
+     * the largest polygon) instead of the size of the shaded relief.
+     *
+     * The grids of a tile are sections of the grids of the entire shaded
+     * relief with identical cells. The cells of the dither grids after filling
+     * a polygon are carried to the tiles of later neighboring polygons sharing
+     * these cells, and are copied to the dither grids of these tiles before
+     * they are filled. A polygon is only filled after all earlier polygons
+     * sharing cells of the dither grids, so tiles are visited repeatedly until
+     * all of their polygons are filled. The scree is added in the order of the
+     * polygons, and is identical to the scree generated without tiles.
+     *
+     * @param screeGenerator used to create scree and gully lines
+     * @param screeBB create scree and gully lines inside this optional bounding
+     * box. Can be null.
+     * @param polygons the polygons to fill
+     * @param progress progress indicator, can be null
+     */
+    private void generateScreeInTiles(ScreeGenerator screeGenerator,
+            Rectangle2D screeBB,
+            List<GeoPath> polygons,
+            ProgressIndicator progress) {
+
+        GeoImage shading = screeGenerator.screeData.shadingImage;
+        final double halo = tileHalo(screeGenerator.p,
+                screeGenerator.getGullyGridCellsize());
+
+        if (progress != null) {
+            progress.setMessage("Resampling shaded relief for scree generation...");
+        }
+        short[] minMax = tiledResampledMinMax(shading,
+                screeGenerator.p.stoneMaxDiameter);
+
+        // assign polygons to tiles. The key is the tile index in row-major
+        // order starting at the top-left corner of the shading.
+        final int nPolygons = polygons.size();
+        Rectangle2D shadingBounds = shading.getBounds2D(GeoObject.UNDEFINED_SCALE);
+        final int tileCols = Math.max(1, (int) Math.ceil(shadingBounds.getWidth() / tileSize));
+        TreeMap<Long, ArrayList<Integer>> tiles = new TreeMap<>();
+        for (int i = 0; i < nPolygons; i++) {
+            Rectangle2D bounds = polygons.get(i).getBounds2D(GeoObject.UNDEFINED_SCALE);
+            long tileCol = (long) Math.floor((bounds.getCenterX() - shadingBounds.getMinX()) / tileSize);
+            long tileRow = (long) Math.floor((shadingBounds.getMaxY() - bounds.getCenterY()) / tileSize);
+            Long key = tileRow * tileCols + tileCol;
+            ArrayList<Integer> tilePolygons = tiles.get(key);
+            if (tilePolygons == null) {
+                tilePolygons = new ArrayList<>();
+                tiles.put(key, tilePolygons);
+            }
+            tilePolygons.add(i);
+        }
+
+        // find the earlier polygons sharing cells of the dither grids with
+        // each polygon, and count the later polygons sharing cells
+        Rectangle2D[] extents = ditherExtents(screeGenerator, polygons);
+        ArrayList<ArrayList<Integer>> earlierNeighbors = new ArrayList<>();
+        int[] unfilledLaterNeighbors = new int[nPolygons];
+        for (int i = 0; i < nPolygons; i++) {
+            ArrayList<Integer> neighbors = new ArrayList<>();
+            for (int j = 0; j < i; j++) {
+                if (extents[i].intersects(extents[j])) {
+                    neighbors.add(j);
+                    unfilledLaterNeighbors[j]++;
+                }
+            }
+            earlierNeighbors.add(neighbors);
+        }
+
+        // cells of the dither grids after filling polygons, in the order the
+        // polygons were filled. Removed when all later neighbors are filled.
+        Map<Integer, TileDitherWindows> carriedWindows = new LinkedHashMap<>();
+
+        boolean[] filled = new boolean[nPolygons];
+        ScreeGenerator.PolygonScree[] results = new ScreeGenerator.PolygonScree[nPolygons];
+        int nextPolygonToAdd = 0;
+
+        startFillingPolygons(progress);
+        pendingResults = new IdentityHashMap<>();
+        pendingDitherWindows = Collections.synchronizedMap(
+                new IdentityHashMap<GeoPath, short[][]>());
+        try {
+            while (nextPolygonToAdd < nPolygons) {
+                for (ArrayList<Integer> tilePolygons : tiles.values()) {
+                    // polygons of this tile with all earlier neighbors filled
+                    ArrayList<Integer> ids = new ArrayList<>();
+                    ArrayList<GeoPath> readyPolygons = new ArrayList<>();
+                    Rectangle2D extent = null;
+                    for (int i : tilePolygons) {
+                        if (filled[i]) {
+                            continue;
+                        }
+                        boolean ready = true;
+                        for (int j : earlierNeighbors.get(i)) {
+                            ready &= filled[j];
+                        }
+                        if (!ready) {
+                            continue;
+                        }
+                        filled[i] = true;
+                        ids.add(i);
+                        readyPolygons.add(polygons.get(i));
+                        Rectangle2D bounds = polygons.get(i).getBounds2D(GeoObject.UNDEFINED_SCALE);
+                        if (extent == null) {
+                            extent = (Rectangle2D) bounds.clone();
+                        } else {
+                            extent.add(bounds);
+                        }
+                    }
+                    if (ids.isEmpty()) {
+                        continue;
+                    }
+
+                    GeometryUtils.enlargeRectangle(extent, halo);
+                    PolygonFiller filler = createPolygonFiller(screeGenerator,
+                            screeBB, shading, extent, minMax, null);
+                    if (filler.isEmpty()) {
+                        // skip polygons outside of the shading
+                        polygonsCounter += ids.size();
+                    } else {
+                        for (TileDitherWindows windows : carriedWindows.values()) {
+                            filler.writeDitherWindows(windows, shading);
+                        }
+                        fillPolygons(screeGenerator, readyPolygons, filler, progress);
+                        for (int k = 0; k < ids.size(); k++) {
+                            GeoPath polygon = readyPolygons.get(k);
+                            results[ids.get(k)] = pendingResults.remove(polygon);
+                            carriedWindows.put(ids.get(k), new TileDitherWindows(
+                                    filler.shadingDitherWindows(polygon, shading),
+                                    pendingDitherWindows.remove(polygon)));
+                        }
+                    }
+
+                    // release cells that are not shared with unfilled polygons
+                    for (int i : ids) {
+                        for (int j : earlierNeighbors.get(i)) {
+                            if (--unfilledLaterNeighbors[j] == 0) {
+                                carriedWindows.remove(j);
+                            }
+                        }
+                        if (unfilledLaterNeighbors[i] == 0) {
+                            carriedWindows.remove(i);
+                        }
+                    }
+
+                    // add scree in the order of the polygons
+                    while (nextPolygonToAdd < nPolygons && filled[nextPolygonToAdd]) {
+                        if (results[nextPolygonToAdd] != null) {
+                            addToScreeData(screeGenerator, results[nextPolygonToAdd]);
+                            results[nextPolygonToAdd] = null;
+                        }
+                        nextPolygonToAdd++;
+                    }
+                }
+            }
+        } finally {
+            pendingResults = null;
+            pendingDitherWindows = null;
+        }
+    }
+
+    /**
+     * The cells of the dither grids after filling a polygon in a tile and the
+     * position of the cells in the dither grids of the entire shaded relief.
+     */
+    private static final class TileDitherWindows {
+
+        // first column, last column, first row and last row in the dither
+        // grids of the entire shaded relief. Null for missing grids.
+        private final int[][] shadingWindows;
+        private final short[][] cells;
+
+        private TileDitherWindows(int[][] shadingWindows, short[][] cells) {
+            this.shadingWindows = shadingWindows;
+            this.cells = cells;
+        }
+    }
+
+    /**
+     * Returns the column and row of the first cell of a grid in the grid
+     * resampled from the entire shaded relief.
+     *
+     * @param grid a section of the resampled shaded relief
+     * @param shading the shaded relief
+     * @return column and row
+     */
+    private static int[] shadingGridOffset(GeoGridShort grid, GeoImage shading) {
+        final double cellSize = grid.getCellSize();
+        return new int[]{
+            (int) Math.round((grid.getWest() - shading.getWest()) / cellSize - 0.5),
+            (int) Math.round((shading.getNorth() - grid.getNorth()) / cellSize - 0.5)};
+    }
+
+    /**
+     * Fills a single polygon with a ScreeGenerator and records throughput
+     * statistics for the current thread.
+     */
+    private final class PolygonFiller {
+
+        private final ScreeGenerator screeGenerator;
+        private final Rectangle2D screeBB;
+        private final GeoGridShort shadingGrid;
+        private final float minShading;
+        private final float maxShading;
+        private final GeoGridShort tempShadingGridToDither;
+        private final GeoGridShort tempLinesDensityGridToDither1;
+        private final GeoGridShort tempLinesDensityGridToDither2;
+
+        private PolygonFiller(ScreeGenerator screeGenerator,
+                Rectangle2D screeBB,
+                GeoGridShort shadingGrid,
+                float minShading, float maxShading,
+                GeoGridShort tempShadingGridToDither,
+                GeoGridShort tempLinesDensityGridToDither1,
+                GeoGridShort tempLinesDensityGridToDither2) {
+            this.screeGenerator = screeGenerator;
+            this.screeBB = screeBB;
+            this.shadingGrid = shadingGrid;
+            this.minShading = minShading;
+            this.maxShading = maxShading;
+            this.tempShadingGridToDither = tempShadingGridToDither;
+            this.tempLinesDensityGridToDither1 = tempLinesDensityGridToDither1;
+            this.tempLinesDensityGridToDither2 = tempLinesDensityGridToDither2;
+        }
+
+        private ScreeGenerator.PolygonScree fill(GeoPath polygon) {
+            long startTime = System.currentTimeMillis();
+            ScreeGenerator.PolygonScree polygonScree
+                    = screeGenerator.computeScreeForPolygon(screeBB,
+                            polygon,
+                            shadingGrid,
+                            minShading, maxShading,
+                            tempShadingGridToDither,
+                            tempLinesDensityGridToDither1,
+                            tempLinesDensityGridToDither2,
+                            generateScreeStones);
+            long milliSeconds = System.currentTimeMillis() - startTime;
+
+            // store the dither grid cells changed by this polygon
+            if (pendingDitherWindows != null) {
+                pendingDitherWindows.put(polygon, readDitherWindows(polygon));
+            }
+
+            String threadName = Thread.currentThread().getName();
+            ThreadStatistics stats = threadStatistics.get(threadName);
+            if (stats == null) {
+                stats = new ThreadStatistics();
+                ThreadStatistics existing = threadStatistics.putIfAbsent(threadName, stats);
+                if (existing != null) {
+                    stats = existing;
+                }
+            }
+            stats.add(polygonScree.getItemsCount(), milliSeconds);
+            return polygonScree;
+        }
+
+        /**
+         * Returns the dither grids, which are changed when filling polygons.
+         * Grids are null if gully lines are not extracted.
+         */
+        private GeoGridShort[] ditherGrids() {
+            return new GeoGridShort[]{tempShadingGridToDither,
+                tempLinesDensityGridToDither1,
+                tempLinesDensityGridToDither2};
+        }
+
+        /**
+         * Copies the cells of the dither grids that can be changed by filling
+         * a polygon.
+         *
+         * @param polygon the polygon
+         * @return the cells of each dither grid, null for missing grids.
+         */
+        private short[][] readDitherWindows(GeoPath polygon) {
+            Rectangle2D bounds = polygon.getBounds2D(GeoObject.UNDEFINED_SCALE);
+            GeoGridShort[] grids = ditherGrids();
+            short[][] windows = new short[grids.length][];
+            for (int i = 0; i < grids.length; i++) {
+                int[] w = ditherWindow(grids[i], bounds);
+                if (w == null) {
                     continue;
                 }
+                final int cols = w[1] - w[0] + 1;
+                final int gridCols = grids[i].getCols();
+                short[] cells = grids[i].getData();
+                windows[i] = new short[cols * (w[3] - w[2] + 1)];
+                for (int r = w[2], j = 0; r <= w[3]; r++, j += cols) {
+                    System.arraycopy(cells, r * gridCols + w[0], windows[i], j, cols);
+                }
+            }
+            return windows;
+        }
 
-                int nItems = screeGenerator.generateScreeForPolygon(screeBB,
-                        (GeoPath) polygon,
-                        tempResampledShadingGrid,
-                        minMax[0], minMax[1],
-                        tempShadingGridToDither,
-                        tempLinesDensityGridToDither1,
-                        tempLinesDensityGridToDither2,
-                        generateScreeStones);
-                stonesCounter += nItems;
+        /**
+         * Restores the cells of the dither grids after filling a polygon.
+         *
+         * @param polygon the polygon
+         * @param windows the cells returned by readDitherWindows
+         */
+        private void writeDitherWindows(GeoPath polygon, short[][] windows) {
+            Rectangle2D bounds = polygon.getBounds2D(GeoObject.UNDEFINED_SCALE);
+            GeoGridShort[] grids = ditherGrids();
+            for (int i = 0; i < grids.length; i++) {
+                int[] w = ditherWindow(grids[i], bounds);
+                if (w == null) {
+                    continue;
+                }
+                final int cols = w[1] - w[0] + 1;
+                final int gridCols = grids[i].getCols();
+                short[] cells = grids[i].getData();
+                for (int r = w[2], j = 0; r <= w[3]; r++, j += cols) {
+                    System.arraycopy(windows[i], j, cells, r * gridCols + w[0], cols);
+                }
+            }
+        }
 
-                updateProgressIndicator(progress, i, nPolygons);
+        /**
+         * Returns the position of the cells of the dither grids returned by
+         * readDitherWindows in the dither grids of the entire shaded relief.
+         *
+         * @param polygon the polygon
+         * @param shading the shaded relief
+         * @return first column, last column, first row and last row of each
+         * dither grid, null for missing grids.
+         */
+        private int[][] shadingDitherWindows(GeoPath polygon, GeoImage shading) {
+            Rectangle2D bounds = polygon.getBounds2D(GeoObject.UNDEFINED_SCALE);
+            GeoGridShort[] grids = ditherGrids();
+            int[][] shadingWindows = new int[grids.length][];
+            for (int i = 0; i < grids.length; i++) {
+                int[] w = ditherWindow(grids[i], bounds);
+                if (w == null) {
+                    continue;
+                }
+                int[] offset = shadingGridOffset(grids[i], shading);
+                shadingWindows[i] = new int[]{w[0] + offset[0], w[1] + offset[0],
+                    w[2] + offset[1], w[3] + offset[1]};
             }
+            return shadingWindows;
+        }
 
-            long endTime = System.currentTimeMillis();
-            milliSecondsToGenerateStones = endTime - startTime;
+        /**
+         * Copies the cells of the dither grids of a polygon filled in another
+         * tile to the overlapping cells of the dither grids.
+         *
+         * @param windows the cells of the polygon filled in another tile
+         * @param shading the shaded relief
+         */
+        private void writeDitherWindows(TileDitherWindows windows, GeoImage shading) {
+            GeoGridShort[] grids = ditherGrids();
+            for (int i = 0; i < grids.length; i++) {
+                int[] w = windows.shadingWindows[i];
+                if (grids[i] == null || w == null) {
+                    continue;
+                }
+                int[] offset = shadingGridOffset(grids[i], shading);
+                final int gridCols = grids[i].getCols();
+                final int firstCol = Math.max(w[0] - offset[0], 0);
+                final int lastCol = Math.min(w[1] - offset[0], gridCols - 1);
+                final int firstRow = Math.max(w[2] - offset[1], 0);
+                final int lastRow = Math.min(w[3] - offset[1], grids[i].getRows() - 1);
+                if (firstCol > lastCol || firstRow > lastRow) {
+                    continue;
+                }
+                final int windowCols = w[1] - w[0] + 1;
+                short[] cells = grids[i].getData();
+                for (int r = firstRow; r <= lastRow; r++) {
+                    final int j = (r + offset[1] - w[2]) * windowCols
+                            + firstCol + offset[0] - w[0];
+                    System.arraycopy(windows.cells[i], j, cells,
+                            r * gridCols + firstCol, lastCol - firstCol + 1);
+                }
+            }
+        }
+
+        /**
+         * Returns whether a dither grid has no cells, which is the case if the
+         * shaded relief was resampled outside of its extent.
+         */
+        private boolean isEmpty() {
+            for (GeoGridShort grid : ditherGrids()) {
+                if (grid != null && (grid.getCols() == 0 || grid.getRows() == 0)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Returns the extents of the dither grids changed by each polygon. Filling
+     * a polygon reads and changes the dither grids within the bounding box of
+     * the polygon plus a margin of up to three cells. Polygons with
+     * intersecting extents must be filled in the order of the polygons.
+     *
+     * @param screeGenerator the ScreeGenerator with the scree parameters
+     * @param polygons the polygons
+     * @return the bounding box of each polygon plus a margin
+     */
+    private static Rectangle2D[] ditherExtents(ScreeGenerator screeGenerator,
+            List<GeoPath> polygons) {
+        double margin = 3 * screeGenerator.p.stoneMaxDiameter;
+        if (screeGenerator.p.extractGullyLines) {
+            margin = Math.max(margin, 3 * screeGenerator.getGullyGridCellsize());
+        }
+        final int nPolygons = polygons.size();
+        Rectangle2D[] extents = new Rectangle2D[nPolygons];
+        for (int i = 0; i < nPolygons; i++) {
+            Rectangle2D bounds = polygons.get(i).getBounds2D(GeoObject.UNDEFINED_SCALE);
+            extents[i] = new Rectangle2D.Double(bounds.getMinX() - margin,
+                    bounds.getMinY() - margin,
+                    bounds.getWidth() + 2 * margin,
+                    bounds.getHeight() + 2 * margin);
+        }
+        return extents;
+    }
+
+    /**
+     * Adds the scree of a polygon to the ScreeData model, or stores it until
+     * all polygons are filled if polygons are filled incrementally.
+     *
+     * @param screeGenerator the ScreeGenerator receiving the generated scree
+     * @param polygon the filled polygon
+     * @param polygonScree the scree of the polygon
+     */
+    private void addPolygonScree(ScreeGenerator screeGenerator, GeoPath polygon,
+            ScreeGenerator.PolygonScree polygonScree) {
+        if (pendingResults != null) {
+            pendingResults.put(polygon, polygonScree);
+        } else {
+            addToScreeData(screeGenerator, polygonScree);
+        }
+    }
+
+    /**
+     * Adds the scree of a polygon to the ScreeData model, or passes the stones
+     * to the StoneSink.
+     *
+     * @param screeGenerator the ScreeGenerator receiving the generated scree
+     * @param polygonScree the scree of the polygon
+     */
+    private void addToScreeData(ScreeGenerator screeGenerator,
+            ScreeGenerator.PolygonScree polygonScree) {
+        if (stoneSink != null) {
+            try {
+                screeGenerator.addToScreeData(polygonScree, stoneSink);
+            } catch (IOException ex) {
+                throw new IllegalStateException(ex);
+            }
+        } else {
+            screeGenerator.addToScreeData(polygonScree);
+        }
+    }
+
+    /**
+     * Fills polygons on a fork-join pool. Polygons are grouped in waves. A
+     * polygon is placed in the wave following the last wave containing an
+     * earlier polygon that shares cells of the dither grids. The polygons of a
+     * wave are filled concurrently, and the waves are processed one after the
+     * other. The results are added to the ScreeData model in the original
+     * order of the polygons.
+     *
+     * @param screeGenerator the ScreeGenerator receiving the generated scree
+     * @param polygons the polygons to fill
+     * @param filler fills a single polygon
+     * @param progress progress indicator, can be null
+     */
+    private void fillPolygonsConcurrently(ScreeGenerator screeGenerator,
+            final List<GeoPath> polygons,
+            final PolygonFiller filler,
+            ProgressIndicator progress) {
+
+        final int nPolygons = polygons.size();
+        Rectangle2D[] extents = ditherExtents(screeGenerator, polygons);
+
+        // assign each polygon to a wave
+        int[] waves = new int[nPolygons];
+        int nWaves = 0;
+        for (int i = 0; i < nPolygons; i++) {
+            int wave = 0;
+            for (int j = 0; j < i; j++) {
+                if (waves[j] >= wave && extents[i].intersects(extents[j])) {
+                    wave = waves[j] + 1;
+                }
+            }
+            waves[i] = wave;
+            nWaves = Math.max(nWaves, wave + 1);
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(threadCount);
+        try {
+            ScreeGenerator.PolygonScree[] results = new ScreeGenerator.PolygonScree[nPolygons];
+            int nextPolygonToAdd = 0;
+            for (int wave = 0; wave < nWaves; wave++) {
+                ArrayList<Future<ScreeGenerator.PolygonScree>> futures = new ArrayList<>();
+                ArrayList<Integer> ids = new ArrayList<>();
+                for (int i = 0; i < nPolygons; i++) {
+                    if (waves[i] == wave) {
+                        final GeoPath polygon = polygons.get(i);
+                        futures.add(pool.submit(new Callable<ScreeGenerator.PolygonScree>() {
+                            @Override
+                            public ScreeGenerator.PolygonScree call() {
+                                return filler.fill(polygon);
+                            }
+                        }));
+                        ids.add(i);
+                    }
+                }
+                for (int i = 0; i < futures.size(); i++) {
+                    results[ids.get(i)] = futures.get(i).get();
+                }
+
+                // add results in the original order of the polygons
+                while (nextPolygonToAdd < nPolygons && results[nextPolygonToAdd] != null) {
+                    addPolygonScree(screeGenerator, polygons.get(nextPolygonToAdd),
+                            results[nextPolygonToAdd]);
+                    stonesCounter += results[nextPolygonToAdd].getItemsCount();
+                    results[nextPolygonToAdd] = null;
+                    updateProgressIndicator(progress, polygonsCounter++, polygonsTotal);
+                    nextPolygonToAdd++;
+                }
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(ex);
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause);
         } finally {
-            if (progress != null) {
-                progress.complete();
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Returns the cells of a dither grid that can be read or changed when
+     * filling a polygon. Dithering changes the cells of stones inside the
+     * bounding box of the polygon and their right, left and lower neighbors.
+     * Seeds for gully lines are placed up to one cell right of and below the
+     * bounding box.
+     *
+     * @param grid the dither grid, can be null
+     * @param bounds the bounding box of the polygon
+     * @return first column, last column, first row and last row, or null if
+     * the grid is null or the polygon is outside of the grid.
+     */
+    private static int[] ditherWindow(GeoGridShort grid, Rectangle2D bounds) {
+        if (grid == null) {
+            return null;
+        }
+        final double cellSize = grid.getCellSize();
+        final double west = grid.getWest();
+        final double north = grid.getNorth();
+        int firstCol = (int) Math.floor((bounds.getMinX() - west) / cellSize) - 1;
+        int lastCol = (int) Math.floor((bounds.getMaxX() - west) / cellSize) + 2;
+        int firstRow = (int) Math.floor((north - bounds.getMaxY()) / cellSize);
+        int lastRow = (int) Math.floor((north - bounds.getMinY()) / cellSize) + 2;
+        firstCol = Math.max(firstCol, 0);
+        lastCol = Math.min(lastCol, grid.getCols() - 1);
+        firstRow = Math.max(firstRow, 0);
+        lastRow = Math.min(lastRow, grid.getRows() - 1);
+        if (firstCol > lastCol || firstRow > lastRow) {
+            return null;
+        }
+        return new int[]{firstCol, lastCol, firstRow, lastRow};
+    }
+
+    /**
+     * Fills only polygons that changed since the last generation and reuses
+     * the cached scree for the other polygons. The fingerprint of a polygon
+     * combines its geometry, the input data around it, the parameters and the
+     * fingerprints of all earlier polygons sharing cells of the dither grids.
+     * A changed polygon therefore also changes the fingerprints of all
+     * following neighbors. For unchanged polygons, the cached cells of the
+     * dither grids are restored, such that the changed polygons are dithered
+     * exactly as in a complete generation.
+     *
+     * @param screeGenerator the ScreeGenerator receiving the generated scree
+     * @param screeBB the optional bounding box for generating scree
+     * @param polygons the polygons to fill
+     * @param filler fills a single polygon
+     * @param progress progress indicator, can be null
+     */
+    private void fillPolygonsIncrementally(ScreeGenerator screeGenerator,
+            Rectangle2D screeBB,
+            List<GeoPath> polygons,
+            PolygonFiller filler,
+            ProgressIndicator progress) {
+
+        final int nPolygons = polygons.size();
+        Rectangle2D[] extents = ditherExtents(screeGenerator, polygons);
+
+        // compute fingerprints before any dither grid is changed
+        final long dataFingerprint = dataFingerprint(screeGenerator, filler);
+        final long[] fingerprints = new long[nPolygons];
+        for (int i = 0; i < nPolygons; i++) {
+            Fingerprint f = new Fingerprint();
+            f.add(dataFingerprint);
+            addPolygonFingerprint(f, screeGenerator, filler, polygons.get(i),
+                    extents[i], screeBB);
+            for (int j = 0; j < i; j++) {
+                if (extents[i].intersects(extents[j])) {
+                    f.add(fingerprints[j]);
+                }
+            }
+            fingerprints[i] = f.value();
+        }
+
+        // restore the dither grids of unchanged polygons
+        CachedPolygonScree[] cached = new CachedPolygonScree[nPolygons];
+        ArrayList<GeoPath> changedPolygons = new ArrayList<>();
+        for (int i = 0; i < nPolygons; i++) {
+            cached[i] = polygonCache.get(fingerprints[i]);
+            if (cached[i] != null) {
+                filler.writeDitherWindows(polygons.get(i), cached[i].ditherWindows);
+            } else {
+                changedPolygons.add(polygons.get(i));
+            }
+        }
+
+        // fill changed polygons, then add all scree in the order of polygons
+        Map<Long, CachedPolygonScree> newCache = new HashMap<>();
+        pendingResults = new IdentityHashMap<>();
+        pendingDitherWindows = Collections.synchronizedMap(
+                new IdentityHashMap<GeoPath, short[][]>());
+        try {
+            fillPolygons(screeGenerator, changedPolygons, filler, progress);
+            for (int i = 0; i < nPolygons; i++) {
+                CachedPolygonScree polygonScree = cached[i];
+                if (polygonScree == null) {
+                    GeoPath polygon = polygons.get(i);
+                    polygonScree = new CachedPolygonScree(
+                            pendingResults.get(polygon),
+                            pendingDitherWindows.get(polygon));
+                } else {
+                    stonesCounter += polygonScree.polygonScree.getItemsCount();
+                    reusedPolygonsCounter++;
+                    updateProgressIndicator(progress, polygonsCounter++, polygonsTotal);
+                }
+                screeGenerator.addToScreeData(polygonScree.polygonScree);
+                newCache.put(fingerprints[i], polygonScree);
+            }
+        } finally {
+            pendingResults = null;
+            pendingDitherWindows = null;
+        }
+        polygonCache = newCache;
+    }
+
+    /**
+     * Returns a fingerprint of the data shared by all polygons: the parameters,
+     * the extent of the grids and images, and fixed gully lines.
+     */
+    private long dataFingerprint(ScreeGenerator screeGenerator,
+            PolygonFiller filler) {
+        ScreeParameters p = screeGenerator.p;
+        ScreeData screeData = screeGenerator.screeData;
+        Fingerprint f = new Fingerprint();
+        f.add(p.stoneMaxDiameter);
+        f.add(p.stoneMinDiameterScale);
+        f.add(p.stoneMinDistanceFraction);
+        f.add(p.stoneMinObstacleDistanceFraction);
+        f.add(p.stoneRadiusVariabilityPerc);
+        f.add(p.stoneAngleVariabilityPerc);
+        f.add(p.stoneLargeMaxScale);
+        f.add(p.stoneMinCornerCount);
+        f.add(p.stoneMaxCornerCount);
+        f.add(p.stoneMaxPosJitterFraction);
+        f.add(p.stoneTemplates);
+        f.add(p.extractGullyLines);
+        f.add(p.lineGradationCurve.toString());
+        f.add(p.lineStoneDistFraction);
+        f.add(p.lineSizeScaleTop);
+        f.add(p.lineSizeScaleBottom);
+        f.add(p.lineToPointDistFraction);
+        f.add(p.lineMinDistance);
+        f.add(p.lineMinLengthApprox);
+        f.add(p.lineMinSlopeDegree);
+        f.add(p.lineMinCurvature);
+        f.add(p.shadingGradationCurve1.toString());
+        f.add(p.shadingGradationCurve2.toString());
+        f.add(screeGenerator.getPointRasterType().name());
+        f.add(generateScreeStones);
+        f.add(filler.minShading);
+        f.add(filler.maxShading);
+        addRasterExtent(f, filler.shadingGrid);
+        addRasterExtent(f, filler.tempLinesDensityGridToDither1);
+        addRasterExtent(f, screeData.obstaclesMaskImage);
+        addRasterExtent(f, screeData.largeStoneMaskImage);
+        addRasterExtent(f, screeData.dem);
+        addRasterExtent(f, screeData.curvatureGrid);
+        f.add(screeData.fixedScreeLines);
+        if (screeData.fixedScreeLines) {
+            addGeometry(f, screeData.gullyLines);
+        }
+        return f.value();
+    }
+
+    /**
+     * Adds the geometry of a polygon and the input data around it to a
+     * fingerprint.
+     */
+    private void addPolygonFingerprint(Fingerprint f,
+            ScreeGenerator screeGenerator,
+            PolygonFiller filler,
+            GeoPath polygon,
+            Rectangle2D extent,
+            Rectangle2D screeBB) {
+        ScreeData screeData = screeGenerator.screeData;
+        addGeometry(f, polygon);
+
+        // the area from which data is read when filling the polygon: stones
+        // are searched and resampled around the polygon, and stones are placed
+        // along entire fixed gully lines.
+        Rectangle2D region = (Rectangle2D) extent.clone();
+        if (screeData.fixedScreeLines) {
+            addFixedLinesBounds(screeData.gullyLines,
+                    polygon.getBounds2D(GeoObject.UNDEFINED_SCALE), region);
+        }
+        double margin = tileHalo(screeGenerator.p, screeGenerator.getGullyGridCellsize());
+        if (screeData.dem != null) {
+            margin += 2 * screeData.dem.getCellSize();
+        }
+        GeometryUtils.enlargeRectangle(region, margin);
+
+        if (screeBB == null) {
+            f.add(false);
+        } else {
+            f.add(true);
+            Rectangle2D clip = region.createIntersection(screeBB);
+            f.add(clip.getMinX()).add(clip.getMinY());
+            f.add(clip.getWidth()).add(clip.getHeight());
+        }
+        addGridWindow(f, filler.shadingGrid, region);
+        addGridWindow(f, filler.tempLinesDensityGridToDither1, region);
+        addImageWindow(f, screeData.obstaclesMaskImage, region);
+        addImageWindow(f, screeData.largeStoneMaskImage, region);
+        if (screeGenerator.p.extractGullyLines && !screeData.fixedScreeLines) {
+            addGridWindow(f, screeData.dem, region);
+            addGridWindow(f, screeData.curvatureGrid, region);
+        }
+    }
+
+    /**
+     * Extends a rectangle with the bounding boxes of all lines that intersect
+     * a bounding box.
+     */
+    private static void addFixedLinesBounds(GeoSet lines, Rectangle2D bounds,
+            Rectangle2D region) {
+        final int nLines = lines.getNumberOfChildren();
+        for (int i = 0; i < nLines; i++) {
+            GeoObject line = lines.getGeoObject(i);
+            if (line instanceof GeoSet) {
+                addFixedLinesBounds((GeoSet) line, bounds, region);
+            } else {
+                Rectangle2D lineBounds = line.getBounds2D(GeoObject.UNDEFINED_SCALE);
+                if (lineBounds != null && lineBounds.intersects(bounds)) {
+                    region.add(lineBounds);
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds the coordinates of all paths in a GeoSet or of a single GeoPath to
+     * a fingerprint.
+     */
+    private static void addGeometry(Fingerprint f, GeoObject geoObject) {
+        if (geoObject instanceof GeoSet) {
+            GeoSet geoSet = (GeoSet) geoObject;
+            final int n = geoSet.getNumberOfChildren();
+            f.add(n);
+            for (int i = 0; i < n; i++) {
+                addGeometry(f, geoSet.getGeoObject(i));
+            }
+        } else if (geoObject instanceof GeoPath) {
+            PathIterator iterator = ((GeoPath) geoObject).toPath().getPathIterator(null);
+            double[] coords = new double[6];
+            while (!iterator.isDone()) {
+                final int type = iterator.currentSegment(coords);
+                f.add(type);
+                for (int i = 0; i < 6; i++) {
+                    f.add(coords[i]);
+                }
+                iterator.next();
+            }
+        }
+    }
+
+    private static void addRasterExtent(Fingerprint f, ika.geo.AbstractRaster raster) {
+        if (raster == null) {
+            f.add(-1L);
+        } else {
+            f.add(raster.getWest()).add(raster.getNorth());
+            f.add(raster.getCellSize());
+            f.add(raster.getCols()).add(raster.getRows());
+        }
+    }
+
+    /**
+     * Returns the columns and rows of a raster inside a rectangle.
+     *
+     * @return first column, last column, first row and last row, or null if
+     * the raster is null or outside of the rectangle.
+     */
+    private static int[] rasterWindow(ika.geo.AbstractRaster raster,
+            Rectangle2D region) {
+        if (raster == null) {
+            return null;
+        }
+        final double cellSize = raster.getCellSize();
+        int firstCol = (int) Math.floor((region.getMinX() - raster.getWest()) / cellSize);
+        int lastCol = (int) Math.ceil((region.getMaxX() - raster.getWest()) / cellSize);
+        int firstRow = (int) Math.floor((raster.getNorth() - region.getMaxY()) / cellSize);
+        int lastRow = (int) Math.ceil((raster.getNorth() - region.getMinY()) / cellSize);
+        firstCol = Math.max(firstCol, 0);
+        lastCol = Math.min(lastCol, raster.getCols() - 1);
+        firstRow = Math.max(firstRow, 0);
+        lastRow = Math.min(lastRow, raster.getRows() - 1);
+        if (firstCol > lastCol || firstRow > lastRow) {
+            return null;
+        }
+        return new int[]{firstCol, lastCol, firstRow, lastRow};
+    }
+
+    private static void addGridWindow(Fingerprint f, GeoGridShort grid,
+            Rectangle2D region) {
+        int[] w = rasterWindow(grid, region);
+        if (w == null) {
+            f.add(-1L);
+            return;
+        }
+        final int cols = grid.getCols();
+        short[] cells = grid.getData();
+        for (int r = w[2]; r <= w[3]; r++) {
+            for (int c = w[0]; c <= w[1]; c++) {
+                f.add(cells[r * cols + c]);
+            }
+        }
+    }
+
+    private static void addGridWindow(Fingerprint f, GeoGrid grid,
+            Rectangle2D region) {
+        int[] w = rasterWindow(grid, region);
+        if (w == null) {
+            f.add(-1L);
+            return;
+        }
+        for (int r = w[2]; r <= w[3]; r++) {
+            for (int c = w[0]; c <= w[1]; c++) {
+                f.add(Float.floatToIntBits(grid.getValue(c, r)));
+            }
+        }
+    }
+
+    private static void addImageWindow(Fingerprint f, GeoImage image,
+            Rectangle2D region) {
+        int[] w = rasterWindow(image, region);
+        if (w == null) {
+            f.add(-1L);
+            return;
+        }
+        final int cols = w[1] - w[0] + 1;
+        // read the pixels of a memory-mapped image from the mapped file
+        final MappedGrayImage mappedImage = image.getMappedImage();
+        if (mappedImage != null) {
+            byte[] gray = new byte[cols];
+            for (int r = w[2]; r <= w[3]; r++) {
+                mappedImage.getGrayRow(r, w[0], cols, gray);
+                for (byte v : gray) {
+                    f.add(v & 0xff);
+                }
+            }
+            return;
+        }
+        Raster raster = image.getBufferedImage().getRaster();
+        int[] pixels = null;
+        for (int r = w[2]; r <= w[3]; r++) {
+            pixels = raster.getPixels(w[0], r, cols, 1, pixels);
+            for (int v : pixels) {
+                f.add(v);
             }
         }
     }
@@ -168,12 +1542,13 @@ public class ScreeGeneratorManager {
         final double west = tempResampledShadingGrid.getWest();
         final double north = tempResampledShadingGrid.getNorth();
         final double cellSize = tempResampledShadingGrid.getCellSize();
-        final short[][] grid = tempResampledShadingGrid.getGrid();
-        for (int r = 0; r < grid.length; r++) {
-            final short[] row = grid[r];
+        final int cols = tempResampledShadingGrid.getCols();
+        final int rows = tempResampledShadingGrid.getRows();
+        final short[] grid = tempResampledShadingGrid.getData();
+        for (int r = 0; r < rows; r++) {
             final double y = north - cellSize * r;
-            for (int c = 0; c < row.length; c++) {
-                final float v = row[c];
+            for (int c = 0, i = r * cols; c < cols; c++, i++) {
+                final float v = grid[i];
                 final double x = west + cellSize * c;
                 final int gray = maskImage.getNearestGrayNeighbor(x, y);
                 final double w;
@@ -183,11 +1558,11 @@ public class ScreeGeneratorManager {
                     w = gray / 255d;
                 }
                 if (v <= 0) {
-                    row[c] = (short) (w * table1[0] + (1 - w) * table2[0]);
+                    grid[i] = (short) (w * table1[0] + (1 - w) * table2[0]);
                 } else if (v >= 255) {
-                    row[c] = (short) (w * table1[255] + (1 - w) * table2[255]);
+                    grid[i] = (short) (w * table1[255] + (1 - w) * table2[255]);
                 } else {
-                    row[c] = (short) (w * table1[(int) v] + (1 - w) * table2[(int) v]);
+                    grid[i] = (short) (w * table1[(int) v] + (1 - w) * table2[(int) v]);
                 }
 
             }
@@ -245,6 +1620,31 @@ public class ScreeGeneratorManager {
         sb.append("Time required: ");
         sb.append(format.format(milliSecondsToGenerateStones / 1000d));
         sb.append(" seconds");
+        if (incremental) {
+            sb.append("<br>Polygons reused from previous generation: ");
+            sb.append(reusedPolygonsCounter);
+            sb.append(" of ");
+            sb.append(polygonsTotal);
+        }
+        if (threadStatistics.size() > 1) {
+            // per-thread throughput, sorted by thread name
+            Map<String, ThreadStatistics> stats = new TreeMap<>(threadStatistics);
+            sb.append("<br>Threads: ");
+            sb.append(stats.size());
+            for (Map.Entry<String, ThreadStatistics> entry : stats.entrySet()) {
+                ThreadStatistics t = entry.getValue();
+                sb.append("<br>&nbsp;&nbsp;");
+                sb.append(entry.getKey());
+                sb.append(": ");
+                sb.append(t.polygons);
+                sb.append(" polygons, ");
+                sb.append(format.format(t.items));
+                sb.append(this.generateScreeStones ? " stones" : " lines");
+                sb.append(", ");
+                sb.append(format.format(t.items / Math.max(t.milliSeconds / 1000d, 0.001)));
+                sb.append(" per second");
+            }
+        }
         sb.append("</html>");
         return sb.toString();
     }
@@ -6,6 +6,7 @@ import ika.geoexport.GeoSetExporter;
 import ika.geoexport.GeospatialPDFExporter;
 import ika.geoexport.ShapeExporter;
 import ika.geoexport.ShapeGeometryExporter;
+import ika.geoexport.StoneSinkExporter;
 import ika.geoexport.VectorGraphicsExporter;
 import ika.gui.GeoExportGUI;
 import ika.gui.PageFormat;
@@ -59,10 +60,10 @@ public class ScreePainterBatch {
      */
     private static void printUsage() {
         System.out.println(
-                "Usage: ScreePainter parameters shading dem scree_polygons obstacles_mask output_file west south width height scale [large_stones_mask] [gradation_mask] [gullyLines] [reference_image]\n"
+                "Usage: ScreePainter parameters shading dem scree_polygons obstacles_mask output_file west south width height scale [large_stones_mask] [gradation_mask] [gullyLines] [reference_image] [threads] [tile_size] [point_raster]\n"
                 + "    parameters: scree parameter file in Scree Painter format 1.1 or higher.\n"
                 + "    shading: shaded relief file path (format: raster image with world file).\n"
-                + "    dem: elevation model file path (format: Esri ASCII grid).\n"
+                + "    dem: elevation model file path (format: Esri ASCII grid or binary grid converted with ika.app.DEMConverter).\n"
                 + "    scree_polygons: scree polygons shapefile file path (Esri shapefile).\n"
                 + "    obstacles_mask: obstacles mask file path (format: raster image with world file).\n"
                 + "    output_file: output file path.\n"
@@ -76,6 +77,9 @@ public class ScreePainterBatch {
                 + "    gradation_mask: gradation mask file path (format: raster image with world file). Optional.\n"
                 + "    gully_lines: gully lines file path (Esri shapefile). Optional.\n"
                 + "    reference_image: reference image file path (format: raster image with world file). Optional.\n"
+                + "    threads: number of threads filling scree polygons and tracing gully lines concurrently. Optional, defaults to the number of processors.\n"
+                + "    tile_size: size of tiles in ground coordinates for generating scree with limited memory. Optional, by default the shading is not split into tiles.\n"
+                + "    point_raster: index for finding stones that are too close (bit_set, image, spatial_hash). Optional, defaults to bit_set.\n"
         );
     }
 
@@ -143,6 +147,9 @@ public class ScreePainterBatch {
         CmdLineParser.Option<Double> width = parser.addDoubleOption("width");
         CmdLineParser.Option<Double> height = parser.addDoubleOption("height");
         CmdLineParser.Option<Double> scale = parser.addDoubleOption("scale");
+        CmdLineParser.Option<Integer> threads = parser.addIntegerOption("threads");
+        CmdLineParser.Option<Double> tileSize = parser.addDoubleOption("tile_size");
+        CmdLineParser.Option<String> pointRaster = parser.addStringOption("point_raster");
 
         // parse the user-provided command line arguments, and catch any errors
         // Options may appear on the command line in any order
@@ -182,6 +189,18 @@ public class ScreePainterBatch {
         cmd.width = parser.getOptionValue(width);
         cmd.height = parser.getOptionValue(height);
         cmd.scale = parser.getOptionValue(scale);
+        cmd.threads = parser.getOptionValue(threads);
+        cmd.tileSize = parser.getOptionValue(tileSize);
+        String pointRasterName = parser.getOptionValue(pointRaster);
+        if (pointRasterName != null) {
+            try {
+                cmd.pointRasterType = PointRaster.Type.valueOf(pointRasterName.toUpperCase());
+            } catch (IllegalArgumentException e) {
+                System.err.println("invalid point_raster: " + pointRasterName);
+                printUsage();
+                System.exit(2);
+            }
+        }
 
         if (cmd.outputFormat == null) {
             cmd.outputFormat = new GeospatialPDFExporter().getFileFormatName();
@@ -207,6 +226,9 @@ public class ScreePainterBatch {
             System.out.format("\t%s: %f%n", width.longForm(), cmd.width);
             System.out.format("\t%s: %f%n", height.longForm(), cmd.height);
             System.out.format("\t%s: %f%n", scale.longForm(), cmd.scale);
+            System.out.format("\t%s: %s%n", threads.longForm(), cmd.threads);
+            System.out.format("\t%s: %s%n", tileSize.longForm(), cmd.tileSize);
+            System.out.format("\t%s: %s%n", pointRaster.longForm(), cmd.pointRasterType);
         }
 
         // test if all required parameters have been provided. Exit otherwise. 
@@ -237,10 +259,37 @@ public class ScreePainterBatch {
             System.err.println("scale must be a positive value: " + cmd.scale);
             System.exit(2);
         }
+        if (cmd.threads != null && cmd.threads < 1) {
+            System.err.println("threads must be a positive value: " + cmd.threads);
+            System.exit(2);
+        }
+        if (cmd.tileSize != null && cmd.tileSize <= 0) {
+            System.err.println("tile_size must be a positive value: " + cmd.tileSize);
+            System.exit(2);
+        }
 
         return cmd;
     }
 
+    /**
+     * Aborts a stone sink after scree generation has failed, which deletes the
+     * incomplete output file. An exception thrown by the sink is added to the
+     * exception of the failure, so that the failure is not hidden.
+     *
+     * @param stoneSink the sink to abort, can be null
+     * @param failure the exception of the failed scree generation
+     */
+    private static void abortStoneSink(StoneSink stoneSink, Throwable failure) {
+        if (stoneSink == null) {
+            return;
+        }
+        try {
+            stoneSink.abort();
+        } catch (IOException | RuntimeException exc) {
+            failure.addSuppressed(exc);
+        }
+    }
+
     /**
      * Main Scree Painter batch mode process. Loads settings and data files,
      * creates scree stones, and saves created scree stones to an output file.
@@ -284,18 +333,13 @@ public class ScreePainterBatch {
         File f = new File(commandLineArguments.parametersFilePath);
         screeGenerator.p.fromString(new String(FileUtils.getBytesFromFile(f)));
 
-        // generate scree
-        System.out.println("Starting scree generation...");
-        ScreeGeneratorManager manager = new ScreeGeneratorManager();
-        manager.generateScree(screeGenerator, null, prog, true);
-        System.out.format("Generated %,d scree stones.%n", manager.nbrGeneratedScreeStones());
-
-        // only the scree stones are needed for export
-        GeoSet screeStones = screeGenerator.screeData.screeStones;
-
-        System.out.format("Saving ouptut file to %s...%n", commandLineArguments.outputFilePath);
+        if (commandLineArguments.pointRasterType != null) {
+            screeGenerator.setPointRasterType(commandLineArguments.pointRasterType);
+        }
 
-        // export scree
+        // setup the exporter before generating scree, as stones are written
+        // to the output file while they are generated if the exporter
+        // supports this.
         GeoSetExporter exporter = GeoExportGUI.getExporterByName(commandLineArguments.outputFormat);
         if (exporter == null) {
             throw new IOException("Unknown format " + commandLineArguments.outputFormat);
@@ -328,19 +372,74 @@ public class ScreePainterBatch {
             geospatialPDFExporter.setLonLatCornerPoints(corners);
         }
 
-        // screeGenerator.screeData.screeStones contains ScreeGenerator.Stone,
+        // screeGenerator.screeData.screeStones contains StoneStore objects,
         // a class that derives from GeoObject but is not usually supported by
         // exporters. The stones could be converted to GeoPaths using
-        // stone.toGeoPath, however, this would multiply the amount of memory
-        // required to store the graphics. The exporters have therefore each
-        // been hacked to call stone.toGeoPath and then using the standard
-        // export routines for GeoPaths.
+        // StoneStore.toGeoPath, however, this would multiply the amount of
+        // memory required to store the graphics. The exporters have therefore
+        // each been hacked to write the stone corners directly from the
+        // StoneStore arrays (DXF and Ungenerate convert one stone at a time).
         exporter.setDocumentName(ApplicationInfo.getApplicationName());
         exporter.setDocumentAuthor(System.getProperty("user.name"));
         exporter.setDocumentSubject("scree");
         exporter.setDocumentKeyWords("");
-        GeoExportGUI.export(exporter, screeStones,
-                commandLineArguments.outputFilePath, null);
+
+        // generate scree
+        System.out.println("Starting scree generation...");
+        ScreeGeneratorManager manager = new ScreeGeneratorManager();
+        if (commandLineArguments.threads != null) {
+            manager.setThreadCount(commandLineArguments.threads);
+        }
+        if (commandLineArguments.tileSize != null) {
+            manager.setTileSize(commandLineArguments.tileSize);
+        }
+
+        // stream stones to the output file while they are generated, so that
+        // the stones do not have to be kept in memory until all are generated
+        StoneSink stoneSink = null;
+        if (exporter instanceof StoneSinkExporter) {
+            System.out.format("Writing stones to %s while they are generated...%n",
+                    commandLineArguments.outputFilePath);
+            stoneSink = ((StoneSinkExporter) exporter).createStoneSink(
+                    commandLineArguments.outputFilePath);
+            manager.setStoneSink(stoneSink);
+        }
+        try {
+            manager.generateScree(screeGenerator, null, prog, true);
+            if (prog.isAborted()) {
+                throw new IllegalStateException("Scree generation was aborted.");
+            }
+        } catch (IllegalStateException exc) {
+            // the manager wraps exceptions thrown by the sink
+            if (exc.getCause() instanceof IOException) {
+                IOException ioExc = (IOException) exc.getCause();
+                abortStoneSink(stoneSink, ioExc);
+                throw ioExc;
+            }
+            abortStoneSink(stoneSink, exc);
+            throw exc;
+        } catch (RuntimeException | Error exc) {
+            abortStoneSink(stoneSink, exc);
+            throw exc;
+        }
+        // only complete the output file if all stones have been generated
+        if (stoneSink != null) {
+            stoneSink.close();
+        }
+        System.out.format("Generated %,d scree stones.%n", manager.nbrGeneratedScreeStones());
+        if (commandLineArguments.verbose) {
+            System.out.println(manager.getHTMLReportForLastGeneration()
+                    .replaceAll("<br>", "\n").replaceAll("&nbsp;", " ")
+                    .replaceAll("<[^>]*>", ""));
+        }
+
+        if (stoneSink == null) {
+            // only the scree stones are needed for export
+            GeoSet screeStones = screeGenerator.screeData.screeStones;
+            System.out.format("Saving ouptut file to %s...%n", commandLineArguments.outputFilePath);
+            GeoExportGUI.export(exporter, screeStones,
+                    commandLineArguments.outputFilePath, null);
+        }
 
         System.out.println("Succesfully saved output file.");
     }
@@ -13,7 +13,7 @@ public class ScreeParameters {
      */
     private static final String FILE_FORMAT_IDENTIFIER = "Scree Painter Format";
 
-    private static final float FILE_FORMAT_VERSION = 1.2f;
+    private static final float FILE_FORMAT_VERSION = 1.3f;
 
     /**
      * Scale of the map for conversion from mm in the user interface to m of the
@@ -65,6 +65,11 @@ public class ScreeParameters {
      * the position of a stone may randomly vary by this distance in meters
      */
     public double stoneMaxPosJitterFraction = 0.36;
+    /**
+     * Flag to indicate whether stone outlines are instances of a bank of
+     * precomputed templates instead of individually computed polygons.
+     */
+    public boolean stoneTemplates = false;
 
     /**
      * Flag to indicate whether gully lines are extracted from the terrain
@@ -125,6 +130,38 @@ public class ScreeParameters {
     public ScreeParameters() {
     }
 
+    /**
+     * Creates a copy of a set of parameters.
+     *
+     * @param p The parameters to copy.
+     */
+    public ScreeParameters(ScreeParameters p) {
+        mapScale = p.mapScale;
+        stoneMaxDiameter = p.stoneMaxDiameter;
+        stoneMinDiameterScale = p.stoneMinDiameterScale;
+        stoneMinDistanceFraction = p.stoneMinDistanceFraction;
+        stoneMinObstacleDistanceFraction = p.stoneMinObstacleDistanceFraction;
+        stoneRadiusVariabilityPerc = p.stoneRadiusVariabilityPerc;
+        stoneAngleVariabilityPerc = p.stoneAngleVariabilityPerc;
+        stoneLargeMaxScale = p.stoneLargeMaxScale;
+        stoneMinCornerCount = p.stoneMinCornerCount;
+        stoneMaxCornerCount = p.stoneMaxCornerCount;
+        stoneMaxPosJitterFraction = p.stoneMaxPosJitterFraction;
+        stoneTemplates = p.stoneTemplates;
+        extractGullyLines = p.extractGullyLines;
+        lineGradationCurve = p.lineGradationCurve.clone();
+        lineStoneDistFraction = p.lineStoneDistFraction;
+        lineSizeScaleTop = p.lineSizeScaleTop;
+        lineSizeScaleBottom = p.lineSizeScaleBottom;
+        lineToPointDistFraction = p.lineToPointDistFraction;
+        lineMinDistance = p.lineMinDistance;
+        lineMinLengthApprox = p.lineMinLengthApprox;
+        lineMinSlopeDegree = p.lineMinSlopeDegree;
+        lineMinCurvature = p.lineMinCurvature;
+        shadingGradationCurve1 = p.shadingGradationCurve1.clone();
+        shadingGradationCurve2 = p.shadingGradationCurve2.clone();
+    }
+
     /**
      * returns a string containing all parameters that can be saved to a file
      * and parsed by fromString().
@@ -235,6 +272,13 @@ public class ScreeParameters {
         sb.append(extractGullyLines);
         sb.append(lineSep);
 
+        // format 1.3 adds a flag to indicate whether stone outlines are
+        // instances of templates
+        sb.append("Stones: Shape Templates");
+        sb.append(lineSep);
+        sb.append(stoneTemplates);
+        sb.append(lineSep);
+
         return sb.toString();
     }
 
@@ -332,5 +376,13 @@ public class ScreeParameters {
             tokenizer.nextToken();
             this.extractGullyLines = Boolean.parseBoolean(tokenizer.nextToken());
         }
+
+        // format 1.3 adds a flag to indicate whether stone outlines are
+        // instances of templates
+        if (version >= 1.3f) {
+            // overread "Stones: Shape Templates"
+            tokenizer.nextToken();
+            this.stoneTemplates = Boolean.parseBoolean(tokenizer.nextToken());
+        }
     }
 }
@@ -0,0 +1,115 @@
+package ika.app;
+
+import java.awt.geom.Rectangle2D;
+import java.util.Arrays;
+
+/**
+ * A PointRaster that stores the centers and radii of circles in a uniform grid
+ * of buckets. Overlaying circles are found with exact circle-circle tests
+ * against the circles in neighboring buckets, instead of testing rasterized
+ * discs. The circles of each bucket are stored in a linked list of indices.
+ *
+ * Circles outside of the bounding box are stored in the closest bucket along
+ * the border of the grid.
+ *
+ * @author Bernhard Jenny, School of Mathematical and Geospatial Sciences, RMIT
+ * University, Melbourne
+ */
+class SpatialHashPointRaster implements PointRaster {
+
+    private static final int INITIAL_CAPACITY = 256;
+    private final int cols;
+    private final int rows;
+    private final double west;
+    private final double north;
+    private final double cellSize;
+    /**
+     * index of the last circle added to each bucket, or -1 for empty buckets.
+     */
+    private final int[] buckets;
+    /**
+     * index of the next circle in the same bucket for each circle, or -1.
+     */
+    private int[] next = new int[INITIAL_CAPACITY];
+    private double[] xs = new double[INITIAL_CAPACITY];
+    private double[] ys = new double[INITIAL_CAPACITY];
+    private double[] rads = new double[INITIAL_CAPACITY];
+    private int circlesCount = 0;
+    /**
+     * the largest radius of all added circles.
+     */
+    private double maxRad = 0;
+
+    /**
+     * @param boundingBox the extent of the circles.
+     * @param cellSize the size of a bucket. Should be approximately the
+     * diameter of the largest circles.
+     */
+    public SpatialHashPointRaster(Rectangle2D boundingBox, double cellSize) {
+        if (cellSize <= 0) {
+            throw new IllegalArgumentException("cell size must be positive");
+        }
+        this.cols = Math.max(1, (int) Math.ceil(boundingBox.getWidth() / cellSize));
+        this.rows = Math.max(1, (int) Math.ceil(boundingBox.getHeight() / cellSize));
+        this.west = boundingBox.getMinX();
+        this.north = boundingBox.getMaxY();
+        this.cellSize = cellSize;
+        this.buckets = new int[cols * rows];
+        Arrays.fill(buckets, -1);
+    }
+
+    private int col(double x) {
+        final int col = (int) Math.floor((x - west) / cellSize);
+        return col < 0 ? 0 : (col >= cols ? cols - 1 : col);
+    }
+
+    private int row(double y) {
+        final int row = (int) Math.floor((north - y) / cellSize);
+        return row < 0 ? 0 : (row >= rows ? rows - 1 : row);
+    }
+
+    @Override
+    public void addCircle(double x, double y, double rad) {
+        if (circlesCount == xs.length) {
+            final int capacity = circlesCount * 2;
+            next = Arrays.copyOf(next, capacity);
+            xs = Arrays.copyOf(xs, capacity);
+            ys = Arrays.copyOf(ys, capacity);
+            rads = Arrays.copyOf(rads, capacity);
+        }
+        final int bucket = row(y) * cols + col(x);
+        xs[circlesCount] = x;
+        ys[circlesCount] = y;
+        rads[circlesCount] = rad;
+        next[circlesCount] = buckets[bucket];
+        buckets[bucket] = circlesCount++;
+        if (rad > maxRad) {
+            maxRad = rad;
+        }
+    }
+
+    @Override
+    public boolean isCircleOverlaying(double x, double y, double rad) {
+        // circles in buckets farther away than rad + maxRad cannot overlay
+        final double searchDist = rad + maxRad;
+        final int firstCol = col(x - searchDist);
+        final int lastCol = col(x + searchDist);
+        final int firstRow = row(y + searchDist);
+        final int lastRow = row(y - searchDist);
+        for (int row = firstRow; row <= lastRow; row++) {
+            final int rowOffset = row * cols;
+            for (int col = firstCol; col <= lastCol; col++) {
+                for (int i = buckets[rowOffset + col]; i >= 0; i = next[i]) {
+                    final double dx = xs[i] - x;
+                    final double dy = ys[i] - y;
+                    final double d = rads[i] + rad;
+                    if (dx * dx + dy * dy < d * d) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+}
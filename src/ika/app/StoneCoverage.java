@@ -0,0 +1,208 @@
+package ika.app;
+
+import ika.geo.GeoObject;
+import ika.geo.RenderParams;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.awt.image.IndexColorModel;
+
+/**
+ * A multi-resolution pyramid of rasters with the fraction of each cell
+ * covered by stones. The pyramid is drawn instead of the individual stones
+ * when the stones are too small to be distinguished on screen. Each raster
+ * is an image with black pixels with the coverage as alpha value. The first
+ * raster has the finest cells, each following raster has cells twice the size
+ * of the previous raster.
+ *
+ * @author Bernhard Jenny, School of Mathematical and Geospatial Sciences, RMIT
+ * University, Melbourne
+ */
+final class StoneCoverage {
+
+    /**
+     * The largest raster has at most MAX_SIZE x MAX_SIZE cells.
+     */
+    private static final int MAX_SIZE = 2048;
+
+    /**
+     * The smallest raster has at most MIN_SIZE x MIN_SIZE cells.
+     */
+    private static final int MIN_SIZE = 64;
+
+    /**
+     * Black with 256 levels of transparency.
+     */
+    private static final IndexColorModel COLOR_MODEL;
+
+    static {
+        byte[] rgb = new byte[256];
+        byte[] alpha = new byte[256];
+        for (int i = 0; i < 256; i++) {
+            alpha[i] = (byte) i;
+        }
+        COLOR_MODEL = new IndexColorModel(8, 256, rgb, rgb, rgb, alpha);
+    }
+
+    /**
+     * Left border of the rasters in world coordinates.
+     */
+    private final double west;
+
+    /**
+     * Top border of the rasters in world coordinates.
+     */
+    private final double north;
+
+    /**
+     * Size of a cell of the first raster in world coordinates.
+     */
+    private final double cellSize;
+
+    /**
+     * The rasters with decreasing resolution.
+     */
+    private final BufferedImage[] images;
+
+    /**
+     * Computes the coverage pyramid for a set of stones.
+     *
+     * @param stones The stones.
+     * @param cellSize The size of a cell of the first raster in world
+     * coordinates. Enlarged if the first raster would exceed MAX_SIZE cells.
+     */
+    StoneCoverage(StoneStore stones, double cellSize) {
+        Rectangle2D bounds = stones.getBounds2D(GeoObject.UNDEFINED_SCALE);
+        if (bounds == null) {
+            throw new IllegalArgumentException("no stones");
+        }
+        final double size = Math.max(bounds.getWidth(), bounds.getHeight());
+        cellSize = Math.max(cellSize, size / MAX_SIZE);
+        if (!(cellSize > 0)) {
+            cellSize = 1;
+        }
+        this.cellSize = cellSize;
+        west = bounds.getMinX();
+        north = bounds.getMaxY();
+        int cols = (int) Math.max(1, Math.ceil(bounds.getWidth() / cellSize));
+        int rows = (int) Math.max(1, Math.ceil(bounds.getHeight() / cellSize));
+
+        // distribute the area of each stone over the cells intersecting the
+        // square around its center with the mean radius of the stone
+        float[] coverage = new float[cols * rows];
+        final double cellArea = cellSize * cellSize;
+        final int stonesCount = stones.getStonesCount();
+        for (int i = 0; i < stonesCount; i++) {
+            final double r = stones.getR(i);
+            final double x0 = (stones.getX(i) - r - west) / cellSize;
+            final double x1 = (stones.getX(i) + r - west) / cellSize;
+            final double y0 = (north - stones.getY(i) - r) / cellSize;
+            final double y1 = (north - stones.getY(i) + r) / cellSize;
+            if (!(x1 > x0 && y1 > y0)) {
+                continue;
+            }
+            final double density = stones.getArea(i) / cellArea / ((x1 - x0) * (y1 - y0));
+            final int c0 = Math.max(0, (int) Math.floor(x0));
+            final int c1 = Math.min(cols - 1, (int) Math.floor(x1));
+            final int r0 = Math.max(0, (int) Math.floor(y0));
+            final int r1 = Math.min(rows - 1, (int) Math.floor(y1));
+            for (int row = r0; row <= r1; row++) {
+                final double h = Math.min(y1, row + 1) - Math.max(y0, row);
+                for (int col = c0; col <= c1; col++) {
+                    final double w = Math.min(x1, col + 1) - Math.max(x0, col);
+                    coverage[row * cols + col] += (float) (density * w * h);
+                }
+            }
+        }
+
+        // count the levels of the pyramid
+        int levels = 1;
+        for (int c = cols, r = rows; c > MIN_SIZE || r > MIN_SIZE; levels++) {
+            c = (c + 1) / 2;
+            r = (r + 1) / 2;
+        }
+
+        // convert to images and average 2 x 2 cells for the next level
+        images = new BufferedImage[levels];
+        for (int level = 0; level < levels; level++) {
+            images[level] = toImage(coverage, cols, rows);
+            if (level == levels - 1) {
+                break;
+            }
+            final int nextCols = (cols + 1) / 2;
+            final int nextRows = (rows + 1) / 2;
+            float[] next = new float[nextCols * nextRows];
+            for (int r = 0; r < rows; r++) {
+                for (int c = 0; c < cols; c++) {
+                    next[(r / 2) * nextCols + c / 2] += coverage[r * cols + c] * 0.25f;
+                }
+            }
+            coverage = next;
+            cols = nextCols;
+            rows = nextRows;
+        }
+    }
+
+    /**
+     * Converts coverage fractions to an image.
+     */
+    private static BufferedImage toImage(float[] coverage, int cols, int rows) {
+        BufferedImage image = new BufferedImage(cols, rows,
+                BufferedImage.TYPE_BYTE_INDEXED, COLOR_MODEL);
+        byte[] pixels = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = (byte) Math.round(Math.min(1f, coverage[i]) * 255f);
+        }
+        return image;
+    }
+
+    /**
+     * Returns the size of a cell of the finest raster in world coordinates.
+     */
+    double getCellSize() {
+        return cellSize;
+    }
+
+    /**
+     * Draws the raster with the coarsest cells that are not larger than a
+     * pixel.
+     *
+     * @param rp The rendering parameters.
+     */
+    void draw(RenderParams rp) {
+        // find the raster to draw
+        int level = 0;
+        double levelCellSize = cellSize;
+        while (level < images.length - 1 && levelCellSize * 2 * rp.scale <= 1) {
+            levelCellSize *= 2;
+            ++level;
+        }
+        BufferedImage image = images[level];
+
+        // only draw the visible cells
+        final int c0 = (int) Math.max(0, Math.floor((rp.visLeft - west) / levelCellSize));
+        final int r0 = (int) Math.max(0, Math.floor((north - rp.visBottom - rp.visHeight) / levelCellSize));
+        final int c1 = (int) Math.min(image.getWidth(), Math.ceil((rp.visLeft + rp.visWidth - west) / levelCellSize));
+        final int r1 = (int) Math.min(image.getHeight(), Math.ceil((north - rp.visBottom) / levelCellSize));
+        if (c1 <= c0 || r1 <= r0) {
+            return;
+        }
+        BufferedImage visibleImage = image.getSubimage(c0, r0, c1 - c0, r1 - r0);
+
+        AffineTransform trans = new AffineTransform();
+        trans.translate(west + c0 * levelCellSize, north - r0 * levelCellSize);
+        trans.scale(levelCellSize, -levelCellSize);
+
+        final Graphics2D g2d = rp.g2d;
+        Object interpolation = g2d.getRenderingHint(RenderingHints.KEY_INTERPOLATION);
+        g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
+                RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        g2d.drawImage(visibleImage, trans, null);
+        if (interpolation != null) {
+            g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, interpolation);
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package ika.app;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Receives the stones of filled scree polygons while scree is generated. A
+ * StoneSink can write stones to a file as they are generated, so the stones
+ * do not have to be accumulated in the ScreeData model before they are
+ * exported. ScreeGeneratorManager passes the stones of polygons in the order
+ * of the polygons, on a single thread.
+ *
+ * Closing the sink completes the output. If the stones cannot all be
+ * generated, the sink is aborted instead, which discards the incomplete
+ * output. No stones can be added after the sink is closed or aborted.
+ *
+ * @author Bernhard Jenny, School of Mathematical and Geospatial Sciences, RMIT
+ * University, Melbourne
+ */
+public interface StoneSink extends Closeable {
+
+    /**
+     * Adds the stones of a polygon. The sink must not change the stones, and
+     * should not retain a reference to the stones after this method returns.
+     *
+     * @param stones the stones to add
+     * @throws IOException if the stones cannot be written
+     */
+    public void addStones(StoneStore stones) throws IOException;
+
+    /**
+     * Closes the sink without completing the output and deletes the partially
+     * written files. Does nothing if the sink is already closed or aborted.
+     *
+     * @throws IOException if the files cannot be closed or deleted
+     */
+    public void abort() throws IOException;
+}
@@ -0,0 +1,620 @@
+package ika.app;
+
+import ika.geo.GeoObject;
+import ika.geo.GeoPath;
+import ika.geo.RenderParams;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Path2D;
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.util.Arrays;
+
+/**
+ * A set of scree stones stored in packed primitive arrays. Each stone has a
+ * center, a mean radius and a polygonal outline. The corners of all stones are
+ * stored in a single buffer relative to the center of their stone, and an
+ * array of offsets points to the first corner of each stone. A StoneStore is a
+ * single GeoObject, which avoids allocating a GeoObject, a bounding box and a
+ * Path2D for every stone.
+ *
+ * Stones are added in two steps: first the centers and radii of all stones are
+ * added with add(), then the outlines are set with setShape() in the order of
+ * the stones.
+ *
+ * Alternatively, the outlines can be instances of the templates of a
+ * StoneTemplates bank, which are set with setTemplate(). For each stone only
+ * the index of the template and the rotation are stored instead of the
+ * corners.
+ *
+ * @author Bernhard Jenny
+ */
+public final class StoneStore extends GeoObject {
+
+    private static final long serialVersionUID = -2830560723718234367L;
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    /**
+     * Default for the mean diameter of stones in pixels below which stones
+     * are drawn from a coverage raster.
+     */
+    public static final double DEFAULT_LOD_PIXEL_SIZE = 2;
+
+    /**
+     * The coverage raster is only drawn if its finest cells are not larger
+     * than this number of pixels. Otherwise the stones are drawn.
+     */
+    private static final double MAX_COVERAGE_CELL_PIXEL_SIZE = 1.5;
+
+    /**
+     * number of stones
+     */
+    private int stonesCount = 0;
+    /**
+     * number of stones with an outline
+     */
+    private int shapesCount = 0;
+    /**
+     * horizontal centers of stones
+     */
+    private double[] x = new double[INITIAL_CAPACITY];
+    /**
+     * vertical centers of stones
+     */
+    private double[] y = new double[INITIAL_CAPACITY];
+    /**
+     * mean radii of stones (actual size can be larger)
+     */
+    private double[] r = new double[INITIAL_CAPACITY];
+    /**
+     * index of the first corner of each stone in corners. The corners of stone
+     * i are between cornerOffsets[i] and cornerOffsets[i + 1]. Null if
+     * outlines are instances of templates.
+     */
+    private int[] cornerOffsets;
+    /**
+     * corners of all stones relative to the center of their stone: dx1, dy1,
+     * dx2, dy2, etc. Null if outlines are instances of templates.
+     */
+    private float[] corners;
+    /**
+     * the bank of outline templates, or null if the corners of each stone are
+     * stored.
+     */
+    private final StoneTemplates templates;
+    /**
+     * index of the template of each stone, -1 for stones without outline
+     */
+    private int[] templateIDs;
+    /**
+     * cosine and sine of the rotation angle of the template of each stone
+     */
+    private float[] templateCos;
+    private float[] templateSin;
+    /**
+     * bounding box of all stones, updated when stones are added.
+     */
+    private double west = Double.POSITIVE_INFINITY;
+    private double east = Double.NEGATIVE_INFINITY;
+    private double south = Double.POSITIVE_INFINITY;
+    private double north = Double.NEGATIVE_INFINITY;
+
+    /**
+     * Stones with a mean diameter smaller than this number of pixels are drawn
+     * from a coverage raster instead of drawing each stone.
+     */
+    private double lodPixelSize = DEFAULT_LOD_PIXEL_SIZE;
+
+    /**
+     * sum of the mean radii of all stones
+     */
+    private double radiusSum = 0;
+
+    /**
+     * Pyramid of coverage rasters for drawing small stones. Null if it has not
+     * been computed yet or if stones have been added or changed.
+     */
+    private transient StoneCoverage coverage;
+
+    /**
+     * Creates a store for stones with individual outlines.
+     */
+    public StoneStore() {
+        this(null);
+    }
+
+    /**
+     * Creates a store for stones with outlines that are instances of
+     * templates.
+     *
+     * @param templates the bank of templates, or null to store the corners of
+     * each stone
+     */
+    public StoneStore(StoneTemplates templates) {
+        this.templates = templates;
+        if (templates == null) {
+            cornerOffsets = new int[INITIAL_CAPACITY + 1];
+            corners = new float[INITIAL_CAPACITY * 12];
+        } else {
+            templateIDs = new int[INITIAL_CAPACITY];
+            templateCos = new float[INITIAL_CAPACITY];
+            templateSin = new float[INITIAL_CAPACITY];
+        }
+        setSelectable(false);
+    }
+
+    /**
+     * Adds a stone without outline.
+     *
+     * @param x horizontal center
+     * @param y vertical center
+     * @param r mean radius
+     * @return the index of the new stone
+     */
+    public int add(double x, double y, double r) {
+        if (stonesCount == this.x.length) {
+            final int capacity = stonesCount * 2;
+            this.x = Arrays.copyOf(this.x, capacity);
+            this.y = Arrays.copyOf(this.y, capacity);
+            this.r = Arrays.copyOf(this.r, capacity);
+            if (templates == null) {
+                cornerOffsets = Arrays.copyOf(cornerOffsets, capacity + 1);
+            } else {
+                templateIDs = Arrays.copyOf(templateIDs, capacity);
+                templateCos = Arrays.copyOf(templateCos, capacity);
+                templateSin = Arrays.copyOf(templateSin, capacity);
+            }
+        }
+        this.x[stonesCount] = x;
+        this.y[stonesCount] = y;
+        this.r[stonesCount] = r;
+        radiusSum += r;
+        extendBounds(x, y, r);
+        coverage = null;
+        return stonesCount++;
+    }
+
+    /**
+     * Sets the radius and the outline of a stone. Outlines must be set in the
+     * order of the stones, starting with the first stone.
+     *
+     * @param stone index of the stone
+     * @param r new mean radius of the stone
+     * @param xy corners relative to the center of the stone: dx1, dy1, dx2,
+     * dy2, etc. Can be null if the stone has no outline. Must be null if
+     * outlines are instances of templates.
+     * @param cornersCount the number of corners in xy
+     */
+    public void setShape(int stone, double r, double[] xy, int cornersCount) {
+        setRadius(stone, r);
+        if (templates != null) {
+            if (xy != null) {
+                throw new IllegalStateException("stone outlines are templates");
+            }
+            templateIDs[stone] = -1;
+            ++shapesCount;
+            coverage = null;
+            return;
+        }
+
+        final int offset = cornerOffsets[stone];
+        final int n = xy == null ? 0 : cornersCount * 2;
+        if (offset + n > corners.length) {
+            corners = Arrays.copyOf(corners, Math.max(corners.length * 2, offset + n));
+        }
+        for (int i = 0; i < n; i++) {
+            corners[offset + i] = (float) xy[i];
+        }
+        cornerOffsets[stone + 1] = offset + n;
+        ++shapesCount;
+        coverage = null;
+    }
+
+    /**
+     * Sets the radius of a stone and its outline to a scaled and rotated
+     * template. Outlines must be set in the order of the stones, starting with
+     * the first stone.
+     *
+     * @param stone index of the stone
+     * @param r new mean radius of the stone, which scales the template
+     * @param template index of the template in the bank of this store
+     * @param angle counterclockwise rotation of the template in radians
+     */
+    public void setTemplate(int stone, double r, int template, double angle) {
+        if (templates == null) {
+            throw new IllegalStateException("stone outlines are not templates");
+        }
+        if (template < 0 || template >= templates.getTemplatesCount()) {
+            throw new IllegalArgumentException("invalid template " + template);
+        }
+        setRadius(stone, r);
+        templateIDs[stone] = template;
+        templateCos[stone] = (float) Math.cos(angle);
+        templateSin[stone] = (float) Math.sin(angle);
+        ++shapesCount;
+        coverage = null;
+    }
+
+    /**
+     * Sets the radius of the next stone without outline.
+     */
+    private void setRadius(int stone, double r) {
+        if (stone != shapesCount || stone >= stonesCount) {
+            throw new IllegalStateException("stone outlines must be set in order");
+        }
+        radiusSum += r - this.r[stone];
+        this.r[stone] = r;
+        extendBounds(x[stone], y[stone], r);
+    }
+
+    private void extendBounds(double x, double y, double r) {
+        if (Double.isNaN(x) || Double.isNaN(y) || Double.isNaN(r)) {
+            return;
+        }
+        west = Math.min(west, x - r);
+        east = Math.max(east, x + r);
+        south = Math.min(south, y - r);
+        north = Math.max(north, y + r);
+    }
+
+    /**
+     * Releases unused capacity of the internal arrays.
+     */
+    public void trimToSize() {
+        x = Arrays.copyOf(x, stonesCount);
+        y = Arrays.copyOf(y, stonesCount);
+        r = Arrays.copyOf(r, stonesCount);
+        if (templates == null) {
+            cornerOffsets = Arrays.copyOf(cornerOffsets, stonesCount + 1);
+            corners = Arrays.copyOf(corners, cornerOffsets[shapesCount]);
+        } else {
+            templateIDs = Arrays.copyOf(templateIDs, stonesCount);
+            templateCos = Arrays.copyOf(templateCos, stonesCount);
+            templateSin = Arrays.copyOf(templateSin, stonesCount);
+        }
+    }
+
+    /**
+     * Returns the number of stones.
+     *
+     * @return the number of stones
+     */
+    public int getStonesCount() {
+        return stonesCount;
+    }
+
+    public double getX(int stone) {
+        return x[stone];
+    }
+
+    public double getY(int stone) {
+        return y[stone];
+    }
+
+    public double getR(int stone) {
+        return r[stone];
+    }
+
+    /**
+     * Returns the number of corners of a stone.
+     *
+     * @param stone index of the stone
+     * @return number of corners, 0 if the stone has no outline.
+     */
+    public int getCornersCount(int stone) {
+        if (stone >= shapesCount) {
+            return 0;
+        }
+        if (templates != null) {
+            final int template = templateIDs[stone];
+            return template < 0 ? 0 : templates.getCornersCount(template);
+        }
+        return (cornerOffsets[stone + 1] - cornerOffsets[stone]) / 2;
+    }
+
+    /**
+     * Returns the horizontal coordinate of a corner of a stone.
+     *
+     * @param stone index of the stone
+     * @param corner index of the corner
+     * @return horizontal coordinate
+     */
+    public double getCornerX(int stone, int corner) {
+        if (templates != null) {
+            final int template = templateIDs[stone];
+            final double tx = templates.getCornerX(template, corner);
+            final double ty = templates.getCornerY(template, corner);
+            return x[stone] + r[stone] * (templateCos[stone] * tx - templateSin[stone] * ty);
+        }
+        return x[stone] + corners[cornerOffsets[stone] + corner * 2];
+    }
+
+    /**
+     * Returns the vertical coordinate of a corner of a stone.
+     *
+     * @param stone index of the stone
+     * @param corner index of the corner
+     * @return vertical coordinate
+     */
+    public double getCornerY(int stone, int corner) {
+        if (templates != null) {
+            final int template = templateIDs[stone];
+            final double tx = templates.getCornerX(template, corner);
+            final double ty = templates.getCornerY(template, corner);
+            return y[stone] + r[stone] * (templateSin[stone] * tx + templateCos[stone] * ty);
+        }
+        return y[stone] + corners[cornerOffsets[stone] + corner * 2 + 1];
+    }
+
+    /**
+     * Returns the bank of templates of the stone outlines.
+     *
+     * @return the templates, or null if the corners of each stone are stored.
+     */
+    public StoneTemplates getTemplates() {
+        return templates;
+    }
+
+    /**
+     * Returns the template of the outline of a stone.
+     *
+     * @param stone index of the stone
+     * @return index of the template in the bank returned by getTemplates(), or
+     * -1 if the stone has no outline.
+     */
+    public int getTemplate(int stone) {
+        if (templates == null) {
+            throw new IllegalStateException("stone outlines are not templates");
+        }
+        return stone < shapesCount ? templateIDs[stone] : -1;
+    }
+
+    /**
+     * Returns the cosine of the rotation angle of the template of a stone.
+     */
+    public double getTemplateCos(int stone) {
+        return templateCos[stone];
+    }
+
+    /**
+     * Returns the sine of the rotation angle of the template of a stone.
+     */
+    public double getTemplateSin(int stone) {
+        return templateSin[stone];
+    }
+
+    /**
+     * Returns the area of a stone. The area of a circle with the mean radius
+     * is returned for stones without outline.
+     *
+     * @param stone index of the stone
+     * @return the area
+     */
+    public double getArea(int stone) {
+        final int n = getCornersCount(stone);
+        if (n < 3) {
+            return Math.PI * r[stone] * r[stone];
+        }
+        if (templates != null) {
+            return templates.getArea(templateIDs[stone]) * r[stone] * r[stone];
+        }
+        final int offset = cornerOffsets[stone];
+        double area = 0;
+        for (int i = 0, j = n - 1; i < n; j = i++) {
+            area += corners[offset + j * 2] * corners[offset + i * 2 + 1]
+                    - corners[offset + i * 2] * corners[offset + j * 2 + 1];
+        }
+        return Math.abs(area) / 2;
+    }
+
+    /**
+     * Returns the bounding box of the outline of a stone.
+     *
+     * @param stone index of the stone
+     * @param bounds receives the bounding box
+     * @return bounds
+     */
+    public Rectangle2D getStoneBounds(int stone, Rectangle2D bounds) {
+        final int n = getCornersCount(stone);
+        if (n == 0) {
+            final double d = 2 * r[stone];
+            bounds.setRect(x[stone] - r[stone], y[stone] - r[stone], d, d);
+            return bounds;
+        }
+        if (templates != null) {
+            double minX = Double.POSITIVE_INFINITY, maxX = Double.NEGATIVE_INFINITY;
+            double minY = Double.POSITIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+            for (int i = 0; i < n; i++) {
+                final double cx = getCornerX(stone, i);
+                final double cy = getCornerY(stone, i);
+                minX = Math.min(minX, cx);
+                maxX = Math.max(maxX, cx);
+                minY = Math.min(minY, cy);
+                maxY = Math.max(maxY, cy);
+            }
+            bounds.setRect(minX, minY, maxX - minX, maxY - minY);
+            return bounds;
+        }
+        final int offset = cornerOffsets[stone];
+        float minX = Float.POSITIVE_INFINITY, maxX = Float.NEGATIVE_INFINITY;
+        float minY = Float.POSITIVE_INFINITY, maxY = Float.NEGATIVE_INFINITY;
+        for (int i = 0; i < n * 2; i += 2) {
+            minX = Math.min(minX, corners[offset + i]);
+            maxX = Math.max(maxX, corners[offset + i]);
+            minY = Math.min(minY, corners[offset + i + 1]);
+            maxY = Math.max(maxY, corners[offset + i + 1]);
+        }
+        bounds.setRect(x[stone] + minX, y[stone] + minY, maxX - minX, maxY - minY);
+        return bounds;
+    }
+
+    /**
+     * Replaces the content of a path with the outline of a stone.
+     *
+     * @param stone index of the stone
+     * @param path the path to reset and fill with the outline
+     * @return path
+     */
+    public Path2D.Double toPath(int stone, Path2D.Double path) {
+        path.reset();
+        final int n = getCornersCount(stone);
+        if (n == 0) {
+            return path;
+        }
+        if (templates != null) {
+            path.moveTo(getCornerX(stone, 0), getCornerY(stone, 0));
+            for (int i = 1; i < n; i++) {
+                path.lineTo(getCornerX(stone, i), getCornerY(stone, i));
+            }
+            path.closePath();
+            return path;
+        }
+        final double cx = x[stone];
+        final double cy = y[stone];
+        final int offset = cornerOffsets[stone];
+        path.moveTo(cx + corners[offset], cy + corners[offset + 1]);
+        for (int i = 1; i < n; i++) {
+            path.lineTo(cx + corners[offset + i * 2], cy + corners[offset + i * 2 + 1]);
+        }
+        path.closePath();
+        return path;
+    }
+
+    /**
+     * Converts a stone to a GeoPath object. This allocates a new GeoPath and
+     * should only be used by exporters that cannot write the corners directly.
+     *
+     * @param stone index of the stone
+     * @return a new GeoPath or null if the stone has no outline
+     */
+    public GeoPath toGeoPath(int stone) {
+        if (getCornersCount(stone) == 0) {
+            return null;
+        }
+        GeoPath geoPath = new GeoPath();
+        geoPath.append(toPath(stone, new Path2D.Double()), false);
+        geoPath.setVectorSymbol(ScreeGenerator.STONE_SYMBOL);
+        return geoPath;
+    }
+
+    @Override
+    public Rectangle2D getBounds2D(double scale) {
+        if (stonesCount == 0) {
+            return null;
+        }
+        return new Rectangle2D.Double(west, south, east - west, north - south);
+    }
+
+    /**
+     * Returns the mean stone diameter in pixels below which stones are drawn
+     * from a coverage raster.
+     */
+    public double getLODPixelSize() {
+        return lodPixelSize;
+    }
+
+    /**
+     * Sets the mean stone diameter in pixels below which stones are drawn from
+     * a pyramid of coverage rasters instead of drawing each stone. The rasters
+     * are computed when they are first needed.
+     *
+     * @param lodPixelSize The diameter in pixels. 0 to always draw stones.
+     */
+    public synchronized void setLODPixelSize(double lodPixelSize) {
+        if (!(lodPixelSize >= 0)) {
+            throw new IllegalArgumentException("invalid pixel size " + lodPixelSize);
+        }
+        this.lodPixelSize = lodPixelSize;
+        coverage = null;
+    }
+
+    /**
+     * Returns the mean diameter of all stones.
+     */
+    private double getMeanDiameter() {
+        return 2 * radiusSum / stonesCount;
+    }
+
+    /**
+     * Returns the pyramid of coverage rasters, or null if there are no stones.
+     * The finest raster has cells about as large as a pixel when the mean
+     * stone diameter equals lodPixelSize.
+     */
+    private synchronized StoneCoverage getCoverage() {
+        if (coverage == null && stonesCount > 0) {
+            coverage = new StoneCoverage(this, getMeanDiameter() / lodPixelSize);
+        }
+        return coverage;
+    }
+
+    /**
+     * draw the stones in a map
+     *
+     * @param rp
+     */
+    @Override
+    public void drawNormalState(RenderParams rp) {
+        final Graphics2D g2d = rp.g2d;
+        final double scale = rp.scale;
+
+        // only draw stones in the visible area, enlarged by one pixel
+        final double d = scale > 0 ? 1 / scale : 0;
+        final double visWest = rp.visLeft - d;
+        final double visEast = rp.visLeft + rp.visWidth + d;
+        final double visSouth = rp.visBottom - d;
+        final double visNorth = rp.visBottom + rp.visHeight + d;
+        if (west > visEast || east < visWest || south > visNorth || north < visSouth) {
+            return;
+        }
+
+        // draw a coverage raster if stones are too small to be distinguished
+        if (stonesCount > 0 && getMeanDiameter() * scale < lodPixelSize) {
+            StoneCoverage c = getCoverage();
+            if (c.getCellSize() * scale <= MAX_COVERAGE_CELL_PIXEL_SIZE) {
+                c.draw(rp);
+                return;
+            }
+        }
+
+        g2d.setColor(Color.BLACK);
+
+        Path2D.Double path = new Path2D.Double(Path2D.WIND_NON_ZERO, 16);
+        Rectangle2D.Double rect = new Rectangle2D.Double();
+        for (int i = 0; i < stonesCount; i++) {
+            // if the stone is smaller than 1 pixel, a rectangle is drawn to
+            // accelerate drawing. Otherwise the path geometry is drawn.
+            final double rad = r[i];
+            if (x[i] - rad > visEast || x[i] + rad < visWest
+                    || y[i] - rad > visNorth || y[i] + rad < visSouth) {
+                continue;
+            }
+            if (scale * rad > 0.5 && getCornersCount(i) > 0) {
+                g2d.fill(toPath(i, path));
+            } else {
+                rect.setRect(x[i] - rad, y[i] - rad, 2 * rad, 2 * rad);
+                g2d.fill(rect);
+            }
+        }
+    }
+
+    @Override
+    public void drawSelectedState(RenderParams rp) {
+    }
+
+    @Override
+    public boolean isPointOnSymbol(Point2D point, double tolDist, double scale) {
+        return false;
+    }
+
+    @Override
+    public boolean isIntersectedByRectangle(Rectangle2D rect, double scale) {
+        Rectangle2D bounds = getBounds2D(scale);
+        return bounds != null && rect.intersects(bounds);
+    }
+
+    @Override
+    public void transform(AffineTransform affineTransform) {
+    }
+}
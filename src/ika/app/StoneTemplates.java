@@ -0,0 +1,160 @@
+package ika.app;
+
+import java.io.Serializable;
+import java.util.Random;
+
+/**
+ * A bank of precomputed stone outlines. Each template is a polygon around the
+ * origin with corners at distance 1 from the origin, which is scaled, rotated
+ * and moved to create a stone. The bank contains VARIANTS_COUNT templates for
+ * each number of corners, with corners at random angles like the outlines
+ * computed for individual stones. The random angles are seeded with the
+ * parameters of the bank, so that equal parameters result in identical banks.
+ *
+ * @author Bernhard Jenny, School of Mathematical and Geospatial Sciences, RMIT
+ * University, Melbourne
+ */
+public final class StoneTemplates implements Serializable {
+
+    private static final long serialVersionUID = 6251384470951628316L;
+
+    /**
+     * The number of templates for each number of corners.
+     */
+    public static final int VARIANTS_COUNT = 32;
+
+    private final int minCornersCount;
+    private final int maxCornersCount;
+    private final double angleVariabilityPerc;
+
+    /**
+     * The corners of each template: x1, y1, x2, y2, etc.
+     */
+    private final float[][] corners;
+
+    /**
+     * The area of each template.
+     */
+    private final double[] areas;
+
+    /**
+     * Computes a bank of templates.
+     *
+     * @param minCornersCount the minimum number of corners of a stone
+     * @param maxCornersCount the maximum number of corners of a stone
+     * @param angleVariabilityPerc the angular distribution of corners may vary
+     * by this percentage
+     */
+    public StoneTemplates(int minCornersCount, int maxCornersCount,
+            double angleVariabilityPerc) {
+        if (minCornersCount < 0 || maxCornersCount < minCornersCount) {
+            throw new IllegalArgumentException("invalid number of corners");
+        }
+        this.minCornersCount = minCornersCount;
+        this.maxCornersCount = maxCornersCount;
+        this.angleVariabilityPerc = angleVariabilityPerc;
+
+        long seed = Double.doubleToLongBits(angleVariabilityPerc);
+        seed = seed * 31 + minCornersCount;
+        seed = seed * 31 + maxCornersCount;
+        Random random = new Random(seed);
+
+        final int templatesCount = (maxCornersCount - minCornersCount + 1) * VARIANTS_COUNT;
+        corners = new float[templatesCount][];
+        areas = new double[templatesCount];
+        for (int n = minCornersCount; n <= maxCornersCount; n++) {
+            // the angle increment between two neighboring corners measured
+            // from the center. Negative sign for clockwise direction.
+            final double angleIncrement = -Math.PI * 2 / n;
+            for (int variant = 0; variant < VARIANTS_COUNT; variant++) {
+                float[] xy = new float[n * 2];
+                for (int i = 0; i < n; i++) {
+                    double angleVariance = angleVariabilityPerc / 100. * random.nextDouble();
+                    double angle = angleIncrement * (i + angleVariance);
+                    xy[i * 2] = (float) Math.cos(angle);
+                    xy[i * 2 + 1] = (float) Math.sin(angle);
+                }
+                final int template = getTemplate(n, variant);
+                corners[template] = xy;
+                areas[template] = area(xy);
+            }
+        }
+    }
+
+    /**
+     * Returns the area of a polygon.
+     */
+    private static double area(float[] xy) {
+        final int n = xy.length / 2;
+        if (n < 3) {
+            return 0;
+        }
+        double area = 0;
+        for (int i = 0, j = n - 1; i < n; j = i++) {
+            area += xy[j * 2] * xy[i * 2 + 1] - xy[i * 2] * xy[j * 2 + 1];
+        }
+        return Math.abs(area) / 2;
+    }
+
+    /**
+     * Returns whether this bank was computed with the passed parameters.
+     */
+    public boolean hasParameters(int minCornersCount, int maxCornersCount,
+            double angleVariabilityPerc) {
+        return this.minCornersCount == minCornersCount
+                && this.maxCornersCount == maxCornersCount
+                && Double.compare(this.angleVariabilityPerc, angleVariabilityPerc) == 0;
+    }
+
+    /**
+     * Returns the number of templates in the bank.
+     */
+    public int getTemplatesCount() {
+        return corners.length;
+    }
+
+    /**
+     * Returns the index of a template.
+     *
+     * @param cornersCount the number of corners, between the minimum and the
+     * maximum number of corners of the bank
+     * @param variant a number between 0 and VARIANTS_COUNT - 1
+     * @return the index of the template
+     */
+    public int getTemplate(int cornersCount, int variant) {
+        if (cornersCount < minCornersCount || cornersCount > maxCornersCount
+                || variant < 0 || variant >= VARIANTS_COUNT) {
+            throw new IllegalArgumentException("no template for "
+                    + cornersCount + " corners, variant " + variant);
+        }
+        return (cornersCount - minCornersCount) * VARIANTS_COUNT + variant;
+    }
+
+    /**
+     * Returns the number of corners of a template.
+     */
+    public int getCornersCount(int template) {
+        return corners[template].length / 2;
+    }
+
+    /**
+     * Returns the horizontal coordinate of a corner of a template.
+     */
+    public double getCornerX(int template, int corner) {
+        return corners[template][corner * 2];
+    }
+
+    /**
+     * Returns the vertical coordinate of a corner of a template.
+     */
+    public double getCornerY(int template, int corner) {
+        return corners[template][corner * 2 + 1];
+    }
+
+    /**
+     * Returns the area of a template.
+     */
+    public double getArea(int template) {
+        return areas[template];
+    }
+}
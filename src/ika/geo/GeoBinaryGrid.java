@@ -4,154 +4,602 @@
  */
 package ika.geo;
 
-import java.awt.BasicStroke;
-import java.awt.Color;
-import java.awt.Graphics2D;
-import java.awt.RenderingHints;
 import java.awt.geom.*;
-import java.awt.image.BufferedImage;
-import java.awt.image.IndexColorModel;
-import java.awt.image.Raster;
+import java.util.ArrayList;
+import java.util.Arrays;
 
 /**
+ * A binary grid to accumulate rasterized GeoPaths and to test whether a new
+ * GeoPath would overlap with the accumulated paths. Cells are stored in a
+ * packed bitmask with one long per 64 columns. Paths are rasterized with a
+ * scan converter for thick polylines that emulates the non-antialiased
+ * rendering of a BasicStroke with square caps and mitered joins: a cell is set
+ * if its center is inside the stroked or filled path.
+ *
  * @author Bernhard Jenny, Institute of Cartography, ETH Zurich.
  */
 public class GeoBinaryGrid extends AbstractRaster {
 
-    public class BinaryImage {
+    /**
+     * Strokes with a squared width in cells up to this value are drawn as thin
+     * lines with one cell per step, as done by Java2D.
+     */
+    private static final double THIN_STROKE_WIDTH_SQUARED = 1.000000001;
 
-        public BufferedImage image;
-        public Graphics2D g2d;
+    /**
+     * Miter limit of a default BasicStroke.
+     */
+    private static final double MITER_LIMIT = 10;
+
+    /**
+     * Flatness for converting curves to straight lines, relative to the cell
+     * size.
+     */
+    private static final double REL_FLATNESS = 0.25;
+
+    private final int cols;
+    private final int rows;
+
+    /**
+     * Number of longs per row of the grid.
+     */
+    private final int wordsPerRow;
+
+    /**
+     * Grid to accumulate rasterized GeoPaths. Cell (col, row) is bit col % 64
+     * of bits[row * wordsPerRow + col / 64].
+     */
+    private final long[] bits;
+
+    /**
+     * Temporarily used bitmask to rasterize a single GeoPath inside its
+     * bounding box and to test overlaps with the accumulated paths in bits.
+     */
+    private long[] windowBits = new long[0];
+
+    /**
+     * Convex polygons in cell coordinates. The union of these polygons is the
+     * stroke of the GeoPath that is currently rasterized. Each polygon is
+     * stored as x0, y0, x1, y1, etc.
+     */
+    private final ArrayList<double[]> strokePolygons = new ArrayList<>();
+
+    /**
+     * Edges of the filled GeoPath that is currently rasterized, in cell
+     * coordinates. Each edge is stored as x0, y0, x1, y1.
+     */
+    private double[] fillEdges = new double[64];
+    private int fillEdgesCount = 0;
+
+    /**
+     * Segments of the thin stroke of the GeoPath that is currently
+     * rasterized, in cell coordinates. Each segment is stored as x0, y0, x1,
+     * y1.
+     */
+    private double[] thinLines = new double[64];
+    private int thinLinesCount = 0;
 
-        public BinaryImage(BufferedImage image, Graphics2D g2d) {
-            this.image = image;
-            this.g2d = g2d;
-        }
-    }
     /**
-     * grid to accumulate rasterized GeoPaths
+     * Bounding box of strokePolygons, fillEdges and thinLines in cell
+     * coordinates.
      */
-    private BinaryImage grid;
+    private double minX, maxX, minY, maxY;
+
     /**
-     * temporarily used grid to rasterize a single GeoPath and to test
-     * overlaps with the accumulated paths in grid
+     * Vertices of the current subpath in cell coordinates.
      */
-    private BinaryImage rasterizerGrid;
+    private double[] subpathX = new double[64];
+    private double[] subpathY = new double[64];
 
     /** Creates a new instance of GeoBinaryGrid */
     public GeoBinaryGrid(int cols, int rows, double west, double north, double cellSize) {
+        if (cols < 0 || rows < 0) {
+            throw new IllegalArgumentException("negative grid dimension");
+        }
         this.cellSize = cellSize;
         this.west = west;
         this.north = north;
-        this.grid = initGrid(cols, rows);
+        this.cols = cols;
+        this.rows = rows;
+        this.wordsPerRow = (cols + 63) >>> 6;
+        long size = (long) wordsPerRow * rows;
+        if (size > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("grid too large");
+        }
+        this.bits = new long[(int) size];
     }
 
-    private BinaryImage initGrid(int w, int h) {
+    public void rasterize(GeoPath geoPath) {
+        outline(geoPath);
+        scanConvert(bits, wordsPerRow, 0, 0, 0, rows, 0, cols);
+    }
+
+    public boolean isAddingCausingOverlay(GeoPath geoPath, boolean addIfNotOverlaying) {
+
+        outline(geoPath);
+        if (strokePolygons.isEmpty() && fillEdgesCount == 0 && thinLinesCount == 0) {
+            return false;
+        }
 
-        // create binary image with black as transparent background color
-        // with a transparent color, paths rasterized to rasterizerGrid can 
-        // be copied to grid to accumulate all paths without overwriting what
-        // has been accumulated before.
-        final byte ff = (byte) 0xff;
-        final byte[] r = {0, ff};
-        final byte[] g = {0, ff};
-        final byte[] b = {0, ff};
-        IndexColorModel cm = new IndexColorModel(1, 2, r, g, b, 0);
-        BufferedImage bi = new BufferedImage(w, h, BufferedImage.TYPE_BYTE_BINARY, cm);
+        // window with the cells covered by the path, clipped to the grid
+        final int firstCol = Math.max(0, (int) Math.floor(minX));
+        final int lastCol = Math.min(cols, (int) Math.ceil(maxX) + 1);
+        final int firstRow = Math.max(0, (int) Math.floor(minY));
+        final int lastRow = Math.min(rows, (int) Math.ceil(maxY) + 1);
+        if (firstCol >= lastCol || firstRow >= lastRow) {
+            return false;
+        }
+
+        // the window is aligned with the words of the grid
+        final int firstWord = firstCol >>> 6;
+        final int windowWords = ((lastCol - 1) >>> 6) - firstWord + 1;
+        final int windowSize = windowWords * (lastRow - firstRow);
+        if (windowBits.length < windowSize) {
+            windowBits = new long[windowSize];
+        } else {
+            Arrays.fill(windowBits, 0, windowSize, 0L);
+        }
+        scanConvert(windowBits, windowWords, firstRow, firstWord,
+                firstRow, lastRow, firstCol, lastCol);
 
-        Graphics2D g2d = bi.createGraphics();
-        g2d.setColor(Color.WHITE);
-        g2d.setBackground(Color.BLACK);
-        g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_OFF);
+        for (int r = firstRow; r < lastRow; ++r) {
+            final int gridID = r * wordsPerRow + firstWord;
+            final int windowID = (r - firstRow) * windowWords;
+            for (int w = 0; w < windowWords; ++w) {
+                if ((bits[gridID + w] & windowBits[windowID + w]) != 0) {
+                    return true;
+                }
+            }
+        }
 
-        // transform from Geo space to user space, last transformation first!
-        /*
-         * Transformation:
-         * x_ = (x-west)*scale;
-         * y_ = (north-y)*scale = (y-north)*(-scale);
-         */
-        final double scale = 1. / cellSize;
-        g2d.scale(scale, -scale);
-        g2d.translate(-west, -north);
+        if (addIfNotOverlaying) {
+            for (int r = firstRow; r < lastRow; ++r) {
+                final int gridID = r * wordsPerRow + firstWord;
+                final int windowID = (r - firstRow) * windowWords;
+                for (int w = 0; w < windowWords; ++w) {
+                    bits[gridID + w] |= windowBits[windowID + w];
+                }
+            }
+        }
 
-        return new BinaryImage(bi, g2d);
-    }
+        return false;
 
-    public void rasterize(GeoPath geoPath) {
-        rasterize(geoPath, this.grid.g2d);
     }
 
-    private void rasterize(GeoPath geoPath, Graphics2D g2d) {
+    /**
+     * Converts a GeoPath to convex stroke polygons, thin lines and fill edges
+     * in cell coordinates.
+     *
+     * @param geoPath the path to convert
+     */
+    private void outline(GeoPath geoPath) {
+        strokePolygons.clear();
+        fillEdgesCount = 0;
+        thinLinesCount = 0;
+        minX = minY = Double.POSITIVE_INFINITY;
+        maxX = maxY = Double.NEGATIVE_INFINITY;
 
         VectorSymbol vectorSymbol = geoPath.getVectorSymbol();
-
-        // render path
-        GeneralPath path = new GeneralPath();
-        path.append(geoPath.toPathIterator(null), false);
-        if (vectorSymbol.isFilled()) {
-            g2d.fill(path);
+        if (vectorSymbol == null) {
+            return;
         }
-        if (vectorSymbol.isStroked()) {
-            g2d.setStroke(new BasicStroke(vectorSymbol.getStrokeWidth()));
-            g2d.draw(path);
+        final boolean fill = vectorSymbol.isFilled();
+        final boolean stroke = vectorSymbol.isStroked();
+        if (!fill && !stroke) {
+            return;
         }
+        final double width = vectorSymbol.getStrokeWidth() / cellSize;
+        final double halfWidth = width / 2;
+        final boolean thin = width * width <= THIN_STROKE_WIDTH_SQUARED;
+        final boolean normalize = fill || !thin;
+
+        PathIterator pi = new FlatteningPathIterator(
+                geoPath.toPathIterator(null), cellSize * REL_FLATNESS);
+        double[] coords = new double[6];
+        int n = 0;
+        boolean hasSegment = false;
+        while (!pi.isDone()) {
+            switch (pi.currentSegment(coords)) {
+                case PathIterator.SEG_MOVETO:
+                    addSubpath(n, hasSegment, false, fill, stroke, halfWidth, thin);
+                    n = addVertex(0, coords[0], coords[1], normalize);
+                    hasSegment = false;
+                    break;
+                case PathIterator.SEG_LINETO:
+                    n = addVertex(n, coords[0], coords[1], normalize);
+                    hasSegment = true;
+                    break;
+                case PathIterator.SEG_CLOSE:
+                    addSubpath(n, hasSegment, true, fill, stroke, halfWidth, thin);
+                    // the current point is the start of the closed subpath
+                    n = Math.min(n, 1);
+                    hasSegment = false;
+                    break;
+            }
+            pi.next();
+        }
+        addSubpath(n, hasSegment, false, fill, stroke, halfWidth, thin);
+    }
 
+    /**
+     * Appends a vertex to the current subpath, unless it is identical to the
+     * last vertex.
+     *
+     * @param n the number of vertices in the current subpath
+     * @param x horizontal coordinate
+     * @param y vertical coordinate
+     * @param normalize if true, the vertex is rounded as done by Java2D for
+     * normalized strokes and fills.
+     * @return the new number of vertices
+     */
+    private int addVertex(int n, double x, double y, boolean normalize) {
+        double cx = (x - west) / cellSize;
+        double cy = (north - y) / cellSize;
+        if (normalize) {
+            cx = Math.floor(cx + 0.25) + 0.25;
+            cy = Math.floor(cy + 0.25) + 0.25;
+        }
+        if (n > 0 && subpathX[n - 1] == cx && subpathY[n - 1] == cy) {
+            return n;
+        }
+        if (n == subpathX.length) {
+            subpathX = Arrays.copyOf(subpathX, n * 2);
+            subpathY = Arrays.copyOf(subpathY, n * 2);
+        }
+        subpathX[n] = cx;
+        subpathY[n] = cy;
+        return n + 1;
     }
 
-    public boolean isAddingCausingOverlay(GeoPath geoPath, boolean addIfNotOverlaying) {
+    /**
+     * Converts the current subpath to stroke polygons, thin lines and fill
+     * edges.
+     */
+    private void addSubpath(int n, boolean hasSegment, boolean closed,
+            boolean fill, boolean stroke, double halfWidth, boolean thin) {
+
+        if (n == 0) {
+            return;
+        }
+        final double[] x = subpathX;
+        final double[] y = subpathY;
+        if (closed && n > 1 && x[n - 1] == x[0] && y[n - 1] == y[0]) {
+            --n;
+        }
+
+        if (fill && n > 2) {
+            for (int i = 0; i < n; i++) {
+                final int j = (i + 1) % n;
+                addFillEdge(x[i], y[i], x[j], y[j]);
+            }
+        }
+        if (!stroke) {
+            return;
+        }
+
+        if (thin) {
+            if (n == 1) {
+                if (hasSegment || closed) {
+                    addThinLine(x[0], y[0], x[0], y[0]);
+                }
+            } else {
+                for (int i = 0; i < n - 1; i++) {
+                    addThinLine(x[i], y[i], x[i + 1], y[i + 1]);
+                }
+                if (closed) {
+                    addThinLine(x[n - 1], y[n - 1], x[0], y[0]);
+                }
+            }
+            return;
+        }
 
-        int w = this.grid.image.getWidth();
-        int h = this.grid.image.getHeight();
-        this.rasterizerGrid = initGrid(w, h);
-        rasterize(geoPath, rasterizerGrid.g2d);
+        // a zero-length segment is drawn as a square
+        if (n == 1) {
+            if (hasSegment || closed) {
+                final double hw = halfWidth;
+                addStrokePolygon(new double[]{
+                    x[0] - hw, y[0] - hw, x[0] + hw, y[0] - hw,
+                    x[0] + hw, y[0] + hw, x[0] - hw, y[0] + hw});
+            }
+            return;
+        }
 
-        Rectangle2D objBounds = geoPath.getBounds2D(GeoObject.UNDEFINED_SCALE);
-        final double objWest = objBounds.getMinX();
-        final double objEast = objBounds.getMaxX();
-        final double objSouth = objBounds.getMinY();
-        final double objNorth = objBounds.getMaxY();
+        // segments with square caps at the ends of open subpaths
+        final int nSegments = closed ? n : n - 1;
+        for (int i = 0; i < nSegments; i++) {
+            final int j = (i + 1) % n;
+            final double length = distance(x[i], y[i], x[j], y[j]);
+            final double dx = (x[j] - x[i]) / length * halfWidth;
+            final double dy = (y[j] - y[i]) / length * halfWidth;
+            final double startCap = (!closed && i == 0) ? 1 : 0;
+            final double endCap = (!closed && j == n - 1) ? 1 : 0;
+            final double x0 = x[i] - dx * startCap;
+            final double y0 = y[i] - dy * startCap;
+            final double x1 = x[j] + dx * endCap;
+            final double y1 = y[j] + dy * endCap;
+            addStrokePolygon(new double[]{
+                x0 - dy, y0 + dx, x1 - dy, y1 + dx,
+                x1 + dy, y1 - dx, x0 + dy, y0 - dx});
+        }
 
-        VectorSymbol vectorSymbol = geoPath.getVectorSymbol();
-        final double lineWidth = vectorSymbol != null ? vectorSymbol.getStrokeWidth() * 2. : 0;
+        // mitered joins, beveled if the miter is too long
+        final int firstJoin = closed ? 0 : 1;
+        final int endJoin = closed ? n : n - 1;
+        for (int i = firstJoin; i < endJoin; i++) {
+            final int prev = (i + n - 1) % n;
+            final int next = (i + 1) % n;
+            final double l0 = distance(x[prev], y[prev], x[i], y[i]);
+            final double l1 = distance(x[i], y[i], x[next], y[next]);
+            final double d0x = (x[i] - x[prev]) / l0;
+            final double d0y = (y[i] - y[prev]) / l0;
+            final double d1x = (x[next] - x[i]) / l1;
+            final double d1y = (y[next] - y[i]) / l1;
+            final double cross = d0x * d1y - d0y * d1x;
+            final double dot = d0x * d1x + d0y * d1y;
+            if (cross == 0 && dot > 0) {
+                continue;
+            }
+            // normals on the outer side of the turn
+            final double s = cross > 0 ? -halfWidth : halfWidth;
+            final double n0x = -d0y * s;
+            final double n0y = d0x * s;
+            final double n1x = -d1y * s;
+            final double n1y = d1x * s;
+            final double ax = x[i] + n0x;
+            final double ay = y[i] + n0y;
+            final double bx = x[i] + n1x;
+            final double by = y[i] + n1y;
+            final double mx = (n0x + n1x) / (1 + dot);
+            final double my = (n0y + n1y) / (1 + dot);
+            final double miterLimit = MITER_LIMIT * halfWidth;
+            if (1 + dot > 0 && mx * mx + my * my <= miterLimit * miterLimit) {
+                addStrokePolygon(new double[]{
+                    x[i], y[i], ax, ay, x[i] + mx, y[i] + my, bx, by});
+            } else {
+                addStrokePolygon(new double[]{x[i], y[i], ax, ay, bx, by});
+            }
+        }
+    }
+
+    private static double distance(double x0, double y0, double x1, double y1) {
+        final double dx = x1 - x0;
+        final double dy = y1 - y0;
+        return Math.sqrt(dx * dx + dy * dy);
+    }
+
+    private void addStrokePolygon(double[] polygon) {
+        for (int i = 0; i < polygon.length; i += 2) {
+            extendBounds(polygon[i], polygon[i + 1]);
+        }
+        strokePolygons.add(polygon);
+    }
 
-        int firstCol = (int) ((objWest - lineWidth - this.west) / cellSize);
-        int firstRow = (int) ((objNorth - lineWidth - this.getNorth()) / cellSize);
-        firstCol = Math.max(0, firstCol);
-        firstRow = Math.max(0, firstRow);
+    private void addFillEdge(double x0, double y0, double x1, double y1) {
+        if (fillEdgesCount + 4 > fillEdges.length) {
+            fillEdges = Arrays.copyOf(fillEdges, fillEdges.length * 2);
+        }
+        fillEdges[fillEdgesCount++] = x0;
+        fillEdges[fillEdgesCount++] = y0;
+        fillEdges[fillEdgesCount++] = x1;
+        fillEdges[fillEdgesCount++] = y1;
+        extendBounds(x0, y0);
+        extendBounds(x1, y1);
+    }
 
-        int lastCol = (int) Math.ceil((objEast + lineWidth - this.west) / cellSize);
-        int lastRow = (int) Math.ceil((this.getNorth() - objSouth + lineWidth) / cellSize);
-        lastCol = Math.min(grid.image.getWidth(), lastCol);
-        lastRow = Math.min(grid.image.getHeight(), lastRow);
+    private void addThinLine(double x0, double y0, double x1, double y1) {
+        if (thinLinesCount + 4 > thinLines.length) {
+            thinLines = Arrays.copyOf(thinLines, thinLines.length * 2);
+        }
+        thinLines[thinLinesCount++] = x0;
+        thinLines[thinLinesCount++] = y0;
+        thinLines[thinLinesCount++] = x1;
+        thinLines[thinLinesCount++] = y1;
+        extendBounds(x0, y0);
+        extendBounds(x1, y1);
+    }
 
-        Raster r1 = rasterizerGrid.image.getRaster();
-        Raster r2 = grid.image.getRaster();
+    private void extendBounds(double x, double y) {
+        minX = Math.min(minX, x);
+        maxX = Math.max(maxX, x);
+        minY = Math.min(minY, y);
+        maxY = Math.max(maxY, y);
+    }
 
-        for (int r = firstRow; r < lastRow; ++r) {
-            for (int c = firstCol; c < lastCol; ++c) {
-                if (r1.getSample(c, r, 0) == 1 && r2.getSample(c, r, 0) == 1) {
-                    return true;
+    /**
+     * Sets the bits of all cells with a center inside the stroke polygons or
+     * inside the fill edges, and of all cells along thin lines.
+     *
+     * @param target the bitmask to write to
+     * @param stride number of longs per row of target
+     * @param targetRow the grid row of the first row of target
+     * @param targetWord the grid word of the first word in each row of target
+     * @param firstRow first row to write to
+     * @param lastRow row after the last row to write to
+     * @param firstCol first column to write to
+     * @param lastCol column after the last column to write to
+     */
+    private void scanConvert(long[] target, int stride, int targetRow, int targetWord,
+            int firstRow, int lastRow, int firstCol, int lastCol) {
+
+        for (double[] polygon : strokePolygons) {
+            double polyMinY = Double.POSITIVE_INFINITY;
+            double polyMaxY = Double.NEGATIVE_INFINITY;
+            for (int i = 1; i < polygon.length; i += 2) {
+                polyMinY = Math.min(polyMinY, polygon[i]);
+                polyMaxY = Math.max(polyMaxY, polygon[i]);
+            }
+            final int r0 = Math.max(firstRow, (int) Math.ceil(polyMinY - 0.5));
+            final int r1 = Math.min(lastRow, (int) Math.ceil(polyMaxY - 0.5));
+            for (int r = r0; r < r1; r++) {
+                // intersect the convex polygon with the horizontal line
+                // through the centers of the cells in this row
+                final double sampleY = r + 0.5;
+                double xLeft = Double.POSITIVE_INFINITY;
+                double xRight = Double.NEGATIVE_INFINITY;
+                for (int i = 0; i < polygon.length; i += 2) {
+                    final int j = (i + 2) % polygon.length;
+                    final double x0 = polygon[i];
+                    final double y0 = polygon[i + 1];
+                    final double x1 = polygon[j];
+                    final double y1 = polygon[j + 1];
+                    if ((y0 <= sampleY && sampleY < y1) || (y1 <= sampleY && sampleY < y0)) {
+                        final double x = x0 + (sampleY - y0) * (x1 - x0) / (y1 - y0);
+                        xLeft = Math.min(xLeft, x);
+                        xRight = Math.max(xRight, x);
+                    }
+                }
+                if (xLeft < xRight) {
+                    setSpan(target, (r - targetRow) * stride - targetWord,
+                            Math.max(firstCol, (int) Math.ceil(xLeft - 0.5)),
+                            Math.min(lastCol, (int) Math.ceil(xRight - 0.5)));
                 }
             }
         }
 
-        if (addIfNotOverlaying) {
-            AffineTransform trans = this.grid.g2d.getTransform();
-            this.grid.g2d.setTransform(new AffineTransform());
-            this.grid.g2d.drawImage(rasterizerGrid.image, 0, 0, null);
-            this.grid.g2d.setTransform(trans);
+        if (fillEdgesCount > 0) {
+            scanConvertFill(target, stride, targetRow, targetWord,
+                    firstRow, lastRow, firstCol, lastCol);
         }
 
-        return false;
+        for (int i = 0; i < thinLinesCount; i += 4) {
+            scanConvertThinLine(target, stride, targetRow, targetWord,
+                    firstRow, lastRow, firstCol, lastCol,
+                    thinLines[i], thinLines[i + 1], thinLines[i + 2], thinLines[i + 3]);
+        }
+    }
+
+    /**
+     * Sets the bits of the cells along a thin line with one cell per step
+     * along the major axis of the line. The cells are centered on integer
+     * coordinates, which approximates thin lines drawn by Java2D.
+     */
+    private static void scanConvertThinLine(long[] target, int stride,
+            int targetRow, int targetWord,
+            int firstRow, int lastRow, int firstCol, int lastCol,
+            double x0, double y0, double x1, double y1) {
+
+        final double dx = x1 - x0;
+        final double dy = y1 - y0;
+        final boolean steep = Math.abs(dy) > Math.abs(dx);
+        // major axis coordinates
+        final double a0 = steep ? y0 : x0;
+        final double a1 = steep ? y1 : x1;
+        final double minA = Math.min(a0, a1);
+        final double maxA = Math.max(a0, a1);
+        final double slope = a0 == a1 ? 0 : (steep ? dx / dy : dy / dx);
+        final int first = (int) Math.round(minA);
+        final int last = (int) Math.round(maxA);
+        for (int i = first; i <= last; i++) {
+            final double a = Math.min(maxA, Math.max(minA, i));
+            final double b = (steep ? x0 : y0) + (a - a0) * slope;
+            final int col = steep ? (int) Math.round(b) : i;
+            final int row = steep ? i : (int) Math.round(b);
+            if (col >= firstCol && col < lastCol && row >= firstRow && row < lastRow) {
+                final int id = (row - targetRow) * stride + (col >>> 6) - targetWord;
+                target[id] |= 1L << col;
+            }
+        }
+    }
+
+    /**
+     * Sets the bits of all cells with a center inside the fill edges, using
+     * the non-zero winding rule.
+     */
+    private void scanConvertFill(long[] target, int stride, int targetRow, int targetWord,
+            int firstRow, int lastRow, int firstCol, int lastCol) {
+
+        final int r0 = Math.max(firstRow, (int) Math.ceil(minY - 0.5));
+        final int r1 = Math.min(lastRow, (int) Math.ceil(maxY - 0.5));
+        double[] crossings = new double[16];
+        for (int r = r0; r < r1; r++) {
+            final double sampleY = r + 0.5;
+            int nCrossings = 0;
+            for (int i = 0; i < fillEdgesCount; i += 4) {
+                final double x0 = fillEdges[i];
+                final double y0 = fillEdges[i + 1];
+                final double x1 = fillEdges[i + 2];
+                final double y1 = fillEdges[i + 3];
+                final int winding;
+                if (y0 <= sampleY && sampleY < y1) {
+                    winding = 1;
+                } else if (y1 <= sampleY && sampleY < y0) {
+                    winding = -1;
+                } else {
+                    continue;
+                }
+                if (nCrossings == crossings.length) {
+                    crossings = Arrays.copyOf(crossings, nCrossings * 2);
+                }
+                final double x = x0 + (sampleY - y0) * (x1 - x0) / (y1 - y0);
+                crossings[nCrossings++] = x;
+                crossings[nCrossings++] = winding;
+            }
+            sortCrossings(crossings, nCrossings);
+            int winding = 0;
+            for (int i = 0; i < nCrossings; i += 2) {
+                final int previousWinding = winding;
+                winding += (int) crossings[i + 1];
+                if (previousWinding != 0) {
+                    setSpan(target, (r - targetRow) * stride - targetWord,
+                            Math.max(firstCol, (int) Math.ceil(crossings[i - 2] - 0.5)),
+                            Math.min(lastCol, (int) Math.ceil(crossings[i] - 0.5)));
+                }
+            }
+        }
+    }
+
+    /**
+     * Sorts pairs of crossing and winding direction by increasing crossing
+     * with an insertion sort. There are only few crossings per row.
+     */
+    private static void sortCrossings(double[] crossings, int n) {
+        for (int i = 2; i < n; i += 2) {
+            final double x = crossings[i];
+            final double winding = crossings[i + 1];
+            int j = i - 2;
+            while (j >= 0 && crossings[j] > x) {
+                crossings[j + 2] = crossings[j];
+                crossings[j + 3] = crossings[j + 1];
+                j -= 2;
+            }
+            crossings[j + 2] = x;
+            crossings[j + 3] = winding;
+        }
+    }
 
+    /**
+     * Sets the bits of a span of cells in a row.
+     *
+     * @param target the bitmask
+     * @param rowID index in target of the word containing column 0 of the row,
+     * can be negative if target does not contain column 0
+     * @param col0 first column
+     * @param col1 column after the last column
+     */
+    private static void setSpan(long[] target, int rowID, int col0, int col1) {
+        if (col0 >= col1) {
+            return;
+        }
+        final int word0 = col0 >>> 6;
+        final int word1 = (col1 - 1) >>> 6;
+        final long mask0 = -1L << col0;
+        final long mask1 = -1L >>> (63 - ((col1 - 1) & 63));
+        if (word0 == word1) {
+            target[rowID + word0] |= mask0 & mask1;
+        } else {
+            target[rowID + word0] |= mask0;
+            for (int w = word0 + 1; w < word1; w++) {
+                target[rowID + w] = -1L;
+            }
+            target[rowID + word1] |= mask1;
+        }
     }
 
     public final boolean contains(double x, double y) {
         int c = (int) Math.floor((x - west) / cellSize);
         int r = (int) Math.floor((north - y) / cellSize);
-        int w = this.grid.image.getWidth();
-        int h = this.grid.image.getHeight();
-        return r >= 0 && c >= 0 && r < h && c < w && grid.image.getRaster().getSample(c, r, 0) == 1;
+        return r >= 0 && c >= 0 && r < rows && c < cols
+                && (bits[r * wordsPerRow + (c >>> 6)] & (1L << c)) != 0;
     }
 
     @Override
@@ -169,10 +617,8 @@ public class GeoBinaryGrid extends AbstractRaster {
 
     @Override
     public java.awt.geom.Rectangle2D getBounds2D(double scale) {
-        int w = this.grid.image.getWidth();
-        int h = this.grid.image.getHeight();
-        final double width = this.cellSize * (w - 1);
-        final double height = this.cellSize * (h - 1);
+        final double width = this.cellSize * (cols - 1);
+        final double height = this.cellSize * (rows - 1);
         final double x = this.west;
         final double y = this.north - height;
         return new Rectangle2D.Double(x, y, width, height);
@@ -180,18 +626,12 @@ public class GeoBinaryGrid extends AbstractRaster {
 
     @Override
     public int getCols() {
-        if (grid == null || grid.image == null) {
-            return 0;
-        }
-        return grid.image.getRaster().getWidth();
+        return cols;
     }
 
     @Override
     public int getRows() {
-        if (grid == null || grid.image == null) {
-            return 0;
-        }
-        return this.grid.image.getRaster().getHeight();
+        return rows;
     }
 
     @Override
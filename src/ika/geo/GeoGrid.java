@@ -7,16 +7,40 @@
 package ika.geo;
 
 import java.awt.geom.*;
+import java.nio.FloatBuffer;
 
 /**
- * A georeferenced raster grid.
+ * A georeferenced raster grid. The values are stored row by row, either in a
+ * single array or in buffers, such that large grids are not split into
+ * thousands of row arrays. The storage is chosen when the grid is created and
+ * does not change afterwards, except when the grid is cut.
+ *
+ * For grids stored in an array, the value of a cell is at index
+ * row * cols + col of the array returned by getData(). Grids stored in
+ * buffers, for example, in memory-mapped regions of a file, do not occupy
+ * memory on the Java heap; their values are accessed with getValue or copied
+ * by bands of rows with copyRows.
  * @author Bernhard Jenny, Institute of Cartography, ETH Zurich.
  */
 public class GeoGrid extends AbstractRaster {
 
     private int cols;
     private int rows;
-    private float[][] grid;
+    /**
+     * The values of the grid, row by row. Null if the values are stored in
+     * buffers.
+     */
+    private float[] data;
+    /**
+     * The values of the grid, row by row, in buffers with rowsPerBuffer rows
+     * each. The last buffer may contain fewer rows. Null if the values are
+     * stored in data.
+     */
+    private FloatBuffer[] buffers;
+    /**
+     * The number of rows in each buffer.
+     */
+    private int rowsPerBuffer;
 
     public class GeoGridStatistics {
 
@@ -26,15 +50,13 @@ public class GeoGrid extends AbstractRaster {
         public int voidCount;
 
         public GeoGridStatistics(GeoGrid geoGrid) {
-            float[][] grid = geoGrid.getGrid();
             min = Float.MAX_VALUE;
             max = -Float.MAX_VALUE;
             double tot = 0;
             voidCount = 0;
             for (int r = 0; r < rows; ++r) {
-                float row[] = grid[r];
                 for (int c = 0; c < cols; ++c) {
-                    float v = row[c];
+                    float v = geoGrid.getValue(c, r);
                     if (Float.isInfinite(v) || Float.isNaN(v)) {
                         ++voidCount;
                     } else {
@@ -79,11 +101,12 @@ public class GeoGrid extends AbstractRaster {
 
     public GeoGrid(int cols, int rows, double cellSize, float initialValue) {
         this.initGrid(cols, rows, cellSize);
-        for (int r = 0; r < rows; ++r) {
-            java.util.Arrays.fill(this.grid[r], initialValue);
-        }
+        java.util.Arrays.fill(this.data, initialValue);
     }
 
+    /**
+     * Creates a grid with a copy of the values in an array of rows.
+     */
     public GeoGrid (float[][] grid, double cellSize) {
         if (grid == null
                 || grid.length < 2
@@ -93,21 +116,61 @@ public class GeoGrid extends AbstractRaster {
             throw new IllegalArgumentException();
         }
 
-        this.grid = grid;
-        this.rows = grid.length;
-        this.cols = grid[0].length;
+        this.initGrid(grid[0].length, grid.length, cellSize);
+        for (int row = 0; row < rows; row++) {
+            System.arraycopy(grid[row], 0, data, row * cols, cols);
+        }
+    }
+
+    /**
+     * Creates a grid with values stored in buffers, for example, in
+     * memory-mapped regions of a file. The values are not copied, and
+     * setValue changes the buffers. Each buffer contains the same number of
+     * complete rows between position 0 and its limit, except for the last
+     * buffer, which may contain fewer rows.
+     *
+     * @param cols the number of columns
+     * @param rows the number of rows
+     * @param cellSize the size of a cell
+     * @param buffers the values of the grid, row by row
+     */
+    public GeoGrid(int cols, int rows, double cellSize, FloatBuffer[] buffers) {
+        if (cols < 1 || rows < 1 || buffers == null || buffers.length == 0
+                || buffers[0].limit() % cols != 0) {
+            throw new IllegalArgumentException("invalid grid buffers");
+        }
+        final int rowsPerBuffer = buffers[0].limit() / cols;
+        for (int i = 0; i < buffers.length; i++) {
+            final int bufferRows = Math.min(rowsPerBuffer, rows - i * rowsPerBuffer);
+            if (bufferRows < 1 || buffers[i].limit() != bufferRows * cols) {
+                throw new IllegalArgumentException("invalid grid buffers");
+            }
+        }
+        if ((long) buffers.length * rowsPerBuffer < rows) {
+            throw new IllegalArgumentException("invalid grid buffers");
+        }
+        this.cols = cols;
+        this.rows = rows;
         this.cellSize = cellSize;
+        this.buffers = buffers.clone();
+        this.rowsPerBuffer = rowsPerBuffer;
     }
 
+    /**
+     * Returns a deep copy of this grid. The values of the copy are always
+     * stored in an array.
+     */
     @Override
     public GeoGrid clone() {
         GeoGrid copy = (GeoGrid) super.clone();
 
         // deep copy of grid
-        copy.grid = new float[this.grid.length][];
-        for (int row = 0; row < rows; row++) {
-            copy.grid[row] = new float[cols];
-            System.arraycopy(grid[row], 0, copy.grid[row], 0, cols);
+        if (data != null) {
+            copy.data = data.clone();
+        } else {
+            copy.initGrid(cols, rows, cellSize);
+            copy.buffers = null;
+            copyRows(0, rows, copy.data);
         }
         return copy;
 
@@ -117,7 +180,10 @@ public class GeoGrid extends AbstractRaster {
         this.cols = cols;
         this.rows = rows;
         this.cellSize = cellSize;
-        this.grid = new float[rows][cols];
+        if ((long) cols * rows > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("grid too large: " + cols + " x " + rows);
+        }
+        this.data = new float[cols * rows];
     }
 
     public boolean hasSameExtensionAndResolution(GeoGrid grid) {
@@ -185,7 +251,11 @@ public class GeoGrid extends AbstractRaster {
     }
 
     public final float getValue(int col, int row) {
-        return grid[row][col];
+        final float[] d = data;
+        if (d != null) {
+            return d[row * cols + col];
+        }
+        return buffers[row / rowsPerBuffer].get((row % rowsPerBuffer) * cols + col);
     }
 
     public final float getNearestNeighbor(double x, double y) {
@@ -195,7 +265,7 @@ public class GeoGrid extends AbstractRaster {
         if (col < 0 || col >= this.cols || row < 0 || row >= this.rows) {
             return Float.NaN;
         }
-        return grid[row][col];
+        return getValue(col, row);
     }
 
     /**
@@ -406,13 +476,13 @@ public class GeoGrid extends AbstractRaster {
      */
     public double getSlope(int col, int row) {
 
-        if (row < 1 || row >= this.grid.length - 1 || col < 1 || col >= this.grid[0].length - 1) {
+        if (row < 1 || row >= this.rows - 1 || col < 1 || col >= this.cols - 1) {
             return Double.NaN;
         }
-        final float w = this.grid[row][col - 1];
-        final float e = this.grid[row][col + 1];
-        final float s = this.grid[row + 1][col];
-        final float n = this.grid[row - 1][col];
+        final float w = this.getValue(col - 1, row);
+        final float e = this.getValue(col + 1, row);
+        final float s = this.getValue(col, row + 1);
+        final float n = this.getValue(col, row - 1);
         return Math.atan(Math.hypot(e - w, n - s) / (2 * this.cellSize));
 
     }
@@ -425,7 +495,12 @@ public class GeoGrid extends AbstractRaster {
      * @param row The row of the value to change
      */
     public void setValue(float value, int col, int row) {
-        grid[row][col] = value;
+        final float[] d = data;
+        if (d != null) {
+            d[row * cols + col] = value;
+        } else {
+            buffers[row / rowsPerBuffer].put((row % rowsPerBuffer) * cols + col, value);
+        }
     }
 
     /**
@@ -437,11 +512,12 @@ public class GeoGrid extends AbstractRaster {
         float max = -Float.MAX_VALUE;
         for (int r = 0; r < rows; ++r) {
             for (int c = 0; c < cols; ++c) {
-                if (grid[r][c] < min) {
-                    min = grid[r][c];
+                final float v = getValue(c, r);
+                if (v < min) {
+                    min = v;
                 }
-                if (grid[r][c] > max) {
-                    max = grid[r][c];
+                if (v > max) {
+                    max = v;
                 }
             }
         }
@@ -467,19 +543,25 @@ public class GeoGrid extends AbstractRaster {
         this.cut(firstRow, firstCol, nbrRows, nbrCols);
     }
 
+    /**
+     * Replaces the values of this grid with a section of the grid. The
+     * section is always stored in an array. This must not be called while
+     * other threads access the grid.
+     */
     public void cut(int firstRow, int firstCol, int newRows, int newCols) {
-        float[][] newGrid = new float[newRows][newCols];
+        float[] newData = new float[newRows * newCols];
 
         // copy section of grid
         for (int i = 0; i < newRows; i++) {
-            System.arraycopy(this.grid[i + firstRow], firstCol, newGrid[i], 0, newCols);
+            copyRow(i + firstRow, firstCol, newData, i * newCols, newCols);
         }
 
         this.cols = newCols;
         this.rows = newRows;
         this.west += firstCol * this.cellSize;
         this.north -= firstRow * this.cellSize;
-        this.grid = newGrid;
+        this.data = newData;
+        this.buffers = null;
     }
 
     public int getCols() {
@@ -498,8 +580,66 @@ public class GeoGrid extends AbstractRaster {
         return this.west + (this.cols - 1) * this.cellSize;
     }
 
-    public float[][] getGrid() {
-        return grid;
+    /**
+     * Returns whether the values of the grid are stored in an array that is
+     * returned by getData().
+     *
+     * @return true if the values are stored in an array, false if they are
+     * stored in buffers.
+     */
+    public boolean hasData() {
+        return data != null;
+    }
+
+    /**
+     * Returns the values of the grid in a single array, row by row. The value
+     * of a cell is at index row * getCols() + col. The array is not a copy;
+     * changes to the array change the grid.
+     *
+     * @return the values of the grid
+     * @throws IllegalStateException if the values are stored in buffers.
+     */
+    public float[] getData() {
+        final float[] d = data;
+        if (d == null) {
+            throw new IllegalStateException("the grid values are stored in buffers");
+        }
+        return d;
+    }
+
+    /**
+     * Copies the values of a band of rows to an array, independently of how
+     * the values are stored. The value of a cell is copied to index
+     * (row - firstRow) * getCols() + col.
+     *
+     * @param firstRow the first row to copy
+     * @param endRow the row after the last row to copy
+     * @param dst the destination array
+     */
+    public void copyRows(int firstRow, int endRow, float[] dst) {
+        if (firstRow < 0 || endRow > rows || endRow < firstRow
+                || dst.length < (long) (endRow - firstRow) * cols) {
+            throw new IllegalArgumentException("invalid rows");
+        }
+        for (int row = firstRow; row < endRow; row++) {
+            copyRow(row, 0, dst, (row - firstRow) * cols, cols);
+        }
+    }
+
+    /**
+     * Copies values of a row to an array.
+     */
+    private void copyRow(int row, int firstCol, float[] dst, int dstOffset, int length) {
+        final float[] d = data;
+        if (d != null) {
+            System.arraycopy(d, row * cols + firstCol, dst, dstOffset, length);
+        } else {
+            // read from a duplicate, as the position of the shared buffer must
+            // not change when multiple threads read the grid
+            FloatBuffer buffer = buffers[row / rowsPerBuffer].duplicate();
+            buffer.position((row % rowsPerBuffer) * cols + firstCol);
+            buffer.get(dst, dstOffset, length);
+        }
     }
 
     /**
@@ -9,14 +9,20 @@ package ika.geo;
 import java.awt.geom.*;
 
 /**
- * A georeferenced raster grid.
+ * A georeferenced raster grid. The values are stored in a single array, row by
+ * row, such that large grids are not split into thousands of row arrays. The
+ * value of a cell is at index row * cols + col of the array returned by
+ * getData().
  * @author Bernhard Jenny, Institute of Cartography, ETH Zurich.
  */
 public class GeoGridShort extends AbstractRaster {
 
     private int cols;
     private int rows;
-    private short[][] grid;
+    /**
+     * The values of the grid, row by row.
+     */
+    private short[] data;
 
     /** Creates a new instance of GeoGrid */
     public GeoGridShort(int cols, int rows, double cellSize) {
@@ -25,11 +31,12 @@ public class GeoGridShort extends AbstractRaster {
 
     public GeoGridShort(int cols, int rows, double cellSize, short initialValue) {
         this.initGrid(cols, rows, cellSize);
-        for (int r = 0; r < rows; ++r) {
-            java.util.Arrays.fill(this.grid[r], initialValue);
-        }
+        java.util.Arrays.fill(this.data, initialValue);
     }
 
+    /**
+     * Creates a grid with a copy of the values in an array of rows.
+     */
     public GeoGridShort (short[][] grid, double cellSize) {
         if (grid == null
                 || grid.length < 2
@@ -39,10 +46,10 @@ public class GeoGridShort extends AbstractRaster {
             throw new IllegalArgumentException();
         }
 
-        this.grid = grid;
-        this.rows = grid.length;
-        this.cols = grid[0].length;
-        this.cellSize = cellSize;
+        this.initGrid(grid[0].length, grid.length, cellSize);
+        for (int row = 0; row < rows; row++) {
+            System.arraycopy(grid[row], 0, data, row * cols, cols);
+        }
     }
 
     @Override
@@ -50,11 +57,7 @@ public class GeoGridShort extends AbstractRaster {
         GeoGridShort copy = (GeoGridShort) super.clone();
 
         // deep copy of grid
-        copy.grid = new short[this.grid.length][];
-        for (int row = 0; row < rows; row++) {
-            copy.grid[row] = new short[cols];
-            System.arraycopy(grid[row], 0, copy.grid[row], 0, cols);
-        }
+        copy.data = data.clone();
         return copy;
 
     }
@@ -63,7 +66,10 @@ public class GeoGridShort extends AbstractRaster {
         this.cols = cols;
         this.rows = rows;
         this.cellSize = cellSize;
-        this.grid = new short[rows][cols];
+        if ((long) cols * rows > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("grid too large: " + cols + " x " + rows);
+        }
+        this.data = new short[cols * rows];
     }
 
     public boolean hasSameExtensionAndResolution(GeoGridShort grid) {
@@ -131,7 +137,7 @@ public class GeoGridShort extends AbstractRaster {
     }
 
     public final float getValue(int col, int row) {
-        return grid[row][col];
+        return data[row * cols + col];
     }
 
     public final short getNearestNeighbor(double x, double y) {
@@ -141,7 +147,7 @@ public class GeoGridShort extends AbstractRaster {
         if (col < 0 || col >= this.cols || row < 0 || row >= this.rows) {
             return Short.MIN_VALUE;
         }
-        return grid[row][col];
+        return data[row * cols + col];
     }
 
     /**
@@ -347,13 +353,13 @@ public class GeoGridShort extends AbstractRaster {
      */
     public double getSlope(int col, int row) {
 
-        if (row < 1 || row >= this.grid.length - 1 || col < 1 || col >= this.grid[0].length - 1) {
+        if (row < 1 || row >= this.rows - 1 || col < 1 || col >= this.cols - 1) {
             return Double.NaN;
         }
-        final float w = this.grid[row][col - 1];
-        final float e = this.grid[row][col + 1];
-        final float s = this.grid[row + 1][col];
-        final float n = this.grid[row - 1][col];
+        final float w = this.getValue(col - 1, row);
+        final float e = this.getValue(col + 1, row);
+        final float s = this.getValue(col, row + 1);
+        final float n = this.getValue(col, row - 1);
         return Math.atan(Math.hypot(e - w, n - s) / (2 * this.cellSize));
 
     }
@@ -366,7 +372,7 @@ public class GeoGridShort extends AbstractRaster {
      * @param row The row of the value to change
      */
     public void setValue(short value, int col, int row) {
-        grid[row][col] = value;
+        data[row * cols + col] = value;
     }
 
     /**
@@ -378,11 +384,12 @@ public class GeoGridShort extends AbstractRaster {
         short max = Short.MIN_VALUE;
         for (int r = 0; r < rows; ++r) {
             for (int c = 0; c < cols; ++c) {
-                if (grid[r][c] < min) {
-                    min = grid[r][c];
+                final short v = (short) getValue(c, r);
+                if (v < min) {
+                    min = v;
                 }
-                if (grid[r][c] > max) {
-                    max = grid[r][c];
+                if (v > max) {
+                    max = v;
                 }
             }
         }
@@ -405,8 +412,15 @@ public class GeoGridShort extends AbstractRaster {
         return this.west + (this.cols - 1) * this.cellSize;
     }
 
-    public short[][] getGrid() {
-        return grid;
+    /**
+     * Returns the values of the grid in a single array, row by row. The value
+     * of a cell is at index row * getCols() + col. The array is not a copy;
+     * changes to the array change the grid.
+     *
+     * @return the values of the grid
+     */
+    public short[] getData() {
+        return data;
     }
 
     /**
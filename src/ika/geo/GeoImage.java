@@ -31,6 +31,18 @@ public class GeoImage extends AbstractRaster implements Serializable {
      */
     transient protected BufferedImage image; // cannot be serialized!
     
+    /**
+     * A memory-mapped gray image that is used instead of image. The pixels of
+     * a mapped image are not loaded into memory.
+     */
+    transient private MappedGrayImage mappedImage;
+    
+    /**
+     * A BufferedImage view of mappedImage for code accessing the raster of the
+     * image. Created when getBufferedImage() is first called.
+     */
+    transient private BufferedImage mappedImageView;
+    
     /**
      * URL of the image file that was read.
      */
@@ -67,6 +79,40 @@ public class GeoImage extends AbstractRaster implements Serializable {
         this.url = url;
     }
     
+    /**
+     * Create a new instance of GeoImage with a memory-mapped gray image.
+     * @param mappedImage The mapped image.
+     * @param west Top left corner of this image.
+     * @param north Top left corner of this image.
+     * @param cellSize Size of a pixel.
+     */
+    public GeoImage(MappedGrayImage mappedImage, double west, double north,
+            double cellSize) {
+        
+        if (mappedImage == null || cellSize <= 0)
+            throw new IllegalArgumentException();
+        
+        this.mappedImage = mappedImage;
+        this.url = null;
+        this.west = west;
+        this.north = north;
+        this.cellSize = cellSize;
+    }
+    
+    /**
+     * Create a new instance of GeoImage with a memory-mapped gray image. The
+     * lower left corner of the image is placed at 0/0, the size of a pixel in
+     * world coordinates equals 1.
+     * @param mappedImage The mapped image.
+     * @param url URL of the mapped file.
+     */
+    public GeoImage(MappedGrayImage mappedImage, URL url) {
+        if (mappedImage == null)
+            throw new IllegalArgumentException();
+        this.mappedImage = mappedImage;
+        this.url = url;
+    }
+    
     private void writeObject(java.io.ObjectOutputStream stream)
     throws IOException {
         
@@ -101,10 +147,16 @@ public class GeoImage extends AbstractRaster implements Serializable {
     }
 
     public void optimizeForDisplay() {
+        // mapped images are drawn with images created for each view
+        if (this.mappedImage != null)
+            return;
         this.image = ImageUtils.optimizeForGraphicsHardware(this.image);
     }
 
     public void convertToGrayscale() {
+        // mapped images are gray
+        if (this.mappedImage != null)
+            return;
         if (this.image.getType() != BufferedImage.TYPE_BYTE_GRAY) {
             this.image = ImageUtils.convertToGrayscale(this.image);
         }
@@ -112,11 +164,58 @@ public class GeoImage extends AbstractRaster implements Serializable {
 
     @Override
     public void drawNormalState(RenderParams rp) {
+        if (this.mappedImage != null) {
+            this.drawMappedImage(rp);
+            return;
+        }
         if (this.image == null)
             return;
         this.drawImage(this.image, rp.g2d, rp.scale, 1);
     }
     
+    /**
+     * Draws the visible part of a mapped image. The pixels are sampled at the
+     * resolution of the screen, so that only a small part of the mapped file
+     * is read for views at small scales.
+     */
+    private void drawMappedImage(RenderParams rp) {
+        // intersection of the visible area and the image in world coordinates
+        final double left = Math.max(rp.visLeft, this.west);
+        final double right = Math.min(rp.visLeft + rp.visWidth, this.getEast());
+        final double bottom = Math.max(rp.visBottom, this.getSouth());
+        final double top = Math.min(rp.visBottom + rp.visHeight, this.north);
+        if (left >= right || bottom >= top)
+            return;
+        
+        // sample the image with the size of a screen pixel, but not smaller
+        // than the pixels of the image
+        final double pixelSize = Math.max(this.cellSize, 1. / rp.scale);
+        final int w = Math.max(1, (int)Math.ceil((right - left) / pixelSize));
+        final int h = Math.max(1, (int)Math.ceil((top - bottom) / pixelSize));
+        BufferedImage screenImage = new BufferedImage(w, h, BufferedImage.TYPE_BYTE_GRAY);
+        byte[] pixels = ((DataBufferByte)screenImage.getRaster().getDataBuffer()).getData();
+        final int cols = this.getCols();
+        final int rows = this.getRows();
+        final int[] srcCols = new int[w];
+        for (int c = 0; c < w; c++) {
+            final int col = (int)((left + (c + 0.5) * pixelSize - this.west) / this.cellSize);
+            srcCols[c] = Math.min(cols - 1, Math.max(0, col));
+        }
+        for (int r = 0; r < h; r++) {
+            int row = (int)((this.north - (top - (r + 0.5) * pixelSize)) / this.cellSize);
+            row = Math.min(rows - 1, Math.max(0, row));
+            for (int c = 0; c < w; c++) {
+                pixels[r * w + c] = (byte)this.mappedImage.getGray(srcCols[c], row);
+            }
+        }
+        
+        AffineTransform trans = new AffineTransform();
+        trans.scale(1, -1);
+        trans.translate(left, -top);
+        trans.scale(pixelSize, pixelSize);
+        rp.g2d.drawImage(screenImage, trans, null);
+    }
+    
     @Override
     public void drawSelectedState(RenderParams rp) {
         if (!this.isSelected())
@@ -151,7 +250,7 @@ public class GeoImage extends AbstractRaster implements Serializable {
     @Override
     public boolean isPointOnSymbol(java.awt.geom.Point2D point, double tolDist,
             double scale) {
-        if (image == null)
+        if (image == null && mappedImage == null)
             return false;
         Rectangle2D bounds = this.getBounds2D(scale);
         GeometryUtils.enlargeRectangle(bounds, tolDist);
@@ -169,11 +268,11 @@ public class GeoImage extends AbstractRaster implements Serializable {
     
     @Override
     public Rectangle2D getBounds2D(double scale) {
-        if (image == null)
+        if (image == null && mappedImage == null)
             return null;
         
-        final double h = cellSize * image.getHeight();
-        final double w = cellSize * image.getWidth();
+        final double h = cellSize * getRows();
+        final double w = cellSize * getCols();
         return new Rectangle2D.Double(west, north - h, w, h);
     }
     
@@ -181,6 +280,8 @@ public class GeoImage extends AbstractRaster implements Serializable {
      */
     @Override
     public int getRows(){
+        if (this.mappedImage != null)
+            return this.mappedImage.getRows();
         return this.image == null ? 0 : this.image.getHeight();
     }
     
@@ -188,6 +289,8 @@ public class GeoImage extends AbstractRaster implements Serializable {
      */
     @Override
     public int getCols(){
+        if (this.mappedImage != null)
+            return this.mappedImage.getCols();
         return this.image == null ? 0 : this.image.getWidth();
     }
     
@@ -212,6 +315,10 @@ public class GeoImage extends AbstractRaster implements Serializable {
     }
 
     public final int getRGB(int col, int row) {
+        if (this.mappedImage != null) {
+            final int gray = this.mappedImage.getGray(col, row);
+            return 0xff000000 | gray << 16 | gray << 8 | gray;
+        }
         return this.image.getRGB(col, row);
     }
 
@@ -225,7 +332,9 @@ public class GeoImage extends AbstractRaster implements Serializable {
         // getRGB() returns a wrong value for grayscale images. The conversion
         // from linear rgb to gamma-corrected rgb seems to be applied twice.
         // see http://bugs.sun.com/bugdatabase/view_bug.do?bug_id=6467250
-        if (this.image.getType() == BufferedImage.TYPE_BYTE_GRAY) {
+        if (this.mappedImage != null) {
+            return this.mappedImage.getGray(col, row);
+        } else if (this.image.getType() == BufferedImage.TYPE_BYTE_GRAY) {
             return image.getRaster().getSample(col, row, 0);
         } else {
             final int rgb = this.image.getRGB(col, row);
@@ -261,7 +370,7 @@ public class GeoImage extends AbstractRaster implements Serializable {
         else if (row < 0 || row > rows)
             return 0;
 
-        return this.image.getRGB(col, row);
+        return this.getRGB(col, row);
     }
 
     public final int getNearestGrayNeighbor(double x, double y) {
@@ -319,19 +428,19 @@ public class GeoImage extends AbstractRaster implements Serializable {
         
         if (row + 1 < rows) {
             // value at bottom left corner
-            h1 = this.image.getRGB(col, row + 1);
+            h1 = this.getRGB(col, row + 1);
             // value at bottom right corner
-            h2 = col + 1 < cols ? this.image.getRGB(col + 1, row + 1) : 0;
+            h2 = col + 1 < cols ? this.getRGB(col + 1, row + 1) : 0;
         } else {
             h1 = 0;
             h2 = 0;
         }
         
         // value at top left corner
-        h3 = this.image.getRGB(col, row);
+        h3 = this.getRGB(col, row);
         
         // value at top right corner
-        h4 = col + 1 < cols ? this.image.getRGB(col + 1, row) : 0;
+        h4 = col + 1 < cols ? this.getRGB(col + 1, row) : 0;
         
         return GeoImage.bilinearInterpolation(h1, h2, h3, h4, relX, relY);
     }
@@ -426,7 +535,7 @@ public class GeoImage extends AbstractRaster implements Serializable {
         for (int m = -1; m <= 2; m++) {
             final double rx = R(m-dx);
             for (int n = -1; n <= 2; n++) {
-                final int c = this.image.getRGB(i+m, j+n);
+                final int c = this.getRGB(i+m, j+n);
                 final int r = ( 0xff0000 & c ) >> 16;
                 final int g = ( 0xff00 & c ) >> 8;
                 final int b = 0xff & c;
@@ -499,25 +608,25 @@ public class GeoImage extends AbstractRaster implements Serializable {
         final double u = ((x - this.west) - col1 * this.cellSize) / cellSize;
         final double v = ((this.north - y) - row1 * this.cellSize) / cellSize;
         
-        final int c00 = this.image.getRGB(col0, row0);
-        final int c01 = this.image.getRGB(col1, row0);
-        final int c02 = this.image.getRGB(col2, row0);
-        final int c03 = this.image.getRGB(col3, row0);
+        final int c00 = this.getRGB(col0, row0);
+        final int c01 = this.getRGB(col1, row0);
+        final int c02 = this.getRGB(col2, row0);
+        final int c03 = this.getRGB(col3, row0);
         
-        final int c10 = this.image.getRGB(col0, row1);
-        final int c11 = this.image.getRGB(col1, row1);
-        final int c12 = this.image.getRGB(col2, row1);
-        final int c13 = this.image.getRGB(col3, row1);
+        final int c10 = this.getRGB(col0, row1);
+        final int c11 = this.getRGB(col1, row1);
+        final int c12 = this.getRGB(col2, row1);
+        final int c13 = this.getRGB(col3, row1);
         
-        final int c20 = this.image.getRGB(col0, row2);
-        final int c21 = this.image.getRGB(col1, row2);
-        final int c22 = this.image.getRGB(col2, row2);
-        final int c23 = this.image.getRGB(col3, row2);
+        final int c20 = this.getRGB(col0, row2);
+        final int c21 = this.getRGB(col1, row2);
+        final int c22 = this.getRGB(col2, row2);
+        final int c23 = this.getRGB(col3, row2);
         
-        final int c30 = this.image.getRGB(col0, row3);
-        final int c31 = this.image.getRGB(col1, row3);
-        final int c32 = this.image.getRGB(col2, row3);
-        final int c33 = this.image.getRGB(col3, row3);
+        final int c30 = this.getRGB(col0, row3);
+        final int c31 = this.getRGB(col1, row3);
+        final int c32 = this.getRGB(col2, row3);
+        final int c33 = this.getRGB(col3, row3);
         
         final int r00 = ( 0xff0000 & c00 ) >> 16;
         final int g00 = ( 0xff00 & c00 ) >> 8;
@@ -653,7 +762,31 @@ public class GeoImage extends AbstractRaster implements Serializable {
             throw new UnsupportedOperationException();
     }
     
+    /**
+     * Copies the pixels of the memory-mapped image to a BufferedImage, which
+     * replaces the mapped image.
+     */
+    private synchronized void loadMappedImage() {
+        final int cols = this.mappedImage.getCols();
+        final int rows = this.mappedImage.getRows();
+        if ((long)cols * rows > Integer.MAX_VALUE)
+            throw new UnsupportedOperationException("Image too large to be loaded into memory");
+        BufferedImage loadedImage = new BufferedImage(cols, rows, BufferedImage.TYPE_BYTE_GRAY);
+        byte[] pixels = ((DataBufferByte)loadedImage.getRaster().getDataBuffer()).getData();
+        byte[] gray = new byte[cols];
+        for (int row = 0; row < rows; row++) {
+            this.mappedImage.getGrayRow(row, 0, cols, gray);
+            System.arraycopy(gray, 0, pixels, row * cols, cols);
+        }
+        this.image = loadedImage;
+        this.mappedImage = null;
+        this.mappedImageView = null;
+    }
+    
     private void rotateAroundCenter(double rotRad) {
+        // the rotated image is stored in memory
+        if (this.mappedImage != null)
+            this.loadMappedImage();
         AffineTransform at = AffineTransform.getRotateInstance(-rotRad);
         Rectangle2D bounds = this.getBounds2D(GeoObject.UNDEFINED_SCALE);
         bounds = new Rectangle2D.Double(0, 0, bounds.getWidth(), bounds.getHeight());
@@ -698,18 +831,102 @@ public class GeoImage extends AbstractRaster implements Serializable {
         
     }
     
+    /**
+     * Returns the image. For a memory-mapped image, a read-only view of the
+     * mapped pixels is returned, which is slow to draw and to access.
+     */
     public BufferedImage getBufferedImage() {
+        if (this.mappedImage != null) {
+            synchronized (this) {
+                if (this.mappedImageView == null)
+                    this.mappedImageView = this.mappedImage.createBufferedImage();
+                return this.mappedImageView;
+            }
+        }
         return this.image;
     }
     
+    /**
+     * Returns the memory-mapped image, or null if the pixels of this image
+     * are stored in a BufferedImage.
+     */
+    public MappedGrayImage getMappedImage() {
+        return this.mappedImage;
+    }
+    
     public URL getURL() {
         return this.url;
     }
 
+    /**
+     * Returns a section of this image. The returned image shares its pixels
+     * with this image, no pixels are copied. The section is aligned with the
+     * pixels of this image and covers the passed extent.
+     * @param extent The extent of the section in world coordinates.
+     * @return The section or null if the extent does not intersect this image.
+     */
+    public GeoImage getSubImage(Rectangle2D extent) {
+        if (image == null && mappedImage == null) {
+            return null;
+        }
+        int firstCol = (int) Math.floor((extent.getMinX() - west) / cellSize);
+        int firstRow = (int) Math.floor((north - extent.getMaxY()) / cellSize);
+        int lastCol = (int) Math.ceil((extent.getMaxX() - west) / cellSize);
+        int lastRow = (int) Math.ceil((north - extent.getMinY()) / cellSize);
+        firstCol = Math.max(0, firstCol);
+        firstRow = Math.max(0, firstRow);
+        lastCol = Math.min(getCols(), lastCol);
+        lastRow = Math.min(getRows(), lastRow);
+        if (firstCol >= lastCol || firstRow >= lastRow) {
+            return null;
+        }
+        if (mappedImage != null) {
+            MappedGrayImage subImage = mappedImage.getSubImage(firstCol, firstRow,
+                    lastCol - firstCol, lastRow - firstRow);
+            return new GeoImage(subImage, west + firstCol * cellSize,
+                    north - firstRow * cellSize, cellSize);
+        }
+        BufferedImage subImage = image.getSubimage(firstCol, firstRow,
+                lastCol - firstCol, lastRow - firstRow);
+        return new GeoImage(subImage, west + firstCol * cellSize,
+                north - firstRow * cellSize, cellSize);
+    }
+
+    /**
+     * Returns a grayscale copy of this image with one of step x step pixels.
+     * The center pixel of each block of pixels is copied without averaging,
+     * which is much faster than resampling, but ignores details.
+     * @param step The number of pixels in each direction that are replaced
+     * by a single pixel.
+     * @return A new image with a cell size step times larger than the cell
+     * size of this image.
+     */
+    public GeoImage getDecimatedGrayCopy(int step) {
+        if (step < 1) {
+            throw new IllegalArgumentException("invalid step " + step);
+        }
+        final int srcCols = getCols();
+        final int srcRows = getRows();
+        final int cols = (srcCols + step - 1) / step;
+        final int rows = (srcRows + step - 1) / step;
+        BufferedImage newImage = new BufferedImage(Math.max(1, cols),
+                Math.max(1, rows), BufferedImage.TYPE_BYTE_GRAY);
+        byte[] pixels = ((DataBufferByte) newImage.getRaster().getDataBuffer()).getData();
+        final int newCols = newImage.getWidth();
+        for (int row = 0; row < rows; row++) {
+            final int srcRow = Math.min(srcRows - 1, row * step + step / 2);
+            for (int col = 0; col < cols; col++) {
+                final int srcCol = Math.min(srcCols - 1, col * step + step / 2);
+                pixels[row * newCols + col] = (byte) getGray(srcCol, srcRow);
+            }
+        }
+        return new GeoImage(newImage, west, north, cellSize * step);
+    }
+
     public GeoImage getResampledCopy(double newCellSize, Object renderingHint, int imageType) {
         int newRows = (int)((getNorth() - getSouth()) / newCellSize);
         int newCols = (int)((getEast() - getWest()) / newCellSize);
-        BufferedImage newImage = ImageUtils.getFasterScaledInstance(image,
+        BufferedImage newImage = ImageUtils.getFasterScaledInstance(getBufferedImage(),
             newCols, newRows, renderingHint, imageType, true);
         return new GeoImage(newImage, getWest(), getNorth(), newCellSize);
     }
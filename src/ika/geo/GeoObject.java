@@ -465,7 +465,14 @@ public abstract class GeoObject implements Serializable, Cloneable {
      * @param visible True: the object should be made visible.
      */
     public void setVisible(boolean visible) {
+        if (this.visible == visible) {
+            return;
+        }
         this.visible = visible;
+        GeoTreeRoot root = this.getRoot();
+        if (root != null) {
+            root.informListeners(this.getBounds2D(UNDEFINED_SCALE));
+        }
     }
 
     /**
@@ -257,6 +257,19 @@ public class GeoPath extends GeoObject implements Serializable, Cloneable {
         }
     }
 
+    /**
+     * Appends a polyline in a single step. The first point is the location to
+     * move to if the path is empty, otherwise a straight line is drawn to the
+     * first point.
+     * <B>Important: A call to this method does not generate a MapEvent!</B>
+     *
+     * @param xy The coordinates of the points: x0, y0, x1, y1, etc.
+     * @param pointsCount The number of points in xy.
+     */
+    public void moveOrLineTo(double[] xy, int pointsCount) {
+        path.moveOrLineTo(xy, pointsCount);
+    }
+
     /**
      * Appends a quadratic bezier curve to this GeoPath.
      * <B>Important: A call to this method does not generate a MapEvent!</B>
@@ -16,6 +16,7 @@ import java.awt.geom.Rectangle2D;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.Serializable;
+import java.util.Arrays;
 
 /**
  * GeoPathModel holds the geometry model of a GeoPath. It does not handle 
@@ -351,6 +352,32 @@ public final class GeoPathModel implements Serializable, Cloneable {
             this.add(x, y, LINETO);
     }
     
+    /**
+     * Appends a polyline. The first point is the location to move to if this
+     * path is empty, otherwise a straight line is drawn to the first point.
+     * All points are appended in a single step, which is considerably faster
+     * than calling moveOrLineTo for each point of a long line.
+     * @param xy The coordinates of the points: x0, y0, x1, y1, etc.
+     * @param pointsCount The number of points in xy.
+     */
+    public void moveOrLineTo(double[] xy, int pointsCount) {
+        if (pointsCount <= 0)
+            return;
+        int first = 0;
+        if (this.points.length == 0) {
+            this.moveTo(xy[0], xy[1]);
+            first = 1;
+        }
+        final int coordinatesCount = this.points.length;
+        final int instructionsCount = this.instructions.length;
+        final int newPointsCount = pointsCount - first;
+        this.points = Arrays.copyOf(this.points, coordinatesCount + newPointsCount * 2);
+        System.arraycopy(xy, first * 2, this.points, coordinatesCount, newPointsCount * 2);
+        this.instructions = Arrays.copyOf(this.instructions, instructionsCount + newPointsCount);
+        Arrays.fill(this.instructions, instructionsCount, this.instructions.length, LINETO);
+        this.updateBounds();
+    }
+    
     /**
      * Appends a quadratic bezier curve.
      * @param x1 The location of the control point that is not on the curve.
@@ -25,6 +25,37 @@ public class GeoSet extends GeoObject implements Serializable, Cloneable {
 
     private boolean grouped = false;
 
+    /**
+     * A GeoSet with a spatial index only visits children intersecting the
+     * visible area when drawing, and children near the tested location when
+     * selecting. The index is only used for GeoSets with at least this number
+     * of children.
+     */
+    public static final int SPATIAL_INDEX_MIN_CHILDREN = 256;
+
+    /**
+     * Symbols may extend beyond the bounding box of the geometry of a child.
+     * Queries of the spatial index are enlarged by this distance in pixels.
+     */
+    private static final double SPATIAL_INDEX_MARGIN_PX = 20;
+
+    /**
+     * If true, a spatial index of the children is built when needed.
+     */
+    private boolean spatialIndexEnabled = false;
+
+    /**
+     * The spatial index of the children. Null if the index has not been built
+     * yet or if it has been invalidated by a change.
+     */
+    private transient SpatialIndex spatialIndex;
+
+    /**
+     * Incremented whenever the spatial index is invalidated. An index built
+     * while the children were changed by another thread is not kept.
+     */
+    private transient int spatialIndexVersion;
+
     /**
      * Creates a new instance of GeoSet
      */
@@ -53,6 +84,7 @@ public class GeoSet extends GeoObject implements Serializable, Cloneable {
 
             // clone all children in this GeoSet and add them to the copy
             copy.vector = new Vector(this.vector.size());
+            copy.spatialIndex = null;
             final int nbrChildren = this.getNumberOfChildren();
             for (int i = 0; i < nbrChildren; i++) {
                 GeoObject geoObject = this.getGeoObject(i);
@@ -138,6 +170,7 @@ public class GeoSet extends GeoObject implements Serializable, Cloneable {
 
         vector.add(index, geoObject);
         geoObject.setParent(this);
+        invalidateSpatialIndex(geoObject.getBounds2D(UNDEFINED_SCALE));
     }
 
     /**
@@ -226,6 +259,7 @@ public class GeoSet extends GeoObject implements Serializable, Cloneable {
             }
         }
         vector.clear();
+        invalidateSpatialIndex();
     }
 
     public void remove(GeoObject geoObject) {
@@ -238,6 +272,7 @@ public class GeoSet extends GeoObject implements Serializable, Cloneable {
         }
         vector.remove(index);
         geoObject.setParent(null);
+        invalidateSpatialIndex(geoObject.getBounds2D(UNDEFINED_SCALE));
     }
 
     /**
@@ -253,6 +288,7 @@ public class GeoSet extends GeoObject implements Serializable, Cloneable {
         }
         vector.remove(index);
         geoObject.setParent(null);
+        invalidateSpatialIndex(geoObject.getBounds2D(UNDEFINED_SCALE));
         return geoObject;
     }
 
@@ -276,6 +312,9 @@ public class GeoSet extends GeoObject implements Serializable, Cloneable {
                 foundSelected = true;
             }
         }
+        if (foundSelected) {
+            invalidateSpatialIndex();
+        }
         return foundSelected;
     }
 
@@ -304,6 +343,9 @@ public class GeoSet extends GeoObject implements Serializable, Cloneable {
                 removedObject |= ((GeoSet) geoObject).removeByName(name);
             }
         }
+        if (removedObject) {
+            invalidateSpatialIndex();
+        }
         return removedObject;
     }
 
@@ -388,9 +430,16 @@ public class GeoSet extends GeoObject implements Serializable, Cloneable {
             boolean onlySelectable,
             boolean onlyVisible) {
 
+        // only test children close to the point
+        final double d = tolDist + spatialIndexMargin(scale);
+        final SpatialIndex index = getSpatialIndex(scale);
+        final Object[] children = getChildren(index);
+        final BitSet found = queryChildren(index, point.getX() - d,
+                point.getY() - d, point.getX() + d, point.getY() + d);
+
         // search in inverse order
-        for (int i = vector.size() - 1; i >= 0; i--) {
-            final GeoObject geoObject = (GeoObject) vector.get(i);
+        for (int i = lastChild(children, found); i >= 0; i = previousChild(found, i)) {
+            final GeoObject geoObject = (GeoObject) children[i];
             // test if point is on symbolized GeoObject
             final GeoObject geoObjectAtPosition
                     = geoObject.getObjectAtPosition(point, tolDist, scale,
@@ -487,12 +536,19 @@ public class GeoSet extends GeoObject implements Serializable, Cloneable {
             return false;
         }
 
+        // only test children close to the rectangle
+        final double d = spatialIndexMargin(scale);
+        final SpatialIndex index = getSpatialIndex(scale);
+        final Object[] children = getChildren(index);
+        final BitSet found = queryChildren(index, rect.getMinX() - d,
+                rect.getMinY() - d, rect.getMaxX() + d, rect.getMaxY() + d);
+
         boolean selectionChanged = false;
         if (this.grouped) {
             // this is a group, test if rectangle hits any child.
             boolean objectHit = false;
-            for (int i = this.vector.size() - 1; i >= 0; i--) {
-                final GeoObject geoObject = (GeoObject) this.vector.get(i);
+            for (int i = lastChild(children, found); i >= 0; i = previousChild(found, i)) {
+                final GeoObject geoObject = (GeoObject) children[i];
                 objectHit = geoObject.isIntersectedByRectangle(rect, scale);
                 if (objectHit) {
                     break;
@@ -516,12 +572,22 @@ public class GeoSet extends GeoObject implements Serializable, Cloneable {
 
             this.setSelected(select);
 
-        } else {
-            java.util.Iterator iterator = this.vector.iterator();
-            while (iterator.hasNext()) {
-                final GeoObject geoObject = (GeoObject) iterator.next();
+        } else if (found == null) {
+            for (Object child : children) {
+                final GeoObject geoObject = (GeoObject) child;
                 selectionChanged |= geoObject.selectByRectangle(rect, scale, extendSelection);
             }
+        } else {
+            for (int i = 0; i < children.length; i++) {
+                final GeoObject geoObject = (GeoObject) children[i];
+                if (found.get(i)) {
+                    selectionChanged |= geoObject.selectByRectangle(rect, scale, extendSelection);
+                } else if (!extendSelection && hasSelection(geoObject)) {
+                    // the rectangle does not intersect the child, which is
+                    // deselected
+                    selectionChanged |= geoObject.selectByRectangle(rect, scale, false);
+                }
+            }
         }
         return selectionChanged;
     }
@@ -714,10 +780,12 @@ public class GeoSet extends GeoObject implements Serializable, Cloneable {
 
     public void drawNormalState(RenderParams rp) {
         if (this.isVisible()) {
-            final java.util.Iterator iterator = this.vector.iterator();
-            while (iterator.hasNext()) {
-                final GeoObject geoObject = (GeoObject) iterator.next();
-                if (geoObject.isVisible()) {
+            final SpatialIndex index = getSpatialIndex(rp.scale);
+            final Object[] children = getChildren(index);
+            final BitSet visible = queryVisibleChildren(index, rp);
+            for (int i = firstChild(children, visible); i >= 0; i = nextChild(children, visible, i)) {
+                final GeoObject geoObject = (GeoObject) children[i];
+                if (geoObject.isVisible() && geoObject != rp.hiddenGeoObject) {
                     geoObject.drawNormalState(rp);
                 }
             }
@@ -726,16 +794,183 @@ public class GeoSet extends GeoObject implements Serializable, Cloneable {
 
     public void drawSelectedState(RenderParams rp) {
         if (this.isVisible()) {
-            final java.util.Iterator iterator = this.vector.iterator();
-            while (iterator.hasNext()) {
-                final GeoObject geoObject = (GeoObject) iterator.next();
-                if (geoObject.isVisible()) {
+            final SpatialIndex index = getSpatialIndex(rp.scale);
+            final Object[] children = getChildren(index);
+            final BitSet visible = queryVisibleChildren(index, rp);
+            for (int i = firstChild(children, visible); i >= 0; i = nextChild(children, visible, i)) {
+                final GeoObject geoObject = (GeoObject) children[i];
+                if (geoObject.isVisible() && geoObject != rp.hiddenGeoObject) {
                     geoObject.drawSelectedState(rp);
                 }
             }
         }
     }
 
+    /**
+     * Returns whether a spatial index is used for large numbers of children.
+     */
+    public boolean isSpatialIndexEnabled() {
+        return spatialIndexEnabled;
+    }
+
+    /**
+     * Enables or disables a spatial index of the children of this GeoSet. The
+     * index accelerates drawing and selecting when only a small part of many
+     * children is visible. It is only used when this GeoSet contains at
+     * least SPATIAL_INDEX_MIN_CHILDREN children. Children must not change
+     * their geometry without passing through the methods of this GeoSet,
+     * otherwise invalidateSpatialIndex must be called. The bounding box of
+     * children must not depend on the scale.
+     *
+     * @param spatialIndexEnabled If true, a spatial index is built when needed.
+     */
+    public void setSpatialIndexEnabled(boolean spatialIndexEnabled) {
+        this.spatialIndexEnabled = spatialIndexEnabled;
+        synchronized (this) {
+            this.spatialIndex = null;
+            ++this.spatialIndexVersion;
+        }
+    }
+
+    /**
+     * Discards the spatial index of this GeoSet and of all parent GeoSets. The
+     * index is rebuilt when it is needed next. This must be called when the
+     * geometry of a child has been changed directly. Listeners of the
+     * GeoTreeRoot are informed that the whole map needs to be redrawn.
+     */
+    public void invalidateSpatialIndex() {
+        this.invalidateSpatialIndex(null);
+    }
+
+    /**
+     * Discards the spatial index of this GeoSet and of all parent GeoSets, and
+     * informs the listeners of the GeoTreeRoot about the changed area.
+     *
+     * @param dirtyBox The changed area in world coordinates. Null if unknown.
+     */
+    protected void invalidateSpatialIndex(Rectangle2D dirtyBox) {
+        synchronized (this) {
+            this.spatialIndex = null;
+            ++this.spatialIndexVersion;
+        }
+        if (this.getParent() != null) {
+            this.getParent().invalidateSpatialIndex(dirtyBox);
+        }
+    }
+
+    /**
+     * Returns the spatial index of the children, or null if no index is
+     * used.
+     *
+     * @param scale The current scale of the map. No index is used for scales
+     * that are not positive.
+     */
+    private SpatialIndex getSpatialIndex(double scale) {
+        if (scale <= 0 || !spatialIndexEnabled
+                || vector.size() < SPATIAL_INDEX_MIN_CHILDREN) {
+            return null;
+        }
+        SpatialIndex index;
+        int version;
+        synchronized (this) {
+            index = spatialIndex;
+            version = spatialIndexVersion;
+        }
+        if (index == null) {
+            // the map may be drawn by background threads while the children
+            // are changed, so the index is built for a snapshot of the
+            // children
+            index = new SpatialIndex(vector.toArray());
+            synchronized (this) {
+                if (version == spatialIndexVersion) {
+                    spatialIndex = index;
+                }
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Returns a snapshot of the children. The map may be drawn by background
+     * threads while the children are changed by other threads; iterating over
+     * a snapshot visits each child once, even if children are added or
+     * removed at the same time.
+     *
+     * @param index The spatial index that is queried, or null. Indices
+     * returned by the index refer to the children from which it was built.
+     */
+    private Object[] getChildren(SpatialIndex index) {
+        return index == null ? vector.toArray() : index.getChildren();
+    }
+
+    private static double spatialIndexMargin(double scale) {
+        return scale > 0 ? SPATIAL_INDEX_MARGIN_PX / scale : 0;
+    }
+
+    /**
+     * Returns the indices of the children with a bounding box intersecting a
+     * rectangle in world coordinates, or null if all children must be
+     * visited.
+     */
+    private static BitSet queryChildren(SpatialIndex index, double xMin,
+            double yMin, double xMax, double yMax) {
+        return index == null ? null : index.query(xMin, yMin, xMax, yMax);
+    }
+
+    /**
+     * Returns the indices of the children intersecting the visible area, or
+     * null if all children must be visited.
+     */
+    private static BitSet queryVisibleChildren(SpatialIndex index, RenderParams rp) {
+        final double d = spatialIndexMargin(rp.scale);
+        return queryChildren(index, rp.visLeft - d, rp.visBottom - d,
+                rp.visLeft + rp.visWidth + d, rp.visBottom + rp.visHeight + d);
+    }
+
+    /**
+     * Iteration over the snapshot of children and the indices returned by
+     * queryChildren: returns the index of the first child, or -1 if there is
+     * none.
+     */
+    private static int firstChild(Object[] children, BitSet found) {
+        if (found == null) {
+            return children.length == 0 ? -1 : 0;
+        }
+        return found.nextSetBit(0);
+    }
+
+    private static int nextChild(Object[] children, BitSet found, int i) {
+        if (found == null) {
+            return i + 1 < children.length ? i + 1 : -1;
+        }
+        return found.nextSetBit(i + 1);
+    }
+
+    private static int lastChild(Object[] children, BitSet found) {
+        if (found == null) {
+            return children.length - 1;
+        }
+        return found.length() - 1;
+    }
+
+    private static int previousChild(BitSet found, int i) {
+        if (found == null) {
+            return i - 1;
+        }
+        return i == 0 ? -1 : found.previousSetBit(i - 1);
+    }
+
+    /**
+     * Returns true if a GeoObject is selected, or if it is a GeoSet containing
+     * selected GeoObjects.
+     */
+    private static boolean hasSelection(GeoObject geoObject) {
+        if (geoObject instanceof GeoSet) {
+            return ((GeoSet) geoObject).hasSelectedGeoObjects();
+        }
+        return geoObject.isSelected();
+    }
+
     /**
      * Returns true if this GeoSet contains any GeoObject that is currently
      * selected.
@@ -979,6 +1214,7 @@ public class GeoSet extends GeoObject implements Serializable, Cloneable {
             GeoObject geoObject = (GeoObject) iterator.next();
             geoObject.move(dx, dy);
         }
+        invalidateSpatialIndex();
     }
 
     public void rotate(double rotRad) {
@@ -987,6 +1223,7 @@ public class GeoSet extends GeoObject implements Serializable, Cloneable {
             GeoObject geoObject = (GeoObject) iterator.next();
             geoObject.rotate(rotRad);
         }
+        invalidateSpatialIndex();
     }
 
     public void transform(AffineTransform affineTransform) {
@@ -995,6 +1232,7 @@ public class GeoSet extends GeoObject implements Serializable, Cloneable {
             GeoObject geoObject = (GeoObject) iterator.next();
             geoObject.transform(affineTransform);
         }
+        invalidateSpatialIndex();
     }
 
     /**
@@ -1008,6 +1246,9 @@ public class GeoSet extends GeoObject implements Serializable, Cloneable {
             final GeoObject geoObject = (GeoObject) iterator.next();
             transformedChild |= geoObject.transformSelected(affineTransform);
         }
+        if (transformedChild) {
+            invalidateSpatialIndex();
+        }
         return transformedChild;
     }
 
@@ -1024,6 +1265,9 @@ public class GeoSet extends GeoObject implements Serializable, Cloneable {
             final GeoObject geoObject = (GeoObject) iterator.next();
             movedChild |= geoObject.moveSelected(dx, dy);
         }
+        if (movedChild) {
+            invalidateSpatialIndex();
+        }
         return movedChild;
     }
 
@@ -1056,6 +1300,7 @@ public class GeoSet extends GeoObject implements Serializable, Cloneable {
             GeoObject geoObject = (GeoObject) iterator.next();
             geoObject.scale(hScale, vScale);
         }
+        invalidateSpatialIndex();
     }
 
     /**
@@ -1075,6 +1320,9 @@ public class GeoSet extends GeoObject implements Serializable, Cloneable {
             final GeoObject geoObject = (GeoObject) iterator.next();
             scaledChild |= geoObject.scaleSelected(hScale, vScale);
         }
+        if (scaledChild) {
+            invalidateSpatialIndex();
+        }
         return scaledChild;
     }
 
@@ -0,0 +1,25 @@
+package ika.geo;
+
+import java.awt.geom.Rectangle2D;
+
+/**
+ * A listener that is informed when the drawing of a tree of GeoObjects
+ * changes, because GeoObjects are added, removed, transformed or shown or
+ * hidden.
+ *
+ * @author Bernhard Jenny, School of Mathematical and Geospatial Sciences, RMIT
+ * University, Melbourne
+ */
+public interface GeoTreeChangeListener {
+
+    /**
+     * This method is called whenever the tree changes. It may be called from
+     * any thread that changes the tree.
+     *
+     * @param root The root of the changed tree.
+     * @param dirtyBox The area in world coordinates that needs to be redrawn,
+     * not including the extent of symbols. Null if the changed area is
+     * unknown and the whole map needs to be redrawn.
+     */
+    public void geoTreeChanged(GeoTreeRoot root, Rectangle2D dirtyBox);
+}
@@ -10,6 +10,7 @@ import ika.gui.PageFormat;
 import ika.utils.Serializer;
 import java.awt.Color;
 import java.awt.geom.Rectangle2D;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * GeoTreeRoot has three GeoSets: background, main, and foreground. Usually the
@@ -47,6 +48,14 @@ public class GeoTreeRoot extends GeoSet {
      */
     private PageFormat pageFormat = new PageFormat();
 
+    /**
+     * Listeners that are informed when the drawing of the tree changes. The
+     * tree may be changed by any thread, so listeners are informed by the
+     * changing thread and can be added and removed concurrently.
+     */
+    transient private CopyOnWriteArrayList<GeoTreeChangeListener> changeListeners
+            = new CopyOnWriteArrayList<>();
+
     /**
      * Creates a new instance of GeoTreeRoot
      */
@@ -136,4 +145,45 @@ public class GeoTreeRoot extends GeoSet {
         return pageFormat;
     }
 
+    /**
+     * Register a GeoTreeChangeListener.
+     */
+    public void addGeoTreeChangeListener(GeoTreeChangeListener listener) {
+        if (listener != null) {
+            this.changeListeners.addIfAbsent(listener);
+        }
+    }
+
+    /**
+     * Unregister a GeoTreeChangeListener.
+     */
+    public void removeGeoTreeChangeListener(GeoTreeChangeListener listener) {
+        this.changeListeners.remove(listener);
+    }
+
+    @Override
+    protected void invalidateSpatialIndex(Rectangle2D dirtyBox) {
+        super.invalidateSpatialIndex(dirtyBox);
+        this.informListeners(dirtyBox);
+    }
+
+    /**
+     * Inform each registered GeoTreeChangeListener about a change.
+     *
+     * @param dirtyBox The changed area in world coordinates. Null if unknown.
+     */
+    protected void informListeners(Rectangle2D dirtyBox) {
+        // the transient listeners are null after deserialization
+        if (this.changeListeners == null) {
+            return;
+        }
+        // Inform listeners in inverse order. The listeners are copied, which
+        // allows listeners to remove themselves in the called method.
+        GeoTreeChangeListener[] listeners
+                = changeListeners.toArray(new GeoTreeChangeListener[0]);
+        for (int i = listeners.length - 1; i >= 0; i--) {
+            listeners[i].geoTreeChanged(this, dirtyBox);
+        }
+    }
+
 }
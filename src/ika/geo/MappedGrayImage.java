@@ -0,0 +1,258 @@
+package ika.geo;
+
+import java.awt.color.ColorSpace;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.ComponentColorModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.PixelInterleavedSampleModel;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A read-only 8-bit gray image stored uncompressed in a file, which is accessed
+ * via memory mapping. Pixels are not loaded into the Java heap; the operating
+ * system reads pages of the file when they are accessed.
+ *
+ * The pixels are organized in tiles of equal size, each stored row by row at
+ * an offset in the file. Strips of rows and images stored in a single block
+ * are special cases with tiles as wide as the image. Tiles along the right and
+ * bottom border may extend beyond the image, as in tiled TIFF files.
+ *
+ * A MappedGrayImage can be a section of a larger image, which shares the
+ * mapped file with the larger image. Instances are immutable and can be read
+ * concurrently by multiple threads.
+ *
+ * @author Bernhard Jenny, School of Mathematical and Geospatial Sciences, RMIT
+ * University, Melbourne
+ */
+public final class MappedGrayImage {
+
+    /**
+     * The file is mapped in chunks of this size, as a single mapping cannot
+     * exceed 2 GB.
+     */
+    private static final int CHUNK_BITS = 30;
+    private static final long CHUNK_MASK = (1L << CHUNK_BITS) - 1;
+
+    /**
+     * Mapped chunks of the file, shared by sections.
+     */
+    private final MappedByteBuffer[] chunks;
+
+    /**
+     * Size of the tiles in the file.
+     */
+    private final int tileWidth;
+    private final int tileHeight;
+
+    /**
+     * Number of tiles in a row of tiles.
+     */
+    private final int tilesAcross;
+
+    /**
+     * File offset of each tile, row by row.
+     */
+    private final long[] tileOffsets;
+
+    /**
+     * Position of the first pixel of this image in the image stored in the
+     * file.
+     */
+    private final int firstCol;
+    private final int firstRow;
+
+    /**
+     * Size of this image.
+     */
+    private final int cols;
+    private final int rows;
+
+    /**
+     * Maps an image stored in tiles.
+     *
+     * @param file the file
+     * @param cols the width of the image in pixels
+     * @param rows the height of the image in pixels
+     * @param tileWidth the width of the tiles in pixels
+     * @param tileHeight the height of the tiles in pixels
+     * @param tileOffsets the file offset of each tile, row by row
+     * @throws IOException if the file cannot be mapped or is too small
+     */
+    public MappedGrayImage(File file, int cols, int rows,
+            int tileWidth, int tileHeight, long[] tileOffsets) throws IOException {
+        if (cols <= 0 || rows <= 0 || tileWidth <= 0 || tileHeight <= 0) {
+            throw new IllegalArgumentException();
+        }
+        this.tilesAcross = (cols + tileWidth - 1) / tileWidth;
+        final int tilesDown = (rows + tileHeight - 1) / tileHeight;
+        if (tileOffsets.length < (long) tilesAcross * tilesDown) {
+            throw new IllegalArgumentException("missing tile offsets");
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+                FileChannel channel = raf.getChannel()) {
+            final long fileSize = channel.size();
+            for (int i = 0; i < tilesAcross * tilesDown; i++) {
+                // the last tile may be truncated to the last image row
+                final int tileRows = Math.min(tileHeight, rows - (i / tilesAcross) * tileHeight);
+                final long end = tileOffsets[i] + (tileRows - 1) * (long) tileWidth
+                        + Math.min(tileWidth, cols - (i % tilesAcross) * tileWidth);
+                if (tileOffsets[i] < 0 || end > fileSize) {
+                    throw new IOException("The image file is truncated.");
+                }
+            }
+            this.chunks = new MappedByteBuffer[(int) ((fileSize + CHUNK_MASK) >>> CHUNK_BITS)];
+            for (int i = 0; i < chunks.length; i++) {
+                final long start = (long) i << CHUNK_BITS;
+                chunks[i] = channel.map(FileChannel.MapMode.READ_ONLY, start,
+                        Math.min(fileSize - start, 1L << CHUNK_BITS));
+            }
+        }
+        this.tileWidth = tileWidth;
+        this.tileHeight = tileHeight;
+        this.tileOffsets = tileOffsets.clone();
+        this.firstCol = 0;
+        this.firstRow = 0;
+        this.cols = cols;
+        this.rows = rows;
+    }
+
+    /**
+     * Creates a section of an image.
+     */
+    private MappedGrayImage(MappedGrayImage image, int firstCol, int firstRow,
+            int cols, int rows) {
+        this.chunks = image.chunks;
+        this.tileWidth = image.tileWidth;
+        this.tileHeight = image.tileHeight;
+        this.tilesAcross = image.tilesAcross;
+        this.tileOffsets = image.tileOffsets;
+        this.firstCol = image.firstCol + firstCol;
+        this.firstRow = image.firstRow + firstRow;
+        this.cols = cols;
+        this.rows = rows;
+    }
+
+    /**
+     * Returns a section of this image, which shares the mapped file with this
+     * image.
+     *
+     * @param firstCol the first column of the section
+     * @param firstRow the first row of the section
+     * @param cols the number of columns of the section
+     * @param rows the number of rows of the section
+     * @return the section
+     */
+    public MappedGrayImage getSubImage(int firstCol, int firstRow, int cols, int rows) {
+        if (firstCol < 0 || firstRow < 0 || cols <= 0 || rows <= 0
+                || firstCol + cols > this.cols || firstRow + rows > this.rows) {
+            throw new IllegalArgumentException();
+        }
+        return new MappedGrayImage(this, firstCol, firstRow, cols, rows);
+    }
+
+    public int getCols() {
+        return cols;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    /**
+     * Returns the file offset of a pixel of the stored image.
+     */
+    private long offset(int col, int row) {
+        final int tile = (row / tileHeight) * tilesAcross + col / tileWidth;
+        return tileOffsets[tile] + (long) (row % tileHeight) * tileWidth + col % tileWidth;
+    }
+
+    /**
+     * Returns the gray value of a pixel.
+     *
+     * @param col the column of the pixel
+     * @param row the row of the pixel
+     * @return a gray value between 0 and 255
+     */
+    public int getGray(int col, int row) {
+        if (col < 0 || col >= cols || row < 0 || row >= rows) {
+            throw new ArrayIndexOutOfBoundsException("pixel outside of image");
+        }
+        final long offset = offset(col + firstCol, row + firstRow);
+        return chunks[(int) (offset >>> CHUNK_BITS)].get((int) (offset & CHUNK_MASK)) & 0xff;
+    }
+
+    /**
+     * Copies the gray values of a section of a row.
+     *
+     * @param row the row
+     * @param col the first column
+     * @param count the number of pixels to copy
+     * @param gray destination for the gray values
+     */
+    public void getGrayRow(int row, int col, int count, byte[] gray) {
+        if (col < 0 || count < 0 || col + count > cols || row < 0 || row >= rows) {
+            throw new ArrayIndexOutOfBoundsException("pixel outside of image");
+        }
+        int i = 0;
+        while (i < count) {
+            // copy the pixels of the row inside a tile
+            final int c = col + firstCol + i;
+            final int n = Math.min(count - i, tileWidth - c % tileWidth);
+            long offset = offset(c, row + firstRow);
+            for (int j = 0; j < n; j++, offset++) {
+                gray[i + j] = chunks[(int) (offset >>> CHUNK_BITS)].get((int) (offset & CHUNK_MASK));
+            }
+            i += n;
+        }
+    }
+
+    /**
+     * Returns a BufferedImage that reads its pixels from this image. No pixels
+     * are copied, but the image is of TYPE_CUSTOM, and Java2D accesses its
+     * pixels much slower than the pixels of a TYPE_BYTE_GRAY image. The
+     * BufferedImage is read-only, and the image must have less than 2^31
+     * pixels.
+     *
+     * @return a new BufferedImage
+     */
+    public BufferedImage createBufferedImage() {
+        if ((long) cols * rows > Integer.MAX_VALUE) {
+            throw new IllegalStateException("image too large for a BufferedImage");
+        }
+        ColorModel colorModel = new ComponentColorModel(
+                ColorSpace.getInstance(ColorSpace.CS_GRAY), new int[]{8},
+                false, false, ColorModel.OPAQUE, DataBuffer.TYPE_BYTE);
+        PixelInterleavedSampleModel sampleModel = new PixelInterleavedSampleModel(
+                DataBuffer.TYPE_BYTE, cols, rows, 1, cols, new int[]{0});
+        WritableRaster raster = Raster.createWritableRaster(sampleModel,
+                new MappedDataBuffer(), null);
+        return new BufferedImage(colorModel, raster, false, null);
+    }
+
+    /**
+     * A read-only DataBuffer with the pixels of this image, row by row.
+     */
+    private final class MappedDataBuffer extends DataBuffer {
+
+        MappedDataBuffer() {
+            super(DataBuffer.TYPE_BYTE, cols * rows);
+        }
+
+        @Override
+        public int getElem(int bank, int i) {
+            return getGray(i % cols, i / cols);
+        }
+
+        @Override
+        public void setElem(int bank, int i, int val) {
+            throw new UnsupportedOperationException("memory-mapped images are read-only");
+        }
+    }
+}
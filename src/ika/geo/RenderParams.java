@@ -60,6 +60,13 @@ public class RenderParams {
      * objects without changing their geometry. It may be null.
      */
     public AffineTransform selectedTransform;
+
+    /**
+     * A GeoObject that is not drawn, even if it is visible. This allows for
+     * temporarily replacing an object in a map without changing the visibility
+     * of the object. It may be null.
+     */
+    public GeoObject hiddenGeoObject;
     
     
     /**
@@ -0,0 +1,194 @@
+package ika.geo;
+
+import ika.utils.GeometryUtils;
+import java.awt.geom.Rectangle2D;
+import java.util.BitSet;
+
+/**
+ * A packed uniform grid indexing the bounding boxes of a snapshot of the
+ * children of a GeoSet. The index is immutable and must be rebuilt when
+ * children are added, removed or changed. Indices returned by queries refer to
+ * the snapshot returned by getChildren. Each cell stores the indices of the children that
+ * intersect the cell in ascending order. Children without valid bounding box
+ * and children covering a large part of the grid are not stored in cells, but
+ * are returned by every query.
+ *
+ * @author Bernhard Jenny, School of Mathematical and Geospatial Sciences, RMIT
+ * University, Melbourne
+ */
+final class SpatialIndex {
+
+    /**
+     * Children covering more cells than this fraction of all cells are
+     * returned by every query instead of being stored in many cells.
+     */
+    private static final double MAX_CELLS_FRACTION = 0.25;
+
+    /**
+     * The snapshot of the children that is indexed.
+     */
+    private final Object[] children;
+
+    private final double west;
+    private final double south;
+    private final double cellWidth;
+    private final double cellHeight;
+    private final int cols;
+    private final int rows;
+
+    /**
+     * The items of cell i are cellItems[cellStart[i]] to
+     * cellItems[cellStart[i + 1] - 1].
+     */
+    private final int[] cellStart;
+    private final int[] cellItems;
+
+    /**
+     * Children that are returned by every query.
+     */
+    private final BitSet alwaysVisited = new BitSet();
+
+    /**
+     * Builds an index for a snapshot of the children of a GeoSet.
+     *
+     * @param children the GeoObjects to index, which must not be changed
+     * afterwards
+     */
+    SpatialIndex(Object[] children) {
+        this.children = children;
+        final int n = children.length;
+        double[] bounds = new double[n * 4];
+        double xMin = Double.POSITIVE_INFINITY, xMax = Double.NEGATIVE_INFINITY;
+        double yMin = Double.POSITIVE_INFINITY, yMax = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < n; i++) {
+            GeoObject child = (GeoObject) children[i];
+            Rectangle2D b = child.getBounds2D(GeoObject.UNDEFINED_SCALE);
+            if (!GeometryUtils.isRectangleValid(b)) {
+                alwaysVisited.set(i);
+                continue;
+            }
+            bounds[i * 4] = b.getMinX();
+            bounds[i * 4 + 1] = b.getMinY();
+            bounds[i * 4 + 2] = b.getMaxX();
+            bounds[i * 4 + 3] = b.getMaxY();
+            xMin = Math.min(xMin, b.getMinX());
+            xMax = Math.max(xMax, b.getMaxX());
+            yMin = Math.min(yMin, b.getMinY());
+            yMax = Math.max(yMax, b.getMaxY());
+        }
+
+        // about one child per cell, with cells of similar width and height
+        final double w = Math.max(xMax - xMin, 0);
+        final double h = Math.max(yMax - yMin, 0);
+        final int indexedCount = n - alwaysVisited.cardinality();
+        if (indexedCount == 0) {
+            west = south = 0;
+            cellWidth = cellHeight = 1;
+            cols = rows = 1;
+        } else {
+            west = xMin;
+            south = yMin;
+            final double cellSize = Math.sqrt(w * h / indexedCount);
+            if (cellSize > 0) {
+                cols = (int) Math.max(1, Math.min(w / cellSize, indexedCount));
+                rows = (int) Math.max(1, Math.min(h / cellSize, indexedCount));
+            } else {
+                cols = w > 0 ? indexedCount : 1;
+                rows = h > 0 ? indexedCount : 1;
+            }
+            cellWidth = w > 0 ? w / cols : 1;
+            cellHeight = h > 0 ? h / rows : 1;
+        }
+
+        // count the children in each cell
+        final int maxCells = (int) Math.max(1, cols * (long) rows * MAX_CELLS_FRACTION);
+        cellStart = new int[cols * rows + 1];
+        for (int i = 0; i < n; i++) {
+            if (alwaysVisited.get(i)) {
+                continue;
+            }
+            final int c0 = col(bounds[i * 4]), c1 = col(bounds[i * 4 + 2]);
+            final int r0 = row(bounds[i * 4 + 1]), r1 = row(bounds[i * 4 + 3]);
+            if ((long) (c1 - c0 + 1) * (r1 - r0 + 1) > maxCells) {
+                alwaysVisited.set(i);
+                continue;
+            }
+            for (int r = r0; r <= r1; r++) {
+                for (int c = c0; c <= c1; c++) {
+                    ++cellStart[r * cols + c + 1];
+                }
+            }
+        }
+        for (int i = 1; i < cellStart.length; i++) {
+            cellStart[i] += cellStart[i - 1];
+        }
+
+        // store the children in the cells in ascending order
+        cellItems = new int[cellStart[cellStart.length - 1]];
+        int[] fill = new int[cols * rows];
+        System.arraycopy(cellStart, 0, fill, 0, fill.length);
+        for (int i = 0; i < n; i++) {
+            if (alwaysVisited.get(i)) {
+                continue;
+            }
+            final int c0 = col(bounds[i * 4]), c1 = col(bounds[i * 4 + 2]);
+            final int r0 = row(bounds[i * 4 + 1]), r1 = row(bounds[i * 4 + 3]);
+            for (int r = r0; r <= r1; r++) {
+                for (int c = c0; c <= c1; c++) {
+                    cellItems[fill[r * cols + c]++] = i;
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the snapshot of the children that is indexed. The returned array
+     * must not be changed.
+     *
+     * @return the indexed children
+     */
+    Object[] getChildren() {
+        return children;
+    }
+
+    private int col(double x) {
+        final int c = (int) Math.floor((x - west) / cellWidth);
+        return Math.max(0, Math.min(cols - 1, c));
+    }
+
+    private int row(double y) {
+        final int r = (int) Math.floor((y - south) / cellHeight);
+        return Math.max(0, Math.min(rows - 1, r));
+    }
+
+    /**
+     * Returns the indices of all children with a bounding box intersecting a
+     * rectangle. The returned set may contain children that do not intersect
+     * the rectangle.
+     *
+     * @param xMin the left limit of the rectangle
+     * @param yMin the bottom limit of the rectangle
+     * @param xMax the right limit of the rectangle
+     * @param yMax the top limit of the rectangle
+     * @return the indices of the children
+     */
+    BitSet query(double xMin, double yMin, double xMax, double yMax) {
+        BitSet result = (BitSet) alwaysVisited.clone();
+        if (xMax < west || yMax < south
+                || xMin > west + cols * cellWidth
+                || yMin > south + rows * cellHeight) {
+            return result;
+        }
+        final int c0 = col(xMin), c1 = col(xMax);
+        final int r0 = row(yMin), r1 = row(yMax);
+        for (int r = r0; r <= r1; r++) {
+            for (int c = c0; c <= c1; c++) {
+                final int cell = r * cols + c;
+                for (int i = cellStart[cell]; i < cellStart[cell + 1]; i++) {
+                    result.set(cellItems[i]);
+                }
+            }
+        }
+        return result;
+    }
+}
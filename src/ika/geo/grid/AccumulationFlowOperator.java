@@ -10,6 +10,15 @@ import ika.geo.GeoGrid;
 import ika.geoimport.ESRIASCIIGridReader;
 
 /**
+ * Computes D8 flow accumulation: the value of a cell is the number of cells
+ * draining through this cell. Each cell drains to the neighbor with the
+ * largest elevation drop. Cells along the border of the grid, cells without a
+ * lower neighbor, and void cells do not drain.
+ *
+ * Flow directions are computed once for all cells, concurrently for bands of
+ * rows with RowBandExecutor. Flow is then accumulated in topological order,
+ * starting with cells that do not receive any flow, which takes time linear in
+ * the number of cells.
  *
  * @author Bernhard Jenny, Institute of Cartography, ETH Zurich.
  */
@@ -26,10 +35,18 @@ public class AccumulationFlowOperator implements GridOperator {
         }
     }
 
-    private enum FlowDirection {
+    /**
+     * Flow directions. Ties between neighbors with equal drops are resolved in
+     * this order.
+     */
+    private static final byte NONE = 0, TOPRIGHT = 1, RIGHT = 2, BOTTOMRIGHT = 3,
+            BOTTOM = 4, BOTTOMLEFT = 5, LEFT = 6, TOPLEFT = 7, TOP = 8;
 
-        NONE, TOPRIGHT, RIGHT, BOTTOMRIGHT, BOTTOM, BOTTOMLEFT, LEFT, TOPLEFT, TOP
-    };
+    /**
+     * Column and row offsets of the neighbors for each flow direction.
+     */
+    private static final int[] DCOL = {0, 1, 1, 1, 0, -1, -1, -1, 0};
+    private static final int[] DROW = {0, -1, 0, 1, 1, 1, 0, -1, -1};
 
     public AccumulationFlowOperator() {
     }
@@ -49,112 +66,103 @@ public class AccumulationFlowOperator implements GridOperator {
         GeoGrid newGrid = new GeoGrid(cols, rows, meshSize);
         newGrid.setWest(geoGrid.getWest());
         newGrid.setNorth(geoGrid.getNorth());
-
-        for (int row = 1; row < rows - 1; row++) {
-            System.out.println(row);
-            for (int col = 1; col < cols - 1; col++) {
-                incrementFlow(geoGrid, newGrid, col, row);
-            }
+        if (cols < 3 || rows < 3) {
+            return newGrid;
         }
 
-        return newGrid;
-    }
+        final float[] dem = geoGrid.getData();
+        final byte[] dir = new byte[cols * rows];
+        final byte[] inflowCount = new byte[cols * rows];
 
-    private void incrementFlow(GeoGrid dem, GeoGrid accflow, int col, int row) {
+        // flow direction of each interior cell. Border cells do not drain.
+        RowBandExecutor.execute(1, rows - 1, cols, new RowBandExecutor.RowBand() {
+            @Override
+            public void operate(int firstRow, int endRow) {
+                for (int row = firstRow; row < endRow; row++) {
+                    for (int col = 1; col < cols - 1; col++) {
+                        dir[row * cols + col] = flowDirection(dem, cols, col, row);
+                    }
+                }
+            }
+        });
 
-        for (;;) {
-            FlowDirection dir = FlowDirection.NONE;
-            try {
-                dir = this.getFlowDirection(dem, col, row);
-            } catch (IndexOutOfBoundsException exc) {
-                break;
+        // number of neighbors draining into each cell
+        RowBandExecutor.execute(0, rows, cols, new RowBandExecutor.RowBand() {
+            @Override
+            public void operate(int firstRow, int endRow) {
+                for (int row = firstRow; row < endRow; row++) {
+                    for (int col = 0; col < cols; col++) {
+                        int n = 0;
+                        for (byte d = TOPRIGHT; d <= TOP; d++) {
+                            // the neighbor in direction d drains into this
+                            // cell if its direction is opposite to d
+                            final int c = col + DCOL[d];
+                            final int r = row + DROW[d];
+                            if (c >= 0 && c < cols && r >= 0 && r < rows
+                                    && dir[r * cols + c] == opposite(d)) {
+                                ++n;
+                            }
+                        }
+                        inflowCount[row * cols + col] = (byte) n;
+                    }
+                }
             }
-            switch (dir) {
-                case NONE:
-                    break;
-                case TOPRIGHT:
-                    col++;
-                    row--;
-                    break;
-                case RIGHT:
-                    col++;
-                    break;
-                case BOTTOMRIGHT:
-                    col++;
-                    row++;
-                    break;
-                case BOTTOM:
-                    row++;
-                    break;
-                case BOTTOMLEFT:
-                    col--;
-                    row++;
-                    break;
-                case LEFT:
-                    col--;
-                    break;
-                case TOPLEFT:
-                    col--;
-                    row--;
-                    break;
-                case TOP:
-                    row--;
-                    break;
+        });
+
+        // accumulate flow in topological order. Cells without inflow are
+        // pushed onto the stack first; a cell is pushed when all cells
+        // draining into it have been processed.
+        final int[] accumulation = new int[cols * rows];
+        final int[] stack = new int[cols * rows];
+        int stackSize = 0;
+        for (int i = 0; i < inflowCount.length; i++) {
+            if (inflowCount[i] == 0) {
+                stack[stackSize++] = i;
             }
-            try {
-                float v = accflow.getValue(col, row);
-                accflow.setValue(v + 1, col, row);
-            } catch (IndexOutOfBoundsException exc) {
-                break;
+        }
+        while (stackSize > 0) {
+            final int i = stack[--stackSize];
+            final byte d = dir[i];
+            if (d != NONE) {
+                final int receiver = i + DROW[d] * cols + DCOL[d];
+                accumulation[receiver] += accumulation[i] + 1;
+                if (--inflowCount[receiver] == 0) {
+                    stack[stackSize++] = receiver;
+                }
             }
         }
+
+        final float[] acc = newGrid.getData();
+        for (int i = 0; i < acc.length; i++) {
+            acc[i] = accumulation[i];
+        }
+        return newGrid;
     }
 
-    private FlowDirection getFlowDirection(GeoGrid geoGrid, int col, int row) {
+    /**
+     * Returns the direction opposite to a flow direction.
+     */
+    private static byte opposite(byte d) {
+        return (byte) ((d + 3) % 8 + 1);
+    }
+
+    /**
+     * Returns the direction to the neighbor with the largest elevation drop,
+     * or NONE if no neighbor is lower.
+     */
+    private static byte flowDirection(float[] dem, int cols, int col, int row) {
 
         // search for direction of flow
-        final float hc = geoGrid.getValue(col, row);
-        FlowDirection dir = FlowDirection.NONE;
+        final int id = row * cols + col;
+        final float hc = dem[id];
+        byte dir = NONE;
         float diff = 0;
-        float d = geoGrid.getValue(col + 1, row - 1) - hc;
-        if (d < diff) {
-            diff = d;
-            dir = FlowDirection.TOPRIGHT;
-        }
-        d = geoGrid.getValue(col + 1, row) - hc;
-        if (d < diff) {
-            diff = d;
-            dir = FlowDirection.RIGHT;
-        }
-        d = geoGrid.getValue(col + 1, row + 1) - hc;
-        if (d < diff) {
-            diff = d;
-            dir = FlowDirection.BOTTOMRIGHT;
-        }
-        d = geoGrid.getValue(col, row + 1) - hc;
-        if (d < diff) {
-            diff = d;
-            dir = FlowDirection.BOTTOM;
-        }
-        d = geoGrid.getValue(col - 1, row + 1) - hc;
-        if (d < diff) {
-            diff = d;
-            dir = FlowDirection.BOTTOMLEFT;
-        }
-        d = geoGrid.getValue(col - 1, row) - hc;
-        if (d < diff) {
-            diff = d;
-            dir = FlowDirection.LEFT;
-        }
-        d = geoGrid.getValue(col - 1, row - 1) - hc;
-        if (d < diff) {
-            diff = d;
-            dir = FlowDirection.TOPLEFT;
-        }
-        d = geoGrid.getValue(col, row - 1) - hc;
-        if (d < diff) {
-            diff = d;
-            dir = FlowDirection.TOP;
+        for (byte d = TOPRIGHT; d <= TOP; d++) {
+            final float h = dem[id + DROW[d] * cols + DCOL[d]];
+            if (h - hc < diff) {
+                diff = h - hc;
+                dir = d;
+            }
         }
         return dir;
     }
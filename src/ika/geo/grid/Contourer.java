@@ -8,14 +8,28 @@
 package ika.geo.grid;
 
 import ika.geo.*;
+import java.util.Arrays;
 
 /**
+ * Traces contour lines through a grid with marching squares.
+ *
+ * The minimum and maximum values of blocks of cells are indexed once, so that
+ * blocks that do not contain a contour level are skipped when searching for
+ * the start of contour lines. Contour levels are traced concurrently, each with
+ * its own flags for visited cells, and the coordinates of a line are collected
+ * in an array before a GeoPath is built. The contour lines are identical to
+ * those traced when scanning all cells for every level.
  *
  * @author jenny
  */
 public class Contourer implements GridOperator {
     
-    boolean[][] flags;
+    /**
+     * Blocks of BLOCK_SIZE x BLOCK_SIZE cells are skipped if they do not
+     * contain a contour level.
+     */
+    private static final int BLOCK_SIZE = 16;
+    
     private double interval;
     private VectorSymbol vectorSymbol;
     
@@ -48,339 +62,508 @@ public class Contourer implements GridOperator {
         return this.operate(geoGrid, firstContourLevel, minMax[1]);
     }
     
-    public GeoObject operate(GeoGrid geoGrid, double firstContourLevel, double lastContourLevel) {
-        this.flags = new boolean[geoGrid.getRows()][geoGrid.getCols()];
-        
+    public GeoObject operate(final GeoGrid geoGrid, double firstContourLevel, double lastContourLevel) {
         GeoSet geoSet = new GeoSet();
         
         final int nlevels = (int)((lastContourLevel - firstContourLevel) / this.interval) + 1;
+        final int degreeJumpLevels = this.treatDegreeJump ? 1 : 0;
+        final int levelsCount = degreeJumpLevels + Math.max(0, nlevels);
+        final float[] levels = new float[levelsCount];
+        final String[] names = new String[levelsCount];
         if (this.treatDegreeJump) {
-            GeoSet levelGeoSet = new GeoSet();
-            this.contourLevel(geoGrid, 0.f, levelGeoSet);
-            levelGeoSet.setName(Float.toString(0.f));
-            geoSet.add(levelGeoSet);
+            levels[0] = 0.f;
+            names[0] = Float.toString(0.f);
         }
-        
         for (int i = 0; i < nlevels; ++i) {
             final double contourLevel = firstContourLevel + i * this.interval;
-            GeoSet levelGeoSet = new GeoSet();
-            this.contourLevel(geoGrid, (float)contourLevel, levelGeoSet);
-            levelGeoSet.setName(Double.toString(contourLevel));
+            levels[degreeJumpLevels + i] = (float)contourLevel;
+            names[degreeJumpLevels + i] = Double.toString(contourLevel);
+        }
+        
+        // adjusting values for degree jumps changes the range of cells,
+        // so all cells are searched in this case
+        final CellBlocks blocks = this.treatDegreeJump ? null : new CellBlocks(geoGrid);
+        
+        // each level is traced by a single task
+        final GeoSet[] levelGeoSets = new GeoSet[levelsCount];
+        final int cellsCount = geoGrid.getCols() * geoGrid.getRows();
+        RowBandExecutor.execute(0, levelsCount, cellsCount, new RowBandExecutor.RowBand() {
+            @Override
+            public void operate(int firstLevel, int endLevel) {
+                LevelTracer tracer = new LevelTracer(geoGrid, blocks);
+                for (int i = firstLevel; i < endLevel; i++) {
+                    levelGeoSets[i] = tracer.contourLevel(levels[i]);
+                    levelGeoSets[i].setName(names[i]);
+                }
+            }
+        });
+        for (GeoSet levelGeoSet : levelGeoSets) {
             geoSet.add(levelGeoSet);
         }
         return geoSet;
     }
     
-    private void contourLevel (GeoGrid geoGrid, float level, GeoSet levelGeoSet) {
-        
-        final int nbrCellsX = geoGrid.getCols() - 1;
-        final int nbrCellsY = geoGrid.getRows() - 1;
-        float[][] grid = geoGrid.getGrid();
-        double west = geoGrid.getWest();
-        double north = geoGrid.getNorth();
-        float cellSize = (float)geoGrid.getCellSize();
+    /**
+     * Minimum and maximum values of blocks of cells. Void values are ignored.
+     * A block of BLOCK_SIZE x BLOCK_SIZE cells covers BLOCK_SIZE + 1 rows and
+     * columns of the grid.
+     */
+    private static final class CellBlocks {
         
-        for (int i = 0; i < this.flags.length; i++)
-            java.util.Arrays.fill(this.flags[i], false);
+        final int blockCols;
+        final float[] min;
+        final float[] max;
         
-        for (int y = 0; y < nbrCellsY; y++) {
-            boolean[] flag_row = flags[y];
-            for (int x = 0; x < nbrCellsX; x++) {
-                if (flag_row[x] == false) {
-                    this.traceContour(grid, new int[]{x, y}, level, west, north, cellSize, levelGeoSet);
+        CellBlocks(GeoGrid geoGrid) {
+            final float[] data = geoGrid.getData();
+            final int cols = geoGrid.getCols();
+            final int rows = geoGrid.getRows();
+            final int blockRows = Math.max(0, (rows - 1 + BLOCK_SIZE - 1) / BLOCK_SIZE);
+            this.blockCols = Math.max(0, (cols - 1 + BLOCK_SIZE - 1) / BLOCK_SIZE);
+            this.min = new float[blockRows * blockCols];
+            this.max = new float[blockRows * blockCols];
+            Arrays.fill(this.min, Float.POSITIVE_INFINITY);
+            Arrays.fill(this.max, Float.NEGATIVE_INFINITY);
+            RowBandExecutor.execute(0, blockRows, cols * BLOCK_SIZE, new RowBandExecutor.RowBand() {
+                @Override
+                public void operate(int firstBlockRow, int endBlockRow) {
+                    for (int blockRow = firstBlockRow; blockRow < endBlockRow; blockRow++) {
+                        final int endRow = Math.min(rows, (blockRow + 1) * BLOCK_SIZE + 1);
+                        for (int blockCol = 0; blockCol < blockCols; blockCol++) {
+                            final int block = blockRow * blockCols + blockCol;
+                            final int endCol = Math.min(cols, (blockCol + 1) * BLOCK_SIZE + 1);
+                            for (int row = blockRow * BLOCK_SIZE; row < endRow; row++) {
+                                for (int col = blockCol * BLOCK_SIZE; col < endCol; col++) {
+                                    final float v = data[row * cols + col];
+                                    if (v < min[block])
+                                        min[block] = v;
+                                    if (v > max[block])
+                                        max[block] = v;
+                                }
+                            }
+                        }
+                    }
                 }
-            }
+            });
+        }
+        
+        boolean contains(int block, float level) {
+            return min[block] <= level && level <= max[block];
         }
     }
     
-    private void traceContour(float[][] grid, int[]cell, float level,
-            double west, double north, float cellSize, GeoSet levelGeoSet) {
+    /**
+     * Traces the contour lines of levels. Stores the flags for visited cells,
+     * which are reset after each level.
+     */
+    private final class LevelTracer {
         
-        GeoPath geoPath = null;
-        int[]current_cell = new int[]{cell[0], cell[1]};
+        private final float[] data;
+        private final int cols;
+        private final int rows;
+        private final double west;
+        private final double north;
+        private final float cellSize;
+        private final CellBlocks blocks;
         
-        float[] pt = new float[2];
-        pt[0] = (float)(west + cell[0] * cellSize);
-        pt[1] = (float)(north + cell[1] * cellSize);
-            
-        int nbrPts = 0;
-        final int cols = grid[0].length;
-        final int rows = grid.length;
+        /**
+         * One bit for each cell, set when the cell has been visited.
+         */
+        private final long[] flags;
         
-        // first trace contour in backward direction
-        while (current_cell[0] >= 0 &&
-                current_cell[0] < cols - 1 &&
-                current_cell[1] >= 0 &&
-                current_cell[1] < rows - 1 &&
-                this.contourCell(false, grid, current_cell, level, west, north, cellSize, pt)) {
-            
-            if (nbrPts > 0)
-                geoPath.lineTo(pt[0], pt[1]);
-            else {
-                geoPath = new GeoPath();
-                geoPath.moveTo(pt[0], pt[1]);
+        /**
+         * Cells flagged for the current level.
+         */
+        private int[] flaggedCells = new int[1024];
+        private int flaggedCellsCount = 0;
+        
+        /**
+         * The current cell.
+         */
+        private int cellCol;
+        private int cellRow;
+        
+        /**
+         * The last point of the current line.
+         */
+        private final float[] pt = new float[2];
+        
+        /**
+         * The coordinates of the current line.
+         */
+        private double[] lineBuffer = new double[256];
+        private int nbrPts;
+        
+        LevelTracer(GeoGrid geoGrid, CellBlocks blocks) {
+            this.data = geoGrid.getData();
+            this.cols = geoGrid.getCols();
+            this.rows = geoGrid.getRows();
+            this.west = geoGrid.getWest();
+            this.north = geoGrid.getNorth();
+            this.cellSize = (float)geoGrid.getCellSize();
+            this.blocks = blocks;
+            this.flags = new long[(cols * rows + 63) / 64];
+        }
+        
+        private boolean isFlagged(int id) {
+            return (flags[id >>> 6] & (1L << id)) != 0;
+        }
+        
+        private void flag(int id) {
+            flags[id >>> 6] |= 1L << id;
+            if (flaggedCellsCount == flaggedCells.length) {
+                flaggedCells = Arrays.copyOf(flaggedCells, flaggedCellsCount * 2);
             }
-            nbrPts++;
+            flaggedCells[flaggedCellsCount++] = id;
         }
         
-        if (nbrPts > 1)
-            geoPath.invertDirection();
+        private void clearFlag(int id) {
+            flags[id >>> 6] &= ~(1L << id);
+        }
         
-        // reset the flag for the starting cell
-        flags[cell[1]][cell[0]] = false;
-        current_cell[0] = cell[0];
-        current_cell[1] = cell[1];
+        /**
+         * Returns whether a contour line at level passes through a cell. Cells
+         * for which this is false are never part of a contour line.
+         */
+        private boolean crossesCell(int id, float level) {
+            final float v0 = data[id + cols];
+            final float v1 = data[id + cols + 1];
+            final float v2 = data[id];
+            final float v3 = data[id + 1];
+            final float min = Math.min(Math.min(v0, v1), Math.min(v2, v3));
+            final float max = Math.max(Math.max(v0, v1), Math.max(v2, v3));
+            return min <= level && level <= max && min < max;
+        }
         
-        // then trace contour in forward direction
-        while (current_cell[0] >= 0 &&
-                current_cell[0] < cols - 1 &&
-                current_cell[1] >= 0 &&
-                current_cell[1] < rows - 1 &&
-                this.contourCell(true, grid, current_cell, level, west, north, cellSize, pt)) {
+        GeoSet contourLevel(float level) {
+            GeoSet levelGeoSet = new GeoSet();
+            final int nbrCellsX = cols - 1;
+            final int nbrCellsY = rows - 1;
             
-            if (nbrPts > 0)
-                geoPath.lineTo(pt[0], pt[1]);
-            else {
-                geoPath = new GeoPath();
-                geoPath.moveTo(pt[0], pt[1]);
+            for (int y = 0; y < nbrCellsY; y++) {
+                if (blocks == null) {
+                    for (int x = 0; x < nbrCellsX; x++) {
+                        if (!isFlagged(y * cols + x)) {
+                            this.traceContour(x, y, level, levelGeoSet);
+                        }
+                    }
+                    continue;
+                }
+                final int blockRowID = (y / BLOCK_SIZE) * blocks.blockCols;
+                for (int blockCol = 0; blockCol < blocks.blockCols; blockCol++) {
+                    if (!blocks.contains(blockRowID + blockCol, level)) {
+                        continue;
+                    }
+                    final int endX = Math.min(nbrCellsX, (blockCol + 1) * BLOCK_SIZE);
+                    for (int x = blockCol * BLOCK_SIZE; x < endX; x++) {
+                        final int id = y * cols + x;
+                        if (!isFlagged(id) && crossesCell(id, level)) {
+                            this.traceContour(x, y, level, levelGeoSet);
+                        }
+                    }
+                }
+            }
+            
+            // reset flags for the next level
+            for (int i = 0; i < flaggedCellsCount; i++) {
+                clearFlag(flaggedCells[i]);
+            }
+            flaggedCellsCount = 0;
+            return levelGeoSet;
+        }
+        
+        private void addPoint() {
+            if (nbrPts * 2 == lineBuffer.length) {
+                lineBuffer = Arrays.copyOf(lineBuffer, lineBuffer.length * 2);
             }
+            lineBuffer[nbrPts * 2] = pt[0];
+            lineBuffer[nbrPts * 2 + 1] = pt[1];
             nbrPts++;
         }
         
-        if (nbrPts > 1) {
-            geoPath.setVectorSymbol(this.vectorSymbol);
-            levelGeoSet.add(geoPath);
+        private void invertLine() {
+            for (int i = 0, j = nbrPts - 1; i < j; i++, j--) {
+                final double x = lineBuffer[i * 2];
+                final double y = lineBuffer[i * 2 + 1];
+                lineBuffer[i * 2] = lineBuffer[j * 2];
+                lineBuffer[i * 2 + 1] = lineBuffer[j * 2 + 1];
+                lineBuffer[j * 2] = x;
+                lineBuffer[j * 2 + 1] = y;
+            }
+        }
+        
+        private void traceContour(int x, int y, float level, GeoSet levelGeoSet) {
+            
+            cellCol = x;
+            cellRow = y;
+            pt[0] = (float)(west + x * cellSize);
+            pt[1] = (float)(north + y * cellSize);
+            nbrPts = 0;
+            
+            // first trace contour in backward direction
+            while (cellCol >= 0 &&
+                    cellCol < cols - 1 &&
+                    cellRow >= 0 &&
+                    cellRow < rows - 1 &&
+                    this.contourCell(false, level)) {
+                addPoint();
+            }
+            
+            if (nbrPts > 1)
+                invertLine();
+            
+            // reset the flag for the starting cell
+            clearFlag(y * cols + x);
+            cellCol = x;
+            cellRow = y;
+            
+            // then trace contour in forward direction
+            while (cellCol >= 0 &&
+                    cellCol < cols - 1 &&
+                    cellRow >= 0 &&
+                    cellRow < rows - 1 &&
+                    this.contourCell(true, level)) {
+                addPoint();
+            }
+            
+            if (nbrPts > 1) {
+                GeoPath geoPath = new GeoPath();
+                geoPath.moveOrLineTo(lineBuffer, nbrPts);
+                geoPath.setVectorSymbol(vectorSymbol);
+                levelGeoSet.add(geoPath);
+            }
         }
-    }
-    
-    private boolean contourCell(boolean forward, float[][] grid, int[]cellXY, float level,
-            double west, double north, float cellSize, float[] pt) {
         
-        final int col = cellXY[0];
-        final int row = cellXY[1];
+        private boolean contourCell(boolean forward, float level) {
         
-        // test if this cell has been visited before
-        if (this.flags[row][col] == true)   
-            return false;
+            final int col = cellCol;
+            final int row = cellRow;
+            final int id = row * cols + col;
         
-        // mark this cell as being visited
-        this.flags[row][col] = true;
+            // test if this cell has been visited before
+            if (isFlagged(id))
+                return false;
         
-        // extract the four values of the cell
-        float v0 = grid[row+1][col];  // lower left
-        if (Float.isNaN(v0))
-            return false;
-        float v1 = grid[row+1][col+1];// lower right
-        if (Float.isNaN(v1))
-            return false;
-        float v2 = grid[row][col];    // upper left
-        if (Float.isNaN(v2))
-            return false;
-        float v3 = grid[row][col+1];  // upper right
-        if (Float.isNaN(v3))
-            return false;
+            // mark this cell as being visited
+            flag(id);
         
-        if (this.treatDegreeJump) {
+            // extract the four values of the cell
+            float v0 = data[id + cols];  // lower left
+            if (Float.isNaN(v0))
+                return false;
+            float v1 = data[id + cols + 1];// lower right
+            if (Float.isNaN(v1))
+                return false;
+            float v2 = data[id];    // upper left
+            if (Float.isNaN(v2))
+                return false;
+            float v3 = data[id + 1];  // upper right
+            if (Float.isNaN(v3))
+                return false;
+        
+            if (treatDegreeJump) {
             
-            float v0d = v0 - 180;
-            float v1d = v1 - 180;
-            float v2d = v2 - 180;
-            float v3d = v3 - 180;
+                float v0d = v0 - 180;
+                float v1d = v1 - 180;
+                float v2d = v2 - 180;
+                float v3d = v3 - 180;
             
-            final boolean adjustCell =
-                    (v0d > 0 && v1d < 0 && v0d - v1d > 90)
-                    || (v0d < 0 && v1d > 0 && v1d - v0d > 90)
-                    || (v0d > 0 && v2d < 0 && v0d - v2d > 90)
-                    || (v0d < 0 && v2d > 0 && v2d - v0d > 90)
-                    || (v0d > 0 && v3d < 0 && v0d - v3d > 90)
-                    || (v0d < 0 && v3d > 0 && v3d - v0d > 90)
+                final boolean adjustCell =
+                        (v0d > 0 && v1d < 0 && v0d - v1d > 90)
+                        || (v0d < 0 && v1d > 0 && v1d - v0d > 90)
+                        || (v0d > 0 && v2d < 0 && v0d - v2d > 90)
+                        || (v0d < 0 && v2d > 0 && v2d - v0d > 90)
+                        || (v0d > 0 && v3d < 0 && v0d - v3d > 90)
+                        || (v0d < 0 && v3d > 0 && v3d - v0d > 90)
                     
-                    || (v1d > 0 && v2d < 0 && v1d - v2d > 90)
-                    || (v1d < 0 && v2d > 0 && v2d - v1d > 90)
-                    || (v1d > 0 && v3d < 0 && v1d - v3d > 90)
-                    || (v1d < 0 && v3d > 0 && v3d - v1d > 90)
+                        || (v1d > 0 && v2d < 0 && v1d - v2d > 90)
+                        || (v1d < 0 && v2d > 0 && v2d - v1d > 90)
+                        || (v1d > 0 && v3d < 0 && v1d - v3d > 90)
+                        || (v1d < 0 && v3d > 0 && v3d - v1d > 90)
                     
-                    || (v2d > 0 && v3d < 0 && v2d - v3d > 90)
-                    || (v2d < 0 && v3d > 0 && v3d - v2d > 90);
+                        || (v2d > 0 && v3d < 0 && v2d - v3d > 90)
+                        || (v2d < 0 && v3d > 0 && v3d - v2d > 90);
             
-            if (adjustCell) {
+                if (adjustCell) {
                 
-                if (v0 > 180)
-                    v0 -= 360;
-                if (v1 > 180)
-                    v1 -= 360;
-                if (v2 > 180)
-                    v2 -= 360;
-                if (v3 > 180)
-                    v3 -= 360;
+                    if (v0 > 180)
+                        v0 -= 360;
+                    if (v1 > 180)
+                        v1 -= 360;
+                    if (v2 > 180)
+                        v2 -= 360;
+                    if (v3 > 180)
+                        v3 -= 360;
+                }
             }
-        }
         
-        if (!forward) {
-            v0 = -v0;
-            v1 = -v1;
-            v2 = -v2;
-            v3 = -v3;
-            level = -level;
-        }
+            if (!forward) {
+                v0 = -v0;
+                v1 = -v1;
+                v2 = -v2;
+                v3 = -v3;
+                level = -level;
+            }
         
-        int code = 0;
-        if (v0 > level)
-            code ^= 1;
-        if (v1 > level)
-            code ^= 2;
-        if (v2 > level)
-            code ^= 4;
-        if (v3 > level)
-            code ^= 8;
-        if (code == 0 || code == 15) {
-            return false;
-        }
+            int code = 0;
+            if (v0 > level)
+                code ^= 1;
+            if (v1 > level)
+                code ^= 2;
+            if (v2 > level)
+                code ^= 4;
+            if (v3 > level)
+                code ^= 8;
+            if (code == 0 || code == 15) {
+                return false;
+            }
         
-        switch (code) {
-            case 1: // enter bottom edge, exit left edge
-                pt[0] = (float)(west + col * cellSize);
-                pt[1] = (float)(north - row * cellSize) - interpol(level, v2, v0) * cellSize;;
-                cellXY[0]--;
-                break;
+            switch (code) {
+                case 1: // enter bottom edge, exit left edge
+                    pt[0] = (float)(west + col * cellSize);
+                    pt[1] = (float)(north - row * cellSize) - interpol(level, v2, v0) * cellSize;;
+                    cellCol--;
+                    break;
                 
-            case 2: // enter right edge, exit bottom edge
-                pt[0] = (float)(west + col * cellSize) + interpol(level, v0, v1) * cellSize;
-                pt[1] = (float)(north - row * cellSize) - cellSize;
-                cellXY[1]++;
-                break;
+                case 2: // enter right edge, exit bottom edge
+                    pt[0] = (float)(west + col * cellSize) + interpol(level, v0, v1) * cellSize;
+                    pt[1] = (float)(north - row * cellSize) - cellSize;
+                    cellRow++;
+                    break;
                 
-            case 3: // enter right edge, exit left edge
-                pt[0] = (float)(west + col * cellSize);
-                pt[1] = (float)(north - row * cellSize) - interpol(level, v2, v0) * cellSize;
-                cellXY[0]--;
-                break;
+                case 3: // enter right edge, exit left edge
+                    pt[0] = (float)(west + col * cellSize);
+                    pt[1] = (float)(north - row * cellSize) - interpol(level, v2, v0) * cellSize;
+                    cellCol--;
+                    break;
                 
-            case 4: // enter left edge, exit top edge
-                pt[0] = (float)(west + col * cellSize) + interpol(level, v2, v3) * cellSize;
-                pt[1] = (float)(north - row * cellSize);
-                cellXY[1]--;
-                break;
+                case 4: // enter left edge, exit top edge
+                    pt[0] = (float)(west + col * cellSize) + interpol(level, v2, v3) * cellSize;
+                    pt[1] = (float)(north - row * cellSize);
+                    cellRow--;
+                    break;
                 
-            case 5: // enter bottom edge, exit top edge
-                pt[0] = (float)(west + col * cellSize) + interpol(level, v2, v3) * cellSize;
-                pt[1] = (float)(north - row * cellSize);
-                cellXY[1]--;
-                break;
+                case 5: // enter bottom edge, exit top edge
+                    pt[0] = (float)(west + col * cellSize) + interpol(level, v2, v3) * cellSize;
+                    pt[1] = (float)(north - row * cellSize);
+                    cellRow--;
+                    break;
                 
-            case 6: // saddle point
-                final double topDif = north - pt[1] - row * cellSize;
+                case 6: // saddle point
+                    final double topDif = north - pt[1] - row * cellSize;
                 
-                // distinguish between lines entering from the left and from the right
-                if (Math.abs(west + col * cellSize - pt[0]) < 0.5 * cellSize) { // line is entering from left
-                    // compute the intersection point on right edge of cell
-                    final double rightY = interpol(level, v3, v1) * cellSize;
-                    if (rightY > topDif) {
-                        // line is entering from left and leaving on top edge: case 4
-                        pt[0] = (float)(west + col * cellSize) + interpol(level, v2, v3) * cellSize;
-                        pt[1] = (float)(north - row * cellSize);
-                        cellXY[1]--;
-                    } else {
-                        // line is entering from left and leaving on bottom edge: case 14
-                        pt[0] = (float)(west + col * cellSize) + interpol(level, v0, v1) * cellSize;
-                        pt[1] = (float)(north - row * cellSize) - cellSize;
-                        cellXY[1]++;
+                    // distinguish between lines entering from the left and from the right
+                    if (Math.abs(west + col * cellSize - pt[0]) < 0.5 * cellSize) { // line is entering from left
+                        // compute the intersection point on right edge of cell
+                        final double rightY = interpol(level, v3, v1) * cellSize;
+                        if (rightY > topDif) {
+                            // line is entering from left and leaving on top edge: case 4
+                            pt[0] = (float)(west + col * cellSize) + interpol(level, v2, v3) * cellSize;
+                            pt[1] = (float)(north - row * cellSize);
+                            cellRow--;
+                        } else {
+                            // line is entering from left and leaving on bottom edge: case 14
+                            pt[0] = (float)(west + col * cellSize) + interpol(level, v0, v1) * cellSize;
+                            pt[1] = (float)(north - row * cellSize) - cellSize;
+                            cellRow++;
+                        }
+                    } else {    // line is entering from right
+                        // compute the intersection point on left edge of cell
+                        final double leftY = interpol(level, v2, v0) * cellSize;
+                        if (leftY > topDif) {
+                            // line is entering from right and leaving on top edge: case 7
+                            pt[0] = (float)(west + col * cellSize) + interpol(level, v2, v3) * cellSize;
+                            pt[1] = (float)(north - row * cellSize);
+                            cellRow--;
+                        } else {
+                            // line is entering from right and leaving on bottom edge: case 2
+                            pt[0] = (float)(west + col * cellSize) + interpol(level, v0, v1) * cellSize;
+                            pt[1] = (float)(north - row * cellSize) - cellSize;
+                            cellRow++;
+                        }
                     }
-                } else {    // line is entering from right
-                    // compute the intersection point on left edge of cell
-                    final double leftY = interpol(level, v2, v0) * cellSize;
-                    if (leftY > topDif) {
-                        // line is entering from right and leaving on top edge: case 7
-                        pt[0] = (float)(west + col * cellSize) + interpol(level, v2, v3) * cellSize;
-                        pt[1] = (float)(north - row * cellSize);
-                        cellXY[1]--;
-                    } else {
-                        // line is entering from right and leaving on bottom edge: case 2
-                        pt[0] = (float)(west + col * cellSize) + interpol(level, v0, v1) * cellSize;
-                        pt[1] = (float)(north - row * cellSize) - cellSize;
-                        cellXY[1]++;
-                    }
-                }
-                break;
+                    break;
                 
-            case 7: // enter right edge, exit top edge
-                pt[0] = (float)(west + col * cellSize) + interpol(level, v2, v3) * cellSize;
-                pt[1] = (float)(north - row * cellSize);
-                cellXY[1]--;
-                break;
+                case 7: // enter right edge, exit top edge
+                    pt[0] = (float)(west + col * cellSize) + interpol(level, v2, v3) * cellSize;
+                    pt[1] = (float)(north - row * cellSize);
+                    cellRow--;
+                    break;
                 
-            case 8: // enter top edge, exit right edge
-                pt[0] = (float)(west + cellXY[0] * cellSize) + cellSize;
-                pt[1] = (float)(north - cellXY[1] * cellSize) - interpol(level, v3, v1) * cellSize;
-                cellXY[0]++;
-                break;
+                case 8: // enter top edge, exit right edge
+                    pt[0] = (float)(west + cellCol * cellSize) + cellSize;
+                    pt[1] = (float)(north - cellRow * cellSize) - interpol(level, v3, v1) * cellSize;
+                    cellCol++;
+                    break;
                 
-            case 9: // saddle point
-                final double rightDif = pt[0] - west - col * cellSize;
+                case 9: // saddle point
+                    final double rightDif = pt[0] - west - col * cellSize;
                 
-                // distinguish between lines entering from the bottom and from the top
-                if (Math.abs(north - row * cellSize - pt[1]) < 0.5 * cellSize) { // line is entering from top
-                    // compute the intersection point on bottom edge of cell
-                    double bottomX = interpol(level, v0, v1) * cellSize;
-                    if (bottomX > rightDif) {
-                        // line is entering from top and leaving on left edge: case 11
-                        pt[0] = (float)(west + col * cellSize);
-                        pt[1] = (float)(north - row * cellSize) - interpol(level, v2, v0) * cellSize;
-                        cellXY[0]--;
-                    } else {
-                        // line is entering from top and leaving on right edge: case 8
-                        pt[0] = (float)(west + col * cellSize) + cellSize;
-                        pt[1] = (float)(north - row * cellSize) - interpol(level, v3, v1) * cellSize;
-                        cellXY[0]++;
+                    // distinguish between lines entering from the bottom and from the top
+                    if (Math.abs(north - row * cellSize - pt[1]) < 0.5 * cellSize) { // line is entering from top
+                        // compute the intersection point on bottom edge of cell
+                        double bottomX = interpol(level, v0, v1) * cellSize;
+                        if (bottomX > rightDif) {
+                            // line is entering from top and leaving on left edge: case 11
+                            pt[0] = (float)(west + col * cellSize);
+                            pt[1] = (float)(north - row * cellSize) - interpol(level, v2, v0) * cellSize;
+                            cellCol--;
+                        } else {
+                            // line is entering from top and leaving on right edge: case 8
+                            pt[0] = (float)(west + col * cellSize) + cellSize;
+                            pt[1] = (float)(north - row * cellSize) - interpol(level, v3, v1) * cellSize;
+                            cellCol++;
+                        }
+                    } else  {   // line is entering from bottom
+                        // compute the intersection point on top edge of cell
+                        double topX = interpol(level, v2, v3) * cellSize;
+                        if (topX > rightDif) {
+                            // line is entering from bottom and leaving on left edge: case 1
+                            pt[0] = (float)(west + col * cellSize);
+                            pt[1] = (float)(north - row * cellSize) - interpol(level, v2, v0) * cellSize;;
+                            cellCol--;
+                        } else {
+                            // line is entering from bottom and leaving on right edge: case 13
+                            pt[0] = (float)(west + col * cellSize) + cellSize;
+                            pt[1] = (float)(north - row * cellSize) - interpol(level, v3, v1) * cellSize;
+                            cellCol++;
+                        }
                     }
-                } else  {   // line is entering from bottom
-                    // compute the intersection point on top edge of cell
-                    double topX = interpol(level, v2, v3) * cellSize;
-                    if (topX > rightDif) {
-                        // line is entering from bottom and leaving on left edge: case 1
-                        pt[0] = (float)(west + col * cellSize);
-                        pt[1] = (float)(north - row * cellSize) - interpol(level, v2, v0) * cellSize;;
-                        cellXY[0]--;
-                    } else {
-                        // line is entering from bottom and leaving on right edge: case 13
-                        pt[0] = (float)(west + col * cellSize) + cellSize;
-                        pt[1] = (float)(north - row * cellSize) - interpol(level, v3, v1) * cellSize;
-                        cellXY[0]++;
-                    }
-                }
-                break;
+                    break;
                 
-            case 10:    // enter top edge, exit bottom edge
-                pt[0] = (float)(west + col * cellSize) + interpol(level, v0, v1) * cellSize;
-                pt[1] = (float)(north - row * cellSize) - cellSize;
-                cellXY[1]++;
-                break;
+                case 10:    // enter top edge, exit bottom edge
+                    pt[0] = (float)(west + col * cellSize) + interpol(level, v0, v1) * cellSize;
+                    pt[1] = (float)(north - row * cellSize) - cellSize;
+                    cellRow++;
+                    break;
                 
-            case 11:    // enter top edge, exit left edge
-                pt[0] = (float)(west + col * cellSize);
-                pt[1] = (float)(north - row * cellSize) - interpol(level, v2, v0) * cellSize;
-                cellXY[0]--;
-                break;
+                case 11:    // enter top edge, exit left edge
+                    pt[0] = (float)(west + col * cellSize);
+                    pt[1] = (float)(north - row * cellSize) - interpol(level, v2, v0) * cellSize;
+                    cellCol--;
+                    break;
                 
-            case 12:    // enter left edge, exit right edge
-                pt[0] = (float)(west + col * cellSize) + cellSize;
-                pt[1] = (float)(north - row * cellSize) - interpol(level, v3, v1) * cellSize;
-                cellXY[0]++;
-                break;
+                case 12:    // enter left edge, exit right edge
+                    pt[0] = (float)(west + col * cellSize) + cellSize;
+                    pt[1] = (float)(north - row * cellSize) - interpol(level, v3, v1) * cellSize;
+                    cellCol++;
+                    break;
                 
-            case 13:    // enter bottom edge, exit right edge
-                pt[0] = (float)(west + col * cellSize) + cellSize;
-                pt[1] = (float)(north - row * cellSize) - interpol(level, v3, v1) * cellSize;
-                cellXY[0]++;
-                break;
+                case 13:    // enter bottom edge, exit right edge
+                    pt[0] = (float)(west + col * cellSize) + cellSize;
+                    pt[1] = (float)(north - row * cellSize) - interpol(level, v3, v1) * cellSize;
+                    cellCol++;
+                    break;
                 
-            case 14:    // enter left edge, exit bottom edge
-                pt[0] = (float)(west + col * cellSize) + interpol(level, v0, v1) * cellSize;
-                pt[1] = (float)(north - row * cellSize) - cellSize;
-                cellXY[1]++;
-                break;
+                case 14:    // enter left edge, exit bottom edge
+                    pt[0] = (float)(west + col * cellSize) + interpol(level, v0, v1) * cellSize;
+                    pt[1] = (float)(north - row * cellSize) - cellSize;
+                    cellRow++;
+                    break;
+            }
+            return true;
         }
-        return true;
+    
     }
     
     static final private float interpol(float level, float v0, float v1) {
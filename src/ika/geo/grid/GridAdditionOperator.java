@@ -32,16 +32,20 @@ public class GridAdditionOperator implements GridOperator{
         newGrid.setNorth(geoGrid.getNorth());
         newGrid.setName(geoGrid.getName());
         
-        float[][] srcGrid = geoGrid.getGrid();
-        float[][] dstGrid = newGrid.getGrid();
+        float[] srcGrid = geoGrid.getData();
+        float[] dstGrid = newGrid.getData();
         
-        for (int row = 0; row < nrows; ++row) {
-            float[] srcRow = srcGrid[row];
-            float[] dstRow = dstGrid[row];
-            for (int col = 0; col < ncols; ++col) {
-                dstRow[col] = srcRow[col] + add;
+        RowBandExecutor.execute(0, nrows, ncols, new RowBandExecutor.RowBand() {
+            @Override
+            public void operate(int firstRow, int endRow) {
+                for (int row = firstRow; row < endRow; row++) {
+                    final int rowStart = row * ncols;
+                    for (int col = 0; col < ncols; ++col) {
+                        dstGrid[rowStart + col] = srcGrid[rowStart + col] + add;
+                    }
+                }
             }
-        }
+        });
         return newGrid;
     }
 
@@ -78,11 +78,11 @@ public class GridAspectNeighborCounterOperator implements GridOperator{
         counterGrid.setNorth(geoGrid.getNorth() + meshSize * halfFilterSize);
         
         /* loop over each pixel */
-        float[][] srcGrid = geoGrid.getGrid();
-        float[][] dstGrid = counterGrid.getGrid();
+        float[] srcGrid = geoGrid.getData();
+        float[] dstGrid = counterGrid.getData();
         
         for (int row = halfFilterSize; row < old_nrows-halfFilterSize; row++) {
-            float[] dstRow = dstGrid[row - halfFilterSize];
+            final int dstRowStart = (row - halfFilterSize) * counter_ncols;
             for (int col = halfFilterSize; col < old_ncols-halfFilterSize; col++) {
                 int nbrScannedPts = 0;
                 int npts = 0;
@@ -91,7 +91,7 @@ public class GridAspectNeighborCounterOperator implements GridOperator{
                 for (int i = 1; i <= halfFilterSize; i++) {
                     // count the number of values in the ring that similar
                     // to the central value
-                    final int nbrFoundPts = scanRect(col, row, srcGrid, i);
+                    final int nbrFoundPts = scanRect(col, row, srcGrid, old_ncols, i);
                     
                     // keep track of the number of pixel that have been visited so far
                     // For one ring: npts = 4n-2, here half filter size.
@@ -107,7 +107,7 @@ public class GridAspectNeighborCounterOperator implements GridOperator{
                 }
                 
                 // store the number of found points in the grid
-                dstRow[col-halfFilterSize] = npts;
+                dstGrid[dstRowStart + col-halfFilterSize] = npts;
             }
         }
         return counterGrid;
@@ -118,23 +118,24 @@ public class GridAspectNeighborCounterOperator implements GridOperator{
      * pixels that are similar to the central pixel.
      * @param col The column of the central pixel
      * @param row The row of the central pixel
-     * @param grid The GeoGrid to scan.
+     * @param grid The values of the GeoGrid to scan.
+     * @param cols The number of columns of the GeoGrid.
      * @param currentHalfFilterSize The distance in pixel from the central pixel
      * to the ring to scan.
      * @return The number of pixels with a value similar to the central pixel.
      */
-    private int scanRect(int col, int row, float[][] grid, int currentHalfFilterSize) {
+    private int scanRect(int col, int row, float[] grid, int cols, int currentHalfFilterSize) {
         int npts = 0;
-        final float centerVal = grid[row][col];
+        final float centerVal = grid[row * cols + col];
         
         // scan top and bottom row
-        final float[] topRow = grid[row-currentHalfFilterSize];
-        final float[] botRow = grid[row+currentHalfFilterSize];
+        final int topRowStart = (row-currentHalfFilterSize) * cols;
+        final int botRowStart = (row+currentHalfFilterSize) * cols;
         for (int c = col-currentHalfFilterSize; c <= col+currentHalfFilterSize; c++) {
-            if (this.isAngleDiffLarge(centerVal, topRow[c])) {
+            if (this.isAngleDiffLarge(centerVal, grid[topRowStart + c])) {
                 npts++;
             }
-            if (this.isAngleDiffLarge(centerVal, botRow[c])){
+            if (this.isAngleDiffLarge(centerVal, grid[botRowStart + c])){
                 npts++;
             }
         }
@@ -142,11 +143,11 @@ public class GridAspectNeighborCounterOperator implements GridOperator{
         // scan left colum and right column. Don't scan corner point, which
         // have been scanned in the loop above.
         for (int r = row-currentHalfFilterSize+1; r < row+currentHalfFilterSize; r++) {
-            final float[] srcRow = grid[r];
-            if (this.isAngleDiffLarge(centerVal, srcRow[col-currentHalfFilterSize])) {
+            final int rowStart = r * cols;
+            if (this.isAngleDiffLarge(centerVal, grid[rowStart + col-currentHalfFilterSize])) {
                 npts++;
             }
-            if (this.isAngleDiffLarge(centerVal, srcRow[col+currentHalfFilterSize])) {
+            if (this.isAngleDiffLarge(centerVal, grid[rowStart + col+currentHalfFilterSize])) {
                 npts++;
             }
         }
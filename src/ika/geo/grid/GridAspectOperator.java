@@ -36,22 +36,27 @@ public class GridAspectOperator implements GridOperator{
         newGrid.setWest(geoGrid.getWest() + cellSize);
         newGrid.setNorth(geoGrid.getNorth() - cellSize);
         
-        float[][] srcGrid = geoGrid.getGrid();
-        float[][] dstGrid = newGrid.getGrid();
+        float[] srcGrid = geoGrid.getData();
+        float[] dstGrid = newGrid.getData();
         final int srcRows = geoGrid.getRows();
         final int srcCols = geoGrid.getCols();
         
-        for (int row = 1; row < srcRows - 1; row++) {
-            for (int col = 1; col < srcCols - 1; col++) {
-                final float w = srcGrid[row][col-1];
-                final float e = srcGrid[row][col+1];
-                final float s = srcGrid[row+1][col];
-                final float n = srcGrid[row-1][col];              
-                final float aspect = (float)Math.atan2(n - s, e - w);
+        RowBandExecutor.execute(1, srcRows - 1, srcCols, new RowBandExecutor.RowBand() {
+            @Override
+            public void operate(int firstRow, int endRow) {
+                for (int row = firstRow; row < endRow; row++) {
+                    for (int col = 1; col < srcCols - 1; col++) {
+                        final float w = srcGrid[row * srcCols + col-1];
+                        final float e = srcGrid[row * srcCols + col+1];
+                        final float s = srcGrid[(row+1) * srcCols + col];
+                        final float n = srcGrid[(row-1) * srcCols + col];              
+                        final float aspect = (float)Math.atan2(n - s, e - w);
                 
-                dstGrid[row-1][col-1] = aspect;
+                        dstGrid[(row-1) * newCols + col-1] = aspect;
+                    }
+                }
             }
-        }
+        });
         
         return newGrid;
     }
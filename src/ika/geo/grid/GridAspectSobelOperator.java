@@ -37,47 +37,52 @@ public class GridAspectSobelOperator implements GridOperator {
         newGrid.setWest(geoGrid.getWest() + meshSize);
         newGrid.setNorth(geoGrid.getNorth() + meshSize);
         
-        float[][] srcGrid = geoGrid.getGrid();
-        float[][] dstGrid = newGrid.getGrid();
+        float[] srcGrid = geoGrid.getData();
+        float[] dstGrid = newGrid.getData();
         final int srcRows = geoGrid.getRows();
         final int srcCols = geoGrid.getCols();
         
-        for (int row = 1; row < srcRows - 1; row++) {
-            float[] dstRow = dstGrid[row-1];
-            for (int col = 1; col < srcCols - 1; col++) {
-                /*
-                 * |A B C|
-                 * |D 0 E|
-                 * |F G H|
-                 */
-                final float a = srcGrid[row-1][col-1];
-                final float b = srcGrid[row-1][col];
-                final float c = srcGrid[row-1][col+1];
-                final float d = srcGrid[row][col-1];
-                final float e = srcGrid[row][col+1];
-                final float f = srcGrid[row+1][col-1];
-                final float g = srcGrid[row+1][col];
-                final float h = srcGrid[row+1][col+1];
+        RowBandExecutor.execute(1, srcRows - 1, srcCols, new RowBandExecutor.RowBand() {
+            @Override
+            public void operate(int firstRow, int endRow) {
+                for (int row = firstRow; row < endRow; row++) {
+                    final int dstRowStart = (row-1) * newCols;
+                    for (int col = 1; col < srcCols - 1; col++) {
+                        /*
+                         * |A B C|
+                         * |D 0 E|
+                         * |F G H|
+                         */
+                        final float a = srcGrid[(row-1) * srcCols + col-1];
+                        final float b = srcGrid[(row-1) * srcCols + col];
+                        final float c = srcGrid[(row-1) * srcCols + col+1];
+                        final float d = srcGrid[row * srcCols + col-1];
+                        final float e = srcGrid[row * srcCols + col+1];
+                        final float f = srcGrid[(row+1) * srcCols + col-1];
+                        final float g = srcGrid[(row+1) * srcCols + col];
+                        final float h = srcGrid[(row+1) * srcCols + col+1];
                 
                 
-                //final float val = (Math.abs(-a-2*b-c+f+2*g+h) + Math.abs(-c-2*e-h+a+2*d+f)) / 8;
+                        //final float val = (Math.abs(-a-2*b-c+f+2*g+h) + Math.abs(-c-2*e-h+a+2*d+f)) / 8;
                 
-                float vhor, vver;
-                vhor = GeometryUtils.angleDif(-a, 2*b);
-                vhor = GeometryUtils.angleDif(vhor, c);
-                vhor = GeometryUtils.angleSum(vhor, f);
-                vhor = GeometryUtils.angleSum(vhor, 2*g);
-                vhor = GeometryUtils.angleSum(vhor, h);
+                        float vhor, vver;
+                        vhor = GeometryUtils.angleDif(-a, 2*b);
+                        vhor = GeometryUtils.angleDif(vhor, c);
+                        vhor = GeometryUtils.angleSum(vhor, f);
+                        vhor = GeometryUtils.angleSum(vhor, 2*g);
+                        vhor = GeometryUtils.angleSum(vhor, h);
                 
-                vver = GeometryUtils.angleDif(-c, 2*e);
-                vver = GeometryUtils.angleDif(vver, h);
-                vver = GeometryUtils.angleSum(vver, a);
-                vver = GeometryUtils.angleSum(vver, 2*d);
-                vver = GeometryUtils.angleSum(vver, f);
+                        vver = GeometryUtils.angleDif(-c, 2*e);
+                        vver = GeometryUtils.angleDif(vver, h);
+                        vver = GeometryUtils.angleSum(vver, a);
+                        vver = GeometryUtils.angleSum(vver, 2*d);
+                        vver = GeometryUtils.angleSum(vver, f);
                 
-                dstRow[col-1] = (Math.abs(vhor) + Math.abs(vver)) / 8;
+                        dstGrid[dstRowStart + col-1] = (Math.abs(vhor) + Math.abs(vver)) / 8;
+                    }
+                }
             }
-        }
+        });
    
         return newGrid;
     }
@@ -39,20 +39,22 @@ public class GridCombineOperator implements GridOperator{
         newGrid.setWest(grid1.getWest());
         newGrid.setNorth(grid1.getNorth());
         
-        float[][] src1 = grid1.getGrid();
-        float[][] src2 = grid2.getGrid();
-        float[][] w = weightGrid.getGrid();
-        float[][] dstGrid = newGrid.getGrid();
+        float[] src1 = grid1.getData();
+        float[] src2 = grid2.getData();
+        float[] w = weightGrid.getData();
+        float[] dstGrid = newGrid.getData();
         
-        for (int row = 0; row < nrows; ++row) {
-            float[] srcRow1 = src1[row];
-            float[] srcRow2 = src2[row];
-            float[] wRow = w[row];
-            float[] dstRow = dstGrid[row];
-            for (int col = 0; col < ncols; ++col) {
-                dstRow[col] = srcRow1[col] * wRow[col] + srcRow2[col] * (1f - wRow[col]);
+        RowBandExecutor.execute(0, nrows, ncols, new RowBandExecutor.RowBand() {
+            @Override
+            public void operate(int firstRow, int endRow) {
+                for (int row = firstRow; row < endRow; row++) {
+                    final int rowStart = row * ncols;
+                    for (int col = 0; col < ncols; ++col) {
+                        dstGrid[rowStart + col] = src1[rowStart + col] * w[rowStart + col] + src2[rowStart + col] * (1f - w[rowStart + col]);
+                    }
+                }
             }
-        }
+        });
         return newGrid;
         
     }
@@ -80,18 +82,21 @@ public class GridCombineOperator implements GridOperator{
         newGrid.setWest(grid1.getWest());
         newGrid.setNorth(grid1.getNorth());
 
-        float[][] src1 = grid1.getGrid();
-        float[][] src2 = grid2.getGrid();
-        float[][] dstGrid = newGrid.getGrid();
+        float[] src1 = grid1.getData();
+        float[] src2 = grid2.getData();
+        float[] dstGrid = newGrid.getData();
 
-        for (int row = 0; row < nrows; ++row) {
-            float[] srcRow1 = src1[row];
-            float[] srcRow2 = src2[row];
-            float[] dstRow = dstGrid[row];
-            for (int col = 0; col < ncols; ++col) {
-                dstRow[col] = srcRow1[col] + srcRow2[col];
+        RowBandExecutor.execute(0, nrows, ncols, new RowBandExecutor.RowBand() {
+            @Override
+            public void operate(int firstRow, int endRow) {
+                for (int row = firstRow; row < endRow; row++) {
+                    final int rowStart = row * ncols;
+                    for (int col = 0; col < ncols; ++col) {
+                        dstGrid[rowStart + col] = src1[rowStart + col] + src2[rowStart + col];
+                    }
+                }
             }
-        }
+        });
         return newGrid;
 
     }
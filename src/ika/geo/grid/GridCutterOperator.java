@@ -39,13 +39,13 @@ public class GridCutterOperator implements GridOperator {
         if (newCols < 0)
             return;
         
-        float[][] srcGrid = srcGeoGrid.getGrid();
-        float[][] dstGrid = dstGeoGrid.getGrid();
+        float[] srcGrid = srcGeoGrid.getData();
+        float[] dstGrid = dstGeoGrid.getData();
+        final int dstCols = dstGeoGrid.getCols();
         
         for (int row = 0; row < newRows; row++){
-            float[] srcRow = srcGrid[row + top];
-            float[] dstRow = dstGrid[row];
-            System.arraycopy(srcRow, left, dstRow, 0, newCols);
+            System.arraycopy(srcGrid, (row + top) * oldCols + left,
+                    dstGrid, row * dstCols, newCols);
         }
     }
 
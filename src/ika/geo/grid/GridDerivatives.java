@@ -0,0 +1,192 @@
+package ika.geo.grid;
+
+import ika.geo.GeoGrid;
+
+/**
+ * Precomputed horizontal derivatives of a grid, for example, of a digital
+ * elevation model. The derivatives are stored for each cell and are bilinearly
+ * interpolated between cells. getAspect and getSlope return the same values as
+ * GeoGrid.getAspect and GeoGrid.getSlope up to rounding, but read only four
+ * cells of each derivative grid instead of interpolating the grid at four
+ * points.
+ *
+ * The derivatives are computed with central differences. Along the left and
+ * top border, they are computed with one-sided differences, which corresponds
+ * to the extrapolation of GeoGrid.getBilinearInterpol beyond these borders.
+ * Along the right and bottom border, the derivatives are NaN.
+ *
+ * The grid must not be changed after the derivatives have been computed.
+ *
+ * @author Bernhard Jenny, School of Mathematical and Geospatial Sciences, RMIT
+ * University, Melbourne
+ */
+public final class GridDerivatives {
+
+    /**
+     * The grid from which the derivatives were computed.
+     */
+    private final GeoGrid grid;
+
+    /**
+     * Derivative in west-east direction for each cell.
+     */
+    private final float[] dzdx;
+
+    /**
+     * Derivative in south-north direction for each cell.
+     */
+    private final float[] dzdy;
+
+    private final int cols;
+    private final int rows;
+    private final double west;
+    private final double north;
+    private final double south;
+    private final double cellSize;
+
+    /**
+     * Computes the derivatives of a grid.
+     *
+     * @param grid the grid
+     */
+    public GridDerivatives(GeoGrid grid) {
+        if (grid == null) {
+            throw new IllegalArgumentException();
+        }
+        this.grid = grid;
+        this.cols = grid.getCols();
+        this.rows = grid.getRows();
+        this.west = grid.getWest();
+        this.north = grid.getNorth();
+        this.south = grid.getSouth();
+        this.cellSize = grid.getCellSize();
+        this.dzdx = new float[cols * rows];
+        this.dzdy = new float[cols * rows];
+
+        final float[] data = grid.hasData() ? grid.getData() : null;
+        final double w = 1. / (2. * cellSize);
+        RowBandExecutor.execute(0, rows, cols, new RowBandExecutor.RowBand() {
+            @Override
+            public void operate(int firstRow, int endRow) {
+                // values of the band and of the rows above and below it, at
+                // index id - offset
+                final float[] z;
+                final int offset;
+                if (data != null) {
+                    z = data;
+                    offset = 0;
+                } else {
+                    final int haloFirstRow = Math.max(0, firstRow - 1);
+                    final int haloEndRow = Math.min(rows, endRow + 1);
+                    z = new float[(haloEndRow - haloFirstRow) * cols];
+                    grid.copyRows(haloFirstRow, haloEndRow, z);
+                    offset = haloFirstRow * cols;
+                }
+                for (int row = firstRow; row < endRow; row++) {
+                    final int rowID = row * cols;
+                    for (int col = 0; col < cols; col++) {
+                        final int id = rowID + col;
+                        final int zid = id - offset;
+                        final float e = col + 1 < cols ? z[zid + 1] : Float.NaN;
+                        final float n = row > 0 ? z[zid - cols] : Float.NaN;
+                        final float s = row + 1 < rows ? z[zid + cols] : Float.NaN;
+                        if (col > 0) {
+                            dzdx[id] = (float) ((e - z[zid - 1]) * w);
+                        } else {
+                            dzdx[id] = (float) (2 * (e - z[zid]) * w);
+                        }
+                        if (row > 0) {
+                            dzdy[id] = (float) ((n - s) * w);
+                        } else {
+                            dzdy[id] = (float) (2 * (z[zid] - s) * w);
+                        }
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Returns whether the derivatives were computed for a grid.
+     *
+     * @param grid the grid to test
+     * @return true if the derivatives were computed for grid
+     */
+    public boolean isDerivedFrom(GeoGrid grid) {
+        return this.grid == grid;
+    }
+
+    /**
+     * Returns the derivative in west-east direction for a point.
+     *
+     * @param x horizontal coordinate
+     * @param y vertical coordinate
+     * @return the derivative, or NaN if the point is outside the grid.
+     */
+    public float getDzDx(double x, double y) {
+        return interpolate(dzdx, x, y);
+    }
+
+    /**
+     * Returns the derivative in south-north direction for a point.
+     *
+     * @param x horizontal coordinate
+     * @param y vertical coordinate
+     * @return the derivative, or NaN if the point is outside the grid.
+     */
+    public float getDzDy(double x, double y) {
+        return interpolate(dzdy, x, y);
+    }
+
+    /**
+     * Returns the aspect for a point, equal to GeoGrid.getAspect.
+     *
+     * @param x horizontal coordinate
+     * @param y vertical coordinate
+     * @return the direction of the steepest ascent in radians in CCW direction
+     * starting from the positive horizontal x axis.
+     */
+    public double getAspect(double x, double y) {
+        return Math.atan2(getDzDy(x, y), getDzDx(x, y));
+    }
+
+    /**
+     * Returns the slope for a point, equal to GeoGrid.getSlope. Note that
+     * GeoGrid.getSlope divides the difference over two cells by a single cell
+     * size, and therefore returns a slope that is steeper than the true slope.
+     *
+     * @param x horizontal coordinate
+     * @param y vertical coordinate
+     * @return the slope in radians
+     */
+    public double getSlope(double x, double y) {
+        return Math.atan(2 * Math.hypot(getDzDx(x, y), getDzDy(x, y)));
+    }
+
+    /**
+     * Bilinear interpolation of a derivative grid, identical to
+     * GeoGrid.getBilinearInterpol.
+     */
+    private float interpolate(float[] d, double x, double y) {
+        // column and row of the top left corner
+        final int col = (int) ((x - west) / cellSize);
+        final int row = (int) ((north - y) / cellSize);
+        if (col < 0 || col >= cols || row < 0 || row >= rows) {
+            return Float.NaN;
+        }
+        final int id = row * cols + col;
+        final boolean hasRight = col + 1 < cols;
+        final boolean hasBottom = row + 1 < rows;
+        final float h1 = hasBottom ? d[id + cols] : Float.NaN;
+        final float h2 = hasBottom && hasRight ? d[id + cols + 1] : Float.NaN;
+        final float h3 = d[id];
+        final float h4 = hasRight ? d[id + 1] : Float.NaN;
+
+        // relative coordinates in the square formed by the four points,
+        // scaled to 0..1. The origin is in the lower left corner.
+        final double relX = (x - west) / cellSize - col;
+        final double relY = (y - south) / cellSize - rows + row + 2;
+        return (float) (h1 + (h2 - h1) * relX + (h3 - h1) * relY
+                + (h1 - h2 - h3 + h4) * relX * relY);
+    }
+}
@@ -33,17 +33,21 @@ public class GridExponentiationOperator implements GridOperator {
         newGrid.setWest(geoGrid.getWest());
         newGrid.setNorth(geoGrid.getNorth());
 
-        float[][] srcGrid = geoGrid.getGrid();
-        float[][] dstGrid = newGrid.getGrid();
-
-        for (int row = 0; row < nrows; ++row) {
-            final float[] srcRow = srcGrid[row];
-            final float[] dstRow = dstGrid[row];
-            for (int col = 0; col < ncols; ++col) {
-                final float v = srcRow[col];
-                dstRow[col] = v > 0 ? (float) Math.pow(v, exponent) : negativeVal;
+        float[] srcGrid = geoGrid.getData();
+        float[] dstGrid = newGrid.getData();
+
+        RowBandExecutor.execute(0, nrows, ncols, new RowBandExecutor.RowBand() {
+            @Override
+            public void operate(int firstRow, int endRow) {
+                for (int row = firstRow; row < endRow; row++) {
+                    final int rowStart = row * ncols;
+                    for (int col = 0; col < ncols; ++col) {
+                        final float v = srcGrid[rowStart + col];
+                        dstGrid[rowStart + col] = v > 0 ? (float) Math.pow(v, exponent) : negativeVal;
+                    }
+                }
             }
-        }
+        });
     }
 
     public GeoGrid operate(GeoGrid geoGrid) {
@@ -13,6 +13,7 @@ import ika.geo.GeoPath;
 import ika.geo.VectorSymbol;
 import java.awt.geom.Point2D;
 import java.awt.geom.Rectangle2D;
+import java.util.Arrays;
 
 /**
  * @author Bernhard Jenny, Institute of Cartography, ETH Zurich
@@ -36,6 +37,14 @@ public class GridFalllineOperator implements GridOperator {
     private float minSlopeDegree;
     private double startX;
     private double startY;
+    /**
+     * Precomputed derivatives of the elevation grid. Can be null.
+     */
+    private GridDerivatives derivatives;
+    /**
+     * Points of the slope line that is currently extracted.
+     */
+    private double[] lineBuffer = new double[256];
 
     /**
      * Creates a new instance of GridSlopeLineOperator
@@ -144,25 +153,19 @@ public class GridFalllineOperator implements GridOperator {
      * @param elevationGrid The DEM.
      * @param pt On entry, contains the start point. On exit, contains the new
      * point.
-     * @param downwards If true, search in downward direction, upwards
-     * otherwise.
-     * @return The direction of the found line in radians in CCW direction
-     * starting from the positive horizontal x axis.
+     * @param dirX The horizontal component of the direction of the line.
+     * @param dirY The vertical component of the direction of the line.
+     * @return False if the direction is undefined, true otherwise.
      */
-    private double findNextPoint(GeoGrid elevationGrid, Point2D pt, boolean downwards) {
-
-        double x = pt.getX();
-        double y = pt.getY();
+    private static boolean findNextPoint(GeoGrid elevationGrid, Point2D pt,
+            double dirX, double dirY) {
 
-        double dir = elevationGrid.getAspect(x, y);
-        if (downwards) {
-            dir += Math.PI;
-            if (dir > Math.PI) {
-                dir -= 2. * Math.PI;
-            }
+        if (Double.isNaN(dirX) || Double.isNaN(dirY) || (dirX == 0 && dirY == 0)) {
+            return false;
         }
 
-        double tanDir = Math.tan(dir);
+        double x = pt.getX();
+        double y = pt.getY();
 
         final double cellSize = elevationGrid.getCellSize();
         final double west = elevationGrid.getWest();
@@ -171,19 +174,19 @@ public class GridFalllineOperator implements GridOperator {
         // *** intersect with horizontal line
         // compute y value of upper or lower border of the cell that contains x/y
         // intersection with upper or lower border of cell?
-        final int lowerIntersection = dir < 0. ? 1 : 0;
+        final int lowerIntersection = dirY < 0. ? 1 : 0;
         double y1 = north - cellSize * (Math.floor((north - y) / cellSize) + lowerIntersection);
         if (y1 == y) // special case if x/y is on grid node
         {
             y1 += cellSize;
         }
         final double dy1 = y1 - y;        // ver. distance from upper border of cell to point
-        final double dx1 = dy1 / tanDir;  // hor. distance from left border of cell to point
+        final double dx1 = dy1 * dirX / dirY;  // hor. distance from left border of cell to point
         final double dist1_square = dx1 * dx1 + dy1 * dy1;
 
         // *** intersect with vertical line
         // intersection with right or left border of cell?
-        final int rightIntersection = (dir > -HALFPI && dir < HALFPI) ? 1 : 0;
+        final int rightIntersection = dirX > 0. ? 1 : 0;
         // compute x value of right or left border of the cell that contains x/y
         double x2 = west + cellSize * (Math.floor((x - west) / cellSize) + rightIntersection);
         if (x2 == x) // special case if x/y is on grid node
@@ -191,7 +194,7 @@ public class GridFalllineOperator implements GridOperator {
             x2 -= cellSize;
         }
         final double dx2 = x2 - x;
-        final double dy2 = tanDir * dx2;
+        final double dy2 = dx2 * dirY / dirX;
         final double dist2_square = dx2 * dx2 + dy2 * dy2;
 
         // test which intersection point is closer to x/y
@@ -204,7 +207,7 @@ public class GridFalllineOperator implements GridOperator {
         }
 
         pt.setLocation(x, y);
-        return dir;
+        return true;
     }
 
     /**
@@ -238,13 +241,24 @@ public class GridFalllineOperator implements GridOperator {
             GeoGrid mask255) {
 
         final float minSlopeRadian = (float) Math.toRadians(minSlopeDegree);
+        // compare squared gradients with the squared tangent of the minimum
+        // slope instead of computing the slope angle
+        final double tanMinSlope = Math.tan(minSlopeRadian);
+        final double minGradientSquare = tanMinSlope * tanMinSlope;
 
         WeightedGeoPath polyLine = new WeightedGeoPath();
+        int pointsCount = 0;
         double x = seedX;
         double y = seedY;
 
         Rectangle2D gridBounds = elevationGrid.getBounds2D(GeoObject.UNDEFINED_SCALE);
         Point2D pt = new Point2D.Double();
+        final boolean useDerivatives = derivatives != null
+                && derivatives.isDerivedFrom(elevationGrid);
+        final double cellSize = elevationGrid.getCellSize();
+
+        // elevation of current point
+        float z1 = elevationGrid.getBilinearInterpol(x, y);
 
         while (gridBounds.contains(x, y)) {
 
@@ -283,18 +297,40 @@ public class GridFalllineOperator implements GridOperator {
             }
 
             // add point to line
-            polyLine.moveOrLineTo((float) x, (float) y);
-            if (Math.abs(elevationGrid.getSlope(x, y)) < minSlopeRadian) {
+            if (pointsCount * 2 == lineBuffer.length) {
+                lineBuffer = Arrays.copyOf(lineBuffer, lineBuffer.length * 2);
+            }
+            lineBuffer[pointsCount * 2] = (float) x;
+            lineBuffer[pointsCount * 2 + 1] = (float) y;
+            ++pointsCount;
+
+            // gradient of the DEM. The slope test and the direction of the
+            // line are the same as with GeoGrid.getSlope and
+            // GeoGrid.getAspect.
+            final double dzdx, dzdy;
+            if (useDerivatives) {
+                dzdx = derivatives.getDzDx(x, y);
+                dzdy = derivatives.getDzDy(x, y);
+            } else {
+                final float w = elevationGrid.getBilinearInterpol(x - cellSize, y);
+                final float e = elevationGrid.getBilinearInterpol(x + cellSize, y);
+                final float s = elevationGrid.getBilinearInterpol(x, y - cellSize);
+                final float n = elevationGrid.getBilinearInterpol(x, y + cellSize);
+                dzdx = (e - w) / (2 * cellSize);
+                dzdy = (n - s) / (2 * cellSize);
+            }
+            // GeoGrid.getSlope divides the difference over two cells by a
+            // single cell size, hence the factor 4
+            if (4 * (dzdx * dzdx + dzdy * dzdy) < minGradientSquare) {
                 break;
             }
 
-            // elevation of current point
-            float z1 = elevationGrid.getBilinearInterpol(x, y);
-
             // find next point in slope line
             pt.setLocation(x, y);
-            double dir = findNextPoint(elevationGrid, pt, downwards);
-            if (Double.isNaN(dir)) {
+            final boolean found = downwards
+                    ? findNextPoint(elevationGrid, pt, -dzdx, -dzdy)
+                    : findNextPoint(elevationGrid, pt, dzdx, dzdy);
+            if (!found) {
                 break;
             }
 
@@ -313,13 +349,15 @@ public class GridFalllineOperator implements GridOperator {
                     break;
                 }
             }
+            z1 = z2;
 
         }
 
-        if (polyLine.getPointsCount() < 2) {
+        if (pointsCount < 2) {
             return null;
         }
 
+        polyLine.moveOrLineTo(lineBuffer, pointsCount);
         return polyLine;
     }
 
@@ -352,6 +390,21 @@ public class GridFalllineOperator implements GridOperator {
         this.startY = startY;
     }
 
+    public GridDerivatives getDerivatives() {
+        return derivatives;
+    }
+
+    /**
+     * Sets precomputed derivatives of the elevation grid, which accelerate the
+     * search for fall lines. The derivatives are ignored if they were not
+     * computed for the elevation grid passed to operate().
+     *
+     * @param derivatives the derivatives, can be null.
+     */
+    public void setDerivatives(GridDerivatives derivatives) {
+        this.derivatives = derivatives;
+    }
+
     public SearchMethod getSearchMethod() {
         return searchMethod;
     }
@@ -49,9 +49,9 @@ public class GridGaussLowPassOperator {
         newGrid.setWest(geoGrid.getWest() + meshSize * halfFilterSize);
         newGrid.setNorth(geoGrid.getNorth() + meshSize * halfFilterSize);
         
-        float[][] srcGrid = geoGrid.getGrid();
-        float[][] dstGrid = newGrid.getGrid();
-        float[][] tmpGrid = new float[old_nrows][old_ncols];
+        float[] srcGrid = geoGrid.getData();
+        float[] dstGrid = newGrid.getData();
+        float[] tmpGrid = new float[old_nrows * old_ncols];
         
         // compute coefficients for gaussian filter, which are a row from
         // Pascal's triangle. In Pascal's triangle, the entries on the th
@@ -66,31 +66,46 @@ public class GridGaussLowPassOperator {
         
         // Gaussian blurs are separable into row and column operations.
         // first apply filter in horizontal direction.
-        for (int row = halfFilterSize; row < old_nrows-halfFilterSize; row++) {
-            float[] dstRow = tmpGrid[row];
+        RowBandExecutor.execute(halfFilterSize, old_nrows-halfFilterSize, old_ncols, new RowBandExecutor.RowBand() {
+            @Override
+            public void operate(int firstRow, int endRow) {
+                for (int row = firstRow; row < endRow; row++) {
+                    final int dstRow = row * old_ncols;
+                    final int srcRow = (row - halfFilterSize) * old_ncols;
             
-            for (int col = halfFilterSize; col < old_ncols-halfFilterSize; col++) {
-                float gauss = 0;
-                float[] srcRow = srcGrid[row - halfFilterSize];
-                for (int c = col-halfFilterSize, f = 0; c <= col+halfFilterSize; c++, f++) {
-                    gauss += srcRow[c] * coef[f];
+                    for (int col = halfFilterSize; col < old_ncols-halfFilterSize; col++) {
+                        float gauss = 0;
+                        for (int c = col-halfFilterSize, f = 0; c <= col+halfFilterSize; c++, f++) {
+                            gauss += srcGrid[srcRow + c] * coef[f];
+                        }
+                        tmpGrid[dstRow + col] = gauss/gaussSum;
+                    }
                 }
-                dstRow[col] = gauss/gaussSum;
             }
-        }
+        });
         
-        // then apply filter in vertical direction.
-        for (int row = halfFilterSize; row < old_nrows-halfFilterSize; row++) {
-            float[] dstRow = dstGrid[row - halfFilterSize];
-            
-            for (int col = halfFilterSize; col < old_ncols-halfFilterSize; col++) {
-                float gauss = 0;
-                for (int r = row-halfFilterSize, f = 0; r <= row+halfFilterSize; r++, f++) {
-                    gauss += tmpGrid[r][col] * coef[f];
+        // then apply filter in vertical direction. The weighted rows are
+        // accumulated row by row to read the temporary grid sequentially.
+        RowBandExecutor.execute(halfFilterSize, old_nrows-halfFilterSize, old_ncols, new RowBandExecutor.RowBand() {
+            @Override
+            public void operate(int firstRow, int endRow) {
+                final float[] gauss = new float[new_ncols];
+                for (int row = firstRow; row < endRow; row++) {
+                    final int dstRow = (row - halfFilterSize) * new_ncols;
+                    java.util.Arrays.fill(gauss, 0f);
+                    for (int r = row-halfFilterSize, f = 0; r <= row+halfFilterSize; r++, f++) {
+                        final int srcRow = r * old_ncols + halfFilterSize;
+                        final float w = coef[f];
+                        for (int col = 0; col < new_ncols; col++) {
+                            gauss[col] += tmpGrid[srcRow + col] * w;
+                        }
+                    }
+                    for (int col = 0; col < new_ncols; col++) {
+                        dstGrid[dstRow + col] = gauss[col]/gaussSum;
+                    }
                 }
-                dstRow[col-halfFilterSize] = gauss/gaussSum;
             }
-        }
+        });
         
         return newGrid;
     }
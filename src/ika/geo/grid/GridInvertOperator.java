@@ -36,16 +36,20 @@ public class GridInvertOperator implements GridOperator {
         newGrid.setWest(geoGrid.getWest());
         newGrid.setNorth(geoGrid.getNorth());
         
-        float[][] srcGrid = geoGrid.getGrid();
-        float[][] dstGrid = newGrid.getGrid();
+        float[] srcGrid = geoGrid.getData();
+        float[] dstGrid = newGrid.getData();
         
-        for (int row = 0; row < nrows; row++) {
-            float[] srcRow = srcGrid[row];
-            float[] dstRow = dstGrid[row];
-            for (int col = 0; col < ncols; ++col) {
-                dstRow[col] = -srcRow[col] + minPlusMax;
+        RowBandExecutor.execute(0, nrows, ncols, new RowBandExecutor.RowBand() {
+            @Override
+            public void operate(int firstRow, int endRow) {
+                for (int row = firstRow; row < endRow; row++) {
+                    final int rowStart = row * ncols;
+                    for (int col = 0; col < ncols; ++col) {
+                        dstGrid[rowStart + col] = -srcGrid[rowStart + col] + minPlusMax;
+                    }
+                }
             }
-        }
+        });
         return newGrid;
     }
     
@@ -34,28 +34,33 @@ public class GridLaplaceOperator implements GridOperator{
         newGrid.setWest(geoGrid.getWest() + meshSize);
         newGrid.setNorth(geoGrid.getNorth() + meshSize);
         
-        float[][] srcGrid = geoGrid.getGrid();
-        float[][] dstGrid = newGrid.getGrid();
+        float[] srcGrid = geoGrid.getData();
+        float[] dstGrid = newGrid.getData();
         final int srcRows = geoGrid.getRows();
         final int srcCols = geoGrid.getCols();
         
-        for (int row = 1; row < srcRows - 1; row++) {
-            for (int col = 1; col < srcCols - 1; col++) {
-                /*
-                | 0  1  0 |
-                | 1 -4  1 |
-                | 0  1  0 |
-                 */
-                final float center = srcGrid[row][col];
-                final float top = srcGrid[row-1][col];
-                final float left = srcGrid[row][col-1];
-                final float right = srcGrid[row][col+1];
-                final float bottom = srcGrid[row+1][col];
+        RowBandExecutor.execute(1, srcRows - 1, srcCols, new RowBandExecutor.RowBand() {
+            @Override
+            public void operate(int firstRow, int endRow) {
+                for (int row = firstRow; row < endRow; row++) {
+                    for (int col = 1; col < srcCols - 1; col++) {
+                        /*
+                        | 0  1  0 |
+                        | 1 -4  1 |
+                        | 0  1  0 |
+                         */
+                        final float center = srcGrid[row * srcCols + col];
+                        final float top = srcGrid[(row-1) * srcCols + col];
+                        final float left = srcGrid[row * srcCols + col-1];
+                        final float right = srcGrid[row * srcCols + col+1];
+                        final float bottom = srcGrid[(row+1) * srcCols + col];
                 
-                final float val = top + left - 4f * center + right + bottom;
-                dstGrid[row-1][col-1] = val;
+                        final float val = top + left - 4f * center + right + bottom;
+                        dstGrid[(row-1) * newCols + col-1] = val;
+                    }
+                }
             }
-        }
+        });
         
         return newGrid;
     }
@@ -35,17 +35,21 @@ public class GridLimitMinimumOperator implements GridOperator{
         newGrid.setWest(geoGrid.getWest());
         newGrid.setNorth(geoGrid.getNorth());
         
-        float[][] srcGrid = geoGrid.getGrid();
-        float[][] dstGrid = newGrid.getGrid();
+        float[] srcGrid = geoGrid.getData();
+        float[] dstGrid = newGrid.getData();
 
-        for (int row = 0; row < nrows; ++row) {
-            final float[] srcRow = srcGrid[row];
-            final float[] dstRow = dstGrid[row];
-            for (int col = 0; col < ncols; ++col) {
-                final float v = srcRow[col];
-                dstRow[col] = srcRow[col] < limit ? replacementValue : v;
+        RowBandExecutor.execute(0, nrows, ncols, new RowBandExecutor.RowBand() {
+            @Override
+            public void operate(int firstRow, int endRow) {
+                for (int row = firstRow; row < endRow; row++) {
+                    final int rowStart = row * ncols;
+                    for (int col = 0; col < ncols; ++col) {
+                        final float v = srcGrid[rowStart + col];
+                        dstGrid[rowStart + col] = srcGrid[rowStart + col] < limit ? replacementValue : v;
+                    }
+                }
             }
-        }
+        });
     }
     
     public GeoGrid operate(GeoGrid geoGrid) {
@@ -29,4 +29,9 @@ public class GridLowerQuartileOperator extends GridPercentileFilterOperator {
         return ika.utils.Median.lowerQuartile(values);
     }
 
+    @Override
+    protected final int percentileRank(int valuesCount) {
+        return valuesCount / 4;
+    }
+
 }
@@ -43,37 +43,42 @@ public class GridMaximumCurvatureOperator implements GridOperator {
             this.operateBorder(geoGrid, newGrid, cols - 1, row, cellSize);
         }
         // interior of grid
-        float[][] srcGrid = geoGrid.getGrid();
-        float[][] dstGrid = newGrid.getGrid();
-        for (int row = 1; row < rows - 1; row++) {
-            for (int col = 1; col < cols - 1; col++) {
+        float[] srcGrid = geoGrid.getData();
+        float[] dstGrid = newGrid.getData();
+        RowBandExecutor.execute(1, rows - 1, cols, new RowBandExecutor.RowBand() {
+            @Override
+            public void operate(int firstRow, int endRow) {
+                for (int row = firstRow; row < endRow; row++) {
+                    for (int col = 1; col < cols - 1; col++) {
                 
-                final float z1 = srcGrid[row-1][col-1]; // top left
-                final float z2 = srcGrid[row-1][col]; // top
-                final float z3 = srcGrid[row-1][col+1]; // top right
-                final float z4 = srcGrid[row][col-1]; // left
-                final float z5 = srcGrid[row][col]; // center
-                final float z6 = srcGrid[row][col+1]; // right
-                final float z7 = srcGrid[row+1][col-1]; // bottom left
-                final float z8 = srcGrid[row+1][col]; // bottom
-                final float z9 = srcGrid[row+1][col+1]; // bottom right
+                        final float z1 = srcGrid[(row-1) * cols + col-1]; // top left
+                        final float z2 = srcGrid[(row-1) * cols + col]; // top
+                        final float z3 = srcGrid[(row-1) * cols + col+1]; // top right
+                        final float z4 = srcGrid[row * cols + col-1]; // left
+                        final float z5 = srcGrid[row * cols + col]; // center
+                        final float z6 = srcGrid[row * cols + col+1]; // right
+                        final float z7 = srcGrid[(row+1) * cols + col-1]; // bottom left
+                        final float z8 = srcGrid[(row+1) * cols + col]; // bottom
+                        final float z9 = srcGrid[(row+1) * cols + col+1]; // bottom right
                 
-                final float a = (z1+z3+z4+z6+z7+z9)/6*gg - (z2+z5+z8)/3*gg;
-                final float b = (z1+z2+z3+z7+z8+z9)/6*gg - (z4+z5+z6)/3*gg;
-                final float c = (z3+z7-z1-z9)/4*gg;
+                        final float a = (z1+z3+z4+z6+z7+z9)/6*gg - (z2+z5+z8)/3*gg;
+                        final float b = (z1+z2+z3+z7+z8+z9)/6*gg - (z4+z5+z6)/3*gg;
+                        final float c = (z3+z7-z1-z9)/4*gg;
                 
-                final float profmax = (float)(-a - b + Math.sqrt((a-b)*(a-b)+c*c));
-                dstGrid[row][col] = profmax;
+                        final float profmax = (float)(-a - b + Math.sqrt((a-b)*(a-b)+c*c));
+                        dstGrid[row * cols + col] = profmax;
                 
+                    }
+                }
             }
-        }
+        });
         
         return newGrid;
     }
 
     private void operateBorder(GeoGrid src, GeoGrid dst, int col, int row, double cellSize) {
-        float[][] srcGrid = src.getGrid();
-        float[][] dstGrid = dst.getGrid();
+        float[] srcGrid = src.getData();
+        float[] dstGrid = dst.getData();
         final int cols = src.getCols();
         final int rows = src.getRows();
         
@@ -82,15 +87,15 @@ public class GridMaximumCurvatureOperator implements GridOperator {
         final int cm = col - 1 < 0 ? 0 : col - 1;
         final int cp = col + 1 >= cols ? cols - 1 : col + 1;
 
-        final float z1 = srcGrid[rm][cm]; // top left
-        final float z2 = srcGrid[rm][col]; // top
-        final float z3 = srcGrid[rm][cp]; // top right
-        final float z4 = srcGrid[row][cm]; // left
-        final float z5 = srcGrid[row][col]; // center
-        final float z6 = srcGrid[row][cp]; // right
-        final float z7 = srcGrid[rp][cm]; // bottom left
-        final float z8 = srcGrid[rp][col]; // bottom
-        final float z9 = srcGrid[rp][cp]; // bottom right
+        final float z1 = srcGrid[rm * cols + cm]; // top left
+        final float z2 = srcGrid[rm * cols + col]; // top
+        final float z3 = srcGrid[rm * cols + cp]; // top right
+        final float z4 = srcGrid[row * cols + cm]; // left
+        final float z5 = srcGrid[row * cols + col]; // center
+        final float z6 = srcGrid[row * cols + cp]; // right
+        final float z7 = srcGrid[rp * cols + cm]; // bottom left
+        final float z8 = srcGrid[rp * cols + col]; // bottom
+        final float z9 = srcGrid[rp * cols + cp]; // bottom right
 
         final float gg = (float)(cellSize*cellSize);
         final float a = (z1 + z3 + z4 + z6 + z7 + z9) / 6 * gg - (z2 + z5 + z8) / 3 * gg;
@@ -98,7 +103,7 @@ public class GridMaximumCurvatureOperator implements GridOperator {
         final float c = (z3 + z7 - z1 - z9) / 4 * gg;
 
         final float profmin = (float) (-a - b + Math.sqrt((a-b) * (a-b) + c*c));
-        dstGrid[row][col] = profmin;
+        dstGrid[row * cols + col] = profmin;
     }
     
 }
@@ -64,8 +64,8 @@ public class GridMeanOperator implements GridOperator {
         newGrid.setWest(geoGrid.getWest());
         newGrid.setNorth(geoGrid.getNorth());
 
-        float[][] srcGrid = geoGrid.getGrid();
-        float[][] dstGrid = newGrid.getGrid();
+        float[] srcGrid = geoGrid.getData();
+        float[] dstGrid = newGrid.getData();
 
         // top rows
         for (int row = 0; row < halfFilterSize; row++) {
@@ -94,19 +94,24 @@ public class GridMeanOperator implements GridOperator {
 
         // interior of grid
         final float npts = this.filterSize * this.filterSize;
-        for (int row = halfFilterSize; row < rows - halfFilterSize; row++) {
-            float[] dstRow = dstGrid[row];
-            for (int col = halfFilterSize; col < cols - halfFilterSize; col++) {
-                float tot = 0;
-                for (int r = row - halfFilterSize; r <= row + halfFilterSize; r++) {
-                    float[] srcRow = srcGrid[r];
-                    for (int c = col - halfFilterSize; c <= col + halfFilterSize; c++) {
-                        tot += srcRow[c];
+        RowBandExecutor.execute(halfFilterSize, rows - halfFilterSize, cols, new RowBandExecutor.RowBand() {
+            @Override
+            public void operate(int firstRow, int endRow) {
+                for (int row = firstRow; row < endRow; row++) {
+                    final int dstRowStart = row * cols;
+                    for (int col = halfFilterSize; col < cols - halfFilterSize; col++) {
+                        float tot = 0;
+                        for (int r = row - halfFilterSize; r <= row + halfFilterSize; r++) {
+                            final int srcRowStart = r * cols;
+                            for (int c = col - halfFilterSize; c <= col + halfFilterSize; c++) {
+                                tot += srcGrid[srcRowStart + c];
+                            }
+                        }
+                        dstGrid[dstRowStart + col] = tot / npts;
                     }
                 }
-                dstRow[col] = tot / npts;
             }
-        }
+        });
         return newGrid;
     }
 
@@ -135,8 +140,8 @@ public class GridMeanOperator implements GridOperator {
 
         final int halfFilterSize = filterSize / 2;
 
-        float[][] srcGrid = src.getGrid();
-        float[][] dstGrid = dst.getGrid();
+        float[] srcGrid = src.getData();
+        float[] dstGrid = dst.getData();
 
         final int cols = src.getCols();
         final int rows = src.getRows();
@@ -145,16 +150,16 @@ public class GridMeanOperator implements GridOperator {
         float tot = 0;
         for (int r = row - halfFilterSize; r <= row + halfFilterSize; r++) {
             if (r > 0 && r < rows) {
-                float[] srcRow = srcGrid[r];
+                final int srcRowStart = r * cols;
                 for (int c = col - halfFilterSize; c <= col + halfFilterSize; c++) {
                     if (c > 0 && c < cols) {
-                        tot += srcRow[c];
+                        tot += srcGrid[srcRowStart + c];
                         ++npts;
                     }
                 }
             }
         }
-        dstGrid[row][col] = tot / npts;
+        dstGrid[row * cols + col] = tot / npts;
 
     }
 }
@@ -1,16 +1,50 @@
 package ika.geo.grid;
 
 import ika.geo.GeoGrid;
+import java.util.Arrays;
 
 /**
  * Abstract base class for non-linear percentile filters, such as median, upper
  * and lower quartile.
+ *
+ * Two algorithms are available. SELECTION copies the values of each filter
+ * window into an array and selects the percentile. SLIDING_HISTOGRAM ranks all
+ * values of a band of rows once and slides a histogram of ranks along each row,
+ * adding and removing one column of the window per cell. The per-cell cost of
+ * SLIDING_HISTOGRAM grows with the filter size instead of with its square, and
+ * the algorithm is faster for filters of 7 x 7 cells and larger. AUTOMATIC
+ * uses SELECTION for smaller filters and SLIDING_HISTOGRAM for larger filters.
+ * Both algorithms return identical values, except for windows with void (NaN)
+ * values, which SLIDING_HISTOGRAM ranks after all other values, and the sign
+ * of zero values. Bands of rows are filtered concurrently by both algorithms.
+ *
+ * The grid is mirrored along its borders, so the grid must have more rows and
+ * columns than half the filter size.
+ *
  * @author Bernhard Jenny, Institute of Cartography, ETH Zurich. 3 October 2008.
  */
 public abstract class GridPercentileFilterOperator implements GridOperator {
 
+    public enum Algorithm {
+
+        AUTOMATIC, SELECTION, SLIDING_HISTOGRAM
+    };
+
+    /**
+     * Minimum number of cells filtered by SLIDING_HISTOGRAM with a single
+     * ranking of values.
+     */
+    private static final int MIN_CELLS_PER_CHUNK = 256 * 1024;
+
+    /**
+     * AUTOMATIC uses SLIDING_HISTOGRAM for filters of this size and larger.
+     */
+    private static final int MIN_SLIDING_HISTOGRAM_FILTER_SIZE = 7;
+
     protected int filterSize = 3;
 
+    private Algorithm algorithm = Algorithm.AUTOMATIC;
+
     public GridPercentileFilterOperator() {
     }
 
@@ -18,13 +52,26 @@ public abstract class GridPercentileFilterOperator implements GridOperator {
         this.filterSize = filterSize;
     }
 
+    /**
+     * Returns the percentile of an array of values. The order of the values
+     * can be changed.
+     */
     protected abstract float percentile(float[] values);
-    
+
+    /**
+     * Returns the rank of the percentile in a sorted array of values. Must be
+     * consistent with percentile().
+     *
+     * @param valuesCount the number of values
+     * @return the rank, between 0 and valuesCount - 1
+     */
+    protected abstract int percentileRank(int valuesCount);
+
     public GeoGrid operate(GeoGrid geoGrid) {
         if (geoGrid == null) {
-            throw new IllegalArgumentException();        
+            throw new IllegalArgumentException();
         }
-        
+
         // make sure filterSize is odd number
         if (filterSize % 2 != 1) {
             return null;
@@ -34,82 +81,188 @@ public abstract class GridPercentileFilterOperator implements GridOperator {
         // create the new grid
         final int nrows = geoGrid.getRows();
         final int ncols = geoGrid.getCols();
+        if (nrows <= halfFilterSize || ncols <= halfFilterSize) {
+            throw new IllegalArgumentException("grid is smaller than the filter");
+        }
         final double meshSize = geoGrid.getCellSize();
         GeoGrid newGrid = new GeoGrid(ncols, nrows, meshSize);
         newGrid.setWest(geoGrid.getWest());
         newGrid.setNorth(geoGrid.getNorth());
 
-        float[][] srcGrid = geoGrid.getGrid();
-        float[][] dstGrid = newGrid.getGrid();
-
-        // filter interior of grid
-        float[] values = new float[this.filterSize * this.filterSize];
-        for (int row = halfFilterSize; row < nrows - halfFilterSize; row++) {
-            final float[] dstRow = dstGrid[row];
-            for (int col = halfFilterSize; col < ncols - halfFilterSize; col++) {
-                for (int r = 0; r < filterSize; r++) {
-                    System.arraycopy(srcGrid[r + row - halfFilterSize],
-                            col - halfFilterSize,
-                            values, r * filterSize, filterSize);
-                }
-                dstRow[col] = this.percentile(values);
-            }
+        final float[] src = geoGrid.getData();
+        final float[] dst = newGrid.getData();
+        if (algorithm == Algorithm.SELECTION || (algorithm == Algorithm.AUTOMATIC
+                && filterSize < MIN_SLIDING_HISTOGRAM_FILTER_SIZE)) {
+            operateSelection(src, dst, ncols, nrows);
+        } else {
+            operateSlidingHistogram(src, dst, ncols, nrows);
         }
-
-        // filter border of grid
-        this.operateBorder(geoGrid, newGrid);
         return newGrid;
     }
 
-    private void operateBorder(GeoGrid src, GeoGrid dst) {
+    /**
+     * Mirrors a row or column index along the borders of the grid.
+     */
+    private static int mirror(int i, int size) {
+        return i < 0 ? -i : (i >= size ? 2 * size - 2 - i : i);
+    }
 
-        final int halfFilterSize = this.filterSize / 2;
-        final int cols = src.getCols();
-        final int rows = src.getRows();
+    /**
+     * Selects the percentile from a copy of the window of each cell.
+     */
+    private void operateSelection(final float[] src, final float[] dst,
+            final int cols, final int rows) {
+        final int halfFilterSize = filterSize / 2;
+        RowBandExecutor.execute(0, rows, cols, new RowBandExecutor.RowBand() {
+            @Override
+            public void operate(int firstRow, int endRow) {
+                final float[] values = new float[filterSize * filterSize];
+                final int[] rowIDs = new int[filterSize];
+                for (int row = firstRow; row < endRow; row++) {
+                    for (int r = 0; r < filterSize; r++) {
+                        rowIDs[r] = mirror(row - halfFilterSize + r, rows) * cols;
+                    }
+                    for (int col = 0; col < cols; col++) {
+                        final int firstCol = col - halfFilterSize;
+                        if (firstCol >= 0 && firstCol + filterSize <= cols) {
+                            for (int r = 0; r < filterSize; r++) {
+                                System.arraycopy(src, rowIDs[r] + firstCol,
+                                        values, r * filterSize, filterSize);
+                            }
+                        } else {
+                            int counter = 0;
+                            for (int r = 0; r < filterSize; r++) {
+                                for (int c = 0; c < filterSize; c++) {
+                                    values[counter++] = src[rowIDs[r] + mirror(firstCol + c, cols)];
+                                }
+                            }
+                        }
+                        dst[row * cols + col] = percentile(values);
+                    }
+                }
+            }
+        });
+    }
 
-        // top rows
-        for (int r = 0; r < halfFilterSize; r++) {
-            for (int c = 0; c < cols; c++) {
-                this.operateBorder(src, dst, c, r);
+    /**
+     * Slides a histogram of value ranks along each row. The grid is split
+     * into chunks of rows, and the values of each chunk and the adjacent rows
+     * covered by the filter are ranked. Chunks are passed to RowBandExecutor
+     * as rows.
+     */
+    private void operateSlidingHistogram(final float[] src, final float[] dst,
+            final int cols, final int rows) {
+        final int chunkRows = Math.max(2 * filterSize,
+                (MIN_CELLS_PER_CHUNK + cols - 1) / cols);
+        final int chunksCount = (rows + chunkRows - 1) / chunkRows;
+        RowBandExecutor.execute(0, chunksCount, chunkRows * cols, new RowBandExecutor.RowBand() {
+            @Override
+            public void operate(int firstChunk, int endChunk) {
+                for (int chunk = firstChunk; chunk < endChunk; chunk++) {
+                    final int firstRow = chunk * chunkRows;
+                    final int endRow = Math.min(rows, firstRow + chunkRows);
+                    operateSlidingHistogram(src, dst, cols, rows, firstRow, endRow);
+                }
             }
+        });
+    }
+
+    private void operateSlidingHistogram(float[] src, float[] dst,
+            int cols, int rows, int firstRow, int endRow) {
+        final int halfFilterSize = filterSize / 2;
+        final int k = percentileRank(filterSize * filterSize);
+
+        // rank the values of all rows covered by the filter. Mirrored rows
+        // are inside this range.
+        final int srcFirstRow = Math.max(0, firstRow - halfFilterSize);
+        final int srcEndRow = Math.min(rows, endRow + halfFilterSize);
+        final int srcFirstID = srcFirstRow * cols;
+        final int n = (srcEndRow - srcFirstRow) * cols;
+        final long[] keys = new long[n];
+        for (int i = 0; i < n; i++) {
+            // integer with the same order as the float value
+            int bits = Float.floatToIntBits(src[srcFirstID + i]);
+            bits ^= (bits >> 31) & 0x7fffffff;
+            keys[i] = ((long) bits << 32) | i;
         }
+        Arrays.sort(keys);
+        final int[] ranks = new int[n];
+        final float[] sortedValues = new float[n];
+        for (int rank = 0; rank < n; rank++) {
+            final int i = (int) keys[rank];
+            ranks[i] = rank;
+            sortedValues[rank] = src[srcFirstID + i];
+        }
+
+        final RankHistogram histogram = new RankHistogram(n);
+        final int[] rowIDs = new int[filterSize];
+        for (int row = firstRow; row < endRow; row++) {
+            for (int r = 0; r < filterSize; r++) {
+                rowIDs[r] = (mirror(row - halfFilterSize + r, rows) - srcFirstRow) * cols;
+            }
 
-        // bottom rows
-        for (int r = rows - halfFilterSize; r < rows; r++) {
-            for (int c = 0; c < cols; c++) {
-                this.operateBorder(src, dst, c, r);
+            // initial window for the first column
+            for (int c = -halfFilterSize; c <= halfFilterSize; c++) {
+                histogram.addColumn(ranks, rowIDs, mirror(c, cols), 1);
+            }
+            for (int col = 0; col < cols; col++) {
+                dst[row * cols + col] = sortedValues[histogram.kth(k)];
+                if (col + 1 < cols) {
+                    histogram.addColumn(ranks, rowIDs, mirror(col - halfFilterSize, cols), -1);
+                    histogram.addColumn(ranks, rowIDs, mirror(col + 1 + halfFilterSize, cols), 1);
+                }
+            }
+
+            // empty the histogram for the next row
+            for (int c = cols - 1 - halfFilterSize; c <= cols - 1 + halfFilterSize; c++) {
+                histogram.addColumn(ranks, rowIDs, mirror(c, cols), -1);
             }
         }
+    }
+
+    /**
+     * A histogram counting ranks, stored in a binary indexed tree (Fenwick
+     * tree) to find the k-th smallest rank in logarithmic time.
+     */
+    private static final class RankHistogram {
 
-        // left columns
-        for (int r = 0; r < rows; r++) {
-            for (int c = 0; c < halfFilterSize; c++) {
-                this.operateBorder(src, dst, c, r);
+        private final int[] tree;
+        private final int highestBit;
+
+        RankHistogram(int ranksCount) {
+            tree = new int[ranksCount + 1];
+            highestBit = Integer.highestOneBit(ranksCount);
+        }
+
+        void add(int rank, int count) {
+            for (int i = rank + 1; i < tree.length; i += i & -i) {
+                tree[i] += count;
             }
         }
 
-        // right columns
-        for (int r = 0; r < rows; r++) {
-            for (int c = cols - halfFilterSize; c < cols; c++) {
-                this.operateBorder(src, dst, c, r);
+        /**
+         * Adds the ranks of a column of a window.
+         */
+        void addColumn(int[] ranks, int[] rowIDs, int col, int count) {
+            for (int rowID : rowIDs) {
+                add(ranks[rowID + col], count);
             }
         }
-    }
 
-    private void operateBorder(GeoGrid src, GeoGrid dst, int col, int row) {
-        final int halfFilterSize = this.filterSize / 2;
-        float[] values = new float[this.filterSize * this.filterSize];
-        final int cols = src.getCols();
-        final int rows = src.getRows();
-        int counter = 0;
-        for (int r = -halfFilterSize + row; r <= halfFilterSize + row; r++) {
-            final int gridRow = r < 0 ? -r : (r >= rows ? 2 * rows - 2 - r : r);
-            for (int c = -halfFilterSize + col; c <= halfFilterSize + col; c++) {
-                final int gridCol = c < 0 ? -c : (c >= cols ? 2 * cols - 2 - c : c);
-                values[counter++] = src.getValue(gridCol, gridRow);
+        /**
+         * Returns the k-th smallest rank, starting with 0.
+         */
+        int kth(int k) {
+            int pos = 0;
+            for (int step = highestBit; step > 0; step >>= 1) {
+                final int next = pos + step;
+                if (next < tree.length && tree[next] <= k) {
+                    pos = next;
+                    k -= tree[next];
+                }
             }
+            return pos;
         }
-        dst.setValue(this.percentile(values), col, row);
     }
 
     public int getFilterSize() {
@@ -119,5 +272,16 @@ public abstract class GridPercentileFilterOperator implements GridOperator {
     public void setFilterSize(int filterSize) {
         this.filterSize = filterSize;
     }
-    
+
+    public Algorithm getAlgorithm() {
+        return algorithm;
+    }
+
+    public void setAlgorithm(Algorithm algorithm) {
+        if (algorithm == null) {
+            throw new IllegalArgumentException();
+        }
+        this.algorithm = algorithm;
+    }
+
 }
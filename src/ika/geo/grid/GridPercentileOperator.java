@@ -41,25 +41,25 @@ public class GridPercentileOperator implements GridOperator {
         newGrid.setWest(geoGrid.getWest());
         newGrid.setNorth(geoGrid.getNorth());
 
-        float[][] srcGrid = geoGrid.getGrid();
-        float[][] dstGrid = newGrid.getGrid();
+        float[] srcGrid = geoGrid.getData();
+        float[] dstGrid = newGrid.getData();
 
         // filter interior of grid
         for (int row = halfFilterSize; row < nrows - halfFilterSize; row++) {
-            final float[] dstRow = dstGrid[row];
+            final int rowStart = row * ncols;
             for (int col = halfFilterSize; col < ncols - halfFilterSize; col++) {
                 int nbrSmaller = 0;
-                final float centralCell = srcGrid[row][col];
+                final float centralCell = srcGrid[rowStart + col];
                 for (int r = -halfFilterSize; r <= halfFilterSize; r++) {
 
                     for (int c = -halfFilterSize; c <= halfFilterSize; c++) {
-                        final float v = srcGrid[row + r][col + c];
+                        final float v = srcGrid[(row + r) * ncols + col + c];
                         if (v < centralCell) {
                             ++nbrSmaller;
                         }
                     }
                 }
-                dstRow[col] = nbrSmaller * scale;
+                dstGrid[rowStart + col] = nbrSmaller * scale;
             }
         }
 
@@ -109,17 +109,17 @@ public class GridPercentileOperator implements GridOperator {
 
         final int cols = src.getCols();
         final int rows = src.getRows();
-        float[][] srcGrid = src.getGrid();
+        float[] srcGrid = src.getData();
 
         int nbrSmaller = 0;
-        final float centralCell = srcGrid[row][col];
+        final float centralCell = srcGrid[row * cols + col];
 
         for (int r = -halfFilterSize + row; r <= halfFilterSize + row; r++) {
             final int gridRow = r < 0 ? -r : (r >= rows ? 2 * rows - 2 - r : r);
             for (int c = -halfFilterSize + col; c <= halfFilterSize + col; c++) {
                 final int gridCol = c < 0 ? -c : (c >= cols ? 2 * cols - 2 - c : c);
 
-                final float v = srcGrid[gridRow][gridCol];
+                final float v = srcGrid[gridRow * cols + gridCol];
                 if (v < centralCell) {
                     ++nbrSmaller;
                 }
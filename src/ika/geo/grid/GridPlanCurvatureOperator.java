@@ -26,7 +26,6 @@ public class GridPlanCurvatureOperator implements GridOperator{
     */
 
     public static float planCurv(GeoGrid geoGrid, int col, int row) {
-        float[][] srcGrid = geoGrid.getGrid();
         final double cellSize = geoGrid.getCellSize();
         final float inverseDoubleMeshSize = (float) (1 / (2 * cellSize));
         final float inverseSquareMeshSize = (float) (1 / (cellSize * cellSize));
@@ -35,15 +34,15 @@ public class GridPlanCurvatureOperator implements GridOperator{
         final int rbelow = Math.min(geoGrid.getRows() - 1, row + 1);
         final int cleft = Math.max(0, col - 1);
         final int cright = Math.min(geoGrid.getCols() - 1, col + 1);
-        final float e0 = srcGrid[row][col]; // center
-        final float e1 = srcGrid[rabove][cleft]; // north-west
-        final float e2 = srcGrid[rabove][col]; // north
-        final float e3 = srcGrid[rabove][cright]; //north-east
-        final float e4 = srcGrid[row][cleft]; // west
-        final float e5 = srcGrid[row][cright]; // east
-        final float e6 = srcGrid[rbelow][cleft]; // south-west
-        final float e7 = srcGrid[rbelow][col]; // south
-        final float e8 = srcGrid[rbelow][cright]; // south-east
+        final float e0 = geoGrid.getValue(col, row); // center
+        final float e1 = geoGrid.getValue(cleft, rabove); // north-west
+        final float e2 = geoGrid.getValue(col, rabove); // north
+        final float e3 = geoGrid.getValue(cright, rabove); //north-east
+        final float e4 = geoGrid.getValue(cleft, row); // west
+        final float e5 = geoGrid.getValue(cright, row); // east
+        final float e6 = geoGrid.getValue(cleft, rbelow); // south-west
+        final float e7 = geoGrid.getValue(col, rbelow); // south
+        final float e8 = geoGrid.getValue(cright, rbelow); // south-east
 
         final float D = ((e4 + e5) / 2 - e0) * inverseSquareMeshSize;
         final float E = ((e2 + e7) / 2 - e0) * inverseSquareMeshSize;
@@ -91,41 +90,57 @@ public class GridPlanCurvatureOperator implements GridOperator{
             this.operateBorder(geoGrid, newGrid, cols - 1, row, cellSize);
         }
         // interior of grid
-        float[][] srcGrid = geoGrid.getGrid();
-        float[][] dstGrid = newGrid.getGrid();
+        final float[] srcData = geoGrid.hasData() ? geoGrid.getData() : null;
+        final float[] dstGrid = newGrid.getData();
         final float inverseDoubleMeshSize = (float)(1 / (2 * cellSize));
         final float inverseSquareMeshSize = (float)(1 / (cellSize * cellSize));
-        for (int row = 1; row < rows - 1; row++) {
-            for (int col = 1; col < cols - 1; col++) {
-                
-                final float e0 = srcGrid[row][col]; // center
-                final float e1 = srcGrid[row-1][col-1]; // north-west
-                final float e2 = srcGrid[row-1][col]; // north
-                final float e3 = srcGrid[row-1][col+1]; //north-east
-                final float e4 = srcGrid[row][col-1]; // west
-                final float e5 = srcGrid[row][col+1]; // east
-                final float e6 = srcGrid[row+1][col-1]; // south-west
-                final float e7 = srcGrid[row+1][col]; // south
-                final float e8 = srcGrid[row+1][col+1]; // south-east
+        RowBandExecutor.execute(1, rows - 1, cols, new RowBandExecutor.RowBand() {
+            @Override
+            public void operate(int firstRow, int endRow) {
+                // values of the band and of the rows above and below it, at
+                // index i - offset
+                final float[] srcGrid;
+                final int offset;
+                if (srcData != null) {
+                    srcGrid = srcData;
+                    offset = 0;
+                } else {
+                    srcGrid = new float[(endRow - firstRow + 2) * cols];
+                    geoGrid.copyRows(firstRow - 1, endRow + 1, srcGrid);
+                    offset = (firstRow - 1) * cols;
+                }
+                for (int row = firstRow; row < endRow; row++) {
+                    for (int col = 1, i = row * cols + 1; col < cols - 1; col++, i++) {
+                        final int j = i - offset;
+                        final float e0 = srcGrid[j]; // center
+                        final float e1 = srcGrid[j-cols-1]; // north-west
+                        final float e2 = srcGrid[j-cols]; // north
+                        final float e3 = srcGrid[j-cols+1]; //north-east
+                        final float e4 = srcGrid[j-1]; // west
+                        final float e5 = srcGrid[j+1]; // east
+                        final float e6 = srcGrid[j+cols-1]; // south-west
+                        final float e7 = srcGrid[j+cols]; // south
+                        final float e8 = srcGrid[j+cols+1]; // south-east
                 
-                final float D = ((e4 + e5) / 2 - e0) * inverseSquareMeshSize;
-                final float E = ((e2 + e7) / 2 - e0) * inverseSquareMeshSize;
-                final float F = (-e1 + e3 + e6 - e8) / 4 * inverseSquareMeshSize;
-                final float G = (-e4 + e5) * inverseDoubleMeshSize;
-                final float H = (e2 - e7) * inverseDoubleMeshSize;
-                final float divider = G*G+H*H;
-                if (divider != 0) {
-                    dstGrid[row][col] = 2*((D*H*H + E*G*G - F*G*H) / divider);
+                        final float D = ((e4 + e5) / 2 - e0) * inverseSquareMeshSize;
+                        final float E = ((e2 + e7) / 2 - e0) * inverseSquareMeshSize;
+                        final float F = (-e1 + e3 + e6 - e8) / 4 * inverseSquareMeshSize;
+                        final float G = (-e4 + e5) * inverseDoubleMeshSize;
+                        final float H = (e2 - e7) * inverseDoubleMeshSize;
+                        final float divider = G*G+H*H;
+                        if (divider != 0) {
+                            dstGrid[i] = 2*((D*H*H + E*G*G - F*G*H) / divider);
+                        }
+                    }
                 }
             }
-        }
+        });
         
         return newGrid;
     }
     
     private void operateBorder(GeoGrid src, GeoGrid dst, int col, int row, double cellSize) {
-        float[][] srcGrid = src.getGrid();
-        float[][] dstGrid = dst.getGrid();
+        float[] dstGrid = dst.getData();
         final float inverseDoubleMeshSize = (float)(1 / (2 * cellSize));
         final float inverseSquareMeshSize = (float)(1 / (cellSize * cellSize));
         final int cols = src.getCols();
@@ -136,15 +151,15 @@ public class GridPlanCurvatureOperator implements GridOperator{
         final int cm = col - 1 < 0 ? 0 : col - 1;
         final int cp = col + 1 >= cols ? cols - 1 : col + 1;
         
-        final float e0 = srcGrid[row][col]; // center
-        final float e1 = srcGrid[rm][cm]; // north-west
-        final float e2 = srcGrid[rm][col]; // north
-        final float e3 = srcGrid[rm][cp]; //north-east
-        final float e4 = srcGrid[row][cm]; // west
-        final float e5 = srcGrid[row][cp]; // east
-        final float e6 = srcGrid[rp][cm]; // south-west
-        final float e7 = srcGrid[rp][col]; // south
-        final float e8 = srcGrid[rp][cp]; // south-east
+        final float e0 = src.getValue(col, row); // center
+        final float e1 = src.getValue(cm, rm); // north-west
+        final float e2 = src.getValue(col, rm); // north
+        final float e3 = src.getValue(cp, rm); //north-east
+        final float e4 = src.getValue(cm, row); // west
+        final float e5 = src.getValue(cp, row); // east
+        final float e6 = src.getValue(cm, rp); // south-west
+        final float e7 = src.getValue(col, rp); // south
+        final float e8 = src.getValue(cp, rp); // south-east
 
         final float D = ((e4 + e5) / 2 - e0) * inverseSquareMeshSize;
         final float E = ((e2 + e7) / 2 - e0) * inverseSquareMeshSize;
@@ -153,7 +168,7 @@ public class GridPlanCurvatureOperator implements GridOperator{
         final float H = (e2 - e7) * inverseDoubleMeshSize;
         final float divider = G * G + H * H;
         if (divider != 0) {
-            dstGrid[row][col] = 2 * ((D * H * H + E * G * G - F * G * H) / divider);
+            dstGrid[row * cols + col] = 2 * ((D * H * H + E * G * G - F * G * H) / divider);
         }
     }
     
@@ -147,35 +147,40 @@ public class GridProfileCurvatureOperator implements GridOperator {
             }
         }
         // interior of grid
-        float[][] srcGrid = geoGrid.getGrid();
-        float[][] dstGrid = newGrid.getGrid();
-        for (int row = halfFilterSize; row < rows - halfFilterSize; row++) {
-            for (int col = halfFilterSize; col < cols - halfFilterSize; col++) {
+        float[] srcGrid = geoGrid.getData();
+        float[] dstGrid = newGrid.getData();
+        RowBandExecutor.execute(halfFilterSize, rows - halfFilterSize, cols, new RowBandExecutor.RowBand() {
+            @Override
+            public void operate(int firstRow, int endRow) {
+                for (int row = firstRow; row < endRow; row++) {
+                    for (int col = halfFilterSize; col < cols - halfFilterSize; col++) {
                 
-                final float z1 = srcGrid[row-halfFilterSize][col+halfFilterSize]; // top right
-                final float z2 = srcGrid[row][col+halfFilterSize]; // right
-                final float z3 = srcGrid[row+halfFilterSize][col+halfFilterSize]; // bottom right
-                final float z4 = srcGrid[row+halfFilterSize][col]; // bottom
-                final float z5 = srcGrid[row+halfFilterSize][col-halfFilterSize]; // bottom left
-                final float z6 = srcGrid[row][col-halfFilterSize]; // left
-                final float z7 = srcGrid[row-halfFilterSize][col-halfFilterSize]; // top left
-                final float z8 = srcGrid[row-halfFilterSize][col]; // top
-                final float z9 = srcGrid[row][col]; // center
+                        final float z1 = srcGrid[(row-halfFilterSize) * cols + col+halfFilterSize]; // top right
+                        final float z2 = srcGrid[row * cols + col+halfFilterSize]; // right
+                        final float z3 = srcGrid[(row+halfFilterSize) * cols + col+halfFilterSize]; // bottom right
+                        final float z4 = srcGrid[(row+halfFilterSize) * cols + col]; // bottom
+                        final float z5 = srcGrid[(row+halfFilterSize) * cols + col-halfFilterSize]; // bottom left
+                        final float z6 = srcGrid[row * cols + col-halfFilterSize]; // left
+                        final float z7 = srcGrid[(row-halfFilterSize) * cols + col-halfFilterSize]; // top left
+                        final float z8 = srcGrid[(row-halfFilterSize) * cols + col]; // top
+                        final float z9 = srcGrid[row * cols + col]; // center
                 
-                final float zx = (z2 - z6) * inverseDoubleMeshSize;
-                final float zy = (z8 - z4) * inverseDoubleMeshSize;
-                final float zxx = (z2  - 2 * z9 + z6) * inverseSquareMeshSize;
-                final float zyy = (z8 - 2 * z9 + z4) * inverseSquareMeshSize;
-                final float zxy = (-z7 + z1 + z5 - z3) * 0.25f * inverseSquareMeshSize;
-                final float p = zx * zx + zy *zy;
-                final float q = p + 1;
+                        final float zx = (z2 - z6) * inverseDoubleMeshSize;
+                        final float zy = (z8 - z4) * inverseDoubleMeshSize;
+                        final float zxx = (z2  - 2 * z9 + z6) * inverseSquareMeshSize;
+                        final float zyy = (z8 - 2 * z9 + z4) * inverseSquareMeshSize;
+                        final float zxy = (-z7 + z1 + z5 - z3) * 0.25f * inverseSquareMeshSize;
+                        final float p = zx * zx + zy *zy;
+                        final float q = p + 1;
                 
-                final float divider = (float)(p * q * Math.sqrt(q));
-                if (divider != 0)
-                    dstGrid[row][col] = (zxx * zx * zx + 2 * zxy * zx * zy + zyy * zy * zy) / divider * 100;
+                        final float divider = (float)(p * q * Math.sqrt(q));
+                        if (divider != 0)
+                            dstGrid[row * cols + col] = (zxx * zx * zx + 2 * zxy * zx * zy + zyy * zy * zy) / divider * 100;
                 
+                    }
+                }
             }
-        }
+        });
         
         return newGrid;
     }
@@ -187,8 +192,8 @@ public class GridProfileCurvatureOperator implements GridOperator {
         final float inverseDoubleMeshSize = (float) (1 / (2 * cellSize));
         final float inverseSquareMeshSize = (float) (1 / (cellSize * cellSize));
 
-        float[][] srcGrid = src.getGrid();
-        float[][] dstGrid = dst.getGrid();
+        float[] srcGrid = src.getData();
+        float[] dstGrid = dst.getData();
         
         final int cols = src.getCols();
         final int rows = src.getRows();
@@ -198,15 +203,15 @@ public class GridProfileCurvatureOperator implements GridOperator {
         final int cm = col - halfFilterSize < 0 ? 0 : col - halfFilterSize;
         final int cp = col + halfFilterSize >= cols ? cols - halfFilterSize : col + halfFilterSize;
         
-        final float z1 = srcGrid[rm][cp]; // top right
-        final float z2 = srcGrid[row][cp]; // right
-        final float z3 = srcGrid[rp][cp]; // bottom right
-        final float z4 = srcGrid[rp][col]; // bottom
-        final float z5 = srcGrid[rp][cm]; // bottom left
-        final float z6 = srcGrid[row][cm]; // left
-        final float z7 = srcGrid[rm][cm]; // top left
-        final float z8 = srcGrid[rm][col]; // top
-        final float z9 = srcGrid[row][col]; // center
+        final float z1 = srcGrid[rm * cols + cp]; // top right
+        final float z2 = srcGrid[row * cols + cp]; // right
+        final float z3 = srcGrid[rp * cols + cp]; // bottom right
+        final float z4 = srcGrid[rp * cols + col]; // bottom
+        final float z5 = srcGrid[rp * cols + cm]; // bottom left
+        final float z6 = srcGrid[row * cols + cm]; // left
+        final float z7 = srcGrid[rm * cols + cm]; // top left
+        final float z8 = srcGrid[rm * cols + col]; // top
+        final float z9 = srcGrid[row * cols + col]; // center
 
         final float zx = (z2 - z6) * inverseDoubleMeshSize;
         final float zy = (z8 - z4) * inverseDoubleMeshSize;
@@ -218,7 +223,7 @@ public class GridProfileCurvatureOperator implements GridOperator {
 
         final float divider = (float) (p * q * Math.sqrt(q));
         if (divider != 0) {
-            dstGrid[row][col] = (zxx * zx * zx + 2 * zxy * zx * zy + zyy * zy * zy) / divider * 100;
+            dstGrid[row * cols + col] = (zxx * zx * zx + 2 * zxy * zx * zy + zyy * zy * zy) / divider * 100;
         }
     }
 
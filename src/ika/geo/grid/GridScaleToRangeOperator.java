@@ -52,18 +52,22 @@ public class GridScaleToRangeOperator implements GridOperator{
         final float newRange = newMax - newMin;
         
         
-        float[][] srcGrid = geoGrid.getGrid();
-        float[][] dstGrid = newGrid.getGrid();
+        float[] srcGrid = geoGrid.getData();
+        float[] dstGrid = newGrid.getData();
         
         if (oldRange == 0)
             return newGrid;
-        for (int row = 0; row < nrows; ++row) {
-            float[] srcRow = srcGrid[row];
-            float[] dstRow = dstGrid[row];
-            for (int col = 0; col < ncols; ++col) {
-                dstRow[col] = (srcRow[col] - min) / oldRange * newRange + newMin;
+        RowBandExecutor.execute(0, nrows, ncols, new RowBandExecutor.RowBand() {
+            @Override
+            public void operate(int firstRow, int endRow) {
+                for (int row = firstRow; row < endRow; row++) {
+                    final int rowStart = row * ncols;
+                    for (int col = 0; col < ncols; ++col) {
+                        dstGrid[rowStart + col] = (srcGrid[rowStart + col] - min) / oldRange * newRange + newMin;
+                    }
+                }
             }
-        }
+        });
         return newGrid;
     }
 
@@ -48,8 +48,8 @@ public class GridShadeOperator implements GridOperator {
         if (newCols <= 2 || newRows <= 2)
             return newGrid;
         
-        float[][] srcGrid = geoGrid.getGrid();
-        float[][] dstGrid = newGrid.getGrid();
+        float[] srcGrid = geoGrid.getData();
+        float[] dstGrid = newGrid.getData();
         final int srcRows = geoGrid.getRows();
         final int srcCols = geoGrid.getCols();
 
@@ -61,29 +61,34 @@ public class GridShadeOperator implements GridOperator {
         final double luxY = (float) (Math.sin(alpha) * sinz);
         final double luxZ = (float) Math.cos(zenith);
 
-        for (int row = 0; row < srcRows - 1; row++) {
-            float[] dstRow = dstGrid[row];
-            for (int col = 0; col < srcCols - 1; col++) {
+        RowBandExecutor.execute(0, srcRows - 1, srcCols, new RowBandExecutor.RowBand() {
+            @Override
+            public void operate(int firstRow, int endRow) {
+                for (int row = firstRow; row < endRow; row++) {
+                    final int dstRowStart = row * newCols;
+                    for (int col = 0; col < srcCols - 1; col++) {
                 
-                // two diagonal vectors
-                final float d1 = srcGrid[row + 1][col + 1] - srcGrid[row][col];
-                final float d2 = srcGrid[row][col + 1] - srcGrid[row + 1][col];
-                double nx = d2 - d1;
-                double ny = -d1 - d2;
-                double nz = 2. * meshSize;
+                        // two diagonal vectors
+                        final float d1 = srcGrid[(row + 1) * srcCols + col + 1] - srcGrid[row * srcCols + col];
+                        final float d2 = srcGrid[row * srcCols + col + 1] - srcGrid[(row + 1) * srcCols + col];
+                        double nx = d2 - d1;
+                        double ny = -d1 - d2;
+                        double nz = 2. * meshSize;
                 
-                // normalize vector
-                final double lengthInv = Math.sqrt(nx*nx + ny*ny + nz*nz);
-                nx /= lengthInv;
-                ny /= lengthInv;
-                nz /= lengthInv;
+                        // normalize vector
+                        final double lengthInv = Math.sqrt(nx*nx + ny*ny + nz*nz);
+                        nx /= lengthInv;
+                        ny /= lengthInv;
+                        nz /= lengthInv;
                 
-                // scalar product of light and normal vector
-                final double cosa = luxX * nx + luxY * ny + luxZ * nz;
-                if (cosa > 0.)
-                    dstRow[col] = (float)(cosa) * 255.f;
+                        // scalar product of light and normal vector
+                        final double cosa = luxX * nx + luxY * ny + luxZ * nz;
+                        if (cosa > 0.)
+                            dstGrid[dstRowStart + col] = (float)(cosa) * 255.f;
+                    }
+                }
             }
-        }
+        });
         return newGrid;
     }
     
@@ -100,7 +105,7 @@ public class GridShadeOperator implements GridOperator {
         if (imgCols <= 2 || imgRows <= 2)
             return null;
         
-        float[][] srcGrid = geoGrid.getGrid();
+        float[] srcGrid = geoGrid.getData();
         final int srcRows = geoGrid.getRows();
         final int srcCols = geoGrid.getCols();
 
@@ -118,8 +123,8 @@ public class GridShadeOperator implements GridOperator {
             for (int col = 0; col < srcCols - 1; col++) {
                 
                 // two diagonal vectors
-                final float d1 = srcGrid[row + 1][col + 1] - srcGrid[row][col];
-                final float d2 = srcGrid[row][col + 1] - srcGrid[row + 1][col];
+                final float d1 = srcGrid[(row + 1) * srcCols + col + 1] - srcGrid[row * srcCols + col];
+                final float d2 = srcGrid[row * srcCols + col + 1] - srcGrid[(row + 1) * srcCols + col];
                 double nx = d2 - d1;
                 double ny = -d1 - d2;
                 double nz = 2. * meshSize;
@@ -162,7 +167,7 @@ public class GridShadeOperator implements GridOperator {
         if (imgCols <= 2 || imgRows <= 2)
             return null;
         
-        float[][] srcGrid = geoGrid.getGrid();
+        float[] srcGrid = geoGrid.getData();
         final int srcRows = geoGrid.getRows();
         final int srcCols = geoGrid.getCols();
 
@@ -174,77 +179,82 @@ public class GridShadeOperator implements GridOperator {
         final double luxY = Math.sin(alpha) * sinz;
         final double luxZ = Math.cos(zenith);
 
-        short[] gray = new short[imgCols * imgRows];
-        int grayID = 0;
-        for (int row = 1; row < srcRows - 2; row++) {
-            for (int col = 1; col < srcCols - 2; col++) {
+        final short[] gray = new short[imgCols * imgRows];
+        RowBandExecutor.execute(1, srcRows - 2, srcCols, new RowBandExecutor.RowBand() {
+            @Override
+            public void operate(int firstRow, int endRow) {
+                for (int row = firstRow; row < endRow; row++) {
+                    int grayID = (row - 1) * imgCols;
+                    for (int col = 1; col < srcCols - 2; col++) {
                 
-                final float v01 = srcGrid[row - 1][col];
-                final float v02 = srcGrid[row - 1][col + 1];
-                final float v10 = srcGrid[row][col - 1];
-                final float v11 = srcGrid[row][col];
-                final float v12 = srcGrid[row][col + 1];
-                final float v13 = srcGrid[row][col + 2];
-                final float v20 = srcGrid[row + 1][col - 1];
-                final float v21 = srcGrid[row + 1][col];
-                final float v22 = srcGrid[row + 1][col + 1];
-                final float v23 = srcGrid[row + 1][col + 2];
-                final float v31 = srcGrid[row + 2][col];
-                final float v32 = srcGrid[row + 2][col + 1];
+                        final float v01 = srcGrid[(row - 1) * srcCols + col];
+                        final float v02 = srcGrid[(row - 1) * srcCols + col + 1];
+                        final float v10 = srcGrid[row * srcCols + col - 1];
+                        final float v11 = srcGrid[row * srcCols + col];
+                        final float v12 = srcGrid[row * srcCols + col + 1];
+                        final float v13 = srcGrid[row * srcCols + col + 2];
+                        final float v20 = srcGrid[(row + 1) * srcCols + col - 1];
+                        final float v21 = srcGrid[(row + 1) * srcCols + col];
+                        final float v22 = srcGrid[(row + 1) * srcCols + col + 1];
+                        final float v23 = srcGrid[(row + 1) * srcCols + col + 2];
+                        final float v31 = srcGrid[(row + 2) * srcCols + col];
+                        final float v32 = srcGrid[(row + 2) * srcCols + col + 1];
                 
-                // top left vector
-                double xtl = v10 - v12;
-                double ytl = v21 - v01;
-                double ztl = d2;
-                double l = Math.sqrt(xtl*xtl + ytl*ytl + ztl*ztl);
-                xtl /= l;
-                ytl /= l;
-                ztl /= l;
+                        // top left vector
+                        double xtl = v10 - v12;
+                        double ytl = v21 - v01;
+                        double ztl = d2;
+                        double l = Math.sqrt(xtl*xtl + ytl*ytl + ztl*ztl);
+                        xtl /= l;
+                        ytl /= l;
+                        ztl /= l;
                 
-                // top right vector
-                double xtr = v11 - v13;
-                double ytr = v22 - v02;
-                double ztr = d2;
-                l = Math.sqrt(xtr*xtr + ytr*ytr + ztr*ztr);
-                xtr /= l;
-                ytr /= l;
-                ztr /= l;
+                        // top right vector
+                        double xtr = v11 - v13;
+                        double ytr = v22 - v02;
+                        double ztr = d2;
+                        l = Math.sqrt(xtr*xtr + ytr*ytr + ztr*ztr);
+                        xtr /= l;
+                        ytr /= l;
+                        ztr /= l;
                 
-                // bottom left vector
-                double xbl = v20 - v22;
-                double ybl = v31 - v11;
-                double zbl = d2;
-                l = Math.sqrt(xbl*xbl + ybl*ybl + zbl*zbl);
-                xbl /= l;
-                ybl /= l;
-                zbl /= l;
+                        // bottom left vector
+                        double xbl = v20 - v22;
+                        double ybl = v31 - v11;
+                        double zbl = d2;
+                        l = Math.sqrt(xbl*xbl + ybl*ybl + zbl*zbl);
+                        xbl /= l;
+                        ybl /= l;
+                        zbl /= l;
                 
-                // bottom right vector
-                double xbr = v21 - v23;
-                double ybr = v32 - v12;
-                double zbr = d2;
-                l = Math.sqrt(xbr*xbr + ybr*ybr + zbr*zbr);
-                xbr /= l;
-                ybr /= l;
-                zbr /= l;
+                        // bottom right vector
+                        double xbr = v21 - v23;
+                        double ybr = v32 - v12;
+                        double zbr = d2;
+                        l = Math.sqrt(xbr*xbr + ybr*ybr + zbr*zbr);
+                        xbr /= l;
+                        ybr /= l;
+                        zbr /= l;
                 
-                // sum of four vectors
-                final double nx = (xtl + xtr + xbl + xbr) * 0.25;
-                final double ny = (ytl + ytr + ybl + ybr) * 0.25;
-                final double nz = (ztl + ztr + zbl + zbr) * 0.25;
+                        // sum of four vectors
+                        final double nx = (xtl + xtr + xbl + xbr) * 0.25;
+                        final double ny = (ytl + ytr + ybl + ybr) * 0.25;
+                        final double nz = (ztl + ztr + zbl + zbr) * 0.25;
                 
-                // scalar product of light and normal vector
-                final double cosa = luxX * nx + luxY * ny + luxZ * nz;
-                final double b = cosa > 0. ? cosa * LIGHT_DIFFUSE + LIGHT_AMBIENT : LIGHT_AMBIENT;
-                /*if (b < 0.)
-                    gray[grayID] = 0;
-                else if (b > 1.)
-                    gray[grayID] = 255;
-                else*/
-                    gray[grayID] = (short)(b * 255);
-                ++grayID;                    
+                        // scalar product of light and normal vector
+                        final double cosa = luxX * nx + luxY * ny + luxZ * nz;
+                        final double b = cosa > 0. ? cosa * LIGHT_DIFFUSE + LIGHT_AMBIENT : LIGHT_AMBIENT;
+                        /*if (b < 0.)
+                            gray[grayID] = 0;
+                        else if (b > 1.)
+                            gray[grayID] = 255;
+                        else*/
+                            gray[grayID] = (short)(b * 255);
+                        ++grayID;                    
+                    }
+                }
             }
-        }
+        });
         
         BufferedImage image = ImageUtils.createGrayscaleImage(imgCols, imgRows, 8, gray);
         GeoImage newImage = new GeoImage(image, imgCols, imgRows, d);
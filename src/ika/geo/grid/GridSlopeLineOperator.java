@@ -37,9 +37,6 @@ public class GridSlopeLineOperator implements GridOperator {
         newGrid.setWest(geoGrid.getWest());
         newGrid.setNorth(geoGrid.getNorth());
         
-        float[][] srcGrid = geoGrid.getGrid();
-        float[][] dstGrid = newGrid.getGrid();
-        
         for (int row = 1; row < nrows - 1; ++row) {
             /*
              if (row % 5 == 0)
@@ -34,25 +34,31 @@ public class GridSlopeOperator implements GridOperator {
         newGrid.setWest(geoGrid.getWest() + meshSize);
         newGrid.setNorth(geoGrid.getNorth() + meshSize);
         
-        float[][] srcGrid = geoGrid.getGrid();
-        float[][] dstGrid = newGrid.getGrid();
+        float[] srcGrid = geoGrid.getData();
+        float[] dstGrid = newGrid.getData();
         final int srcRows = geoGrid.getRows();
         final int srcCols = geoGrid.getCols();
         final double inverseDoubleMeshSize = 1. / (2. * meshSize);
         
-        for (int row = 1; row < srcRows - 1; row++) {
-            for (int col = 1; col < srcCols - 1; col++) {
-                final float w = srcGrid[row][col-1];
-                final float e = srcGrid[row][col+1];
-                final float s = srcGrid[row+1][col];
-                final float n = srcGrid[row-1][col];
-                final double dH = (e - w);
-                final double dV = (n - s);
-                final float slope = (float)(Math.atan(
-                        Math.sqrt(dH*dH+dV*dV)*inverseDoubleMeshSize));
-                dstGrid[row-1][col-1] = slope;
+        RowBandExecutor.execute(1, srcRows - 1, srcCols, new RowBandExecutor.RowBand() {
+            @Override
+            public void operate(int firstRow, int endRow) {
+                for (int row = firstRow; row < endRow; row++) {
+                    int dst = (row - 1) * newCols;
+                    for (int col = 1, i = row * srcCols + 1; col < srcCols - 1; col++, i++) {
+                        final float w = srcGrid[i - 1];
+                        final float e = srcGrid[i + 1];
+                        final float s = srcGrid[i + srcCols];
+                        final float n = srcGrid[i - srcCols];
+                        final double dH = (e - w);
+                        final double dV = (n - s);
+                        final float slope = (float)(Math.atan(
+                                Math.sqrt(dH*dH+dV*dV)*inverseDoubleMeshSize));
+                        dstGrid[dst++] = slope;
+                    }
+                }
             }
-        }
+        });
    
         return newGrid;
     }
@@ -34,32 +34,37 @@ public class GridSobelOperator implements GridOperator{
         newGrid.setWest(geoGrid.getWest() + meshSize);
         newGrid.setNorth(geoGrid.getNorth() + meshSize);
         
-        float[][] srcGrid = geoGrid.getGrid();
-        float[][] dstGrid = newGrid.getGrid();
+        float[] srcGrid = geoGrid.getData();
+        float[] dstGrid = newGrid.getData();
         final int srcRows = geoGrid.getRows();
         final int srcCols = geoGrid.getCols();
         
-        for (int row = 1; row < srcRows - 1; row++) {
-            for (int col = 1; col < srcCols - 1; col++) {
-                /*
-                 * |A B C|
-                 * |D 0 E|
-                 * |F G H|
-                 */
-                final float a = srcGrid[row-1][col-1];
-                final float b = srcGrid[row-1][col];
-                final float c = srcGrid[row-1][col+1];
-                final float d = srcGrid[row][col-1];
-                final float e = srcGrid[row][col+1];
-                final float f = srcGrid[row+1][col-1];
-                final float g = srcGrid[row+1][col];
-                final float h = srcGrid[row+1][col+1];
+        RowBandExecutor.execute(1, srcRows - 1, srcCols, new RowBandExecutor.RowBand() {
+            @Override
+            public void operate(int firstRow, int endRow) {
+                for (int row = firstRow; row < endRow; row++) {
+                    for (int col = 1; col < srcCols - 1; col++) {
+                        /*
+                         * |A B C|
+                         * |D 0 E|
+                         * |F G H|
+                         */
+                        final float a = srcGrid[(row-1) * srcCols + col-1];
+                        final float b = srcGrid[(row-1) * srcCols + col];
+                        final float c = srcGrid[(row-1) * srcCols + col+1];
+                        final float d = srcGrid[row * srcCols + col-1];
+                        final float e = srcGrid[row * srcCols + col+1];
+                        final float f = srcGrid[(row+1) * srcCols + col-1];
+                        final float g = srcGrid[(row+1) * srcCols + col];
+                        final float h = srcGrid[(row+1) * srcCols + col+1];
                 
-                final float val = (Math.abs(-a-2*b-c+f+2*g+h) +
-                        Math.abs(-c-2*e-h+a+2*d+f)) / 8;
-                dstGrid[row-1][col-1] = val;
+                        final float val = (Math.abs(-a-2*b-c+f+2*g+h) +
+                                Math.abs(-c-2*e-h+a+2*d+f)) / 8;
+                        dstGrid[(row-1) * newCols + col-1] = val;
+                    }
+                }
             }
-        }
+        });
         
         return newGrid;
     }
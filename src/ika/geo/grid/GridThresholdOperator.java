@@ -37,26 +37,34 @@ public class GridThresholdOperator implements GridOperator{
         newGrid.setWest(geoGrid.getWest());
         newGrid.setNorth(geoGrid.getNorth());
         
-        float[][] srcGrid = geoGrid.getGrid();
-        float[][] dstGrid = newGrid.getGrid();
+        float[] srcGrid = geoGrid.getData();
+        float[] dstGrid = newGrid.getData();
         
         if (smallerThan) {
-            for (int row = 0; row < nrows; row++) {                
-                float[] srcRow = srcGrid[row];
-                float[] dstRow = dstGrid[row];
-                for (int col = 0; col < ncols; ++col) {
-                    dstRow[col] = srcRow[col] < this.thresholdValue ? this.replaceValue : srcRow[col];
+            RowBandExecutor.execute(0, nrows, ncols, new RowBandExecutor.RowBand() {
+                @Override
+                public void operate(int firstRow, int endRow) {
+                    for (int row = firstRow; row < endRow; row++) {
+                        final int rowStart = row * ncols;
+                        for (int col = 0; col < ncols; ++col) {
+                            dstGrid[rowStart + col] = srcGrid[rowStart + col] < thresholdValue ? replaceValue : srcGrid[rowStart + col];
+                        }
+                    }
                 }
-            }
+            });
         } else {
             
-            for (int row = 0; row < nrows; row++) {
-                float[] srcRow = srcGrid[row];
-                float[] dstRow = dstGrid[row];
-                for (int col = 0; col < ncols; ++col) {
-                    dstRow[col] = srcRow[col] > this.thresholdValue ? this.replaceValue : srcRow[col];
+            RowBandExecutor.execute(0, nrows, ncols, new RowBandExecutor.RowBand() {
+                @Override
+                public void operate(int firstRow, int endRow) {
+                    for (int row = firstRow; row < endRow; row++) {
+                        final int rowStart = row * ncols;
+                        for (int col = 0; col < ncols; ++col) {
+                            dstGrid[rowStart + col] = srcGrid[rowStart + col] > thresholdValue ? replaceValue : srcGrid[rowStart + col];
+                        }
+                    }
                 }
-            }
+            });
         }
         
         return newGrid;
@@ -41,15 +41,15 @@ public class GridToImageOperator implements GridOperator{
         final float min = minMax[0];
         final float oldRange = minMax[1] - minMax[0];
         
-        float[][] srcGrid = geoGrid.getGrid();
+        float[] srcGrid = geoGrid.getData();
         byte[] pixels = new byte [nrows * ncols];
         
         int px = 0;
         if (oldRange != 0) {
             for (int row = 0; row < nrows; ++row) {
-                float[] srcRow = srcGrid[row];
+                final int srcRowStart = row * ncols;
                 for (int col = 0; col < ncols; ++col) {
-                    pixels[px++] = (byte)((srcRow[col] - min) / oldRange * 255.f);
+                    pixels[px++] = (byte)((srcGrid[srcRowStart + col] - min) / oldRange * 255.f);
                 }
             }
         } else {
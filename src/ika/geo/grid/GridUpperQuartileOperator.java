@@ -27,4 +27,9 @@ public class GridUpperQuartileOperator extends GridPercentileFilterOperator {
     protected final float percentile(float[] values) {
         return ika.utils.Median.upperQuartile(values);
     }
+
+    @Override
+    protected final int percentileRank(int valuesCount) {
+        return valuesCount * 3 / 4;
+    }
 }
@@ -0,0 +1,131 @@
+package ika.geo.grid;
+
+import ika.geo.GeoGrid;
+import ika.geo.GeoImage;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * The distance to the nearest pixel of a mask image that is not white, as
+ * computed by ImageDistanceTransformOperator, but stored in square tiles that
+ * are computed when first needed. Only tiles where distances are queried
+ * occupy memory, so the distances of large and memory-mapped images can be
+ * queried without a grid the size of the image.
+ *
+ * A tile is computed from a section of the image that extends the tile by a
+ * halo of HALO pixels on each side. Distances smaller than getMaxDistance()
+ * are exact; larger distances are returned as getMaxDistance(), which is a
+ * lower bound for the exact distance.
+ *
+ * The image must not be changed after an instance has been created. Instances
+ * can be queried concurrently by multiple threads.
+ *
+ * @author Bernhard Jenny, School of Mathematical and Geospatial Sciences, RMIT
+ * University, Melbourne
+ */
+public final class ImageDistanceTiles {
+
+    /**
+     * Width and height of a tile in pixels.
+     */
+    private static final int TILE_SIZE = 256;
+
+    /**
+     * Width of the section of the image around a tile that is included in the
+     * distance transform of the tile.
+     */
+    private static final int HALO = 64;
+
+    private final GeoImage image;
+
+    private final int tilesAcross;
+
+    /**
+     * The distances of each tile, row by row, or null for tiles that have
+     * not been computed yet.
+     */
+    private final AtomicReferenceArray<float[]> tiles;
+
+    private final float maxDistance;
+
+    /**
+     * Creates the distance tiles for an image. No distances are computed.
+     *
+     * @param image the mask image
+     */
+    public ImageDistanceTiles(GeoImage image) {
+        if (image == null) {
+            throw new IllegalArgumentException();
+        }
+        this.image = image;
+        this.tilesAcross = (image.getCols() + TILE_SIZE - 1) / TILE_SIZE;
+        final int tilesDown = (image.getRows() + TILE_SIZE - 1) / TILE_SIZE;
+        this.tiles = new AtomicReferenceArray<>(tilesAcross * tilesDown);
+        this.maxDistance = (float) (HALO * image.getCellSize());
+    }
+
+    /**
+     * Returns the image for which the distances are computed.
+     *
+     * @return the image
+     */
+    public GeoImage getImage() {
+        return image;
+    }
+
+    /**
+     * Returns the largest distance that is returned by getDistance. Smaller
+     * distances are exact.
+     *
+     * @return the maximum distance in world coordinates
+     */
+    public float getMaxDistance() {
+        return maxDistance;
+    }
+
+    /**
+     * Returns the distance between a pixel and the nearest pixel that is not
+     * white.
+     *
+     * @param col the column of the pixel
+     * @param row the row of the pixel
+     * @return the distance in world coordinates, at most getMaxDistance().
+     */
+    public float getDistance(int col, int row) {
+        final int tileID = (row / TILE_SIZE) * tilesAcross + col / TILE_SIZE;
+        float[] tile = tiles.get(tileID);
+        if (tile == null) {
+            // two threads may compute the same tile, but only one is stored
+            tiles.compareAndSet(tileID, null, computeTile(tileID));
+            tile = tiles.get(tileID);
+        }
+        return tile[(row % TILE_SIZE) * TILE_SIZE + col % TILE_SIZE];
+    }
+
+    /**
+     * Computes the distances of a tile from a section of the image that
+     * includes the halo around the tile.
+     */
+    private float[] computeTile(int tileID) {
+        final int tileCol = (tileID % tilesAcross) * TILE_SIZE;
+        final int tileRow = (tileID / tilesAcross) * TILE_SIZE;
+        final int firstCol = Math.max(0, tileCol - HALO);
+        final int firstRow = Math.max(0, tileRow - HALO);
+        final int endCol = (int) Math.min(image.getCols(), (long) tileCol + TILE_SIZE + HALO);
+        final int endRow = (int) Math.min(image.getRows(), (long) tileRow + TILE_SIZE + HALO);
+        GeoGrid section = new ImageDistanceTransformOperator().operate(image,
+                firstCol, firstRow, endCol - firstCol, endRow - firstRow);
+        final float[] d = section.getData();
+        final int sectionCols = section.getCols();
+
+        float[] tile = new float[TILE_SIZE * TILE_SIZE];
+        final int cols = Math.min(TILE_SIZE, image.getCols() - tileCol);
+        final int rows = Math.min(TILE_SIZE, image.getRows() - tileRow);
+        for (int r = 0; r < rows; r++) {
+            final int rowStart = (tileRow + r - firstRow) * sectionCols + tileCol - firstCol;
+            for (int c = 0; c < cols; c++) {
+                tile[r * TILE_SIZE + c] = Math.min(d[rowStart + c], maxDistance);
+            }
+        }
+        return tile;
+    }
+}
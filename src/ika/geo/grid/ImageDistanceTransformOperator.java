@@ -0,0 +1,173 @@
+package ika.geo.grid;
+
+import ika.geo.GeoGrid;
+import ika.geo.GeoImage;
+import ika.geo.MappedGrayImage;
+import java.awt.image.Raster;
+
+/**
+ * Computes the Euclidean distance transform of a mask image. Each cell of the
+ * resulting grid contains the distance in world coordinates to the nearest
+ * pixel of the image that is not white, that is, the first band of the pixel
+ * is smaller than 255. Distances are measured between pixel positions. Cells
+ * are infinite if the image contains no pixel that is not white.
+ *
+ * The grid has the same size, cell size and position as the image or as the
+ * section of the image that is transformed. Pixels outside of the section are
+ * ignored. The pixels of memory-mapped images are read from the mapped file
+ * without creating a BufferedImage. Uses the linear-time algorithm by Felzenszwalb and Huttenlocher (2012) Distance
+ * transforms of sampled functions. Theory of Computing 8, 415–428.
+ *
+ * @author Bernhard Jenny, School of Mathematical and Geospatial Sciences, RMIT
+ * University, Melbourne
+ */
+public class ImageDistanceTransformOperator {
+
+    public ImageDistanceTransformOperator() {
+    }
+
+    /**
+     * Returns a descriptive name of this operator
+     *
+     * @return The name of this operator.
+     */
+    public String getName() {
+        return "Image Distance Transform";
+    }
+
+    public GeoGrid operate(GeoImage geoImage) {
+        return operate(geoImage, 0, 0, geoImage.getCols(), geoImage.getRows());
+    }
+
+    /**
+     * Computes the distance transform of a section of an image.
+     *
+     * @param geoImage the image
+     * @param firstCol the first column of the section
+     * @param firstRow the first row of the section
+     * @param cols the number of columns of the section
+     * @param rows the number of rows of the section
+     * @return a grid with the size and position of the section
+     */
+    public GeoGrid operate(GeoImage geoImage, int firstCol, int firstRow,
+            int cols, int rows) {
+        if (firstCol < 0 || firstRow < 0 || cols <= 0 || rows <= 0
+                || (long) firstCol + cols > geoImage.getCols()
+                || (long) firstRow + rows > geoImage.getRows()) {
+            throw new IllegalArgumentException("invalid image section");
+        }
+        final double cellSize = geoImage.getCellSize();
+        GeoGrid grid = new GeoGrid(cols, rows, cellSize);
+        grid.setWest(geoImage.getWest() + firstCol * cellSize);
+        grid.setNorth(geoImage.getNorth() - firstRow * cellSize);
+        float[] dist = grid.getData();
+        final MappedGrayImage mappedImage = geoImage.getMappedImage();
+        final Raster raster = mappedImage == null
+                ? geoImage.getBufferedImage().getRaster() : null;
+
+        // squared distances in pixels are accumulated in the grid. Infinity
+        // marks cells without obstacle.
+        final int n = Math.max(cols, rows);
+        final double[] f = new double[n];
+        final double[] d = new double[n];
+        final int[] v = new int[n];
+        final double[] z = new double[n + 1];
+        final int[] samples = new int[cols];
+        final byte[] gray = new byte[cols];
+
+        // first pass: vertical distances along each column
+        for (int row = 0; row < rows; row++) {
+            if (mappedImage != null) {
+                mappedImage.getGrayRow(firstRow + row, firstCol, cols, gray);
+                for (int col = 0; col < cols; col++) {
+                    samples[col] = gray[col] & 0xff;
+                }
+            } else {
+                raster.getSamples(firstCol, firstRow + row, cols, 1, 0, samples);
+            }
+            for (int col = 0, i = row * cols; col < cols; col++, i++) {
+                dist[i] = samples[col] < 255 ? 0 : Float.POSITIVE_INFINITY;
+            }
+        }
+        for (int col = 0; col < cols; col++) {
+            for (int row = 0; row < rows; row++) {
+                f[row] = dist[row * cols + col];
+            }
+            transform1D(f, rows, d, v, z);
+            for (int row = 0; row < rows; row++) {
+                dist[row * cols + col] = (float) d[row];
+            }
+        }
+
+        // second pass: combine with horizontal distances along each row and
+        // convert squared distances in pixels to distances in world units
+        for (int row = 0; row < rows; row++) {
+            final int rowOffset = row * cols;
+            for (int col = 0; col < cols; col++) {
+                f[col] = dist[rowOffset + col];
+            }
+            transform1D(f, cols, d, v, z);
+            for (int col = 0; col < cols; col++) {
+                dist[rowOffset + col] = (float) (Math.sqrt(d[col]) * cellSize);
+            }
+        }
+        return grid;
+    }
+
+    /**
+     * One-dimensional squared Euclidean distance transform of a sampled
+     * function, computed with the lower envelope of parabolas.
+     *
+     * @param f the function, infinite where there is no feature
+     * @param n number of samples in f
+     * @param d receives the squared distances
+     * @param v buffer for the positions of the parabolas
+     * @param z buffer for the boundaries between parabolas
+     */
+    private static void transform1D(double[] f, int n, double[] d, int[] v, double[] z) {
+        // find the first finite sample
+        int first = 0;
+        while (first < n && f[first] == Double.POSITIVE_INFINITY) {
+            ++first;
+        }
+        if (first == n) {
+            for (int q = 0; q < n; q++) {
+                d[q] = Double.POSITIVE_INFINITY;
+            }
+            return;
+        }
+
+        int k = 0;
+        v[0] = first;
+        z[0] = Double.NEGATIVE_INFINITY;
+        z[1] = Double.POSITIVE_INFINITY;
+        for (int q = first + 1; q < n; q++) {
+            if (f[q] == Double.POSITIVE_INFINITY) {
+                continue;
+            }
+            double s;
+            while (true) {
+                final int p = v[k];
+                s = ((f[q] + (double) q * q) - (f[p] + (double) p * p)) / (2. * (q - p));
+                if (s <= z[k] && k > 0) {
+                    --k;
+                } else {
+                    break;
+                }
+            }
+            ++k;
+            v[k] = q;
+            z[k] = s;
+            z[k + 1] = Double.POSITIVE_INFINITY;
+        }
+
+        k = 0;
+        for (int q = 0; q < n; q++) {
+            while (z[k + 1] < q) {
+                ++k;
+            }
+            final int dq = q - v[k];
+            d[q] = (double) dq * dq + f[v[k]];
+        }
+    }
+}
@@ -0,0 +1,256 @@
+package ika.geo.grid;
+
+import ika.geo.GeoGridShort;
+import ika.geo.GeoImage;
+import ika.geo.MappedGrayImage;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.Raster;
+import java.util.Arrays;
+
+/**
+ * Resamples the gray values of a GeoImage to a GeoGridShort with a different
+ * cell size, without creating an intermediate resampled image. The values of
+ * the grid range from 0 to 255.
+ *
+ * The BOX kernel averages the image pixels covered by a grid cell, weighted by
+ * the covered area. The BICUBIC kernel is a Catmull-Rom cubic convolution,
+ * which is widened by the ratio of the cell sizes when reducing the
+ * resolution to avoid aliasing. The kernels are applied in two separable
+ * passes: image rows are first combined vertically into a row buffer, which is
+ * then filtered horizontally. Image pixels outside the image are replaced by
+ * the nearest border pixel. Bands of grid rows are computed concurrently.
+ *
+ * The grid has the same extent as the image, reduced to a whole number of
+ * cells. As for ImageToGridOperator, grid values are located at the centers of
+ * cells. A section of this grid can be resampled without resampling the
+ * entire image.
+ *
+ * @author Bernhard Jenny, School of Mathematical and Geospatial Sciences, RMIT
+ * University, Melbourne
+ */
+public class ImageResamplingOperator {
+
+    public enum Kernel {
+
+        BOX, BICUBIC
+    };
+
+    private Kernel kernel = Kernel.BICUBIC;
+
+    public ImageResamplingOperator() {
+    }
+
+    public ImageResamplingOperator(Kernel kernel) {
+        setKernel(kernel);
+    }
+
+    public String getName() {
+        return "Image Resampling";
+    }
+
+    /**
+     * Resamples the gray values of an image.
+     *
+     * @param geoImage the image to resample
+     * @param newCellSize the cell size of the new grid
+     * @return a new grid with gray values between 0 and 255
+     */
+    public GeoGridShort operateToShort(final GeoImage geoImage, double newCellSize) {
+        if (geoImage == null || !(newCellSize > 0)) {
+            throw new IllegalArgumentException();
+        }
+        final int newRows = (int) ((geoImage.getNorth() - geoImage.getSouth()) / newCellSize);
+        final int newCols = (int) ((geoImage.getEast() - geoImage.getWest()) / newCellSize);
+        return operateToShort(geoImage, newCellSize, 0, 0, newCols, newRows);
+    }
+
+    /**
+     * Resamples the gray values of an image inside a rectangle. The new grid
+     * is the section of the grid returned by operateToShort(geoImage,
+     * newCellSize) with all cells intersecting the rectangle. The cells have
+     * the same positions and values as in the grid of the entire image, but
+     * only the image pixels required for the section are read.
+     *
+     * @param geoImage the image to resample
+     * @param newCellSize the cell size of the new grid
+     * @param extent the rectangle to resample
+     * @return a new grid with gray values between 0 and 255. The grid has no
+     * cells if the rectangle does not intersect the image.
+     */
+    public GeoGridShort operateToShort(final GeoImage geoImage, double newCellSize,
+            Rectangle2D extent) {
+        if (geoImage == null || !(newCellSize > 0) || extent == null) {
+            throw new IllegalArgumentException();
+        }
+        final int newRows = (int) ((geoImage.getNorth() - geoImage.getSouth()) / newCellSize);
+        final int newCols = (int) ((geoImage.getEast() - geoImage.getWest()) / newCellSize);
+        final double west = geoImage.getWest();
+        final double north = geoImage.getNorth();
+        int firstCol = (int) Math.floor((extent.getMinX() - west) / newCellSize);
+        int endCol = (int) Math.ceil((extent.getMaxX() - west) / newCellSize);
+        int firstRow = (int) Math.floor((north - extent.getMaxY()) / newCellSize);
+        int endRow = (int) Math.ceil((north - extent.getMinY()) / newCellSize);
+        firstCol = Math.max(0, Math.min(newCols, firstCol));
+        endCol = Math.max(firstCol, Math.min(newCols, endCol));
+        firstRow = Math.max(0, Math.min(newRows, firstRow));
+        endRow = Math.max(firstRow, Math.min(newRows, endRow));
+        return operateToShort(geoImage, newCellSize, firstCol, firstRow,
+                endCol - firstCol, endRow - firstRow);
+    }
+
+    /**
+     * Resamples a section of the grid of an entire image.
+     *
+     * @param geoImage the image to resample
+     * @param newCellSize the cell size of the new grid
+     * @param firstCol the first column of the section in the grid of the
+     * entire image
+     * @param firstRow the first row of the section in the grid of the entire
+     * image
+     * @param newCols the number of columns of the section
+     * @param newRows the number of rows of the section
+     * @return a new grid with gray values between 0 and 255
+     */
+    private GeoGridShort operateToShort(final GeoImage geoImage, double newCellSize,
+            int firstCol, int firstRow, final int newCols, final int newRows) {
+        GeoGridShort grid = new GeoGridShort(newCols, newRows, newCellSize);
+        grid.setWest(geoImage.getWest() + (firstCol + 0.5) * newCellSize);
+        grid.setNorth(geoImage.getNorth() - (firstRow + 0.5) * newCellSize);
+        if (newCols == 0 || newRows == 0) {
+            return grid;
+        }
+
+        final double scale = newCellSize / geoImage.getCellSize();
+        final Weights rowWeights = new Weights(kernel, geoImage.getRows(),
+                firstRow, newRows, scale);
+        final Weights colWeights = new Weights(kernel, geoImage.getCols(),
+                firstCol, newCols, scale);
+
+        // image columns read for the section
+        final int srcFirstCol = colWeights.indices[0];
+        final int srcCols = colWeights.indices[colWeights.indices.length - 1]
+                - srcFirstCol + 1;
+
+        final short[] dst = grid.getData();
+        final MappedGrayImage mappedImage = geoImage.getMappedImage();
+        final BufferedImage image = mappedImage == null ? geoImage.getBufferedImage() : null;
+        final boolean isGray = image != null && image.getType() == BufferedImage.TYPE_BYTE_GRAY;
+        final Raster raster = image == null ? null : image.getRaster();
+
+        RowBandExecutor.execute(0, newRows, rowWeights.taps * srcCols, new RowBandExecutor.RowBand() {
+            @Override
+            public void operate(int firstRow, int endRow) {
+                final byte[] srcBytes = new byte[srcCols];
+                final float[] rowBuffer = new float[srcCols];
+                for (int row = firstRow; row < endRow; row++) {
+
+                    // vertical pass: weighted sum of image rows
+                    Arrays.fill(rowBuffer, 0f);
+                    for (int tap = 0; tap < rowWeights.taps; tap++) {
+                        final float w = rowWeights.weights[row * rowWeights.taps + tap];
+                        if (w == 0f) {
+                            continue;
+                        }
+                        final int r = rowWeights.indices[row * rowWeights.taps + tap];
+                        if (mappedImage != null || isGray) {
+                            if (mappedImage != null) {
+                                mappedImage.getGrayRow(r, srcFirstCol, srcCols, srcBytes);
+                            } else {
+                                raster.getDataElements(srcFirstCol, r, srcCols, 1, srcBytes);
+                            }
+                            for (int c = 0; c < srcCols; c++) {
+                                rowBuffer[c] += w * (srcBytes[c] & 0xff);
+                            }
+                        } else {
+                            for (int c = 0; c < srcCols; c++) {
+                                rowBuffer[c] += w * geoImage.getGray(srcFirstCol + c, r);
+                            }
+                        }
+                    }
+
+                    // horizontal pass
+                    for (int col = 0; col < newCols; col++) {
+                        float v = 0;
+                        final int id = col * colWeights.taps;
+                        for (int tap = 0; tap < colWeights.taps; tap++) {
+                            v += colWeights.weights[id + tap]
+                                    * rowBuffer[colWeights.indices[id + tap] - srcFirstCol];
+                        }
+                        final int gray = Math.round(v);
+                        dst[row * newCols + col] = (short) (gray < 0 ? 0 : (gray > 255 ? 255 : gray));
+                    }
+                }
+            }
+        });
+        return grid;
+    }
+
+    /**
+     * Catmull-Rom cubic convolution kernel.
+     */
+    private static double cubic(double x) {
+        x = Math.abs(x);
+        if (x < 1) {
+            return (1.5 * x - 2.5) * x * x + 1;
+        }
+        if (x < 2) {
+            return ((-0.5 * x + 2.5) * x - 4) * x + 2;
+        }
+        return 0;
+    }
+
+    /**
+     * Indices and normalized weights of the source pixels contributing to a
+     * range of destination cells along one dimension, with a fixed number of
+     * taps per cell. Unused taps have a weight of 0.
+     */
+    private static final class Weights {
+
+        final int taps;
+        final int[] indices;
+        final float[] weights;
+
+        Weights(Kernel kernel, int srcSize, int dstFirst, int dstSize, double scale) {
+            final double support = kernel == Kernel.BOX
+                    ? 0.5 * scale : 2 * Math.max(1, scale);
+            taps = (int) Math.ceil(2 * support) + 1;
+            indices = new int[dstSize * taps];
+            weights = new float[dstSize * taps];
+            final double[] w = new double[taps];
+            for (int i = 0; i < dstSize; i++) {
+                // center of the destination cell in source pixel coordinates
+                final double center = (dstFirst + i + 0.5) * scale;
+                final int first = (int) Math.floor(center - support);
+                double sum = 0;
+                for (int tap = 0; tap < taps; tap++) {
+                    final int j = first + tap;
+                    if (kernel == Kernel.BOX) {
+                        // length of pixel j covered by the destination cell
+                        final double min = Math.max(j, center - support);
+                        final double max = Math.min(j + 1, center + support);
+                        w[tap] = Math.max(0, max - min);
+                    } else {
+                        w[tap] = cubic((j + 0.5 - center) / Math.max(1, scale));
+                    }
+                    sum += w[tap];
+                    indices[i * taps + tap] = Math.min(srcSize - 1, Math.max(0, j));
+                }
+                for (int tap = 0; tap < taps; tap++) {
+                    weights[i * taps + tap] = sum == 0 ? 0 : (float) (w[tap] / sum);
+                }
+            }
+        }
+    }
+
+    public Kernel getKernel() {
+        return kernel;
+    }
+
+    public void setKernel(Kernel kernel) {
+        if (kernel == null) {
+            throw new IllegalArgumentException();
+        }
+        this.kernel = kernel;
+    }
+}
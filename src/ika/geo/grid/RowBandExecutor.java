@@ -0,0 +1,120 @@
+package ika.geo.grid;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Executes a grid operation on bands of rows concurrently with the common
+ * fork-join pool. The operation must compute each cell of a band independently
+ * of the cells computed for other bands, so that the result is identical to a
+ * sequential execution. Cells along the borders of a grid are usually handled
+ * by the operation for the first and last rows, which keeps border handling
+ * identical as well.
+ *
+ * Small grids are processed sequentially. Setting the system property
+ * ika.geo.grid.sequential to true or calling setSequential(true) forces
+ * sequential execution of all operations.
+ *
+ * @author Bernhard Jenny, School of Mathematical and Geospatial Sciences, RMIT
+ * University, Melbourne
+ */
+public final class RowBandExecutor {
+
+    /**
+     * An operation computing the cells of a band of rows.
+     */
+    public interface RowBand {
+
+        /**
+         * Computes the cells of a band of rows.
+         *
+         * @param firstRow the first row of the band
+         * @param endRow the row after the last row of the band
+         */
+        public void operate(int firstRow, int endRow);
+    }
+
+    /**
+     * Bands with fewer cells are not split further.
+     */
+    private static final int MIN_CELLS_PER_BAND = 32 * 1024;
+
+    /**
+     * If true, all operations are executed in the calling thread.
+     */
+    private static volatile boolean sequential = Boolean.getBoolean("ika.geo.grid.sequential");
+
+    private RowBandExecutor() {
+    }
+
+    /**
+     * Returns whether all operations are executed in the calling thread.
+     *
+     * @return true if operations are not executed concurrently.
+     */
+    public static boolean isSequential() {
+        return sequential;
+    }
+
+    /**
+     * Forces all operations to execute in the calling thread, for example, for
+     * debugging or for comparing with concurrent execution.
+     *
+     * @param sequential if true, operations are not executed concurrently.
+     */
+    public static void setSequential(boolean sequential) {
+        RowBandExecutor.sequential = sequential;
+    }
+
+    /**
+     * Executes an operation on a range of rows. Returns when all rows have been
+     * computed. Exceptions thrown by the operation are thrown by this method.
+     *
+     * @param firstRow the first row to compute
+     * @param endRow the row after the last row to compute
+     * @param cols the number of cells per row, used to size the bands
+     * @param rowBand the operation
+     */
+    public static void execute(int firstRow, int endRow, int cols, RowBand rowBand) {
+        if (endRow <= firstRow) {
+            return;
+        }
+        final int minRows = Math.max(1, MIN_CELLS_PER_BAND / Math.max(1, cols));
+        if (sequential || endRow - firstRow <= minRows
+                || ForkJoinPool.getCommonPoolParallelism() < 2) {
+            rowBand.operate(firstRow, endRow);
+        } else {
+            ForkJoinPool.commonPool().invoke(new BandAction(firstRow, endRow, minRows, rowBand));
+        }
+    }
+
+    /**
+     * Recursively splits a band of rows into two halves.
+     */
+    private static final class BandAction extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+        private final int firstRow;
+        private final int endRow;
+        private final int minRows;
+        private final RowBand rowBand;
+
+        BandAction(int firstRow, int endRow, int minRows, RowBand rowBand) {
+            this.firstRow = firstRow;
+            this.endRow = endRow;
+            this.minRows = minRows;
+            this.rowBand = rowBand;
+        }
+
+        @Override
+        protected void compute() {
+            if (endRow - firstRow <= minRows) {
+                rowBand.operate(firstRow, endRow);
+            } else {
+                final int middleRow = (firstRow + endRow) >>> 1;
+                invokeAll(new BandAction(firstRow, middleRow, minRows, rowBand),
+                        new BandAction(middleRow, endRow, minRows, rowBand));
+            }
+        }
+    }
+}
@@ -6,7 +6,7 @@
 
 package ika.geoexport;
 
-import ika.app.ScreeGenerator;
+import ika.app.StoneStore;
 import java.io.*;
 import java.awt.geom.*;
 import java.util.*;
@@ -284,36 +284,16 @@ public class DXFExporter extends GeoSetExporter {
                 continue;
 
             // Scree Painter hack
-            if (geoObject instanceof ScreeGenerator.Stone) {
-                geoObject = ((ScreeGenerator.Stone) geoObject).toGeoPath();
-            }
-
-            if (geoObject instanceof GeoPath) {
-                GeoPath geoPath = (GeoPath)geoObject;
-                PathIterator iterator = geoPath.toPathIterator(null, 
-                        this.bezierConversionTolerance);
-                double [] coords = new double [6];
-                java.util.Vector vector = new java.util.Vector();
-                while (!iterator.isDone()) {
-                    final int type = iterator.currentSegment(coords);
-                    switch (type) {
-                        case PathIterator.SEG_CLOSE:
-                            double[] firstPoint = (double[])vector.firstElement();
-                            vector.add(new double[] {firstPoint[0], firstPoint[1]});
-                            writePolyline(vector, layerID, lineWidth);
-                            vector.clear();
-                            break;
-                        case PathIterator.SEG_MOVETO:
-                            writePolyline(vector, layerID, lineWidth);
-                            vector.clear();
-                            // fall through
-                        case PathIterator.SEG_LINETO:
-                            vector.add(new double[] {coords[0], coords[1]});
-                            break;
-                    }
-                    iterator.next();
+            if (geoObject instanceof StoneStore) {
+                StoneStore stones = (StoneStore)geoObject;
+                final int stonesCount = stones.getStonesCount();
+                for (int j = 0; j < stonesCount; j++) {
+                    GeoPath geoPath = stones.toGeoPath(j);
+                    if (geoPath != null)
+                        writeGeoPath(geoPath, layerID, lineWidth);
                 }
-                writePolyline(vector, layerID, lineWidth);
+            } else if (geoObject instanceof GeoPath) {
+                writeGeoPath((GeoPath)geoObject, layerID, lineWidth);
             } else if (geoObject instanceof GeoSet) {
                 GeoSet childGeoSet = (GeoSet)geoObject;
                 writeLines(childGeoSet);
@@ -321,6 +301,33 @@ public class DXFExporter extends GeoSetExporter {
         }
     }
     
+    private void writeGeoPath(GeoPath geoPath, int layerID, int lineWidth) {
+        PathIterator iterator = geoPath.toPathIterator(null, 
+                this.bezierConversionTolerance);
+        double [] coords = new double [6];
+        java.util.Vector vector = new java.util.Vector();
+        while (!iterator.isDone()) {
+            final int type = iterator.currentSegment(coords);
+            switch (type) {
+                case PathIterator.SEG_CLOSE:
+                    double[] firstPoint = (double[])vector.firstElement();
+                    vector.add(new double[] {firstPoint[0], firstPoint[1]});
+                    writePolyline(vector, layerID, lineWidth);
+                    vector.clear();
+                    break;
+                case PathIterator.SEG_MOVETO:
+                    writePolyline(vector, layerID, lineWidth);
+                    vector.clear();
+                    // fall through
+                case PathIterator.SEG_LINETO:
+                    vector.add(new double[] {coords[0], coords[1]});
+                    break;
+            }
+            iterator.next();
+        }
+        writePolyline(vector, layerID, lineWidth);
+    }
+    
     private void code(int code) {
         this.writer.println(code);
     }
@@ -43,10 +43,11 @@ public class ESRIASCIIGridExporter {
         writer.write("yllcorner " + geoGrid.getSouth() + lineSeparator);
         writer.write("cellsize " + geoGrid.getCellSize() + lineSeparator);
         writer.write("nodata_value " + -Float.MAX_VALUE + lineSeparator);
-        float[][] grid = geoGrid.getGrid();
-        for (int r = 0; r < grid.length; ++r) {
-            for (int c = 0; c < grid[0].length; ++c) {
-                float v = grid[r][c];
+        final int cols = geoGrid.getCols();
+        final int rows = geoGrid.getRows();
+        for (int r = 0; r < rows; ++r) {
+            for (int c = 0; c < cols; ++c) {
+                float v = geoGrid.getValue(c, r);
                 // A "NaN" value is not equal to itself. So use isNan().
                 if (Float.isNaN(v)) {
                     v = -Float.MAX_VALUE;
@@ -9,6 +9,7 @@
 package ika.geoexport;
 
 import ika.app.ScreeGenerator;
+import ika.app.StoneStore;
 import ika.geo.*;
 import ika.gui.PageFormat;
 import java.awt.*;
@@ -182,11 +183,9 @@ public class IllustratorExporter extends VectorGraphicsExporter {
                 }
 
                 // Scree Painter hack
-                if (obj instanceof ScreeGenerator.Stone) {
-                    obj = ((ScreeGenerator.Stone) obj).toGeoPath();
-                }
-
-                if (obj instanceof GeoPath) {
+                if (obj instanceof StoneStore) {
+                    writeStoneStore((StoneStore) obj, writer);
+                } else if (obj instanceof GeoPath) {
                     writeGeoPath((GeoPath) obj, writer);
                 } else if (obj instanceof GeoPoint) {
                     writeGeoPoint((GeoPoint) obj, writer);
@@ -247,13 +246,11 @@ public class IllustratorExporter extends VectorGraphicsExporter {
                 continue;
             }
 
-            // Scree Painter hack
-            if (obj instanceof ScreeGenerator.Stone) {
-                obj = ((ScreeGenerator.Stone) obj).toGeoPath();
-            }
-
             if (obj instanceof GeoSet) {
                 writeGeoSet((GeoSet) obj, writer);
+            } else if (obj instanceof StoneStore) {
+                // Scree Painter hack
+                writeStoneStore((StoneStore) obj, writer);
             } else if (obj instanceof GeoPath) {
                 writeGeoPath((GeoPath) obj, writer);
             } else if (obj instanceof GeoPoint) {
@@ -550,6 +547,28 @@ public class IllustratorExporter extends VectorGraphicsExporter {
         this.writeName(geoPath, writer);
     }
 
+    /**
+     * Write the closed outlines of scree stones. The corners are read from the
+     * arrays of the StoneStore without creating GeoPaths.
+     */
+    private void writeStoneStore(StoneStore stones, PrintWriter writer) {
+        VectorSymbol vectorSymbol = ScreeGenerator.STONE_SYMBOL;
+        this.writePaintingAttributes(vectorSymbol, writer);
+        final int stonesCount = stones.getStonesCount();
+        for (int i = 0; i < stonesCount; i++) {
+            final int cornersCount = stones.getCornersCount(i);
+            if (cornersCount == 0) {
+                continue;
+            }
+            this.writeCoordinate(stones.getCornerX(i, 0), stones.getCornerY(i, 0), "m", writer);
+            for (int j = 1; j < cornersCount; j++) {
+                this.writeCoordinate(stones.getCornerX(i, j), stones.getCornerY(i, j), "L", writer);
+            }
+            this.writeCoordinate(stones.getCornerX(i, 0), stones.getCornerY(i, 0), "L", writer);
+            this.writeFillStroke(vectorSymbol, true, writer);
+        }
+    }
+
     /**
      * Write a path iterator describing a graphic objects of straight lines,
      * Bezier curves, potentially with holes and islands.
@@ -10,11 +10,16 @@ import com.itextpdf.text.Document;
 import com.itextpdf.text.DocumentException;
 import com.itextpdf.text.Rectangle;
 import com.itextpdf.text.pdf.PdfContentByte;
+import com.itextpdf.text.pdf.PdfTemplate;
 import com.itextpdf.text.pdf.PdfWriter;
 import ika.app.ScreeGenerator;
+import ika.app.StoneSink;
+import ika.app.StoneStore;
+import ika.app.StoneTemplates;
 import ika.geo.*;
 import java.awt.*;
 import java.awt.geom.*;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 
@@ -22,13 +27,28 @@ import java.io.OutputStream;
  *
  * @author jenny
  */
-public class PDFExporter extends VectorGraphicsExporter {
+public class PDFExporter extends VectorGraphicsExporter
+        implements StoneSinkExporter {
+
+    /**
+     * A StoneSink writes stones to a form XObject, which is written to the
+     * file and released from memory when it contains this number of stones.
+     */
+    private static final int STONES_PER_TEMPLATE = 10000;
 
     /* to keep track of current drawing settings. */
     private Color currentFillColor;
     private Color currentStrokeColor;
     private float currentStrokeWidth;
 
+    /**
+     * A form XObject for each template of a bank of stone templates, shared by
+     * all stones using the template. Created when stones with templates are
+     * first written to a document.
+     */
+    private StoneTemplates stoneTemplates;
+    private PdfTemplate[] stoneTemplateXObjects;
+
     /**
      * Creates a new instance of PDFExporter
      */
@@ -56,50 +76,10 @@ public class PDFExporter extends VectorGraphicsExporter {
     @Override
     protected void write(GeoSet geoSet, OutputStream outputStream) throws IOException {
 
-        Document document = null;
+        Document document = new Document();
 
         try {
-            this.currentFillColor = null;
-            this.currentStrokeColor = null;
-            this.currentStrokeWidth = 0;
-
-            // creation of a document-object
-            document = new Document();
-
-            // create a writer that listens to the document
-            // and directs a PDF-stream to a file
-            // this must be done before properties of the document are set!
-            PdfWriter writer = PdfWriter.getInstance(document, outputStream);
-            writer.setPdfVersion(PdfWriter.VERSION_1_7);
-            
-            document.setMargins(0, 0, 0, 0);
-
-            if (applicationName != null) {
-                document.addCreator(applicationName);
-            }
-            if (documentName != null) {
-                document.addTitle(documentName);
-            }
-            if (documentAuthor != null) {
-                document.addAuthor(documentAuthor);
-            }
-            if (documentSubject != null) {
-                document.addSubject(documentSubject);
-            }
-            if (documentKeyWords != null) {
-                document.addKeywords(documentKeyWords);
-            }
-
-            final double wWC = pageFormat.getPageWidthWorldCoordinates();
-            final double hWC = pageFormat.getPageHeightWorldCoordinates();
-            final double w = dimToPagePx(wWC);
-            final double h = dimToPagePx(hWC);
-            Rectangle pdfBounds = new Rectangle((float)w, (float)h);
-            document.setPageSize(pdfBounds);
-            document.setMargins(0, 0, 0, 0);
-
-            // open the document
-            document.open();
+            PdfWriter writer = openDocument(document, outputStream);
                         
             // grab the ContentByte
             PdfContentByte cb = writer.getDirectContent();
@@ -119,6 +99,166 @@ public class PDFExporter extends VectorGraphicsExporter {
         }
     }
 
+    /**
+     * Creates a PdfWriter for a document and opens the document with the size
+     * of the page format.
+     */
+    private PdfWriter openDocument(Document document, OutputStream outputStream)
+            throws DocumentException {
+        this.currentFillColor = null;
+        this.currentStrokeColor = null;
+        this.currentStrokeWidth = 0;
+        this.stoneTemplates = null;
+        this.stoneTemplateXObjects = null;
+
+        // create a writer that listens to the document
+        // and directs a PDF-stream to a file
+        // this must be done before properties of the document are set!
+        PdfWriter writer = PdfWriter.getInstance(document, outputStream);
+        writer.setPdfVersion(PdfWriter.VERSION_1_7);
+
+        document.setMargins(0, 0, 0, 0);
+
+        if (applicationName != null) {
+            document.addCreator(applicationName);
+        }
+        if (documentName != null) {
+            document.addTitle(documentName);
+        }
+        if (documentAuthor != null) {
+            document.addAuthor(documentAuthor);
+        }
+        if (documentSubject != null) {
+            document.addSubject(documentSubject);
+        }
+        if (documentKeyWords != null) {
+            document.addKeywords(documentKeyWords);
+        }
+
+        Rectangle pdfBounds = new Rectangle(pageWidthPx(), pageHeightPx());
+        document.setPageSize(pdfBounds);
+        document.setMargins(0, 0, 0, 0);
+
+        // open the document
+        document.open();
+        return writer;
+    }
+
+    private float pageWidthPx() {
+        return (float) dimToPagePx(pageFormat.getPageWidthWorldCoordinates());
+    }
+
+    private float pageHeightPx() {
+        return (float) dimToPagePx(pageFormat.getPageHeightWorldCoordinates());
+    }
+
+    /**
+     * Creates a sink that writes stones to a PDF file while they are
+     * generated. Stones are collected in form XObjects, which are written to
+     * the file and released from memory when they are full, so that the
+     * content of the page does not grow with the number of stones. The page
+     * format must be set before the sink is created.
+     *
+     * @param filePath path to the PDF file
+     * @return the new sink
+     * @throws IOException if the file cannot be created
+     */
+    @Override
+    public StoneSink createStoneSink(String filePath) throws IOException {
+        if (pageFormat == null) {
+            throw new IllegalStateException("page format not set");
+        }
+        return new PDFStoneSink(filePath);
+    }
+
+    /**
+     * Writes stones to form XObjects that are placed on a single page.
+     */
+    private final class PDFStoneSink implements StoneSink {
+
+        private final String filePath;
+        private final OutputStream outputStream;
+        private final Document document = new Document();
+        private final PdfWriter writer;
+        private PdfTemplate template;
+        private int templateStonesCount;
+        private boolean closed = false;
+
+        private PDFStoneSink(String filePath) throws IOException {
+            this.filePath = filePath;
+            this.outputStream = new FileOutputStream(filePath);
+            try {
+                writer = openDocument(document, outputStream);
+            } catch (DocumentException de) {
+                outputStream.close();
+                throw new IOException(de.getMessage());
+            }
+        }
+
+        @Override
+        public void addStones(StoneStore stones) throws IOException {
+            if (closed) {
+                throw new IllegalStateException("sink is closed");
+            }
+            if (template == null) {
+                template = writer.getDirectContent().createTemplate(
+                        pageWidthPx(), pageHeightPx());
+                // the graphics state of a form XObject is independent of
+                // the page
+                currentFillColor = null;
+                currentStrokeColor = null;
+                currentStrokeWidth = 0;
+            }
+            writeStoneStore(stones, template);
+            templateStonesCount += stones.getStonesCount();
+            if (templateStonesCount >= STONES_PER_TEMPLATE) {
+                flushTemplate();
+            }
+        }
+
+        /**
+         * Places the current template on the page and writes it to the file.
+         */
+        private void flushTemplate() throws IOException {
+            if (template == null) {
+                return;
+            }
+            writer.getDirectContent().addTemplate(template, 0, 0);
+            writer.releaseTemplate(template);
+            template = null;
+            templateStonesCount = 0;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                flushTemplate();
+                configurePDFWriter(writer);
+            } finally {
+                document.close();
+                outputStream.close();
+            }
+        }
+
+        @Override
+        public void abort() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            // the document is not closed, which would complete the file
+            try {
+                outputStream.close();
+            } finally {
+                ika.utils.FileUtils.deleteFile(filePath);
+            }
+        }
+    }
+
     /**
      * Write a GeoSet and all its children.
      */
@@ -133,13 +273,11 @@ public class PDFExporter extends VectorGraphicsExporter {
                 continue;
             }
 
-            // Scree Painter hack
-            if (obj instanceof ScreeGenerator.Stone) {
-                obj = ((ScreeGenerator.Stone) obj).toGeoPath();
-            }
-
             if (obj instanceof GeoSet) {
                 writeGeoSet((GeoSet) obj, cb);
+            } else if (obj instanceof StoneStore) {
+                // Scree Painter hack
+                writeStoneStore((StoneStore) obj, cb);
             } else if (obj instanceof GeoPath) {
                 writeGeoPath((GeoPath) obj, cb);
             } else if (obj instanceof GeoPoint) {
@@ -152,6 +290,40 @@ public class PDFExporter extends VectorGraphicsExporter {
         }
     }
 
+    /**
+     * Returns a form XObject with a filled path for each template of a bank
+     * of stone templates. The XObjects are created for the first bank used in
+     * a document, and are recreated if another bank is used.
+     */
+    private PdfTemplate[] getStoneTemplateXObjects(StoneTemplates templates,
+            PdfContentByte cb) {
+        if (templates == stoneTemplates) {
+            return stoneTemplateXObjects;
+        }
+        final int templatesCount = templates.getTemplatesCount();
+        PdfTemplate[] xObjects = new PdfTemplate[templatesCount];
+        for (int t = 0; t < templatesCount; t++) {
+            // template corners are at distance 1 from the origin
+            PdfTemplate xObject = cb.createTemplate(2, 2);
+            xObject.setBoundingBox(new Rectangle(-1, -1, 1, 1));
+            final int cornersCount = templates.getCornersCount(t);
+            if (cornersCount > 0) {
+                xObject.moveTo((float) templates.getCornerX(t, 0),
+                        (float) templates.getCornerY(t, 0));
+                for (int j = 1; j < cornersCount; j++) {
+                    xObject.lineTo((float) templates.getCornerX(t, j),
+                            (float) templates.getCornerY(t, j));
+                }
+                xObject.closePath();
+                xObject.fill();
+            }
+            xObjects[t] = xObject;
+        }
+        stoneTemplates = templates;
+        stoneTemplateXObjects = xObjects;
+        return xObjects;
+    }
+
     /**
      * Write a GeoImage
      */
@@ -330,6 +502,49 @@ public class PDFExporter extends VectorGraphicsExporter {
         this.writePathIterator(pi, geoPath.getVectorSymbol(), cb);
     }
 
+    /**
+     * Write the closed outlines of scree stones. The corners are read from the
+     * arrays of the StoneStore without creating GeoPaths.
+     */
+    private void writeStoneStore(StoneStore stones, PdfContentByte cb) {
+        VectorSymbol vectorSymbol = ScreeGenerator.STONE_SYMBOL;
+        this.writePaintingAttributes(vectorSymbol, cb);
+        final int stonesCount = stones.getStonesCount();
+        if (stones.getTemplates() != null) {
+            // place a scaled and rotated form XObject for each stone. The
+            // XObjects inherit the fill color of the current graphics state.
+            PdfTemplate[] xObjects = getStoneTemplateXObjects(stones.getTemplates(), cb);
+            final double k = dimToPagePx(1);
+            for (int i = 0; i < stonesCount; i++) {
+                final int template = stones.getTemplate(i);
+                if (template < 0) {
+                    continue;
+                }
+                final double kr = k * stones.getR(i);
+                final float cos = (float) (kr * stones.getTemplateCos(i));
+                final float sin = (float) (kr * stones.getTemplateSin(i));
+                cb.addTemplate(xObjects[template], cos, -sin, -sin, -cos,
+                        (float) xToPagePx(stones.getX(i)),
+                        (float) yToPagePx(stones.getY(i)));
+            }
+            return;
+        }
+        for (int i = 0; i < stonesCount; i++) {
+            final int cornersCount = stones.getCornersCount(i);
+            if (cornersCount == 0) {
+                continue;
+            }
+            cb.moveTo((float) xToPagePx(stones.getCornerX(i, 0)),
+                    (float) yToPagePx(stones.getCornerY(i, 0)));
+            for (int j = 1; j < cornersCount; j++) {
+                cb.lineTo((float) xToPagePx(stones.getCornerX(i, j)),
+                        (float) yToPagePx(stones.getCornerY(i, j)));
+            }
+            cb.closePath();
+            writeFillStroke(vectorSymbol, true, cb);
+        }
+    }
+
     /**
      * Write a path describing a graphic objects of straight lines, Bezier
      * curves, potentially with holes and islands.
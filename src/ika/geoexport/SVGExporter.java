@@ -1,21 +1,27 @@
 package ika.geoexport;
 
 import ika.app.ScreeGenerator;
+import ika.app.StoneSink;
+import ika.app.StoneStore;
+import ika.app.StoneTemplates;
 import java.awt.*;
 import java.awt.geom.*;
 import java.io.*;
-import org.w3c.dom.*;
-import javax.xml.parsers.*;
-import javax.xml.transform.*;
-import javax.xml.transform.dom.*;
-import javax.xml.transform.stream.*;
+import java.util.ArrayList;
+import java.util.List;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
 import ika.utils.*;
 import ika.geo.*;
 
 /**
- * Exporter for the SVG file format.
+ * Exporter for the SVG file format. Elements are streamed to the output with a
+ * XMLStreamWriter, so that the memory required does not grow with the number
+ * of exported objects.
  */
-public class SVGExporter extends VectorGraphicsExporter{
+public class SVGExporter extends VectorGraphicsExporter
+        implements StoneSinkExporter {
     
     /** If useCSSStyles is true vector styles are written using CSS styles.
      * Otherwise attributes are used. Rendering of interactively changed CSS
@@ -33,6 +39,17 @@ public class SVGExporter extends VectorGraphicsExporter{
 //    private static String svgIdentifier = "-//W3C//DTD SVG 1.0//EN";
 //    private static String svgDTD = "http://www.w3.org/TR/2001/REC-SVG-20010904/DTD/svg10.dtd";
     
+    /** number of spaces for indenting nested elements */
+    private static final int INDENT = 2;
+    
+    /** a line break followed by spaces for indenting elements */
+    private static final char[] NEW_LINE = ("\n" + new String(new char[64]).replace('\0', ' ')).toCharArray();
+    
+    /** path data of the current path, reused to avoid allocations */
+    private final StringBuilder pathData = new StringBuilder();
+    
+    /** banks of stone templates written to the current document */
+    private final List<StoneTemplates> writtenStoneTemplates = new ArrayList<StoneTemplates>();
     
     public SVGExporter(){
     }
@@ -55,167 +72,190 @@ public class SVGExporter extends VectorGraphicsExporter{
     protected void write(GeoSet geoSet, OutputStream outputStream)
     throws IOException {
         try {
-
-            // create a document
-            DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-            DocumentBuilder builder = factory.newDocumentBuilder();
-            Document document = builder.newDocument();
-            
-            // construct the SVG root element
-            Element svgRootElement = this.createSVGRootElement(geoSet, document);
-            document.appendChild(svgRootElement);
-            
-            // add content to SVG root element
-            this.addSVGContent(geoSet, document, svgRootElement);
-            
-            // Prepare the output file
-            OutputStreamWriter outputStreamWriter = 
-                    new OutputStreamWriter(outputStream, "utf-8");
-            StreamResult result = new StreamResult(outputStreamWriter);
-            
-            // Write the DOM document to the file
-            /*
-            There is a bug in Java 1.5: XML output is not indented.
-            To work around this bug:
-            http://bugs.sun.com/bugdatabase/view_bug.do?bug_id=6296446
-            (1)set the indent-number in the transformerfactory
-            TransformerFactory tf = new TransformerFactory.newInstance();
-            tf.setAttribute("indent-number", new Integer(2));
-            (2)enable the indent in the transformer
-            Transformer t = tf.newTransformer();
-            t.setOutputProperty(OutputKeys.INDENT, "yes");
-            (3)wrap the otuputstream with a writer (or bufferedwriter)
-            t.transform(new DOMSource(doc),
-            new StreamResult(new OutputStreamWriter(out, "utf-8"));
-            You must do (3) to workaround a "buggy" behavior of the
-            xml handling code.
-             */
+            XMLStreamWriter writer = this.createXMLStreamWriter(outputStream);
+            this.writtenStoneTemplates.clear();
             
-            TransformerFactory tf = TransformerFactory.newInstance();
-            tf.setAttribute("indent-number", new Integer(2));
-            Transformer xformer = tf.newTransformer();
-            xformer.setOutputProperty(OutputKeys.INDENT, "yes");
-            Source source = new DOMSource(document);
-            xformer.transform(source, result);
+            // construct the SVG root element and add content to it
+            this.writeSVGRootElement(geoSet, writer);
+            this.addSVGContent(geoSet, writer);
+            this.endSVGRootElement(writer);
             
             // don't add doctype to SVG files. see http://jwatt.org/svg/authoring/
-            /*
-            xformer.setOutputProperty(OutputKeys.DOCTYPE_PUBLIC, svgIdentifier);
-            xformer.setOutputProperty(OutputKeys.DOCTYPE_SYSTEM, svgDTD);
-             */
-
-            outputStreamWriter.flush();
-        
-        } catch (Exception e) {
-            String msg = e.getMessage() != null ? e.getMessage() : e.getClass().toString();
-            throw new IOException("Export to SVG not possible. " + msg);
+            writer.flush();
+        } catch (XMLStreamException e) {
+            throw toIOException(e);
         }
     }
     
     /**
-     * Creates the top level SVG element.
+     * Creates a XMLStreamWriter writing UTF-8 to a buffered stream, and writes
+     * the XML declaration.
+     */
+    private XMLStreamWriter createXMLStreamWriter(OutputStream outputStream)
+            throws IOException, XMLStreamException {
+        Writer out = new BufferedWriter(new OutputStreamWriter(outputStream, "UTF-8"));
+        XMLStreamWriter writer = XMLOutputFactory.newInstance().createXMLStreamWriter(out);
+        writer.writeStartDocument("UTF-8", "1.0");
+        return writer;
+    }
+    
+    /**
+     * Starts a new line and indents it for an element of the passed depth.
      */
-    protected Element createSVGRootElement(GeoSet geoSet, Document document) {
-        Rectangle2D bounds = geoSet.getBounds2D(GeoObject.UNDEFINED_SCALE);
+    protected static void newLine(XMLStreamWriter writer, int depth)
+            throws XMLStreamException {
+        writer.writeCharacters(NEW_LINE, 0, Math.min(NEW_LINE.length, 1 + depth * INDENT));
+    }
+    
+    /**
+     * Starts the top level SVG element and writes its attributes.
+     */
+    protected void writeSVGRootElement(GeoSet geoSet, XMLStreamWriter writer)
+            throws XMLStreamException {
+        newLine(writer, 0);
         
         // create the main svg element
-        Element svg = (Element)document.createElement("svg");
+        writer.writeStartElement("svg");
+        for (String[] attribute : rootAttributes()) {
+            writer.writeAttribute(attribute[0], attribute[1]);
+        }
+    }
+    
+    /**
+     * Ends the top level SVG element and the document.
+     */
+    private void endSVGRootElement(XMLStreamWriter writer) throws XMLStreamException {
+        newLine(writer, 0);
+        writer.writeEndElement();
+        writer.writeEndDocument();
+        newLine(writer, 0);
+    }
+    
+    /**
+     * Returns the names and values of the attributes of the top level SVG
+     * element.
+     */
+    private List<String[]> rootAttributes() {
+        List<String[]> attributes = new ArrayList<String[]>();
         
         // specify a namespace prefix on the 'svg' element, which means that
         // SVG is the default namespace for all elements within the scope of
         // the svg element with the xmlns attribute:
         // See http://www.w3.org/TR/SVG11/struct.html#SVGElement
         // and http://jwatt.org/svg/authoring/
-        svg.setAttribute("xmlns", this.SVGNAMESPACE);
-        svg.setAttribute("xmlns:xlink", this.XLINKNAMESPACE);
-        svg.setAttribute("xmlns:ev", this.XMLEVENTSNAMESPACE);
-        svg.setAttribute("version", "1.0");
-        svg.setAttribute("preserveAspectRatio", "xMinYMin");
+        attributes.add(new String[]{"xmlns", SVGNAMESPACE});
+        attributes.add(new String[]{"xmlns:xlink", XLINKNAMESPACE});
+        attributes.add(new String[]{"xmlns:ev", XMLEVENTSNAMESPACE});
+        attributes.add(new String[]{"version", "1.0"});
+        attributes.add(new String[]{"preserveAspectRatio", "xMinYMin"});
         
         final double wWC = this.pageFormat.getPageWidthWorldCoordinates();
         final double hWC = this.pageFormat.getPageHeightWorldCoordinates();
         final double w = dimToPageRoundedPx((float)wWC);
         final double h = dimToPageRoundedPx((float)hWC);
-        svg.setAttribute("width", Double.toString(w));
-        svg.setAttribute("height", Double.toString(h));
+        attributes.add(new String[]{"width", Double.toString(w)});
+        attributes.add(new String[]{"height", Double.toString(h)});
         
         // Define the viewBox.
         String viewBoxStr = "0 0 " + w + " " + h;
-        svg.setAttribute("viewBox", viewBoxStr);
+        attributes.add(new String[]{"viewBox", viewBoxStr});
         
-        return svg;
+        return attributes;
     }
     
     /**
-     * The default implementation simply creates a g element. Derived classes may
+     * The default implementation simply starts a g element. Derived classes may
      * overwrite this.
+     * @return False if no element is started for the GeoSet.
      */
-    protected Element createSVGGroupElement(GeoSet geoSet, Document document) {
+    protected boolean writeSVGGroupElement(GeoSet geoSet, XMLStreamWriter writer)
+            throws XMLStreamException {
         // don't write invisible or empty GeoSets
         if (!geoSet.hasVisibleGeoObjects())
-            return null;
+            return false;
         
-        return document.createElement("g");
+        writer.writeStartElement("g");
+        return true;
     }
     
-    protected void finish(GeoSet geoSet, Document doc, 
-            Element element) {
+    /**
+     * Called before the element of a GeoSet is closed. Derived classes may
+     * overwrite this to add children to the element.
+     */
+    protected void finish(GeoSet geoSet, XMLStreamWriter writer, int depth)
+            throws XMLStreamException {
     }
     
-    protected void finish(GeoPath geoPath, Document doc, 
-            Element element) {
+    /**
+     * Called after the attributes of the element of a GeoPath have been
+     * written. Derived classes may overwrite this to add attributes.
+     */
+    protected void finish(GeoPath geoPath, XMLStreamWriter writer)
+            throws XMLStreamException {
     }
     
-    protected void finish(GeoPoint geoPoint, Document doc, 
-            Element element) {
+    /**
+     * Called after the attributes of the element of a GeoPoint have been
+     * written. Derived classes may overwrite this to add attributes.
+     */
+    protected void finish(GeoPoint geoPoint, XMLStreamWriter writer)
+            throws XMLStreamException {
     }
     
-    protected void finish(GeoText geoText, Document doc, 
-            Element element) {
+    /**
+     * Called after the attributes of the element of a GeoText have been
+     * written. Derived classes may overwrite this to add attributes.
+     */
+    protected void finish(GeoText geoText, XMLStreamWriter writer)
+            throws XMLStreamException {
     }
     
-    protected void addSVGContent(GeoSet geoSet, Document document,
-            Element svgRootElement) {
+    protected void addSVGContent(GeoSet geoSet, XMLStreamWriter writer)
+            throws XMLStreamException {
         
         // add a description element
-        Element desc = (Element)document.createElement("desc");
-        svgRootElement.appendChild(desc);
-        desc.appendChild(document.createTextNode(buildDescription()));
+        this.writeDescription(writer);
         
-        // convert GeoSet to SVG DOM
-        this.writeGeoSet(geoSet, svgRootElement, document);
+        // stream the GeoSet
+        this.writeGeoSet(geoSet, writer, 1);
     }
     
-    protected void writeGeoObject(GeoObject obj, Element parent, Document doc) {
+    private void writeDescription(XMLStreamWriter writer) throws XMLStreamException {
+        newLine(writer, 1);
+        writer.writeStartElement("desc");
+        writer.writeCharacters(buildDescription());
+        writer.writeEndElement();
+    }
+    
+    protected void writeGeoObject(GeoObject obj, XMLStreamWriter writer, int depth)
+            throws XMLStreamException {
 
         // Scree Painter hack
-        if (obj instanceof ScreeGenerator.Stone) {
-            obj = ((ScreeGenerator.Stone) obj).toGeoPath();
-        }
-
-        if (obj instanceof GeoPath) {
-            writeGeoPath((GeoPath)obj, parent, doc);
+        if (obj instanceof StoneStore) {
+            writeStoneStore((StoneStore)obj, writer, depth);
+        } else if (obj instanceof GeoPath) {
+            writeGeoPath((GeoPath)obj, writer, depth);
         } else if (obj instanceof GeoImage) {
-            writeGeoImage((GeoImage)obj, parent, doc);
+            writeGeoImage((GeoImage)obj, writer, depth);
         } else if (obj instanceof GeoPoint) {
-            writeGeoPoint((GeoPoint)obj, parent, doc);
+            writeGeoPoint((GeoPoint)obj, writer, depth);
         } else if (obj instanceof GeoText) {
-            writeGeoText((GeoText)obj, parent, doc);
+            writeGeoText((GeoText)obj, writer, depth);
         }
     }
     
     /**
-     * Converts a GeoSet to a SVG DOM.
-     * @param geoSet The GeoSet to convert.
-     * @param parent The parent element that will contain the passed GeoSet.
-     * @param document The DOM.
+     * Writes a GeoSet and all its children.
+     * @param geoSet The GeoSet to write.
+     * @param writer The destination.
+     * @param depth The depth of the element of the GeoSet in the document.
      */
-    private void writeGeoSet(GeoSet geoSet, Element parent, Document document) {
+    private void writeGeoSet(GeoSet geoSet, XMLStreamWriter writer, int depth)
+            throws XMLStreamException {
         
-        Element g = this.createSVGGroupElement(geoSet, document);
-        if (g == null)
+        newLine(writer, depth);
+        if (!this.writeSVGGroupElement(geoSet, writer))
             return;
-        parent.appendChild(g);
         
         final int nbrObj = geoSet.getNumberOfChildren();
         for (int i = 0; i < nbrObj; i++) {
@@ -226,93 +266,93 @@ public class SVGExporter extends VectorGraphicsExporter{
                 continue;
             
             if (obj instanceof GeoSet) {
-                writeGeoSet((GeoSet)obj, g, document);
+                writeGeoSet((GeoSet)obj, writer, depth + 1);
             } else {
-                writeGeoObject(obj, g, document);
+                writeGeoObject(obj, writer, depth + 1);
             }
         }
         
-        this.finish(geoSet, document, g);
+        this.finish(geoSet, writer, depth + 1);
+        newLine(writer, depth);
+        writer.writeEndElement();
     }
     
-    protected Element geoTextToSVG(GeoText geoText, Document document) {
+    protected void writeGeoText(GeoText geoText, XMLStreamWriter writer, int depth)
+            throws XMLStreamException {
         FontSymbol symbol = geoText.getFontSymbol();
         
         final double x = xToPageRoundedPx((float)geoText.getVisualX(1./this.getDisplayMapScale()));
         final double y = yToPageRoundedPx((float)geoText.getVisualY(1./this.getDisplayMapScale()));
         
-        Element text = document.createElement("text");
-        text.setAttribute("x", Double.toString(x));
-        text.setAttribute("y", Double.toString(y));
+        newLine(writer, depth);
+        writer.writeStartElement("text");
+        writer.writeAttribute("x", Double.toString(x));
+        writer.writeAttribute("y", Double.toString(y));
         if (this.useCSSStyles) {
-            text.setAttribute("style", this.symbolToCSS(symbol));
+            writer.writeAttribute("style", this.symbolToCSS(symbol));
         } else {
             Font font = symbol.getFont();
-            text.setAttribute("font-size", Integer.toString(symbol.getSize()));
-            text.setAttribute("font-family", font.getFamily());
-            text.setAttribute("fill", "black");
+            writer.writeAttribute("font-size", Integer.toString(symbol.getSize()));
+            writer.writeAttribute("font-family", font.getFamily());
+            writer.writeAttribute("fill", "black");
             
             switch (font.getStyle()) {
                 case Font.PLAIN:
-                    text.setAttribute("font-style", "normal");
+                    writer.writeAttribute("font-style", "normal");
                     break;
                 case Font.BOLD:
-                    text.setAttribute("font-weight", "bold");
+                    writer.writeAttribute("font-weight", "bold");
                     break;
                 case Font.ITALIC:
-                    text.setAttribute("font-style", "italic");
+                    writer.writeAttribute("font-style", "italic");
                     break;
             }
             
             if (symbol.isCenterHor())
-                text.setAttribute("text-anchor", "middle");
+                writer.writeAttribute("text-anchor", "middle");
             else
-                text.setAttribute("text-anchor","start");
+                writer.writeAttribute("text-anchor","start");
             
             if (symbol.isCenterVer())
-                text.setAttribute("baseline-shift", "50%");
+                writer.writeAttribute("baseline-shift", "50%");
         }
         
-        text.setAttribute("id", Long.toString(geoText.getID()));
-        Node textNode = document.createTextNode(geoText.getText());
-        text.appendChild(textNode);
-        return text;
+        writer.writeAttribute("id", Long.toString(geoText.getID()));
+        this.finish(geoText, writer);
+        writer.writeCharacters(geoText.getText());
+        writer.writeEndElement();
     }
     
-    protected void writeGeoText(GeoText geoText, Element parent, Document document) {
-        Element el = this.geoTextToSVG(geoText, document);
-        parent.appendChild(el);
-        this.finish(geoText, document, el);
-    }
-    
-    protected void writeGeoImage(GeoImage geoImage, Element parent, Document document) {
+    protected void writeGeoImage(GeoImage geoImage, XMLStreamWriter writer, int depth)
+            throws XMLStreamException {
         Rectangle2D bounds = geoImage.getBounds2D(GeoObject.UNDEFINED_SCALE);
         String xStr = Double.toString(xToPageRoundedPx((float)bounds.getMinX()));
         String yStr = Double.toString(yToPageRoundedPx((float)bounds.getMaxY()));
         String wStr = Double.toString(dimToPageRoundedPx((float)bounds.getWidth()));
         String hStr = Double.toString(dimToPageRoundedPx((float)bounds.getHeight()));
         
-        Element image = (Element)document.createElement("image");
-        image.setAttribute("x", xStr);
-        image.setAttribute("y", yStr);
-        image.setAttribute("width", wStr);
-        image.setAttribute("height", hStr);
-        image.setAttribute("xlink:href", geoImage.getURL().toExternalForm());
-        parent.appendChild(image);
+        newLine(writer, depth);
+        writer.writeEmptyElement("image");
+        writer.writeAttribute("x", xStr);
+        writer.writeAttribute("y", yStr);
+        writer.writeAttribute("width", wStr);
+        writer.writeAttribute("height", hStr);
+        writer.writeAttribute("xlink:href", geoImage.getURL().toExternalForm());
         
         // add rectangle of the size of the image
-        Element rect = (Element)document.createElement("rect");
-        rect.setAttribute("x", xStr);
-        rect.setAttribute("y", yStr);
-        rect.setAttribute("width", wStr);
-        rect.setAttribute("height", hStr);
-        rect.setAttribute("fill", "none");
-        rect.setAttribute("stroke", "blue");
-        rect.setAttribute("stroke-width", "1");
-        parent.appendChild(rect);
+        newLine(writer, depth);
+        writer.writeEmptyElement("rect");
+        writer.writeAttribute("x", xStr);
+        writer.writeAttribute("y", yStr);
+        writer.writeAttribute("width", wStr);
+        writer.writeAttribute("height", hStr);
+        writer.writeAttribute("fill", "none");
+        writer.writeAttribute("stroke", "blue");
+        writer.writeAttribute("stroke-width", "1");
     }
     
-    protected void writeGeoPoint(GeoPoint geoPoint, Element parent, Document document) {
+    protected void writeGeoPoint(GeoPoint geoPoint, XMLStreamWriter writer, int depth)
+            throws XMLStreamException {
         
         // Unfortunately Illustrator CS does not support SVG symbols correctly.
         // Therefore don't write SVG symbols, but convert GeoPoints to
@@ -321,112 +361,382 @@ public class SVGExporter extends VectorGraphicsExporter{
         GeoPath geoPath = pointSymbol.getPointSymbol(this.getDisplayMapScale(),
                 geoPoint.getX(), geoPoint.getY());
         GeoPathIterator pi = geoPath.getIterator();
-        Element pathElement = this.writePathIterator(pi, pointSymbol, document);
-        parent.appendChild(pathElement);
-        this.finish(geoPoint, document, pathElement);
+        this.convertPathIteratorToSVG(pi);
+        this.writePathElement(this.symbolAttributes(pointSymbol), writer, depth);
+        this.finish(geoPoint, writer);
     }
     
     /**
-     * Converts a GeoPath to a SVG path.
-     * @param geoPath The GeoPath to convert.
-     * @param parent The parent element that will contain the passed GeoSet.
-     * @param document The DOM.
+     * Writes a GeoPath as a SVG path.
+     * @param geoPath The GeoPath to write.
+     * @param writer The destination.
+     * @param depth The depth of the path element in the document.
      */
-    protected void writeGeoPath(GeoPath geoPath, Element parent, Document document) {
+    protected void writeGeoPath(GeoPath geoPath, XMLStreamWriter writer, int depth)
+            throws XMLStreamException {
         GeoPathIterator pi = geoPath.getIterator();
-        Element pathElement = this.writePathIterator(pi, geoPath.getVectorSymbol(), document);
-        parent.appendChild(pathElement);
-        this.finish(geoPath, document, pathElement);
+        this.convertPathIteratorToSVG(pi);
+        this.writePathElement(this.symbolAttributes(geoPath.getVectorSymbol()),
+                writer, depth);
+        this.finish(geoPath, writer);
     }
     
-    protected Element writePathIterator(GeoPathIterator pi, VectorSymbol vectorSymbol,
-            Document document) {
-        String svgPath = this.convertPathIteratorToSVG(pi);
-        Element pathElement = (Element)document.createElement("path");
+    /**
+     * Writes the outlines of scree stones as SVG paths. The corners are read
+     * from the arrays of the StoneStore without creating GeoPaths.
+     * @param stones The stones to write.
+     * @param writer The destination.
+     * @param depth The depth of the path elements in the document.
+     */
+    protected void writeStoneStore(StoneStore stones, XMLStreamWriter writer,
+            int depth) throws XMLStreamException {
+        if (stones.getTemplates() != null) {
+            this.writeStoneTemplateInstances(stones, writer, depth);
+            return;
+        }
+        
+        // all stones have the same symbol
+        List<String[]> attributes = this.symbolAttributes(ScreeGenerator.STONE_SYMBOL);
+        final int stonesCount = stones.getStonesCount();
+        for (int i = 0; i < stonesCount; i++) {
+            if (this.stoneToSVG(stones, i))
+                this.writePathElement(attributes, writer, depth);
+        }
+    }
+    
+    /**
+     * Writes stones with outlines that are instances of templates as use
+     * elements referencing template paths. The template paths are written to a
+     * defs element when a bank of templates is first used in the document.
+     * @param stones The stones to write.
+     * @param writer The destination.
+     * @param depth The depth of the use elements in the document.
+     */
+    private void writeStoneTemplateInstances(StoneStore stones,
+            XMLStreamWriter writer, int depth) throws XMLStreamException {
+        StoneTemplates templates = stones.getTemplates();
+        int bank = this.writtenStoneTemplates.indexOf(templates);
+        if (bank < 0) {
+            bank = this.writtenStoneTemplates.size();
+            this.writtenStoneTemplates.add(templates);
+            this.writeStoneTemplateDefs(templates, bank, writer, depth);
+        }
+        
+        // transformation from template coordinates to page pixels
+        final double k = this.dimToPagePx(1);
+        final String idPrefix = "#" + stoneTemplateIDPrefix(bank);
+        final int stonesCount = stones.getStonesCount();
+        for (int i = 0; i < stonesCount; i++) {
+            final int template = stones.getTemplate(i);
+            if (template < 0)
+                continue;
+            final double kr = k * stones.getR(i);
+            final double cos = kr * stones.getTemplateCos(i);
+            final double sin = kr * stones.getTemplateSin(i);
+            pathData.setLength(0);
+            pathData.append("matrix(");
+            appendDecimal(pathData, cos, 4);
+            pathData.append(' ');
+            appendDecimal(pathData, -sin, 4);
+            pathData.append(' ');
+            appendDecimal(pathData, -sin, 4);
+            pathData.append(' ');
+            appendDecimal(pathData, -cos, 4);
+            pathData.append(' ');
+            appendPoint(stones.getX(i), stones.getY(i));
+            pathData.append(')');
+            
+            newLine(writer, depth);
+            writer.writeEmptyElement("use");
+            writer.writeAttribute("xlink:href", idPrefix + template);
+            writer.writeAttribute("transform", pathData.toString());
+        }
+    }
+    
+    /**
+     * Writes a defs element with a path for each template of a bank. The paths
+     * have the symbol of stones.
+     */
+    private void writeStoneTemplateDefs(StoneTemplates templates, int bank,
+            XMLStreamWriter writer, int depth) throws XMLStreamException {
+        List<String[]> attributes = this.symbolAttributes(ScreeGenerator.STONE_SYMBOL);
+        final String idPrefix = stoneTemplateIDPrefix(bank);
+        newLine(writer, depth);
+        writer.writeStartElement("defs");
+        final int templatesCount = templates.getTemplatesCount();
+        for (int t = 0; t < templatesCount; t++) {
+            final int cornersCount = templates.getCornersCount(t);
+            pathData.setLength(0);
+            for (int j = 0; j < cornersCount; j++) {
+                pathData.append(j == 0 ? 'M' : 'L');
+                appendDecimal(pathData, templates.getCornerX(t, j), 4);
+                pathData.append(' ');
+                appendDecimal(pathData, templates.getCornerY(t, j), 4);
+            }
+            if (cornersCount > 0)
+                pathData.append('z');
+            newLine(writer, depth + 1);
+            writer.writeEmptyElement("path");
+            writer.writeAttribute("id", idPrefix + t);
+            for (int i = 0; i < attributes.size(); i++) {
+                String[] attribute = attributes.get(i);
+                writer.writeAttribute(attribute[0], attribute[1]);
+            }
+            writer.writeAttribute("d", pathData.toString());
+        }
+        newLine(writer, depth);
+        writer.writeEndElement(); // defs
+    }
+    
+    /**
+     * Returns the start of the ids of the path elements of a bank of stone
+     * templates. The index of the template is appended to the start.
+     */
+    private static String stoneTemplateIDPrefix(int bank) {
+        return "stone" + bank + "_";
+    }
+    
+    /**
+     * Converts the outline of a stone to SVG path data in pathData.
+     * @param stones The stones.
+     * @param stoneID The stone to convert.
+     * @return False if the stone has no corners.
+     */
+    private boolean stoneToSVG(StoneStore stones, int stoneID) {
+        final int cornersCount = stones.getCornersCount(stoneID);
+        if (cornersCount == 0)
+            return false;
+        pathData.setLength(0);
+        for (int j = 0; j < cornersCount; j++) {
+            pathData.append(j == 0 ? 'M' : 'L');
+            appendPoint(stones.getCornerX(stoneID, j), stones.getCornerY(stoneID, j));
+        }
+        pathData.append('z');
+        return true;
+    }
+    
+    /**
+     * Writes a path element with the path data in pathData.
+     * @param attributes The names and values of the style attributes.
+     */
+    private void writePathElement(List<String[]> attributes,
+            XMLStreamWriter writer, int depth) throws XMLStreamException {
+        newLine(writer, depth);
+        writer.writeEmptyElement("path");
+        for (int i = 0; i < attributes.size(); i++) {
+            String[] attribute = attributes.get(i);
+            writer.writeAttribute(attribute[0], attribute[1]);
+        }
+        writer.writeAttribute("d", pathData.toString());
+    }
+    
+    /**
+     * Returns the names and values of the attributes of a path element for a
+     * VectorSymbol.
+     */
+    private List<String[]> symbolAttributes(VectorSymbol vectorSymbol) {
+        List<String[]> attributes = new ArrayList<String[]>();
         if (vectorSymbol != null) {
             if (this.useCSSStyles)
-                pathElement.setAttribute("style", this.symbolToCSS(vectorSymbol));
+                attributes.add(new String[]{"style", this.symbolToCSS(vectorSymbol)});
             else {
                 String strokeColor = vectorSymbol.isStroked() ?
                     ColorUtils.colorToCSSString(vectorSymbol.getStrokeColor())
                     : "none";
-                pathElement.setAttribute("stroke", strokeColor);
+                attributes.add(new String[]{"stroke", strokeColor});
                 
                 String fillColor = vectorSymbol.isFilled() ?
                     ColorUtils.colorToCSSString(vectorSymbol.getFillColor())
                     : "none";
-                pathElement.setAttribute("fill", fillColor);
+                attributes.add(new String[]{"fill", fillColor});
                 
                 if (vectorSymbol.isFillTransparent()) {
                     String fillOpacity =  
                             Float.toString(vectorSymbol.getFillTransparency() / 255.f);
-                    pathElement.setAttribute("fill-opacity", fillOpacity);
+                    attributes.add(new String[]{"fill-opacity", fillOpacity});
                 }
                 double strokeWidth = this.dimToPageRoundedPx(
                         vectorSymbol.getScaledStrokeWidth(this.getDisplayMapScale()));
                 if (strokeWidth <= 0)
                     strokeWidth = 1;
-                pathElement.setAttribute("stroke-width", Double.toString(strokeWidth));
+                attributes.add(new String[]{"stroke-width", Double.toString(strokeWidth)});
+            }
+        }
+        return attributes;
+    }
+    
+    /**
+     * Creates a sink that writes stones to a SVG file while they are
+     * generated. The page format must be set before the sink is created.
+     * @param filePath Path to the SVG file.
+     * @return The new sink.
+     * @throws java.io.IOException Throws an exception if the file cannot be created.
+     */
+    public StoneSink createStoneSink(String filePath) throws IOException {
+        if (this.pageFormat == null)
+            throw new IllegalStateException("page format not set");
+        OutputStream outputStream = new FileOutputStream(filePath);
+        try {
+            return new SVGStoneSink(filePath, outputStream);
+        } catch (IOException e) {
+            outputStream.close();
+            throw e;
+        }
+    }
+    
+    /**
+     * Writes a path element for each stone to a g element.
+     */
+    private final class SVGStoneSink implements StoneSink {
+        
+        private final String filePath;
+        private final OutputStream outputStream;
+        private final XMLStreamWriter writer;
+        private boolean closed = false;
+        
+        private SVGStoneSink(String filePath, OutputStream outputStream) throws IOException {
+            this.filePath = filePath;
+            this.outputStream = outputStream;
+            try {
+                writer = createXMLStreamWriter(outputStream);
+                writtenStoneTemplates.clear();
+                writeSVGRootElement(null, writer);
+                writeDescription(writer);
+                newLine(writer, 1);
+                writer.writeStartElement("g");
+            } catch (XMLStreamException e) {
+                throw toIOException(e);
             }
         }
-        pathElement.setAttribute("d", svgPath);
         
-        return pathElement;
+        public void addStones(StoneStore stones) throws IOException {
+            if (this.closed)
+                throw new IllegalStateException("sink is closed");
+            try {
+                writeStoneStore(stones, writer, 2);
+            } catch (XMLStreamException e) {
+                throw toIOException(e);
+            }
+        }
+        
+        public void close() throws IOException {
+            if (this.closed)
+                return;
+            this.closed = true;
+            try {
+                newLine(writer, 1);
+                writer.writeEndElement(); // g
+                endSVGRootElement(writer);
+                writer.close();
+                outputStream.flush();
+            } catch (XMLStreamException e) {
+                throw toIOException(e);
+            } finally {
+                outputStream.close();
+            }
+        }
+        
+        public void abort() throws IOException {
+            if (this.closed)
+                return;
+            this.closed = true;
+            try {
+                outputStream.close();
+            } finally {
+                FileUtils.deleteFile(filePath);
+            }
+        }
     }
     
-    private String convertPathIteratorToSVG(GeoPathIterator iterator){
+    private static IOException toIOException(XMLStreamException e) {
+        String msg = e.getMessage() != null ? e.getMessage() : e.getClass().toString();
+        return new IOException("Export to SVG not possible. " + msg);
+    }
+    
+    /**
+     * Converts a path to SVG path data in pathData.
+     */
+    private void convertPathIteratorToSVG(GeoPathIterator iterator){
 
-        StringBuffer str = new StringBuffer();
+        pathData.setLength(0);
         do {
             final int type = iterator.getInstruction();
             switch (type) {
                 case GeoPathModel.CLOSE:
-                    str.append(" z");
+                    pathData.append('z');
                     break;
                     
                 case GeoPathModel.MOVETO:
-                    str.append(" M");
-                    str.append(this.xToPageRoundedPx(iterator.getX()));
-                    str.append(" ");
-                    str.append(this.yToPageRoundedPx(iterator.getY()));
+                    pathData.append('M');
+                    appendPoint(iterator.getX(), iterator.getY());
                     break;
                     
                 case GeoPathModel.LINETO:
-                    str.append(" L");
-                    str.append(this.xToPageRoundedPx(iterator.getX()));
-                    str.append(" ");
-                    str.append(this.yToPageRoundedPx(iterator.getY()));
+                    pathData.append('L');
+                    appendPoint(iterator.getX(), iterator.getY());
                     break;
                     
                 case GeoPathModel.QUADCURVETO:
-                    str.append(" Q");
-                    str.append(this.xToPageRoundedPx(iterator.getX()));
-                    str.append(" ");
-                    str.append(this.yToPageRoundedPx(iterator.getY()));
-                    str.append(" ");
-                    str.append(this.xToPageRoundedPx(iterator.getX2()));
-                    str.append(" ");
-                    str.append(this.yToPageRoundedPx(iterator.getY2()));
+                    pathData.append('Q');
+                    appendPoint(iterator.getX(), iterator.getY());
+                    pathData.append(' ');
+                    appendPoint(iterator.getX2(), iterator.getY2());
                     break;
                     
                 case GeoPathModel.CURVETO:
-                    str.append(" C");
-                    str.append(this.xToPageRoundedPx(iterator.getX()));
-                    str.append(" ");
-                    str.append(this.yToPageRoundedPx(iterator.getY()));
-                    str.append(" ");
-                    str.append(this.xToPageRoundedPx(iterator.getX2()));
-                    str.append(" ");
-                    str.append(this.yToPageRoundedPx(iterator.getY2()));
-                    str.append(" ");
-                    str.append(this.xToPageRoundedPx(iterator.getX3()));
-                    str.append(" ");
-                    str.append(this.yToPageRoundedPx(iterator.getY3()));
+                    pathData.append('C');
+                    appendPoint(iterator.getX(), iterator.getY());
+                    pathData.append(' ');
+                    appendPoint(iterator.getX2(), iterator.getY2());
+                    pathData.append(' ');
+                    appendPoint(iterator.getX3(), iterator.getY3());
                     break;
             }
         } while (iterator.next());
-        
-        return str.toString();
+    }
+    
+    /**
+     * Appends a point in page coordinates to pathData.
+     */
+    private void appendPoint(double x, double y) {
+        appendCoordinate(pathData, this.xToPagePx(x));
+        pathData.append(' ');
+        appendCoordinate(pathData, this.yToPagePx(y));
+    }
+    
+    /**
+     * Appends a coordinate rounded to two decimals without trailing zeros,
+     * which is more compact than Double.toString and does not create a
+     * String. 12.50 is appended as 12.5, and 3.00 as 3.
+     */
+    static void appendCoordinate(StringBuilder str, double px) {
+        appendDecimal(str, px, 2);
+    }
+    
+    /**
+     * Appends a number rounded to a number of decimals without trailing zeros.
+     * @param str The destination.
+     * @param v The number to append.
+     * @param decimals The number of decimals, between 0 and 9.
+     */
+    static void appendDecimal(StringBuilder str, double v, int decimals) {
+        long factor = 1;
+        for (int i = 0; i < decimals; i++)
+            factor *= 10;
+        long n = Math.round(v * factor);
+        if (n < 0) {
+            str.append('-');
+            n = -n;
+        }
+        str.append(n / factor);
+        long fraction = n % factor;
+        if (fraction != 0) {
+            str.append('.');
+            for (long f = factor / 10; fraction != 0; f /= 10) {
+                str.append((char) ('0' + fraction / f));
+                fraction %= f;
+            }
+        }
     }
     
     /**
@@ -7,6 +7,8 @@
 
 package ika.geoexport;
 
+import ika.app.StoneSink;
+import ika.app.StoneStore;
 import ika.geo.GeoSet;
 import ika.table.DBFExporter;
 import ika.table.TableLink;
@@ -19,7 +21,8 @@ import java.io.OutputStream;
  *
  * @author Bernhard Jenny, Institute of Cartography, ETH Zurich.
  */
-public class ShapeExporter extends GeoSetExporter implements TableLinkExporter {
+public class ShapeExporter extends GeoSetExporter
+        implements TableLinkExporter, StoneSinkExporter {
     
     private ShapeGeometryExporter shapeGeometryExporter = new ShapeGeometryExporter();
     
@@ -75,6 +78,37 @@ public class ShapeExporter extends GeoSetExporter implements TableLinkExporter {
         }
     }
     
+    /**
+     * Creates a sink that writes stones to a shp file and a shx file while
+     * they are generated, and writes a dbf file with an ID column when the
+     * sink is closed. Stones are written as polygons unless another shape
+     * type has been set.
+     * @param filePath path to the shp file
+     * @return the new sink
+     */
+    public StoneSink createStoneSink(final String filePath) throws IOException {
+        if (!this.shapeTypeSet)
+            shapeGeometryExporter.setShapeType(ShapeGeometryExporter.POLYGON_SHAPE_TYPE);
+        final StoneSink shapeSink = shapeGeometryExporter.createStoneSink(filePath);
+        return new StoneSink() {
+            
+            public void addStones(StoneStore stones) throws IOException {
+                shapeSink.addStones(stones);
+            }
+            
+            public void abort() throws IOException {
+                shapeSink.abort();
+            }
+            
+            public void close() throws IOException {
+                shapeSink.close();
+                String dbfPath = ika.utils.FileUtils.replaceExtension(filePath, "dbf");
+                new DBFExporter().exportIDTable(new FileOutputStream(dbfPath),
+                        getFeatureCount());
+            }
+        };
+    }
+    
     /**
      * Overwrite setBezierConversionTolerance to propagate bezierConversionTolerance
      * to private ShapeGeometryExporter.
@@ -6,7 +6,8 @@
  */
 package ika.geoexport;
 
-import ika.app.ScreeGenerator;
+import ika.app.StoneSink;
+import ika.app.StoneStore;
 import ika.utils.LittleEndianOutputStream;
 import ika.geo.GeoObject;
 import ika.geo.GeoPath;
@@ -17,8 +18,11 @@ import ika.geo.GeoSet;
 import java.awt.geom.Rectangle2D;
 import java.io.BufferedOutputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
 import ika.utils.MixedEndianDataOutputStream;
 import java.util.ArrayList;
 
@@ -27,7 +31,8 @@ import java.util.ArrayList;
  *
  * @author Bernhard Jenny, Institute of Cartography, ETH Zurich
  */
-public class ShapeGeometryExporter extends GeoSetExporter {
+public class ShapeGeometryExporter extends GeoSetExporter
+        implements StoneSinkExporter {
 
     /**
      * Write points.
@@ -61,7 +66,7 @@ public class ShapeGeometryExporter extends GeoSetExporter {
      * information is needed to generate the shx file, which is required by the
      * specification.
      */
-    private ArrayList shxRecords = new ArrayList();
+    private final ArrayList<Integer> shxRecords = new ArrayList<>();
 
     /**
      * Creates a new instance of ShapeGeometryExporter
@@ -89,7 +94,7 @@ public class ShapeGeometryExporter extends GeoSetExporter {
         MixedEndianDataOutputStream geom = new MixedEndianDataOutputStream(buffOs);
         this.writeGeoSet(geom, geoSet);
         // add total size of geometry to shx records
-        this.shxRecords.add(new Integer(geom.size()));
+        this.shxRecords.add(geom.size());
 
         // Close the ByteArrayOutputStream.
         // This is not closing the destination outputStream
@@ -115,8 +120,21 @@ public class ShapeGeometryExporter extends GeoSetExporter {
             MixedEndianDataOutputStream mos,
             int dataSize)
             throws IOException {
+        writeHeader(geoSet.getBounds2D(GeoObject.UNDEFINED_SCALE), mos, dataSize);
+    }
 
-        Rectangle2D bbox = geoSet.getBounds2D(GeoObject.UNDEFINED_SCALE);
+    /**
+     * Writes the file header.
+     *
+     * @param bbox The bounding box of all shapes.
+     * @param mos The stream to write to.
+     * @dataSize The header contains a file length field. dataSize is in bytes,
+     * not including the header size.
+     */
+    private void writeHeader(Rectangle2D bbox,
+            MixedEndianDataOutputStream mos,
+            int dataSize)
+            throws IOException {
 
         mos.writeInt(9994);                 // file code
         for (int i = 0; i < 5; i++) // unused
@@ -177,22 +195,22 @@ public class ShapeGeometryExporter extends GeoSetExporter {
             }
 
             // Scree Painter hack
-            if (geoObject instanceof ScreeGenerator.Stone) {
-                geoObject = ((ScreeGenerator.Stone) geoObject).toGeoPath();
-            }
-
-            if (geoObject instanceof GeoPath
+            if (geoObject instanceof StoneStore
+                    && (this.shapeType == POLYGON_SHAPE_TYPE
+                    || this.shapeType == POLYLINE_SHAPE_TYPE)) {
+                writeStoneStore(mos, (StoneStore) geoObject);
+            } else if (geoObject instanceof GeoPath
                     && (this.shapeType == POLYGON_SHAPE_TYPE
                     || this.shapeType == POLYLINE_SHAPE_TYPE)) {
                 GeoPath geoPath = (GeoPath) geoObject;
                 if (!geoPath.hasOneOrMorePoints()) {
                     continue;
                 }
-                this.shxRecords.add(new Integer(mos.size()));
+                this.shxRecords.add(mos.size());
                 writePolyline(mos, geoPath);
             } else if (geoObject instanceof GeoPoint
                     && this.shapeType == POINT_SHAPE_TYPE) {
-                this.shxRecords.add(new Integer(mos.size()));
+                this.shxRecords.add(mos.size());
                 writePoint(mos, (GeoPoint) geoObject);
             } else if (geoObject instanceof GeoSet) {
                 this.writeGeoSet(mos, (GeoSet) geoObject);
@@ -213,6 +231,196 @@ public class ShapeGeometryExporter extends GeoSetExporter {
         mos.writeLittleEndianDouble(y);     // y coordinate
     }
 
+    /**
+     * Writes the closed outlines of scree stones to a stream, one record per
+     * stone. The corners are read from the arrays of the StoneStore without
+     * creating GeoPaths.
+     */
+    private void writeStoneStore(MixedEndianDataOutputStream mos,
+            StoneStore stones) throws IOException {
+
+        Rectangle2D bbox = new Rectangle2D.Double();
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        LittleEndianOutputStream los = new LittleEndianOutputStream(bos);
+        final int stonesCount = stones.getStonesCount();
+        for (int i = 0; i < stonesCount; i++) {
+            if (stones.getCornersCount(i) == 0) {
+                continue;
+            }
+            this.shxRecords.add(mos.size());
+            writeStone(mos, stones, i, bbox, bos, los);
+        }
+    }
+
+    /**
+     * Writes the closed outline of a scree stone to a stream.
+     *
+     * @param mos The destination stream.
+     * @param stones The stones.
+     * @param stone The index of the stone to write. The stone must have corners.
+     * @param bbox Receives the bounding box of the stone.
+     * @param bos A buffer for the record content.
+     * @param los A stream writing to bos.
+     * @return The length of the record content in bytes.
+     */
+    private int writeStone(MixedEndianDataOutputStream mos, StoneStore stones,
+            int stone, Rectangle2D bbox, ByteArrayOutputStream bos,
+            LittleEndianOutputStream los) throws IOException {
+        final int cornersCount = stones.getCornersCount(stone);
+        stones.getStoneBounds(stone, bbox);
+        bos.reset();
+        los.writeInt(this.shapeType);       // polyline or polygon
+        los.writeDouble(bbox.getMinX());    // xmin
+        los.writeDouble(bbox.getMinY());    // ymin
+        los.writeDouble(bbox.getMaxX());    // xmax
+        los.writeDouble(bbox.getMaxY());    // ymax
+        los.writeInt(1);                    // number of parts
+        los.writeInt(cornersCount + 1);     // number of points
+        los.writeInt(0);                    // first point of the part
+
+        // the first point is repeated to close the polygon
+        for (int j = 0; j <= cornersCount; j++) {
+            los.writeDouble(stones.getCornerX(stone, j % cornersCount));
+            los.writeDouble(stones.getCornerY(stone, j % cornersCount));
+        }
+        los.flush();
+        this.writeRecordHeader(mos, bos.size());
+        bos.writeTo(mos);
+        return bos.size();
+    }
+
+    /**
+     * Creates a sink that writes the outlines of stones to a shp file and a
+     * shx file while the stones are generated. The shx file is written next to
+     * the shp file. The headers of both files are written when the sink is
+     * closed. Stones are written as polylines or polygons, depending on the
+     * shape type.
+     *
+     * @param filePath path to the shp file
+     * @return the new sink
+     * @throws IOException if the files cannot be created
+     */
+    @Override
+    public StoneSink createStoneSink(String filePath) throws IOException {
+        if (this.shapeType == POINT_SHAPE_TYPE) {
+            throw new IllegalStateException("stones cannot be written as points");
+        }
+        return new ShapeStoneSink(filePath);
+    }
+
+    /**
+     * Writes records for stones to the shp file and the shx file, starting
+     * with placeholders for the file headers.
+     */
+    private final class ShapeStoneSink implements StoneSink {
+
+        private static final int HEADER_SIZE = 100;
+
+        private final String shpPath;
+        private final String shxPath;
+        private MixedEndianDataOutputStream shp;
+        private MixedEndianDataOutputStream shx;
+
+        /**
+         * bounding box of all written stones, null if no stone is written
+         */
+        private Rectangle2D extent;
+
+        private final Rectangle2D bbox = new Rectangle2D.Double();
+        private final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        private final LittleEndianOutputStream los = new LittleEndianOutputStream(bos);
+
+        private ShapeStoneSink(String shpPath) throws IOException {
+            this.shpPath = shpPath;
+            this.shxPath = ika.utils.FileUtils.replaceExtension(shpPath, "shx");
+            recordCounter = 1;
+            shxRecords.clear();
+            shp = new MixedEndianDataOutputStream(new BufferedOutputStream(
+                    new FileOutputStream(shpPath)));
+            try {
+                shx = new MixedEndianDataOutputStream(new BufferedOutputStream(
+                        new FileOutputStream(shxPath)));
+            } catch (IOException exc) {
+                shp.close();
+                throw exc;
+            }
+            shp.write(new byte[HEADER_SIZE]);
+            shx.write(new byte[HEADER_SIZE]);
+        }
+
+        @Override
+        public void addStones(StoneStore stones) throws IOException {
+            if (shp == null) {
+                throw new IllegalStateException("sink is closed");
+            }
+            final int stonesCount = stones.getStonesCount();
+            for (int i = 0; i < stonesCount; i++) {
+                if (stones.getCornersCount(i) == 0) {
+                    continue;
+                }
+                final int offset = shp.size();
+                final int contentLength = writeStone(shp, stones, i, bbox, bos, los);
+                shx.writeInt(offset / 2);           // offset in 16 bit words
+                shx.writeInt(contentLength / 2);    // content length
+                if (extent == null) {
+                    extent = (Rectangle2D) bbox.clone();
+                } else {
+                    extent.add(bbox);
+                }
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (shp == null) {
+                return;
+            }
+            final int shpSize = shp.size() - HEADER_SIZE;
+            final int shxSize = shx.size() - HEADER_SIZE;
+            try {
+                shp.close();
+            } finally {
+                shp = null;
+                shx.close();
+            }
+            Rectangle2D bounds = extent != null ? extent : new Rectangle2D.Double();
+            writeHeaderAtStart(shpPath, bounds, shpSize);
+            writeHeaderAtStart(shxPath, bounds, shxSize);
+        }
+
+        @Override
+        public void abort() throws IOException {
+            if (shp == null) {
+                return;
+            }
+            try {
+                shp.close();
+            } finally {
+                shp = null;
+                try {
+                    shx.close();
+                } finally {
+                    ika.utils.FileUtils.deleteFile(shpPath);
+                    ika.utils.FileUtils.deleteFile(shxPath);
+                }
+            }
+        }
+
+        /**
+         * Replaces the placeholder for the header at the start of a file.
+         */
+        private void writeHeaderAtStart(String path, Rectangle2D bounds,
+                int dataSize) throws IOException {
+            ByteArrayOutputStream header = new ByteArrayOutputStream(HEADER_SIZE);
+            MixedEndianDataOutputStream mos = new MixedEndianDataOutputStream(header);
+            writeHeader(bounds, mos, dataSize);
+            mos.flush();
+            try (RandomAccessFile file = new RandomAccessFile(path, "rw")) {
+                file.getChannel().write(ByteBuffer.wrap(header.toByteArray()), 0);
+            }
+        }
+    }
+
     /**
      * Writes a path to a stream. The points of a polygon without holes must be
      * in clockwise direction. The first and last point of a polygon must be
@@ -320,8 +528,8 @@ public class ShapeGeometryExporter extends GeoSetExporter {
         // write the records
         final int recordsCount = this.shxRecords.size();
         for (int i = 0; i < recordsCount - 1; i++) {
-            final int offset = ((Integer) this.shxRecords.get(i)).intValue();
-            final int nextOffset = ((Integer) this.shxRecords.get(i + 1)).intValue();
+            final int offset = this.shxRecords.get(i);
+            final int nextOffset = this.shxRecords.get(i + 1);
             final int contentLength = nextOffset - offset;
             mos.writeInt(offset / 2 + 50);  // + 50 for the file header
             mos.writeInt(contentLength / 2 - 4);
@@ -360,6 +568,8 @@ public class ShapeGeometryExporter extends GeoSetExporter {
         GeoObject firstGeoObj = geoSet.getFirstGeoObject(GeoSet.class, true, false);
         if (firstGeoObj instanceof GeoPoint) {
             shapeType = POINT_SHAPE_TYPE;
+        } else if (firstGeoObj instanceof StoneStore) {
+            shapeType = POLYGON_SHAPE_TYPE;
         } else if (firstGeoObj instanceof GeoPath) {
             GeoPath geoPath = (GeoPath) firstGeoObj;
             shapeType = geoPath.isClosed() ? POLYGON_SHAPE_TYPE : POLYLINE_SHAPE_TYPE;
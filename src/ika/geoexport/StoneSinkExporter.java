@@ -0,0 +1,25 @@
+package ika.geoexport;
+
+import ika.app.StoneSink;
+import java.io.IOException;
+
+/**
+ * An exporter that can write scree stones to a file while they are
+ * generated. The exporter must be configured before the sink is created.
+ *
+ * @author Bernhard Jenny, School of Mathematical and Geospatial Sciences, RMIT
+ * University, Melbourne
+ */
+public interface StoneSinkExporter {
+
+    /**
+     * Creates a sink that writes stones to a file. The file is complete when
+     * the sink is closed, and is deleted when the sink is aborted.
+     *
+     * @param filePath path to the file to write. An existing file is
+     * overwritten.
+     * @return the new sink
+     * @throws IOException if the file cannot be created
+     */
+    public StoneSink createStoneSink(String filePath) throws IOException;
+}
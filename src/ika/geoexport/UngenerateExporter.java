@@ -1,6 +1,6 @@
 package ika.geoexport;
 
-import ika.app.ScreeGenerator;
+import ika.app.StoneStore;
 import java.io.*;
 import java.util.*;
 import java.awt.geom.*;
@@ -58,46 +58,16 @@ public class UngenerateExporter extends GeoSetExporter {
             }
 
             // Scree Painter hack
-            if (geoObject instanceof ScreeGenerator.Stone) {
-                geoObject = ((ScreeGenerator.Stone) geoObject).toGeoPath();
-            }
-
-            if (geoObject instanceof GeoPath) {
-                GeoPath geoPath = (GeoPath)geoObject;
-                GeoPathIterator iterator = geoPath.getIterator();
-                double lastMoveToX = Double.NaN;
-                double lastMoveToY = Double.NaN;
-                do {
-                    final int type = iterator.getInstruction();
-                    switch (type) {
-                        case GeoPathModel.CLOSE:
-                            if (iterator.atFirstInstruction())
-                                continue;
-                            writer.print(Double.toString(lastMoveToX));
-                            writer.print("\t");
-                            writer.println(Double.toString(lastMoveToY));
-                            break;
-                        case GeoPathModel.MOVETO:
-                            if (!iterator.atFirstInstruction())
-                                writer.println("end");
-                            writer.println(id++);
-                            lastMoveToX = iterator.getX();
-                            lastMoveToY = iterator.getY();
-                            // fall thru
-                        case GeoPathModel.LINETO:
-                            final double x = iterator.getX();
-                            final Double y = iterator.getY();
-                            writer.print(Double.toString(x));
-                            writer.print("\t");
-                            writer.println(Double.toString(y));
-                            break;
-                            
-                        default:
-                            System.err.println("UngenerateExporter: unsupported path segment");
-                    }
-                } while (iterator.next());
-                
-                writer.println("end");
+            if (geoObject instanceof StoneStore) {
+                StoneStore stones = (StoneStore)geoObject;
+                final int stonesCount = stones.getStonesCount();
+                for (int j = 0; j < stonesCount; j++) {
+                    GeoPath geoPath = stones.toGeoPath(j);
+                    if (geoPath != null)
+                        id = writeGeoPath(geoPath, writer, id);
+                }
+            } else if (geoObject instanceof GeoPath) {
+                id = writeGeoPath((GeoPath)geoObject, writer, id);
             } else if (geoObject instanceof GeoSet) {
                 GeoSet childGeoSet = (GeoSet)geoObject;
                 id = writeLines(childGeoSet, writer, id);
@@ -106,4 +76,45 @@ public class UngenerateExporter extends GeoSetExporter {
         return id;
     }
     
+    /**
+     * An internal helper method that writes a path to a PrintWriter.
+     */
+    private int writeGeoPath(GeoPath geoPath, PrintWriter writer, int id) {
+        GeoPathIterator iterator = geoPath.getIterator();
+        double lastMoveToX = Double.NaN;
+        double lastMoveToY = Double.NaN;
+        do {
+            final int type = iterator.getInstruction();
+            switch (type) {
+                case GeoPathModel.CLOSE:
+                    if (iterator.atFirstInstruction())
+                        continue;
+                    writer.print(Double.toString(lastMoveToX));
+                    writer.print("\t");
+                    writer.println(Double.toString(lastMoveToY));
+                    break;
+                case GeoPathModel.MOVETO:
+                    if (!iterator.atFirstInstruction())
+                        writer.println("end");
+                    writer.println(id++);
+                    lastMoveToX = iterator.getX();
+                    lastMoveToY = iterator.getY();
+                    // fall thru
+                case GeoPathModel.LINETO:
+                    final double x = iterator.getX();
+                    final Double y = iterator.getY();
+                    writer.print(Double.toString(x));
+                    writer.print("\t");
+                    writer.println(Double.toString(y));
+                    break;
+                    
+                default:
+                    System.err.println("UngenerateExporter: unsupported path segment");
+            }
+        } while (iterator.next());
+        
+        writer.println("end");
+        return id;
+    }
+    
 }
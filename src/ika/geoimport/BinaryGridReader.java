@@ -0,0 +1,121 @@
+package ika.geoimport;
+
+import ika.geo.GeoGrid;
+import ika.geoexport.BinaryGridWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Reads a grid in the binary format written by BinaryGridWriter. The values
+ * are not copied: the file is memory-mapped in regions of complete rows, each
+ * smaller than 2 GB, and the GeoGrid reads its values from these regions.
+ * The returned grid therefore does not occupy memory on the Java heap and can
+ * be larger than the largest Java array. Its values cannot be changed.
+ *
+ * @author Bernhard Jenny, School of Mathematical and Geospatial Sciences, RMIT
+ * University, Melbourne
+ */
+public class BinaryGridReader {
+
+    private BinaryGridReader() {
+    }
+
+    /**
+     * Tests whether a file starts with the identifier of the binary grid
+     * format.
+     *
+     * @param filePath path to the file
+     * @return true if the file is a binary grid, false otherwise.
+     */
+    public static boolean isBinaryGrid(String filePath) {
+        File file = new File(filePath);
+        if (!file.isFile() || file.length() < BinaryGridWriter.HEADER_SIZE) {
+            return false;
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            return Integer.reverseBytes(raf.readInt()) == BinaryGridWriter.MAGIC;
+        } catch (IOException exc) {
+            return false;
+        }
+    }
+
+    /**
+     * Maximum number of bytes in a mapped region of the file.
+     */
+    private static final int MAX_REGION_SIZE = Integer.MAX_VALUE;
+
+    /**
+     * Read a grid from a file in binary grid format. The values of the grid
+     * are stored in memory-mapped regions of the file and cannot be changed.
+     *
+     * @param filePath The path to the file to be read.
+     * @return The read grid.
+     * @throws java.io.IOException
+     */
+    public static GeoGrid read(String filePath) throws IOException {
+        File file = new File(filePath);
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+                FileChannel channel = raf.getChannel()) {
+            final long fileSize = channel.size();
+            if (fileSize < BinaryGridWriter.HEADER_SIZE) {
+                throw new IOException("Not a binary grid file.");
+            }
+            ByteBuffer header = ByteBuffer.allocate(BinaryGridWriter.HEADER_SIZE);
+            header.order(ByteOrder.LITTLE_ENDIAN);
+            while (header.hasRemaining()) {
+                if (channel.read(header, header.position()) < 0) {
+                    throw new IOException("Not a binary grid file.");
+                }
+            }
+            header.flip();
+
+            if (header.getInt() != BinaryGridWriter.MAGIC) {
+                throw new IOException("Not a binary grid file.");
+            }
+            final int version = header.getInt();
+            if (version != BinaryGridWriter.VERSION) {
+                throw new IOException("Unsupported binary grid version: " + version);
+            }
+            final int cols = header.getInt();
+            final int rows = header.getInt();
+            final double west = header.getDouble();
+            final double north = header.getDouble();
+            final double cellSize = header.getDouble();
+            if (cols <= 0 || rows <= 0 || !(cellSize > 0)
+                    || cols > MAX_REGION_SIZE / 4) {
+                throw new IOException("Invalid binary grid header.");
+            }
+            if (fileSize != BinaryGridWriter.HEADER_SIZE + 4L * cols * rows) {
+                throw new IOException("Binary grid file has wrong size.");
+            }
+
+            // map regions of complete rows; a mapping remains valid after
+            // the channel is closed
+            final int rowsPerBuffer = Math.min(rows, MAX_REGION_SIZE / 4 / cols);
+            final int buffersCount = (rows + rowsPerBuffer - 1) / rowsPerBuffer;
+            FloatBuffer[] buffers = new FloatBuffer[buffersCount];
+            for (int i = 0; i < buffersCount; i++) {
+                final int firstRow = i * rowsPerBuffer;
+                final int bufferRows = Math.min(rowsPerBuffer, rows - firstRow);
+                final long position = BinaryGridWriter.HEADER_SIZE + 4L * cols * firstRow;
+                buffers[i] = channel.map(FileChannel.MapMode.READ_ONLY,
+                        position, 4L * cols * bufferRows)
+                        .order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer();
+            }
+
+            GeoGrid grid = new GeoGrid(cols, rows, cellSize, buffers);
+            grid.setWest(west);
+            grid.setNorth(north);
+            String name = file.getName();
+            if (!"".equals(name)) {
+                grid.setName(name);
+            }
+            return grid;
+        }
+    }
+}
@@ -1,13 +1,108 @@
 package ika.geoimport;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 import ika.geo.*;
 import ika.gui.ProgressIndicator;
 import ika.utils.StringUtils;
 
 public class ESRIASCIIGridReader {
 
+    /**
+     * Approximate number of bytes parsed by a single task of the parallel
+     * reader.
+     */
+    private static final int BLOCK_SIZE = 4 * 1024 * 1024;
+
+    /**
+     * Powers of ten that are exactly representable as float.
+     */
+    private static final float[] FLOAT_POW10 = {
+        1e0f, 1e1f, 1e2f, 1e3f, 1e4f, 1e5f, 1e6f, 1e7f, 1e8f, 1e9f, 1e10f
+    };
+
+    /**
+     * Largest integer that can be converted to a float without rounding.
+     */
+    private static final long MAX_EXACT_FLOAT_INT = 1L << 24;
+
+    /**
+     * The header of an ESRI ASCII grid file.
+     */
+    private static final class Header {
+
+        int cols = 0;
+        int rows = 0;
+        double west = Double.NaN;
+        double south = Double.NaN;
+        double cellSize = Double.NaN;
+        float noDataValue = Float.NaN;
+
+        /**
+         * Parses a line of the header.
+         *
+         * @param line the line to parse
+         * @return true if the line is part of the header, false if the line is
+         * the first row of the grid.
+         */
+        boolean parse(String line) throws IOException {
+            StringTokenizer tokenizer = new StringTokenizer(line, " \t");
+            String str = tokenizer.nextToken().trim().toLowerCase();
+            if (str.equals("ncols")) {
+                cols = Integer.parseInt(tokenizer.nextToken());
+                if (cols <= 0) {
+                    throw new IOException();
+                }
+            } else if (str.equals("nrows")) {
+                rows = Integer.parseInt(tokenizer.nextToken());
+                if (rows <= 0) {
+                    throw new IOException();
+                }
+            } else if (str.equals("xllcenter") || str.equals("xllcorner")) {
+                west = Double.parseDouble(tokenizer.nextToken());
+            } else if (str.equals("yllcenter") || str.equals("yllcorner")) {
+                south = Double.parseDouble(tokenizer.nextToken());
+            } else if (str.equals("cellsize")) {
+                cellSize = Double.parseDouble(tokenizer.nextToken());
+                if (cellSize <= 0) {
+                    throw new IOException();
+                }
+            } else if (str.startsWith("nodata")) {
+                noDataValue = Float.parseFloat(tokenizer.nextToken());
+            } else {
+                // make sure the line starts with a number
+                if (!StringUtils.isDouble(str)) {
+                    throw new IOException();
+                }
+
+                // finished reading the header
+                // test if valid values have been found
+                if (cols <= 0 || rows <= 0 || cellSize <= 0 || Double.isNaN(cellSize)) {
+                    throw new IOException();
+                }
+                return false;
+            }
+            return true;
+        }
+
+        GeoGrid createGrid() {
+            GeoGrid grid = new GeoGrid(cols, rows, cellSize);
+
+            //orientation = true for horizontal grids
+            grid.setWest(west);
+            grid.setNorth(south + (rows - 1) * cellSize);
+            return grid;
+        }
+    }
+
     /** Read a Grid from a file in ESRI ASCII format.
      * @param fileName The path to the file to be read.
      * @return The read grid.
@@ -53,61 +148,17 @@ public class ESRIASCIIGridReader {
         InputStreamReader isr = new InputStreamReader(input);
         BufferedReader reader = new BufferedReader(isr);
         try {
-            String line, str;
+            String line;
             StringTokenizer tokenizer;
-            int cols = 0;
-            int rows = 0;
-            double west = Double.NaN;
-            double south = Double.NaN;
-            double cellSize = Double.NaN;
-            float noDataValue = Float.NaN;
-
-            while (true) {
+            Header header = new Header();
+            do {
                 line = reader.readLine();
-                tokenizer = new StringTokenizer(line, " \t");
-                str = tokenizer.nextToken().trim().toLowerCase();
-                if (str.equals("ncols")) {
-                    cols = Integer.parseInt(tokenizer.nextToken());
-                    if (cols <= 0) {
-                        throw new IOException();
-                    }
-                } else if (str.equals("nrows")) {
-                    rows = Integer.parseInt(tokenizer.nextToken());
-                    if (rows <= 0) {
-                        throw new IOException();
-                    }
-                } else if (str.equals("xllcenter") || str.equals("xllcorner")) {
-                    west = Double.parseDouble(tokenizer.nextToken());
-                } else if (str.equals("yllcenter") || str.equals("yllcorner")) {
-                    south = Double.parseDouble(tokenizer.nextToken());
-                } else if (str.equals("cellsize")) {
-                    cellSize = Double.parseDouble(tokenizer.nextToken());
-                    if (cellSize <= 0) {
-                        throw new IOException();
-                    }
-                } else if (str.startsWith("nodata")) {
-                    noDataValue = Float.parseFloat(tokenizer.nextToken());
-                } else {
-                    // make sure the line starts with a number
-                    if (!StringUtils.isDouble(str)) {
-                        throw new IOException();
-                    }
-
-                    // finished reading the header
-                    break;
-                }
-            }
-
-            // test if valid values have been found
-            if (cols <= 0 || rows <= 0 || cellSize <= 0 || Double.isNaN(cellSize)) {
-                throw new IOException();
-            }
-
-            GeoGrid grid = new GeoGrid(cols, rows, cellSize);
+            } while (header.parse(line));
+            final int cols = header.cols;
+            final int rows = header.rows;
+            final float noDataValue = header.noDataValue;
 
-            //orientation = true for horizontal grids
-            grid.setWest(west);
-            grid.setNorth(south + (rows - 1) * cellSize);
+            GeoGrid grid = header.createGrid();
 
             // read values of grid. Rows are stored from top to bottom in the file.
             for (int row = 0; row < rows; row++) {
@@ -143,4 +194,269 @@ public class ESRIASCIIGridReader {
         }
 
     }
-}
\ No newline at end of file
+
+    /**
+     * Read a Grid from a file in ESRI ASCII format with a parallel parser.
+     * The file is memory-mapped, the start of each row is located, and blocks
+     * of rows are parsed concurrently. Numbers are parsed directly from the
+     * bytes of the file. The resulting grid is identical to the grid returned
+     * by read(). Each row of the grid must be on a separate line.
+     *
+     * @param filePath The path to the file to be read.
+     * @param threads The number of threads parsing rows, 1 or larger.
+     * @param progressIndicator A WorkerProgress to inform about the progress.
+     * @return The read grid.
+     */
+    public static GeoGrid readParallel(String filePath, int threads,
+            ProgressIndicator progressIndicator) throws IOException {
+
+        if (threads < 1) {
+            throw new IllegalArgumentException("Invalid number of threads: " + threads);
+        }
+
+        File file = new File(filePath);
+        final MappedByteBuffer buffer;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+                FileChannel channel = raf.getChannel()) {
+            // a single buffer cannot map files larger than 2 GB
+            if (channel.size() > Integer.MAX_VALUE) {
+                return read(filePath, progressIndicator);
+            }
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+
+        // initialize the progress monitor at the beginning
+        if (progressIndicator != null) {
+            progressIndicator.start();
+        }
+
+        // read the header up to the first row of the grid
+        Header header = new Header();
+        int rowStart = 0;
+        while (true) {
+            int lineEnd = findLineEnd(buffer, rowStart);
+            if (rowStart >= buffer.limit()) {
+                throw new IOException("Missing grid values.");
+            }
+            // remove the carriage return of Windows line endings
+            int length = lineEnd - rowStart;
+            if (length > 0 && buffer.get(rowStart + length - 1) == '\r') {
+                --length;
+            }
+            byte[] bytes = new byte[length];
+            ((ByteBuffer) buffer.duplicate().position(rowStart)).get(bytes);
+            if (!header.parse(new String(bytes, StandardCharsets.US_ASCII))) {
+                break;
+            }
+            rowStart = lineEnd + 1;
+        }
+        final int rows = header.rows;
+
+        // locate the start of each row
+        final int[] rowStarts = new int[rows + 1];
+        for (int row = 0; row < rows; row++) {
+            if (rowStart >= buffer.limit()) {
+                throw new IOException("The grid has fewer rows than specified.");
+            }
+            rowStarts[row] = rowStart;
+            rowStart = findLineEnd(buffer, rowStart) + 1;
+        }
+        rowStarts[rows] = Math.min(rowStart, buffer.limit());
+
+        // parse blocks of rows concurrently
+        final GeoGrid grid = header.createGrid();
+        ArrayList<Future<Void>> futures = new ArrayList<>();
+        ArrayList<Integer> blockEnds = new ArrayList<>();
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            int firstRow = 0;
+            while (firstRow < rows) {
+                int lastRow = firstRow + 1;
+                while (lastRow < rows && rowStarts[lastRow] - rowStarts[firstRow] < BLOCK_SIZE) {
+                    ++lastRow;
+                }
+                final int blockFirstRow = firstRow;
+                final int blockEndRow = lastRow;
+                futures.add(pool.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws IOException {
+                        parseRows(buffer, rowStarts, blockFirstRow, blockEndRow,
+                                grid, header.noDataValue);
+                        return null;
+                    }
+                }));
+                blockEnds.add(lastRow);
+                firstRow = lastRow;
+            }
+
+            for (int i = 0; i < futures.size(); i++) {
+                futures.get(i).get();
+                if (progressIndicator != null) {
+                    int percentage = (int) ((double) blockEnds.get(i) / rows * 100);
+                    if (!progressIndicator.progress(percentage)) {
+                        return null;
+                    }
+                }
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException(ex);
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException(cause);
+        } finally {
+            pool.shutdownNow();
+        }
+
+        String name = file.getName();
+        if (!"".equals(name)) {
+            grid.setName(name);
+        }
+        return grid;
+    }
+
+    /**
+     * Read a Grid from a file in ESRI ASCII format with a parallel parser
+     * using all available processors.
+     *
+     * @param filePath The path to the file to be read.
+     * @param progressIndicator A WorkerProgress to inform about the progress.
+     * @return The read grid.
+     */
+    public static GeoGrid readParallel(String filePath,
+            ProgressIndicator progressIndicator) throws IOException {
+        return readParallel(filePath, Runtime.getRuntime().availableProcessors(),
+                progressIndicator);
+    }
+
+    /**
+     * Returns the position of the next new line character or the end of the
+     * buffer.
+     */
+    private static int findLineEnd(ByteBuffer buffer, int start) {
+        final int limit = buffer.limit();
+        int i = start;
+        while (i < limit && buffer.get(i) != '\n') {
+            ++i;
+        }
+        return i;
+    }
+
+    private static boolean isSeparator(byte b) {
+        return b == ' ' || b == '\t' || b == '\r' || b == '\n';
+    }
+
+    /**
+     * Parses a block of rows and stores the values in the grid.
+     *
+     * @param buffer the content of the file
+     * @param rowStarts the position of the first character of each row
+     * @param firstRow the first row to parse
+     * @param endRow the row after the last row to parse
+     * @param grid the grid receiving the values
+     * @param noDataValue the value marking void cells
+     */
+    private static void parseRows(ByteBuffer buffer, int[] rowStarts,
+            int firstRow, int endRow, GeoGrid grid, float noDataValue)
+            throws IOException {
+        final int blockStart = rowStarts[firstRow];
+        byte[] bytes = new byte[rowStarts[endRow] - blockStart];
+        ByteBuffer block = buffer.duplicate();
+        block.position(blockStart);
+        block.get(bytes);
+
+        final int cols = grid.getCols();
+        float[] values = grid.getData();
+        for (int row = firstRow; row < endRow; row++) {
+            final int end = rowStarts[row + 1] - blockStart;
+            final int rowOffset = row * cols;
+            int i = rowStarts[row] - blockStart;
+            for (int col = 0; col < cols; col++) {
+                while (i < end && isSeparator(bytes[i])) {
+                    ++i;
+                }
+                final int tokenStart = i;
+                while (i < end && !isSeparator(bytes[i])) {
+                    ++i;
+                }
+                if (tokenStart == i) {
+                    throw new IOException("Row " + (row + 1) + " has "
+                            + col + " values instead of " + cols + ".");
+                }
+                final float v = parseFloat(bytes, tokenStart, i);
+                values[rowOffset + col] = v == noDataValue ? Float.NaN : v;
+            }
+        }
+    }
+
+    /**
+     * Converts characters to a float. Simple decimal numbers with up to seven
+     * significant digits and up to ten fractional digits are converted
+     * directly: the digits and the power of ten are exact floats, so a single
+     * float division is correctly rounded and identical to
+     * Float.parseFloat. All other numbers are converted with
+     * Float.parseFloat.
+     *
+     * @param bytes characters
+     * @param start first character of the number
+     * @param end position after the last character of the number
+     * @return the number
+     */
+    private static float parseFloat(byte[] bytes, int start, int end) {
+        int i = start;
+        boolean negative = false;
+        if (bytes[i] == '-' || bytes[i] == '+') {
+            negative = bytes[i] == '-';
+            ++i;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int fractionDigits = 0;
+        boolean fraction = false;
+        for (; i < end; i++) {
+            final byte b = bytes[i];
+            if (b >= '0' && b <= '9') {
+                if (++digits > 18) {
+                    return slowParseFloat(bytes, start, end);
+                }
+                mantissa = mantissa * 10 + (b - '0');
+                if (fraction) {
+                    ++fractionDigits;
+                }
+            } else if (b == '.' && !fraction) {
+                fraction = true;
+            } else {
+                // exponents, NaN, Infinity, etc.
+                return slowParseFloat(bytes, start, end);
+            }
+        }
+        if (digits == 0) {
+            return slowParseFloat(bytes, start, end);
+        }
+
+        // remove trailing zeros of the fraction
+        while (fractionDigits > 0 && mantissa % 10 == 0) {
+            mantissa /= 10;
+            --fractionDigits;
+        }
+        if (mantissa > MAX_EXACT_FLOAT_INT || fractionDigits >= FLOAT_POW10.length) {
+            return slowParseFloat(bytes, start, end);
+        }
+        final float v = (float) mantissa / FLOAT_POW10[fractionDigits];
+        return negative ? -v : v;
+    }
+
+    private static float slowParseFloat(byte[] bytes, int start, int end) {
+        return Float.parseFloat(new String(bytes, start, end - start,
+                StandardCharsets.US_ASCII));
+    }
+}
@@ -42,6 +42,13 @@ public class ImageImporter extends GeoImporter {
      * file has been found. use isGeoreferenced() to access this flag.
      */
     private boolean georeferenced = false;
+    /**
+     * Images with at least this number of pixels are memory-mapped instead
+     * of read into a BufferedImage, if the file is an uncompressed 8-bit gray
+     * TIFF or PGM file. Mapped images are not loaded into memory. Use 0 to
+     * map all supported files, and Long.MAX_VALUE to never map files.
+     */
+    private long mappingPixelsThreshold = 64L * 1024 * 1024;
 
     /** Creates a new instance of ImageImporter */
     public ImageImporter() {
@@ -50,6 +57,12 @@ public class ImageImporter extends GeoImporter {
     @Override
     protected GeoImage importData(java.net.URL url) throws IOException {
 
+        // map large uncompressed gray images instead of reading them
+        GeoImage mappedGeoImage = this.importMappedImage(url);
+        if (mappedGeoImage != null) {
+            return mappedGeoImage;
+        }
+
         // read the image into a BufferedImage
         MetaBufferedImage metaBufferedImage = this.readImage(url);
         if (metaBufferedImage == null) // if the user cancels, null is returned
@@ -101,6 +114,37 @@ public class ImageImporter extends GeoImporter {
         return geoImage;
     }
 
+    /**
+     * Maps an image file if it is a large image that can be mapped.
+     * @return The mapped image, or null if the image is not mapped.
+     */
+    private GeoImage importMappedImage(java.net.URL url) throws IOException {
+        if (mappingPixelsThreshold == Long.MAX_VALUE
+                || !"file".equals(url.getProtocol())) {
+            return null;
+        }
+        File file;
+        try {
+            file = new File(url.toURI());
+        } catch (URISyntaxException exc) {
+            return null;
+        }
+        MappedGrayImage mappedImage = MappedGrayImageReader.read(file);
+        if (mappedImage == null || (long) mappedImage.getCols()
+                * mappedImage.getRows() < mappingPixelsThreshold) {
+            return null;
+        }
+
+        GeoImage geoImage = new GeoImage(mappedImage, url);
+        geoImage.setName(ika.utils.FileUtils.getFileNameWithoutExtension(url.getPath()));
+        URL worldFileURL = WorldFileImporter.searchWorldFile(url);
+        this.georeferenced = worldFileURL != null;
+        if (worldFileURL != null) {
+            WorldFileImporter.readWorldFile(geoImage, worldFileURL);
+        }
+        return geoImage;
+    }
+
     @Override
     public String getImporterName() {
         return "Image Importer";
@@ -192,6 +236,16 @@ public class ImageImporter extends GeoImporter {
             return url;
         }
 
+        // the TIFF reader of jai_imageio cannot read BigTIFF files, but they
+        // can be mapped
+        try {
+            if ("file".equals(url.getProtocol())
+                    && MappedGrayImageReader.canRead(new File(url.toURI()))) {
+                return url;
+            }
+        } catch (URISyntaxException exc) {
+        }
+
         return null;
     }
 
@@ -235,6 +289,17 @@ public class ImageImporter extends GeoImporter {
         this.optimizeForDisplay = optimizeForDisplay;
     }
 
+    public long getMappingPixelsThreshold() {
+        return mappingPixelsThreshold;
+    }
+
+    public void setMappingPixelsThreshold(long mappingPixelsThreshold) {
+        if (mappingPixelsThreshold < 0) {
+            throw new IllegalArgumentException();
+        }
+        this.mappingPixelsThreshold = mappingPixelsThreshold;
+    }
+
     public boolean isGeoreferenced() {
         return georeferenced;
     }
@@ -0,0 +1,343 @@
+package ika.geoimport;
+
+import ika.geo.MappedGrayImage;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * Reads the header of an image file with uncompressed 8-bit gray pixels and
+ * returns a MappedGrayImage accessing the pixels via memory mapping. Supported
+ * are TIFF and BigTIFF files with strips or tiles, and binary PGM files. Other
+ * files, including compressed TIFF files and TIFF files with color or more
+ * than 8 bits per sample, are not supported and must be read with
+ * ImageImporter.
+ *
+ * @author Bernhard Jenny, School of Mathematical and Geospatial Sciences, RMIT
+ * University, Melbourne
+ */
+public class MappedGrayImageReader {
+
+    private static final int TAG_IMAGE_WIDTH = 256;
+    private static final int TAG_IMAGE_LENGTH = 257;
+    private static final int TAG_BITS_PER_SAMPLE = 258;
+    private static final int TAG_COMPRESSION = 259;
+    private static final int TAG_PHOTOMETRIC_INTERPRETATION = 262;
+    private static final int TAG_STRIP_OFFSETS = 273;
+    private static final int TAG_SAMPLES_PER_PIXEL = 277;
+    private static final int TAG_ROWS_PER_STRIP = 278;
+    private static final int TAG_TILE_WIDTH = 322;
+    private static final int TAG_TILE_LENGTH = 323;
+    private static final int TAG_TILE_OFFSETS = 324;
+    private static final int TAG_SAMPLE_FORMAT = 339;
+
+    private static final int TYPE_SHORT = 3;
+    private static final int TYPE_LONG = 4;
+    private static final int TYPE_LONG8 = 16;
+
+    /**
+     * The size and tile layout of an image, read from the header of a file.
+     */
+    private static final class Layout {
+
+        final int cols;
+        final int rows;
+        final int tileWidth;
+        final int tileHeight;
+        final long[] tileOffsets;
+
+        Layout(int cols, int rows, int tileWidth, int tileHeight, long[] tileOffsets) {
+            this.cols = cols;
+            this.rows = rows;
+            this.tileWidth = tileWidth;
+            this.tileHeight = tileHeight;
+            this.tileOffsets = tileOffsets;
+        }
+    }
+
+    private MappedGrayImageReader() {
+    }
+
+    /**
+     * Maps an image file with 8-bit gray pixels.
+     *
+     * @param file the image file
+     * @return the mapped image, or null if the file format is not supported.
+     * @throws IOException if the file cannot be read
+     */
+    public static MappedGrayImage read(File file) throws IOException {
+        Layout layout = readLayout(file);
+        if (layout == null) {
+            return null;
+        }
+        return new MappedGrayImage(file, layout.cols, layout.rows,
+                layout.tileWidth, layout.tileHeight, layout.tileOffsets);
+    }
+
+    /**
+     * Reads the header of an image file without mapping the file.
+     *
+     * @return the layout of the image, or null if the file format is not
+     * supported.
+     */
+    private static Layout readLayout(File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+                FileChannel channel = raf.getChannel()) {
+            ByteBuffer header = read(channel, 0, (int) Math.min(channel.size(), 16));
+            if (header.remaining() < 4) {
+                return null;
+            }
+            final byte b0 = header.get(0);
+            final byte b1 = header.get(1);
+            if ((b0 == 'I' && b1 == 'I') || (b0 == 'M' && b1 == 'M')) {
+                return readTIFF(channel);
+            }
+            if (b0 == 'P' && b1 == '5') {
+                return readPGM(channel);
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Reads bytes at a position in a file.
+     */
+    private static ByteBuffer read(FileChannel channel, long position, int length)
+            throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException();
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * Reads the header of the first image of a TIFF or BigTIFF file.
+     */
+    private static Layout readTIFF(FileChannel channel)
+            throws IOException {
+        ByteBuffer header = read(channel, 0, 16);
+        header.order(header.get(0) == 'I' ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN);
+        final int version = header.getShort(2) & 0xffff;
+        final boolean bigTIFF;
+        final long ifdOffset;
+        if (version == 42) {
+            bigTIFF = false;
+            ifdOffset = header.getInt(4) & 0xffffffffL;
+        } else if (version == 43) {
+            bigTIFF = true;
+            ifdOffset = header.getLong(8);
+        } else {
+            return null;
+        }
+
+        // read the entries of the first image file directory
+        final int countSize = bigTIFF ? 8 : 2;
+        final int entrySize = bigTIFF ? 20 : 12;
+        ByteBuffer count = read(channel, ifdOffset, countSize).order(header.order());
+        final long entriesCount = bigTIFF ? count.getLong(0) : count.getShort(0) & 0xffff;
+        if (entriesCount <= 0 || entriesCount > 4096) {
+            return null;
+        }
+        ByteBuffer entries = read(channel, ifdOffset + countSize,
+                (int) entriesCount * entrySize).order(header.order());
+
+        long cols = -1, rows = -1, rowsPerStrip = -1, tileWidth = -1, tileHeight = -1;
+        long bitsPerSample = 1, compression = 1, samplesPerPixel = 1, sampleFormat = 1;
+        long photometric = -1;
+        long[] stripOffsets = null, tileOffsets = null;
+        for (int i = 0; i < entriesCount; i++) {
+            final int entry = i * entrySize;
+            final int tag = entries.getShort(entry) & 0xffff;
+            final int type = entries.getShort(entry + 2) & 0xffff;
+            final long valuesCount = bigTIFF ? entries.getLong(entry + 4)
+                    : entries.getInt(entry + 4) & 0xffffffffL;
+            final int valueField = entry + (bigTIFF ? 12 : 8);
+            switch (tag) {
+                case TAG_IMAGE_WIDTH:
+                    cols = value(entries, valueField, type);
+                    break;
+                case TAG_IMAGE_LENGTH:
+                    rows = value(entries, valueField, type);
+                    break;
+                case TAG_BITS_PER_SAMPLE:
+                    bitsPerSample = value(entries, valueField, type);
+                    break;
+                case TAG_COMPRESSION:
+                    compression = value(entries, valueField, type);
+                    break;
+                case TAG_PHOTOMETRIC_INTERPRETATION:
+                    photometric = value(entries, valueField, type);
+                    break;
+                case TAG_SAMPLES_PER_PIXEL:
+                    samplesPerPixel = value(entries, valueField, type);
+                    break;
+                case TAG_ROWS_PER_STRIP:
+                    rowsPerStrip = value(entries, valueField, type);
+                    break;
+                case TAG_TILE_WIDTH:
+                    tileWidth = value(entries, valueField, type);
+                    break;
+                case TAG_TILE_LENGTH:
+                    tileHeight = value(entries, valueField, type);
+                    break;
+                case TAG_SAMPLE_FORMAT:
+                    sampleFormat = value(entries, valueField, type);
+                    break;
+                case TAG_STRIP_OFFSETS:
+                    stripOffsets = values(channel, entries, valueField, type,
+                            valuesCount, bigTIFF);
+                    break;
+                case TAG_TILE_OFFSETS:
+                    tileOffsets = values(channel, entries, valueField, type,
+                            valuesCount, bigTIFF);
+                    break;
+            }
+        }
+
+        // only uncompressed 8-bit gray images with black as zero
+        if (bitsPerSample != 8 || compression != 1 || samplesPerPixel != 1
+                || sampleFormat != 1 || photometric != 1
+                || cols <= 0 || rows <= 0 || cols > Integer.MAX_VALUE
+                || rows > Integer.MAX_VALUE) {
+            return null;
+        }
+        if (tileOffsets != null && tileWidth > 0 && tileHeight > 0) {
+            return new Layout((int) cols, (int) rows,
+                    (int) tileWidth, (int) tileHeight, tileOffsets);
+        }
+        if (stripOffsets != null) {
+            if (rowsPerStrip <= 0 || rowsPerStrip > rows) {
+                rowsPerStrip = rows;
+            }
+            return new Layout((int) cols, (int) rows,
+                    (int) cols, (int) rowsPerStrip, stripOffsets);
+        }
+        return null;
+    }
+
+    /**
+     * Returns the first value of a TIFF entry with an integer type.
+     */
+    private static long value(ByteBuffer entries, int valueField, int type) {
+        switch (type) {
+            case TYPE_SHORT:
+                return entries.getShort(valueField) & 0xffff;
+            case TYPE_LONG:
+                return entries.getInt(valueField) & 0xffffffffL;
+            case TYPE_LONG8:
+                return entries.getLong(valueField);
+            default:
+                return -1;
+        }
+    }
+
+    /**
+     * Returns the values of a TIFF entry with an integer type, which are
+     * stored in the entry or at an offset in the file.
+     */
+    private static long[] values(FileChannel channel, ByteBuffer entries,
+            int valueField, int type, long valuesCount, boolean bigTIFF)
+            throws IOException {
+        if (type != TYPE_SHORT && type != TYPE_LONG && type != TYPE_LONG8) {
+            return null;
+        }
+        final int valueSize = type == TYPE_SHORT ? 2 : (type == TYPE_LONG ? 4 : 8);
+        if (valuesCount <= 0 || valuesCount * valueSize > Integer.MAX_VALUE) {
+            return null;
+        }
+        final int length = (int) valuesCount * valueSize;
+        final ByteBuffer buffer;
+        final int start;
+        if (length <= (bigTIFF ? 8 : 4)) {
+            buffer = entries;
+            start = valueField;
+        } else {
+            final long offset = bigTIFF ? entries.getLong(valueField)
+                    : entries.getInt(valueField) & 0xffffffffL;
+            buffer = read(channel, offset, length).order(entries.order());
+            start = 0;
+        }
+        long[] values = new long[(int) valuesCount];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = value(buffer, start + i * valueSize, type);
+        }
+        return values;
+    }
+
+    /**
+     * Reads the header of a binary PGM file with a maximum value of 255 or
+     * less.
+     */
+    private static Layout readPGM(FileChannel channel)
+            throws IOException {
+        ByteBuffer header = read(channel, 0, (int) Math.min(channel.size(), 1024));
+        header.position(2);
+        long[] fields = new long[3];
+        for (int i = 0; i < fields.length; i++) {
+            fields[i] = pgmNumber(header);
+            if (fields[i] <= 0) {
+                return null;
+            }
+        }
+        // a single white space character separates the header from the pixels
+        if (!header.hasRemaining() || fields[0] > Integer.MAX_VALUE
+                || fields[1] > Integer.MAX_VALUE || fields[2] > 255) {
+            return null;
+        }
+        final long dataOffset = header.position() + 1;
+        final int cols = (int) fields[0];
+        final int rows = (int) fields[1];
+        return new Layout(cols, rows, cols, rows, new long[]{dataOffset});
+    }
+
+    /**
+     * Reads a number in a PGM header, skipping white space and comments.
+     * Returns -1 if there is no number.
+     */
+    private static long pgmNumber(ByteBuffer header) {
+        while (header.hasRemaining()) {
+            final byte b = header.get(header.position());
+            if (b == '#') {
+                while (header.hasRemaining() && header.get() != '\n') {
+                }
+            } else if (Character.isWhitespace(b)) {
+                header.get();
+            } else {
+                break;
+            }
+        }
+        long number = -1;
+        while (header.hasRemaining()) {
+            final byte b = header.get(header.position());
+            if (b < '0' || b > '9') {
+                break;
+            }
+            number = (number < 0 ? 0 : number * 10) + (b - '0');
+            header.get();
+        }
+        return number;
+    }
+
+    /**
+     * Tests whether a file can be mapped. Only the header of the file is read;
+     * the file is not mapped, and truncated files are not detected.
+     *
+     * @param file the file to test
+     * @return true if the header describes an image supported by read.
+     */
+    public static boolean canRead(File file) {
+        try {
+            return file.isFile() && readLayout(file) != null;
+        } catch (IOException exc) {
+            return false;
+        }
+    }
+}
@@ -200,16 +200,27 @@ public class GradationGraph extends JComponent implements MouseListener, MouseMo
         public void applyToGrid(short[][] grid) {
             int[] table = this.makeTable();
             for (int r = 0; r < grid.length; r++) {
-                final short[] row = grid[r];
-                for (int c = 0; c < row.length; c++) {
-                    final short v = row[c];
-                    if (v < 0) {
-                        row[c] = (short)table[0];
-                    } else if (v > 255) {
-                        row[c] = (short)table[255];
-                    } else {
-                        row[c] = (short)table[(int)v];
-                    }
+                applyTable(table, grid[r]);
+            }
+        }
+
+        /**
+         * Applies the curve to the values of a grid stored in a single array.
+         * @param grid the values to change
+         */
+        public void applyToGrid(short[] grid) {
+            applyTable(this.makeTable(), grid);
+        }
+
+        private void applyTable(int[] table, short[] values) {
+            for (int c = 0; c < values.length; c++) {
+                final short v = values[c];
+                if (v < 0) {
+                    values[c] = (short)table[0];
+                } else if (v > 255) {
+                    values[c] = (short)table[255];
+                } else {
+                    values[c] = (short)table[(int)v];
                 }
             }
         }
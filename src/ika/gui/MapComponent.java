@@ -112,6 +112,18 @@ public class MapComponent extends javax.swing.JComponent {
      */
     private AffineTransform transformForSelectedObjects = null;
 
+    /**
+     * A GeoObject that is not drawn, even if it is visible. Can be null. Read
+     * by the threads rendering map tiles.
+     */
+    private volatile GeoObject hiddenGeoObject = null;
+
+    /**
+     * A cache of map tiles rendered in the background. If null, the map is
+     * drawn by the event dispatch thread whenever this component is painted.
+     */
+    private MapTileCache tileCache = null;
+
     /**
      * Creates a new instance of MapComponent
      */
@@ -119,6 +131,17 @@ public class MapComponent extends javax.swing.JComponent {
         this.root = new GeoTreeRoot();
         this.mapEventHandler = new MapEventHandler(this);
 
+        // redraw cached tiles when the map changes
+        this.root.addGeoTreeChangeListener(new GeoTreeChangeListener() {
+            @Override
+            public void geoTreeChanged(GeoTreeRoot root, Rectangle2D dirtyBox) {
+                MapTileCache cache = tileCache;
+                if (cache != null) {
+                    cache.invalidate(dirtyBox);
+                }
+            }
+        });
+
         // add a drag and drop handler. This allows for files and data being 
         // dropped on this MapComponent.
         this.setMapDropTarget(new MapDropTarget(this));
@@ -613,18 +636,26 @@ public class MapComponent extends javax.swing.JComponent {
         final Insets insets = getInsets();
         final int currentWidth = getWidth() - insets.left - insets.right;
         final int currentHeight = getHeight() - insets.top - insets.bottom;
-        double width = currentWidth / this.scale;
-        double height = currentHeight / this.scale;
+        return this.getRenderParams(g2d, this.scale, this.topLeft.x,
+                this.topLeft.y, currentWidth, currentHeight);
+    }
+
+    private RenderParams getRenderParams(Graphics2D g2d, double scale,
+            double west, double north, int widthPx, int heightPx) {
+
+        double width = widthPx / scale;
+        double height = heightPx / scale;
 
         // create default rendering parameters
-        RenderParams rp = rp = new RenderParams(g2d, this.scale,
-                this.topLeft.x, this.topLeft.y - height,
+        RenderParams rp = new RenderParams(g2d, scale,
+                west, north - height,
                 width, height, true, this.transformForSelectedObjects);
 
         // ask registered RenderParamsProvider for customized parameters
         if (this.renderParamsProvider != null) {
             rp = this.renderParamsProvider.getRenderParams(rp);
         }
+        rp.hiddenGeoObject = this.hiddenGeoObject;
 
         return rp;
     }
@@ -710,6 +741,81 @@ public class MapComponent extends javax.swing.JComponent {
 
     }
 
+    /**
+     * Paints the non-selected map objects into a tile. Called by the
+     * MapTileCache from a background thread.
+     *
+     * @param g2d The destination for drawing, with the top left corner of the
+     * tile at the origin.
+     * @param scale The scale factor of the tile.
+     * @param west The left border of the tile in world coordinates.
+     * @param north The top border of the tile in world coordinates.
+     * @param width The width of the tile in pixels.
+     * @param height The height of the tile in pixels.
+     */
+    void paintTile(Graphics2D g2d, double scale, double west, double north,
+            int width, int height) {
+        g2d.scale(scale, -scale);
+        g2d.translate(-west, -north);
+        RenderParams rp = this.getRenderParams(g2d, scale, west, north,
+                width, height);
+        this.drawNormalState(g2d, rp);
+    }
+
+    /**
+     * Returns whether the map is drawn with tiles that are cached and
+     * rendered in the background.
+     */
+    public boolean isTileCacheEnabled() {
+        return tileCache != null;
+    }
+
+    /**
+     * Enables or disables drawing the map with cached tiles that are rendered
+     * in the background. Panning and zooming then only draw tiles that are
+     * ready, and tools can draw over the map without redrawing it. The cache
+     * is informed when GeoObjects are added, removed, transformed, shown or
+     * hidden with the methods of GeoSet and GeoObject. When the drawing of
+     * objects changes otherwise, e.g. when the geometry of a GeoPath or a
+     * symbol is changed directly, invalidateMap must be called.
+     *
+     * @param tileCacheEnabled If true, a tile cache is used.
+     */
+    public void setTileCacheEnabled(boolean tileCacheEnabled) {
+        if (tileCacheEnabled == this.isTileCacheEnabled()) {
+            return;
+        }
+        if (tileCacheEnabled) {
+            tileCache = new MapTileCache(this);
+        } else {
+            tileCache.clear();
+            tileCache = null;
+        }
+        this.repaint();
+    }
+
+    /**
+     * Redraws the whole map. All cached tiles are rendered again.
+     */
+    public void invalidateMap() {
+        this.invalidateMap(null);
+    }
+
+    /**
+     * Redraws a part of the map that changed. Cached tiles intersecting the
+     * changed area are rendered again.
+     *
+     * @param dirtyBox The changed area in world coordinates, or null if the
+     * whole map changed.
+     */
+    public void invalidateMap(Rectangle2D dirtyBox) {
+        MapTileCache cache = tileCache;
+        if (cache != null) {
+            cache.invalidate(dirtyBox);
+        }
+        this.repaint();
+    }
+
     /**
      * Utility method that returns the bounding box of the area that needs to be
      * redrawn.
@@ -812,7 +918,15 @@ public class MapComponent extends javax.swing.JComponent {
             }
             doubleBufferG2D.setBackground(backgroundColor);
             doubleBufferG2D.clearRect(0, 0, currentWidth, currentHeight);
-            this.paintMap(doubleBufferG2D, false);
+            // draw the cached tiles and then the selected objects, or draw
+            // the complete map
+            if (tileCache != null && tileCache.paint(doubleBufferG2D,
+                    scale, topLeft.x, topLeft.y,
+                    currentWidth, currentHeight, backgroundColor)) {
+                this.paintMap(doubleBufferG2D, true);
+            } else {
+                this.paintMap(doubleBufferG2D, false);
+            }
 
             // draw the doubleBuffer image
             g2d.setTransform(origTransform);
@@ -867,6 +981,17 @@ public class MapComponent extends javax.swing.JComponent {
         return true;
     }
 
+    /**
+     * Release the memory of cached tiles when this component is removed.
+     */
+    @Override
+    public void removeNotify() {
+        super.removeNotify();
+        if (tileCache != null) {
+            tileCache.clear();
+        }
+    }
+
     /**
      * Returns the current MapTool
      *
@@ -937,6 +1062,31 @@ public class MapComponent extends javax.swing.JComponent {
         this.infoString = dragInfoString;
     }
 
+    /**
+     * Returns the GeoObject that is not drawn, even if it is visible.
+     *
+     * @return The hidden GeoObject or null.
+     */
+    public GeoObject getHiddenGeoObject() {
+        return hiddenGeoObject;
+    }
+
+    /**
+     * Hides a GeoObject in the map without changing its visibility, for
+     * example, to temporarily show another object in its place. Only one
+     * GeoObject can be hidden.
+     *
+     * @param hiddenGeoObject The GeoObject not to draw, or null to draw all
+     * visible GeoObjects.
+     */
+    public void setHiddenGeoObject(GeoObject hiddenGeoObject) {
+        if (this.hiddenGeoObject == hiddenGeoObject) {
+            return;
+        }
+        this.hiddenGeoObject = hiddenGeoObject;
+        this.invalidateMap();
+    }
+
     public RenderParamsProvider getRenderParamsProvider() {
         return renderParamsProvider;
     }
@@ -0,0 +1,491 @@
+package ika.gui;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A cache of map tiles that are rendered by background threads for a
+ * MapComponent. For each scale, the map is cut into square tiles of TILE_SIZE
+ * pixels, which are counted from the origin of the world coordinate system. A
+ * tile is identified by its scale, column and row. The event dispatch thread
+ * only draws tiles that are ready. Where a tile is missing, cached tiles of
+ * other scales are drawn enlarged or reduced until the tile has been rendered.
+ * Tiles intersecting a changed area are redrawn, and the least recently used
+ * tiles are discarded when the tiles exceed the memory budget.
+ *
+ * @author Bernhard Jenny, School of Mathematical and Geospatial Sciences, RMIT
+ * University, Melbourne
+ */
+final class MapTileCache {
+
+    /**
+     * Width and height of a tile in pixels.
+     */
+    static final int TILE_SIZE = 256;
+
+    /**
+     * Memory used by a tile with 32 bit pixels.
+     */
+    private static final long TILE_BYTES = TILE_SIZE * TILE_SIZE * 4L;
+
+    /**
+     * Maximum memory used by the tiles. At most an eighth of the available
+     * heap is used.
+     */
+    private static final long MAX_MEMORY = 128L * 1024 * 1024;
+
+    /**
+     * Minimum number of cached tiles, enough to fill a large screen.
+     */
+    private static final int MIN_TILES = 64;
+
+    /**
+     * Symbols may extend beyond the bounding box of the geometry of a changed
+     * object. Changed areas are enlarged by this distance in pixels.
+     */
+    private static final double DIRTY_MARGIN_PX = 20;
+
+    /**
+     * Idle rendering threads terminate after this time.
+     */
+    private static final long THREAD_KEEP_ALIVE_SECONDS = 10;
+
+    /**
+     * Identifies a tile by scale, column and row.
+     */
+    private static final class TileKey {
+
+        final double scale;
+        final int col;
+        final int row;
+
+        TileKey(double scale, int col, int row) {
+            this.scale = scale;
+            this.col = col;
+            this.row = row;
+        }
+
+        /**
+         * Returns the left border of the tile in world coordinates.
+         */
+        double west() {
+            return col * (double) TILE_SIZE / scale;
+        }
+
+        /**
+         * Returns the top border of the tile in world coordinates.
+         */
+        double north() {
+            return -row * (double) TILE_SIZE / scale;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof TileKey)) {
+                return false;
+            }
+            TileKey key = (TileKey) obj;
+            return key.scale == scale && key.col == col && key.row == row;
+        }
+
+        @Override
+        public int hashCode() {
+            final long bits = Double.doubleToLongBits(scale);
+            return ((int) (bits ^ (bits >>> 32)) * 31 + col) * 31 + row;
+        }
+    }
+
+    /**
+     * A rendered tile.
+     */
+    private static final class Tile {
+
+        final TileKey key;
+        final BufferedImage image;
+
+        /**
+         * True if the map changed after the tile was rendered. A stale tile is
+         * drawn until it has been rendered again. Guarded by the cache.
+         */
+        boolean stale;
+
+        Tile(TileKey key, BufferedImage image) {
+            this.key = key;
+            this.image = image;
+        }
+    }
+
+    /**
+     * The tiles covering the visible area of the map.
+     */
+    private static final class View {
+
+        final double scale;
+        final int firstCol;
+        final int firstRow;
+        final int lastCol;
+        final int lastRow;
+
+        View(double scale, int firstCol, int firstRow, int lastCol, int lastRow) {
+            this.scale = scale;
+            this.firstCol = firstCol;
+            this.firstRow = firstRow;
+            this.lastCol = lastCol;
+            this.lastRow = lastRow;
+        }
+
+        boolean contains(TileKey key) {
+            return key.scale == scale
+                    && key.col >= firstCol && key.col <= lastCol
+                    && key.row >= firstRow && key.row <= lastRow;
+        }
+    }
+
+    /**
+     * The map to render.
+     */
+    private final MapComponent mapComponent;
+
+    /**
+     * The rendered tiles in the order of their last access. Guarded by this.
+     */
+    private final LinkedHashMap<TileKey, Tile> tiles
+            = new LinkedHashMap<TileKey, Tile>(MIN_TILES, 0.75f, true);
+
+    /**
+     * Tiles waiting to be rendered or being rendered. Guarded by this.
+     */
+    private final HashSet<TileKey> pendingTiles = new HashSet<TileKey>();
+
+    /**
+     * Incremented whenever the map changes. Tiles rendered while the map
+     * changed are stale. Guarded by this.
+     */
+    private long generation = 0;
+
+    /**
+     * The most recently drawn tiles. Tiles that are not part of this view are
+     * not rendered anymore when their turn comes.
+     */
+    private volatile View view;
+
+    /**
+     * Maximum number of cached tiles.
+     */
+    private final int maxTiles;
+
+    /**
+     * Renders tiles in the background.
+     */
+    private final ThreadPoolExecutor executor;
+
+    /**
+     * Creates a new cache.
+     *
+     * @param mapComponent The map to render.
+     */
+    MapTileCache(MapComponent mapComponent) {
+        this.mapComponent = mapComponent;
+        long memory = Math.min(MAX_MEMORY, Runtime.getRuntime().maxMemory() / 8);
+        maxTiles = (int) Math.max(MIN_TILES, memory / TILE_BYTES);
+
+        // keep a processor for the event dispatch thread
+        final int threads = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+        executor = new ThreadPoolExecutor(threads, threads,
+                THREAD_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "Map Tile Renderer");
+                thread.setDaemon(true);
+                thread.setPriority(Thread.NORM_PRIORITY - 1);
+                return thread;
+            }
+        });
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Draws the tiles covering the visible area of the map and requests
+     * missing and stale tiles. Must be called from the event dispatch thread.
+     *
+     * @param g2d The destination to draw to, with the top left corner of the
+     * visible area at the origin.
+     * @param scale The scale factor between pixels and world coordinates.
+     * @param west The left border of the visible area in world coordinates.
+     * @param north The top border of the visible area in world coordinates.
+     * @param width The width of the visible area in pixels.
+     * @param height The height of the visible area in pixels.
+     * @param background The background color of new tiles.
+     * @return False if the tiles cannot be drawn at this scale, in which case
+     * the map must be drawn without tiles.
+     */
+    boolean paint(Graphics2D g2d, double scale, double west, double north,
+            int width, int height, Color background) {
+
+        // position of the visible area in the pixel grid of the tiles
+        final double x = west * scale;
+        final double y = -north * scale;
+        final double firstCol = Math.floor(x / TILE_SIZE);
+        final double firstRow = Math.floor(y / TILE_SIZE);
+        final double lastCol = Math.floor((x + width) / TILE_SIZE);
+        final double lastRow = Math.floor((y + height) / TILE_SIZE);
+        if (!(scale > 0)
+                || Math.abs(firstCol) >= Integer.MAX_VALUE
+                || Math.abs(firstRow) >= Integer.MAX_VALUE
+                || Math.abs(lastCol) >= Integer.MAX_VALUE
+                || Math.abs(lastRow) >= Integer.MAX_VALUE) {
+            return false;
+        }
+        final View v = new View(scale, (int) firstCol, (int) firstRow,
+                (int) lastCol, (int) lastRow);
+        view = v;
+        final long left = Math.round(x);
+        final long top = Math.round(y);
+
+        // collect the tiles of this view and the tiles that need rendering
+        ArrayList<Tile> readyTiles = new ArrayList<Tile>();
+        ArrayList<TileKey> missingTiles = new ArrayList<TileKey>();
+        ArrayList<Tile> otherTiles = new ArrayList<Tile>();
+        boolean absent = false;
+        synchronized (this) {
+            for (int row = v.firstRow; row <= v.lastRow; row++) {
+                for (int col = v.firstCol; col <= v.lastCol; col++) {
+                    TileKey key = new TileKey(scale, col, row);
+                    Tile tile = tiles.get(key);
+                    if (tile != null) {
+                        readyTiles.add(tile);
+                    } else {
+                        absent = true;
+                    }
+                    if (tile == null || tile.stale) {
+                        missingTiles.add(key);
+                    }
+                }
+            }
+            if (absent) {
+                collectOtherTiles(v, west, north, width, height, otherTiles);
+            }
+        }
+
+        // draw tiles of other scales where tiles are missing, the closest
+        // scale on top
+        if (!otherTiles.isEmpty()) {
+            Collections.sort(otherTiles, new Comparator<Tile>() {
+
+                @Override
+                public int compare(Tile t1, Tile t2) {
+                    return Double.compare(scaleDistance(t2.key.scale, v.scale),
+                            scaleDistance(t1.key.scale, v.scale));
+                }
+            });
+            Object interpolation = g2d.getRenderingHint(RenderingHints.KEY_INTERPOLATION);
+            g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
+                    RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            for (Tile tile : otherTiles) {
+                final double f = scale / tile.key.scale;
+                final int x1 = (int) (Math.round(tile.key.col * TILE_SIZE * f) - left);
+                final int y1 = (int) (Math.round(tile.key.row * TILE_SIZE * f) - top);
+                final int x2 = (int) (Math.round((tile.key.col + 1) * TILE_SIZE * f) - left);
+                final int y2 = (int) (Math.round((tile.key.row + 1) * TILE_SIZE * f) - top);
+                g2d.drawImage(tile.image, x1, y1, x2 - x1, y2 - y1, null);
+            }
+            if (interpolation != null) {
+                g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, interpolation);
+            }
+        }
+
+        // draw the tiles of this scale
+        for (Tile tile : readyTiles) {
+            final int tx = (int) ((long) tile.key.col * TILE_SIZE - left);
+            final int ty = (int) ((long) tile.key.row * TILE_SIZE - top);
+            g2d.drawImage(tile.image, tx, ty, null);
+        }
+
+        // render missing tiles, starting at the center of the visible area
+        final double centerCol = (x + width / 2d) / TILE_SIZE - 0.5;
+        final double centerRow = (y + height / 2d) / TILE_SIZE - 0.5;
+        Collections.sort(missingTiles, new Comparator<TileKey>() {
+
+            @Override
+            public int compare(TileKey k1, TileKey k2) {
+                final double dx1 = k1.col - centerCol, dy1 = k1.row - centerRow;
+                final double dx2 = k2.col - centerCol, dy2 = k2.row - centerRow;
+                return Double.compare(dx1 * dx1 + dy1 * dy1, dx2 * dx2 + dy2 * dy2);
+            }
+        });
+        for (TileKey key : missingTiles) {
+            request(key, background);
+        }
+        return true;
+    }
+
+    /**
+     * Returns a measure for the difference between two scales.
+     */
+    private static double scaleDistance(double scale1, double scale2) {
+        return Math.abs(Math.log(scale1 / scale2));
+    }
+
+    /**
+     * Collects the current tiles of other scales that intersect the visible
+     * area.
+     */
+    private void collectOtherTiles(View v, double west, double north,
+            int width, int height, ArrayList<Tile> otherTiles) {
+        final double east = west + width / v.scale;
+        final double south = north - height / v.scale;
+        for (Tile tile : tiles.values()) {
+            if (tile.stale || tile.key.scale == v.scale) {
+                continue;
+            }
+            final double tileWest = tile.key.west();
+            final double tileNorth = tile.key.north();
+            final double tileSize = TILE_SIZE / tile.key.scale;
+            if (tileWest < east && tileWest + tileSize > west
+                    && tileNorth > south && tileNorth - tileSize < north) {
+                otherTiles.add(tile);
+            }
+        }
+    }
+
+    /**
+     * Renders a tile in the background, unless it is already being rendered.
+     */
+    private void request(final TileKey key, final Color background) {
+        synchronized (this) {
+            if (!pendingTiles.add(key)) {
+                return;
+            }
+        }
+        executor.execute(new Runnable() {
+
+            @Override
+            public void run() {
+                renderTile(key, background);
+            }
+        });
+    }
+
+    /**
+     * Renders a tile and adds it to the cache. Called by a rendering thread.
+     */
+    private void renderTile(TileKey key, Color background) {
+        // skip tiles that have been scrolled out of view in the meantime
+        View v = view;
+        if (v == null || !v.contains(key)) {
+            synchronized (this) {
+                pendingTiles.remove(key);
+            }
+            return;
+        }
+
+        long startGeneration;
+        synchronized (this) {
+            startGeneration = generation;
+        }
+
+        // GeoSets draw a snapshot of their children, so that the map can be
+        // changed by other threads while it is rendered. A tile rendered
+        // during a change is stale and will be rendered again.
+        BufferedImage image = null;
+        try {
+            image = render(key, background);
+        } finally {
+            synchronized (this) {
+                pendingTiles.remove(key);
+                if (image != null) {
+                    Tile tile = new Tile(key, image);
+                    tile.stale = startGeneration != generation;
+                    tiles.put(key, tile);
+                    Iterator<Tile> iterator = tiles.values().iterator();
+                    while (tiles.size() > maxTiles && iterator.hasNext()) {
+                        iterator.next();
+                        iterator.remove();
+                    }
+                }
+            }
+        }
+        mapComponent.repaint();
+    }
+
+    /**
+     * Renders the map into a new tile image.
+     */
+    private BufferedImage render(TileKey key, Color background) {
+        BufferedImage image = new BufferedImage(TILE_SIZE, TILE_SIZE,
+                BufferedImage.TYPE_INT_RGB);
+        Graphics2D g2d = image.createGraphics();
+        try {
+            g2d.setBackground(background);
+            g2d.clearRect(0, 0, TILE_SIZE, TILE_SIZE);
+            mapComponent.paintTile(g2d, key.scale, key.west(), key.north(),
+                    TILE_SIZE, TILE_SIZE);
+        } finally {
+            g2d.dispose();
+        }
+        return image;
+    }
+
+    /**
+     * Marks tiles intersecting a changed area of the map for rendering. Tiles
+     * of the current scale are drawn until they have been rendered again,
+     * tiles of other scales are discarded.
+     *
+     * @param dirtyBox The changed area in world coordinates, or null if the
+     * whole map changed.
+     */
+    synchronized void invalidate(Rectangle2D dirtyBox) {
+        ++generation;
+        final View v = view;
+        Iterator<Map.Entry<TileKey, Tile>> iterator = tiles.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Tile tile = iterator.next().getValue();
+            if (dirtyBox != null && !intersects(tile.key, dirtyBox)) {
+                continue;
+            }
+            if (v != null && tile.key.scale == v.scale) {
+                tile.stale = true;
+            } else {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Returns whether a tile intersects a changed area.
+     */
+    private static boolean intersects(TileKey key, Rectangle2D dirtyBox) {
+        final double margin = DIRTY_MARGIN_PX / key.scale;
+        final double tileSize = TILE_SIZE / key.scale;
+        final double west = key.west();
+        final double north = key.north();
+        return west < dirtyBox.getMaxX() + margin
+                && west + tileSize > dirtyBox.getMinX() - margin
+                && north > dirtyBox.getMinY() - margin
+                && north - tileSize < dirtyBox.getMaxY() + margin;
+    }
+
+    /**
+     * Discards all tiles.
+     */
+    synchronized void clear() {
+        ++generation;
+        tiles.clear();
+    }
+}
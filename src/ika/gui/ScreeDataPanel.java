@@ -127,6 +127,7 @@ public class ScreeDataPanel extends javax.swing.JPanel {
     private void clearDEM() {
         screeData.dem = null;
         screeData.curvatureGrid = null;
+        screeData.demDerivatives = null;
         screeInputData.demFilePath = null;
     }
 
@@ -139,6 +140,7 @@ public class ScreeDataPanel extends javax.swing.JPanel {
     private void clearObstaclesMask() {
         backgroundGeoSet.remove(screeData.obstaclesMaskImage);
         screeData.obstaclesMaskImage = null;
+        screeData.invalidateObstaclesDistance();
         screeInputData.obstaclesFilePath = null;
     }
 
@@ -9,6 +9,7 @@ import ika.app.ScreeData;
 import ika.app.ScreeParameters;
 import ika.utils.FileUtils;
 import java.awt.Component;
+import java.awt.Container;
 import java.awt.Font;
 import java.awt.Frame;
 import java.io.BufferedWriter;
@@ -23,6 +24,9 @@ import java.util.Hashtable;
 import java.util.Properties;
 import javax.swing.JComponent;
 import javax.swing.JLabel;
+import javax.swing.JSlider;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
 import javax.swing.text.InternationalFormatter;
 
 /**
@@ -47,9 +51,81 @@ public class ScreeParametersPanel extends javax.swing.JPanel {
         lineGradationGraph.setFont(new Font("SansSerif", Font.PLAIN, 10));
         shadowLabel.setFont(maxDiameterSlider.getFont());
         sunLabel.setFont(minDiameterSlider.getFont());
+        listenToControls(this);
         this.validate();
     }
 
+    /**
+     * Registers listeners with all sliders inside a container, the gradation
+     * graphs and the gully lines check box to inform ChangeListeners of this
+     * panel when the user changes a parameter.
+     */
+    private void listenToControls(Container container) {
+        if (container == this) {
+            java.beans.PropertyChangeListener curveListener = new java.beans.PropertyChangeListener() {
+
+                @Override
+                public void propertyChange(java.beans.PropertyChangeEvent evt) {
+                    if ("GradationGraph curve changed".equals(evt.getPropertyName())) {
+                        fireStateChanged();
+                    }
+                }
+            };
+            gradationGraph1.addPropertyChangeListener(curveListener);
+            gradationGraph2.addPropertyChangeListener(curveListener);
+            lineGradationGraph.addPropertyChangeListener(curveListener);
+            extractGullyLinesCheckBox.addActionListener(new java.awt.event.ActionListener() {
+
+                @Override
+                public void actionPerformed(java.awt.event.ActionEvent e) {
+                    fireStateChanged();
+                }
+            });
+        }
+        for (Component component : container.getComponents()) {
+            if (component instanceof JSlider) {
+                ((JSlider) component).addChangeListener(new ChangeListener() {
+
+                    @Override
+                    public void stateChanged(ChangeEvent e) {
+                        fireStateChanged();
+                    }
+                });
+            } else if (component instanceof Container) {
+                listenToControls((Container) component);
+            }
+        }
+    }
+
+    /**
+     * Adds a listener that is informed when the user changes a parameter in
+     * this panel. The parameters are not read from the GUI before listeners
+     * are informed.
+     *
+     * @param listener the listener to add
+     */
+    public void addChangeListener(ChangeListener listener) {
+        listenerList.add(ChangeListener.class, listener);
+    }
+
+    public void removeChangeListener(ChangeListener listener) {
+        listenerList.remove(ChangeListener.class, listener);
+    }
+
+    /**
+     * Informs ChangeListeners that the user changed a parameter. Changes made
+     * by writeGUI are not reported.
+     */
+    private void fireStateChanged() {
+        if (updatingGUI) {
+            return;
+        }
+        ChangeEvent event = new ChangeEvent(this);
+        for (ChangeListener listener : listenerList.getListeners(ChangeListener.class)) {
+            listener.stateChanged(event);
+        }
+    }
+
     public void setParameters(ScreeParameters p, ScreeData data) {
         this.p = p;
         this.screeData = data;
@@ -146,7 +222,26 @@ public class ScreeParametersPanel extends javax.swing.JPanel {
     }
 
     public void readGUI() {
-        if (this.updatingGUI || this.p == null) {
+        readGUI(this.p);
+    }
+
+    /**
+     * Returns a copy of the parameters with the current values of the GUI,
+     * without changing the parameters of this panel.
+     *
+     * @return the new parameters, or null if the panel has no parameters.
+     */
+    public ScreeParameters getParametersFromGUI() {
+        if (this.p == null) {
+            return null;
+        }
+        ScreeParameters parameters = new ScreeParameters(this.p);
+        readGUI(parameters);
+        return parameters;
+    }
+
+    private void readGUI(ScreeParameters p) {
+        if (this.updatingGUI || p == null) {
             return;
         }
         try {
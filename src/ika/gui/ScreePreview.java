@@ -0,0 +1,227 @@
+package ika.gui;
+
+import ika.app.ScreeData;
+import ika.app.ScreeGeneratorManager;
+import ika.app.ScreeParameters;
+import ika.geo.GeoSet;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import javax.swing.SwingWorker;
+import javax.swing.Timer;
+
+/**
+ * Shows a quick preview of the scree in the visible area of a map while the
+ * user adjusts the scree parameters. A preview is computed in a background
+ * thread after the parameters have not changed for PREVIEW_DELAY
+ * milliseconds. A running preview is cancelled when the parameters change
+ * again. While a preview is shown, the stones of the last complete scree
+ * generation are not drawn in the map. Their visibility is not changed, so
+ * they are still exported while a preview is shown.
+ *
+ * @author Bernhard Jenny, School of Mathematical and Geospatial Sciences, RMIT
+ * University, Melbourne
+ */
+class ScreePreview {
+
+    /**
+     * Delay in milliseconds between the last change of the parameters and
+     * the start of the preview.
+     */
+    private static final int PREVIEW_DELAY = 400;
+
+    private final MapComponent mapComponent;
+
+    /**
+     * The preview uses its own manager to not interfere with a complete scree
+     * generation.
+     */
+    private final ScreeGeneratorManager previewManager = new ScreeGeneratorManager();
+
+    private final Timer timer;
+
+    private ScreeData screeData;
+
+    private ScreeParameters p;
+
+    /**
+     * The worker computing the current preview. Must be accessed by the Swing
+     * thread only.
+     */
+    private PreviewWorker worker;
+
+    /**
+     * The stones of the preview currently shown in the map, or null.
+     */
+    private GeoSet previewStones;
+
+    ScreePreview(MapComponent mapComponent) {
+        this.mapComponent = mapComponent;
+        timer = new Timer(PREVIEW_DELAY, new ActionListener() {
+
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                startWorker();
+            }
+        });
+        timer.setRepeats(false);
+    }
+
+    /**
+     * Schedules a new preview and cancels the preview that is currently
+     * computed. Must be called by the Swing thread.
+     *
+     * @param screeData the input data, which is not changed by the preview.
+     * @param p the parameters for the preview, which must not be changed
+     * afterwards.
+     */
+    void schedule(ScreeData screeData, ScreeParameters p) {
+        if (screeData == null || p == null) {
+            throw new IllegalArgumentException("no scree data or parameters");
+        }
+        this.screeData = screeData;
+        this.p = p;
+        cancelWorker();
+        timer.restart();
+    }
+
+    /**
+     * Cancels the scheduled or running preview, removes the preview from the
+     * map and shows the stones of the last complete scree generation. Must be
+     * called by the Swing thread.
+     */
+    void cancel() {
+        timer.stop();
+        cancelWorker();
+        if (previewStones != null) {
+            mapComponent.getGeoSet().remove(previewStones);
+            previewStones = null;
+            mapComponent.setHiddenGeoObject(null);
+            mapComponent.repaint();
+        }
+    }
+
+    private void cancelWorker() {
+        if (worker != null) {
+            worker.cancel(false);
+            worker = null;
+        }
+    }
+
+    private void startWorker() {
+        cancelWorker();
+        if (mapComponent.getVisibleArea() == null) {
+            return;
+        }
+        worker = new PreviewWorker(screeData, p);
+        worker.execute();
+    }
+
+    /**
+     * Replaces the shown preview with new stones.
+     */
+    private void showPreview(GeoSet stones) {
+        if (previewStones != null) {
+            mapComponent.getGeoSet().remove(previewStones);
+        }
+        previewStones = stones;
+        stones.setSelectable(false);
+        mapComponent.setHiddenGeoObject(screeData.screeStones);
+        mapComponent.getGeoSet().add(stones);
+        mapComponent.repaint();
+    }
+
+    /**
+     * Computes a preview in a background thread. The preview is aborted when
+     * the worker is cancelled. The remaining methods of ProgressIndicator are
+     * not used by the preview.
+     */
+    private class PreviewWorker extends SwingWorker<GeoSet, Object>
+            implements ProgressIndicator {
+
+        private final ScreeData screeData;
+        private final ScreeParameters p;
+        private final java.awt.geom.Rectangle2D previewBB;
+
+        PreviewWorker(ScreeData screeData, ScreeParameters p) {
+            this.screeData = screeData;
+            this.p = p;
+            this.previewBB = mapComponent.getVisibleArea();
+        }
+
+        @Override
+        protected GeoSet doInBackground() throws Exception {
+            return previewManager.generatePreview(screeData, p, previewBB, this);
+        }
+
+        @Override
+        protected void done() {
+            if (worker != this || isCancelled()) {
+                return;
+            }
+            worker = null;
+            try {
+                GeoSet stones = get();
+                if (stones != null) {
+                    showPreview(stones);
+                }
+            } catch (Exception ex) {
+                // the preview is not essential, the complete scree generation
+                // will report errors
+                ex.printStackTrace();
+            }
+        }
+
+        @Override
+        public boolean isAborted() {
+            return isCancelled();
+        }
+
+        @Override
+        public void start() {
+        }
+
+        @Override
+        public void abort() {
+            cancel(false);
+        }
+
+        @Override
+        public void complete() {
+        }
+
+        @Override
+        public boolean progress(int percentage) {
+            return !isCancelled();
+        }
+
+        @Override
+        public void disableCancel() {
+        }
+
+        @Override
+        public void enableCancel() {
+        }
+
+        @Override
+        public void setMessage(String msg) {
+        }
+
+        @Override
+        public void setTotalTasksCount(int tasksCount) {
+        }
+
+        @Override
+        public int getTotalTasksCount() {
+            return 1;
+        }
+
+        @Override
+        public void nextTask() {
+        }
+
+        @Override
+        public int currentTask() {
+            return 1;
+        }
+    }
+}
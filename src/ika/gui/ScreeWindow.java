@@ -9,6 +9,7 @@ import ika.app.SwissLV95GeospatialPDFExport;
 import ika.app.ScreeDataFilePaths;
 import ika.app.ScreeGenerator;
 import ika.app.ScreeGeneratorManager;
+import ika.app.ScreeParameters;
 import ika.geo.*;
 import ika.geoexport.*;
 import ika.utils.*;
@@ -73,6 +74,24 @@ public class ScreeWindow extends MainWindow {
      */
     private String screeGenerationReport = null;
 
+    /**
+     * Generates scree and keeps the scree of polygons between generations,
+     * such that only polygons affected by an edit are filled again.
+     */
+    private final ScreeGeneratorManager screeGeneratorManager = new ScreeGeneratorManager();
+
+    /**
+     * Shows a quick preview of the scree in the visible area while the user
+     * adjusts the parameters.
+     */
+    private final ScreePreview screePreview;
+
+    /**
+     * Menu item to toggle the preview.
+     */
+    private final javax.swing.JCheckBoxMenuItem previewCheckBoxMenuItem
+            = new javax.swing.JCheckBoxMenuItem("Preview Scree While Editing Settings", true);
+
     /**
      * Creates new form
      */
@@ -81,6 +100,31 @@ public class ScreeWindow extends MainWindow {
         // build the GUI
         this.initComponents();
 
+        screeGeneratorManager.setIncremental(true);
+
+        screePreview = new ScreePreview(mapComponent);
+        screeParametersPanel.addChangeListener(new javax.swing.event.ChangeListener() {
+
+            @Override
+            public void stateChanged(javax.swing.event.ChangeEvent e) {
+                schedulePreview();
+            }
+        });
+        previewCheckBoxMenuItem.setToolTipText("Show a quick preview of the scree in the visible area while settings are adjusted.");
+        previewCheckBoxMenuItem.addActionListener(new java.awt.event.ActionListener() {
+
+            @Override
+            public void actionPerformed(java.awt.event.ActionEvent e) {
+                if (previewCheckBoxMenuItem.isSelected()) {
+                    schedulePreview();
+                } else {
+                    screePreview.cancel();
+                }
+            }
+        });
+        screeMenu.insert(previewCheckBoxMenuItem,
+                screeMenu.getPopupMenu().getComponentIndex(updateScreeMenuItem) + 1);
+
         Dimension dim = areaToggleButton.getSize();
         areaToggleButton.setMinimumSize(dim);
         areaToggleButton.setPreferredSize(dim);
@@ -96,6 +140,7 @@ public class ScreeWindow extends MainWindow {
 
         // initialize the map
         this.mapComponent.setGeoSet(new GeoMap());
+        this.mapComponent.setTileCacheEnabled(true);
         this.mapComponent.setCoordinateFormatter(new CoordinateFormatter("###,##0.#", "###,##0.#", 1));
         this.mapComponent.setMapTool(new ScaleMoveSelectionTool(this.mapComponent));
 
@@ -322,8 +367,25 @@ public class ScreeWindow extends MainWindow {
         }
     }
 
+    /**
+     * Schedules a preview with the current parameters of the GUI if the
+     * preview and the scree are visible.
+     */
+    private void schedulePreview() {
+        if (screeGenerator == null || screeGenerator.screeData == null
+                || !previewCheckBoxMenuItem.isSelected()
+                || !viewScreeCheckBoxMenuItem.isSelected()) {
+            return;
+        }
+        ScreeParameters p = screeParametersPanel.getParametersFromGUI();
+        if (p != null) {
+            screePreview.schedule(screeGenerator.screeData, p);
+        }
+    }
+
     private boolean showScreeDataDialog(boolean showCancelButton) {
 
+        screePreview.cancel();
         if (!ScreeDataPanel.showDialog(this,
                 screeDataFilePaths,
                 screeGenerator.screeData,
@@ -388,7 +450,7 @@ public class ScreeWindow extends MainWindow {
         @Override
         protected Object doInBackground() throws Exception {
 
-            ScreeGeneratorManager manager = new ScreeGeneratorManager();
+            ScreeGeneratorManager manager = screeGeneratorManager;
             screeGenerationReport = null;
             try {
                 manager.generateScree(screeGenerator, screeBB, this, generateScreeStones);
@@ -425,6 +487,9 @@ public class ScreeWindow extends MainWindow {
             this.disableCancel();
             this.setMessage("Generating scree...");
 
+            // the complete scree replaces the preview
+            screePreview.cancel();
+
             // remove features created last time
             mapComponent.getGeoSet().remove(screeGenerator.screeData.screeStones);
             if (!screeGenerator.screeData.fixedScreeLines) {
@@ -1343,13 +1408,13 @@ minimizeMenuItem.addActionListener(new java.awt.event.ActionListener() {
             initGeospatialPDFExporter(geospatialPDFExporter, pageFormat);
         }
 
-        // screeGenerator.screeData.screeStones contains ScreeGenerator.Stone,
+        // screeGenerator.screeData.screeStones contains StoneStore objects,
         // a class that derives from GeoObject but is not usually supported by
         // exporters. The stones could be converted to GeoPaths using
-        // stone.toGeoPath, however, this would multiply the amount of memory
-        // required to store the graphics. The exporters have therefore each
-        // been hacked to call stone.toGeoPath and then using the standard
-        // export routines for GeoPaths.
+        // StoneStore.toGeoPath, however, this would multiply the amount of
+        // memory required to store the graphics. The exporters have therefore
+        // each been hacked to write the stone corners directly from the
+        // StoneStore arrays (DXF and Ungenerate convert one stone at a time).
         GeoExportGUI.export(exporter,
                 screeGenerator.screeData.screeStones,
                 this.getTitle(),
@@ -1375,6 +1440,7 @@ private void updateButtonActionPerformed(java.awt.event.ActionEvent evt) {//GEN-
 }//GEN-LAST:event_updateButtonActionPerformed
 
 private void viewScreeCheckBoxMenuItemActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_viewScreeCheckBoxMenuItemActionPerformed
+    screePreview.cancel();
     screeGenerator.screeData.screeStones.setVisible(viewScreeCheckBoxMenuItem.isSelected());
     mapComponent.repaint();
 }//GEN-LAST:event_viewScreeCheckBoxMenuItemActionPerformed
@@ -1577,11 +1643,12 @@ private void adjustUpdateAreaScreeMenuItemActionPerformed(java.awt.event.ActionE
     double dv = visArea.getHeight() * 0.02;
     visArea.setRect(visArea.getX() + dh, visArea.getY() + dv,
             visArea.getWidth() - 2 * dh, visArea.getHeight() - 2 * dv);
+    Rectangle2D oldArea = areaOfInterest.getBounds2D(GeoObject.UNDEFINED_SCALE);
     areaOfInterest.reset();
     areaOfInterest.append(visArea, false);
     areaOfInterest.setVisible(true);
     areaToggleButton.setSelected(false);
-    mapComponent.repaint();
+    mapComponent.invalidateMap(oldArea == null ? null : oldArea.createUnion(visArea));
 }//GEN-LAST:event_adjustUpdateAreaScreeMenuItemActionPerformed
 
 private void zoomOnUpdateAreaMenuItemActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_zoomOnUpdateAreaMenuItemActionPerformed
@@ -39,57 +39,7 @@ public class DBFExporter implements TableExporter {
         try {           
             bos = new BufferedOutputStream(outputStream);
             LittleEndianOutputStream dos = new LittleEndianOutputStream(bos);
-            
-            // dbf flag
-            dos.write(0x03);
-            
-            // current date
-            Calendar cal = GregorianCalendar.getInstance();
-            int year = cal.get(Calendar.YEAR);             // 2002
-            int month = cal.get(Calendar.MONTH);           // 0=Jan, 1=Feb, ...
-            int day = cal.get(Calendar.DAY_OF_MONTH);      // 1...
-            dos.write(year - 1900);
-            dos.write(month);
-            dos.write(day);
-            
-            // number of records
-            dos.writeInt(table.getRowCount());
-            
-            // header size
-            final int columnsCount = table.getColumnCount();
-            dos.writeShort(32 + columnsCount * 32 + 1);
-            
-            // record size
-            dos.writeShort(this.computeRecordSize(table));
-            
-            // reserved value, fill with 0
-            dos.writeShort(0);
-            
-            // transaction byte
-            dos.write(0);
-            
-            // encription byte
-            dos.write(0);
-            
-            // multi user environment use
-            for (int i = 0; i < 13; i++) {
-                dos.write(0);
-            }
-            
-            // codepage / language driver
-            // ESRI shape files use code 0x57 to indicate that
-            // data is written in ANSI (whatever that means).
-            // http://www.esricanada.com/english/support/faqs/arcview/avfaq21.asp
-            dos.write(0x57);
-            
-            // two reserved bytes
-            dos.writeShort(0);
-            
-            this.writeFieldDescriptors(dos, table);
-            
-            // header record terminator
-            dos.write(0x0D);
-            
+            this.writeHeader(dos, table, table.getRowCount());
             this.writeRecords(dos, table);
         } finally {
             if (bos != null)
@@ -97,6 +47,95 @@ public class DBFExporter implements TableExporter {
         }
     }
     
+    /**
+     * Writes a table with a single "ID" column containing the row indices,
+     * without storing the rows in a Table. This is the table written for
+     * exported geometry without attributes.
+     * @param outputStream The stream to write to. The stream is closed.
+     * @param rowsCount The number of rows.
+     */
+    public void exportIDTable(OutputStream outputStream, int rowsCount)
+    throws IOException {
+        
+        Table table = new Table("US-ASCII");
+        table.addColumn("ID");
+        table.addRow(new Object[]{Double.valueOf(0)});
+        BufferedOutputStream bos = null;
+        try {
+            bos = new BufferedOutputStream(outputStream);
+            LittleEndianOutputStream dos = new LittleEndianOutputStream(bos);
+            this.writeHeader(dos, table, rowsCount);
+            for (int row = 0; row < rowsCount; row++) {
+                // write deleted flag
+                dos.write(' ');
+                String nbrStr = ika.utils.NumberFormatter.format(
+                        row, NUMBER_LENGTH, NUMBER_DECIMALS);
+                this.writeString(dos, nbrStr, NUMBER_LENGTH);
+            }
+        } finally {
+            if (bos != null)
+                bos.close();
+        }
+    }
+    
+    /**
+     * Writes the file header and the field descriptors.
+     * @param rowsCount The number of records that will be written.
+     */
+    private void writeHeader(LittleEndianOutputStream dos, Table table,
+            int rowsCount) throws IOException {
+        
+        // dbf flag
+        dos.write(0x03);
+        
+        // current date
+        Calendar cal = GregorianCalendar.getInstance();
+        int year = cal.get(Calendar.YEAR);             // 2002
+        int month = cal.get(Calendar.MONTH);           // 0=Jan, 1=Feb, ...
+        int day = cal.get(Calendar.DAY_OF_MONTH);      // 1...
+        dos.write(year - 1900);
+        dos.write(month);
+        dos.write(day);
+        
+        // number of records
+        dos.writeInt(rowsCount);
+        
+        // header size
+        final int columnsCount = table.getColumnCount();
+        dos.writeShort(32 + columnsCount * 32 + 1);
+        
+        // record size
+        dos.writeShort(this.computeRecordSize(table));
+        
+        // reserved value, fill with 0
+        dos.writeShort(0);
+        
+        // transaction byte
+        dos.write(0);
+        
+        // encription byte
+        dos.write(0);
+        
+        // multi user environment use
+        for (int i = 0; i < 13; i++) {
+            dos.write(0);
+        }
+        
+        // codepage / language driver
+        // ESRI shape files use code 0x57 to indicate that
+        // data is written in ANSI (whatever that means).
+        // http://www.esricanada.com/english/support/faqs/arcview/avfaq21.asp
+        dos.write(0x57);
+        
+        // two reserved bytes
+        dos.writeShort(0);
+        
+        this.writeFieldDescriptors(dos, table);
+        
+        // header record terminator
+        dos.write(0x0D);
+    }
+    
     private void writeString(LittleEndianOutputStream dos, String str, int length)
     throws IOException {
         byte[] b = str.getBytes("ISO-8859-1");
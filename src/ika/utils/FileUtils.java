@@ -501,6 +501,19 @@ public class FileUtils {
         return FileUtils.charSequenceFromFile(filename, 0);
     }
 
+    /**
+     * Deletes a file if it exists.
+     *
+     * @param filePath The path of the file to delete.
+     * @throws IOException If the file exists and cannot be deleted.
+     */
+    public static void deleteFile(String filePath) throws IOException {
+        File file = new File(filePath);
+        if (file.exists() && !file.delete()) {
+            throw new IOException("Could not delete file " + file.getName() + ".");
+        }
+    }
+
     public static byte[] getBytesFromFile(File file) throws IOException {
         InputStream is = new FileInputStream(file);
 